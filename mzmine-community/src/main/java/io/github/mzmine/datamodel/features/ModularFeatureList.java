@@ -31,6 +31,7 @@ import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.columnar.ColumnarDataStore;
 import io.github.mzmine.datamodel.features.correlation.R2RNetworkingMaps;
 import io.github.mzmine.datamodel.features.correlation.RowGroup;
 import io.github.mzmine.datamodel.features.types.DataType;
@@ -39,6 +40,8 @@ import io.github.mzmine.datamodel.features.types.annotations.ManualAnnotationTyp
 import io.github.mzmine.datamodel.features.types.modifiers.GraphicalColumType;
 import io.github.mzmine.datamodel.features.types.numbers.IDType;
 import io.github.mzmine.datamodel.features.types.tasks.NodeGenerationThread;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.ConfigService;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.CachedIMSFrame;
 import io.github.mzmine.modules.io.projectload.CachedIMSRawDataFile;
@@ -73,6 +76,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javafx.collections.FXCollections;
+import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import javafx.collections.ObservableSet;
@@ -137,6 +141,15 @@ public class ModularFeatureList implements FeatureList {
    */
   private final Map<String, Node> bufferedCharts = new ConcurrentHashMap<>();
 
+  /**
+   * Columnar storage of all row and feature data maps. Null if each row and feature holds its own
+   * map.
+   */
+  @Nullable
+  private final ColumnarDataStore rowStore;
+  @Nullable
+  private final ColumnarDataStore featureStore;
+
   public ModularFeatureList(String name, @Nullable MemoryMapStorage storage,
       @NotNull RawDataFile... dataFiles) {
     this(name, storage, List.of(dataFiles));
@@ -144,6 +157,18 @@ public class ModularFeatureList implements FeatureList {
 
   public ModularFeatureList(String name, @Nullable MemoryMapStorage storage,
       @NotNull List<RawDataFile> dataFiles) {
+    this(name, storage, dataFiles,
+        ConfigService.getPreference(MZminePreferences.columnarFeatureStorage));
+  }
+
+  /**
+   * @param columnarStorage keep the values of all rows and features in one primitive column per
+   *                        {@link DataType}, which drastically reduces the memory of large feature
+   *                        lists. The other constructors use the
+   *                        {@link MZminePreferences#columnarFeatureStorage} preference.
+   */
+  public ModularFeatureList(String name, @Nullable MemoryMapStorage storage,
+      @NotNull List<RawDataFile> dataFiles, boolean columnarStorage) {
     setName(name);
     // sort data files by name to have the same order in export and GUI FeatureTableFx
     dataFiles = new ArrayList<>(dataFiles);
@@ -156,6 +181,13 @@ public class ModularFeatureList implements FeatureList {
     dateCreated = DATA_FORMAT.format(new Date());
     selectedScans = FXCollections.observableMap(new HashMap<>());
     this.memoryMapStorage = storage;
+    if (columnarStorage) {
+      rowStore = new ColumnarDataStore(type -> addRowType(type));
+      featureStore = new ColumnarDataStore(type -> addFeatureType(type));
+    } else {
+      rowStore = null;
+      featureStore = null;
+    }
 
     // only a few standard types
     addRowType(new IDType());
@@ -163,6 +195,71 @@ public class ModularFeatureList implements FeatureList {
     addDefaultListeners();
   }
 
+  /**
+   * @return true if the data maps of rows and features are stored in columns
+   */
+  public boolean isColumnarStorage() {
+    return rowStore != null;
+  }
+
+  /**
+   * Creates the data map of a new row. Adds all mapped types to the row types of this list.
+   */
+  @NotNull
+  ObservableMap<DataType, Object> createRowDataMap() {
+    if (rowStore != null) {
+      return rowStore.createMap();
+    }
+    final ObservableMap<DataType, Object> map = FXCollections.observableMap(new HashMap<>());
+    map.addListener((MapChangeListener<? super DataType, ? super Object>) change -> {
+      if (change.wasAdded()) {
+        addRowType(change.getKey());
+      }
+    });
+    return map;
+  }
+
+  /**
+   * Releases the storage slots of a removed row and its features. The row keeps its values.
+   */
+  private void releaseDataMaps(@NotNull FeatureListRow row) {
+    if (rowStore == null || !(row instanceof ModularFeatureListRow modularRow)) {
+      return;
+    }
+    rowStore.release(modularRow.getMap());
+    for (ModularFeature feature : modularRow.getFeatures()) {
+      releaseFeatureDataMap(feature);
+    }
+  }
+
+  /**
+   * Releases the storage slot of a feature that was removed from its row. The feature keeps its
+   * values.
+   */
+  void releaseFeatureDataMap(@Nullable ModularFeature feature) {
+    if (featureStore != null && feature != null) {
+      featureStore.release(feature.getMap());
+    }
+  }
+
+  /**
+   * Creates the data map of a new feature. Adds all mapped types to the feature types of this
+   * list.
+   */
+  @NotNull
+  ObservableMap<DataType, Object> createFeatureDataMap() {
+    if (featureStore != null) {
+      return featureStore.createMap();
+    }
+    final ObservableMap<DataType, Object> map = FXCollections.observableMap(new HashMap<>());
+    map.addListener((MapChangeListener<? super DataType, ? super Object>) change -> {
+      if (change.wasAdded()) {
+        addFeatureType(change.getKey());
+      }
+    });
+    return map;
+  }
+
   private void addDefaultListeners() {
     addFeatureTypeListener(new FeatureDataType(), (dataModel, type, oldValue, newValue) -> {
       // check feature data for graphical columns
@@ -602,7 +699,9 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public void removeRow(FeatureListRow row) {
-    featureListRows.remove(row);
+    if (featureListRows.remove(row)) {
+      releaseDataMaps(row);
+    }
   }
 
   /**
@@ -610,12 +709,18 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public void removeRow(int rowNum) {
-    removeRow(featureListRows.remove(rowNum));
+    releaseDataMaps(featureListRows.remove(rowNum));
   }
 
   @Override
   public void removeRows(final Set<FeatureListRow> rowsToRemove) {
-    featureListRows.removeIf(rowsToRemove::contains);
+    featureListRows.removeIf(row -> {
+      if (rowsToRemove.contains(row)) {
+        releaseDataMaps(row);
+        return true;
+      }
+      return false;
+    });
   }
 
   @Override
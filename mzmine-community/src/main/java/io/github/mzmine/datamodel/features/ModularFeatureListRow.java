@@ -74,7 +74,6 @@ import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 import javafx.collections.FXCollections;
-import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import org.jetbrains.annotations.NotNull;
@@ -97,7 +96,7 @@ public class ModularFeatureListRow implements FeatureListRow {
    * this final map is used in the FeaturesType - only ModularFeatureListRow is supposed to change
    * this map see {@link #addFeature}
    */
-  private final ObservableMap<DataType, Object> map = FXCollections.observableMap(new HashMap<>());
+  private final ObservableMap<DataType, Object> map;
   private final Map<RawDataFile, ModularFeature> features;
   @NotNull
   private final ModularFeatureList flist;
@@ -110,12 +109,8 @@ public class ModularFeatureListRow implements FeatureListRow {
    */
   public ModularFeatureListRow(@NotNull ModularFeatureList flist, int id) {
     this.flist = flist;
-
-    map.addListener((MapChangeListener<? super DataType, ? super Object>) change -> {
-      if (change.wasAdded()) {
-        this.flist.addRowType(change.getKey());
-      }
-    });
+    // adds new types to the feature list
+    map = flist.createRowDataMap();
 
     // features
     List<RawDataFile> raws = flist.getRawDataFiles();
@@ -245,6 +240,7 @@ public class ModularFeatureListRow implements FeatureListRow {
     modularFeature.setRow(this);
 
     if (!Objects.equals(oldFeature, modularFeature)) {
+      flist.releaseFeatureDataMap(oldFeature);
       // reflect changes by updating all row bindings
       getFeatureList().fireFeatureChangedEvent(this, modularFeature, raw, updateByRowBindings);
     }
@@ -271,6 +267,7 @@ public class ModularFeatureListRow implements FeatureListRow {
   public void removeFeature(RawDataFile file, boolean updateByRowBindings) {
     final ModularFeature removed = this.features.remove(file);
     if (removed != null) {
+      flist.releaseFeatureDataMap(removed);
       // reflect changes by updating all row bindings
       getFeatureList().fireFeatureChangedEvent(this, null, null, updateByRowBindings);
     }
@@ -279,6 +276,9 @@ public class ModularFeatureListRow implements FeatureListRow {
   @Override
   public void clearFeatures(final boolean updateByRowBindings) {
     final  boolean changed = !features.isEmpty();
+    for (ModularFeature feature : features.values()) {
+      flist.releaseFeatureDataMap(feature);
+    }
     this.features.clear();
     if (changed) {
       // reflect changes by updating all row bindings
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.columnar;
+
+import io.github.mzmine.datamodel.features.types.DataType;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import javafx.beans.InvalidationListener;
+import javafx.collections.MapChangeListener;
+import javafx.collections.ObservableMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Data map of a single row or feature as a view of one slot in a {@link ColumnarDataStore}.
+ * Change events follow the same rules as {@link javafx.collections.FXCollections#observableMap}.
+ * Listeners are only allocated when the first one is added, usually by the GUI.
+ * <p>
+ * When the row or feature is removed, the map is detached: its values are copied into a HashMap
+ * and the slot is reused. Detached maps stay fully functional, so that removed rows can still be
+ * used, e.g., by undo or another feature list.
+ */
+final class ColumnarDataMap extends AbstractMap<DataType, Object> implements
+    ObservableMap<DataType, Object> {
+
+  private final @NotNull ColumnarDataStore store;
+  private final int slot;
+  // values after the slot was released, null while attached to the store
+  private volatile @Nullable Map<DataType, Object> detached;
+  private @Nullable List<InvalidationListener> invalidationListeners;
+  private @Nullable List<MapChangeListener<? super DataType, ? super Object>> changeListeners;
+  private @Nullable EntrySet entrySet;
+
+  ColumnarDataMap(@NotNull ColumnarDataStore store, int slot) {
+    this.store = store;
+    this.slot = slot;
+  }
+
+  @NotNull ColumnarDataStore getStore() {
+    return store;
+  }
+
+  /**
+   * Copies all values into a private map and releases the slot in the store
+   *
+   * @return false if already detached
+   */
+  synchronized boolean detach() {
+    if (detached != null) {
+      return false;
+    }
+    final Map<DataType, Object> values = new HashMap<>();
+    for (DataColumn column : store.getColumns()) {
+      if (column.contains(slot)) {
+        values.put(column.getType(), column.get(slot));
+      }
+    }
+    detached = values;
+    store.releaseSlot(slot);
+    return true;
+  }
+
+  boolean isDetached() {
+    return detached != null;
+  }
+
+  @Override
+  public Object get(Object key) {
+    final Map<DataType, Object> detached = this.detached;
+    if (detached != null) {
+      return detached.get(key);
+    }
+    final DataColumn column = store.getColumn(key);
+    return column == null ? null : column.get(slot);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    final Map<DataType, Object> detached = this.detached;
+    if (detached != null) {
+      return detached.containsKey(key);
+    }
+    final DataColumn column = store.getColumn(key);
+    return column != null && column.contains(slot);
+  }
+
+  @Override
+  public Object put(DataType key, Object value) {
+    Objects.requireNonNull(key, "Data type cannot be null");
+    final Map<DataType, Object> detached = this.detached;
+    final boolean replaced;
+    final Object old;
+    if (detached != null) {
+      replaced = detached.containsKey(key);
+      old = detached.put(key, value);
+    } else {
+      final DataColumn column = store.getOrCreateColumn(key);
+      replaced = column.contains(slot);
+      old = column.put(slot, value);
+    }
+    if (!replaced) {
+      store.typeAdded(key);
+      fireChange(key, old, value, true, false);
+    } else if (!Objects.equals(old, value)) {
+      fireChange(key, old, value, true, true);
+    }
+    return old;
+  }
+
+  @Override
+  public Object remove(Object key) {
+    final Map<DataType, Object> detached = this.detached;
+    final Object old;
+    if (detached != null) {
+      if (!detached.containsKey(key)) {
+        return null;
+      }
+      old = detached.remove(key);
+    } else {
+      final DataColumn column = store.getColumn(key);
+      if (column == null || !column.contains(slot)) {
+        return null;
+      }
+      old = column.remove(slot);
+    }
+    fireChange((DataType) key, old, null, false, true);
+    return old;
+  }
+
+  @Override
+  public int size() {
+    final Map<DataType, Object> detached = this.detached;
+    if (detached != null) {
+      return detached.size();
+    }
+    int size = 0;
+    for (DataColumn column : store.getColumns()) {
+      if (column.contains(slot)) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    final Map<DataType, Object> detached = this.detached;
+    if (detached != null) {
+      return detached.isEmpty();
+    }
+    for (DataColumn column : store.getColumns()) {
+      if (column.contains(slot)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public @NotNull Set<Entry<DataType, Object>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  private void fireChange(DataType key, Object removed, Object added, boolean wasAdded,
+      boolean wasRemoved) {
+    if (invalidationListeners != null) {
+      for (InvalidationListener listener : List.copyOf(invalidationListeners)) {
+        listener.invalidated(this);
+      }
+    }
+    if (changeListeners != null) {
+      final SimpleChange change = new SimpleChange(key, removed, added, wasAdded, wasRemoved);
+      for (var listener : List.copyOf(changeListeners)) {
+        listener.onChanged(change);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void addListener(MapChangeListener<? super DataType, ? super Object> listener) {
+    if (changeListeners == null) {
+      changeListeners = new ArrayList<>(1);
+    }
+    changeListeners.add(listener);
+  }
+
+  @Override
+  public synchronized void removeListener(
+      MapChangeListener<? super DataType, ? super Object> listener) {
+    if (changeListeners != null && changeListeners.remove(listener) && changeListeners.isEmpty()) {
+      changeListeners = null;
+    }
+  }
+
+  @Override
+  public synchronized void addListener(InvalidationListener listener) {
+    if (invalidationListeners == null) {
+      invalidationListeners = new ArrayList<>(1);
+    }
+    invalidationListeners.add(listener);
+  }
+
+  @Override
+  public synchronized void removeListener(InvalidationListener listener) {
+    if (invalidationListeners != null && invalidationListeners.remove(listener)
+        && invalidationListeners.isEmpty()) {
+      invalidationListeners = null;
+    }
+  }
+
+  private final class SimpleChange extends MapChangeListener.Change<DataType, Object> {
+
+    private final DataType key;
+    private final Object removed;
+    private final Object added;
+    private final boolean wasAdded;
+    private final boolean wasRemoved;
+
+    private SimpleChange(DataType key, Object removed, Object added, boolean wasAdded,
+        boolean wasRemoved) {
+      super(ColumnarDataMap.this);
+      this.key = key;
+      this.removed = removed;
+      this.added = added;
+      this.wasAdded = wasAdded;
+      this.wasRemoved = wasRemoved;
+    }
+
+    @Override
+    public boolean wasAdded() {
+      return wasAdded;
+    }
+
+    @Override
+    public boolean wasRemoved() {
+      return wasRemoved;
+    }
+
+    @Override
+    public DataType getKey() {
+      return key;
+    }
+
+    @Override
+    public Object getValueAdded() {
+      return added;
+    }
+
+    @Override
+    public Object getValueRemoved() {
+      return removed;
+    }
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<DataType, Object>> {
+
+    @Override
+    public @NotNull Iterator<Entry<DataType, Object>> iterator() {
+      final Map<DataType, Object> detached = ColumnarDataMap.this.detached;
+      return detached != null ? new EntryIterator(List.copyOf(detached.keySet()))
+          : new EntryIterator();
+    }
+
+    @Override
+    public int size() {
+      return ColumnarDataMap.this.size();
+    }
+  }
+
+  /**
+   * Iterates the types of all columns with a value in this slot or the keys of the detached map
+   */
+  private final class EntryIterator implements Iterator<Entry<DataType, Object>> {
+
+    private final DataType[] keys;
+    private int next;
+    private DataType last;
+
+    private EntryIterator() {
+      final DataColumn[] columns = store.getColumns();
+      keys = new DataType[columns.length];
+      for (int i = 0; i < columns.length; i++) {
+        keys[i] = columns[i].getType();
+      }
+      next = advance(0);
+    }
+
+    private EntryIterator(List<DataType> detachedKeys) {
+      keys = detachedKeys.toArray(DataType[]::new);
+      next = advance(0);
+    }
+
+    private int advance(int from) {
+      while (from < keys.length && !containsKey(keys[from])) {
+        from++;
+      }
+      return from;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < keys.length;
+    }
+
+    @Override
+    public Entry<DataType, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = keys[next];
+      next = advance(next + 1);
+      return new ColumnEntry(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      ColumnarDataMap.this.remove(last);
+      last = null;
+    }
+  }
+
+  /**
+   * Reads and writes through to the column
+   */
+  private final class ColumnEntry implements Entry<DataType, Object> {
+
+    private final DataType key;
+
+    private ColumnEntry(DataType key) {
+      this.key = key;
+    }
+
+    @Override
+    public DataType getKey() {
+      return key;
+    }
+
+    @Override
+    public Object getValue() {
+      return get(key);
+    }
+
+    @Override
+    public Object setValue(Object value) {
+      return put(key, value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Map.Entry<?, ?> e && Objects.equals(key, e.getKey()) && Objects.equals(
+          getValue(), e.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + getValue();
+    }
+  }
+}
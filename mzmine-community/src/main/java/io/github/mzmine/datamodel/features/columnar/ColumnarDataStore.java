@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.columnar;
+
+import io.github.mzmine.datamodel.features.types.DataType;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javafx.collections.ObservableMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Columnar storage for the data maps of all rows or all features of a feature list. Each
+ * {@link DataType} is one column with one slot per data model. Numeric types are stored in
+ * primitive arrays instead of boxed values in one HashMap per data model.
+ * <p>
+ * Slots of removed rows and features are released by {@link #release(ObservableMap)} and reused
+ * by new data maps. Released maps keep their values in a HashMap, because a removed row may still
+ * be referenced, e.g., by another feature list, an open window, or an undo step.
+ */
+public class ColumnarDataStore {
+
+  private final AtomicInteger nextSlot = new AtomicInteger(0);
+  // released slots, guarded by itself
+  private final IntArrayList freeSlots = new IntArrayList();
+  private final Map<DataType<?>, DataColumn> columns = new ConcurrentHashMap<>();
+  // columns in order of creation for a stable iteration order, copy on write
+  private volatile DataColumn[] orderedColumns = new DataColumn[0];
+  private final @NotNull Consumer<DataType> onTypeAdded;
+
+  /**
+   * @param onTypeAdded called whenever a value of a type was added to a data model, e.g., to add
+   *                    the type to the feature list
+   */
+  public ColumnarDataStore(@NotNull Consumer<DataType> onTypeAdded) {
+    this.onTypeAdded = onTypeAdded;
+  }
+
+  /**
+   * @return a new data map for one data model backed by a free slot in this store
+   */
+  @NotNull
+  public ObservableMap<DataType, Object> createMap() {
+    return new ColumnarDataMap(this, acquireSlot());
+  }
+
+  /**
+   * Detaches a data map of a removed row or feature from this store and reuses its slot. The map
+   * keeps its values in a HashMap. Maps of other stores and already released maps are ignored.
+   *
+   * @return true if the slot was released
+   */
+  public boolean release(@NotNull ObservableMap<DataType, Object> map) {
+    return map instanceof ColumnarDataMap columnar && columnar.getStore() == this
+        && columnar.detach();
+  }
+
+  /**
+   * @return number of allocated slots, including free slots
+   */
+  public int getNumSlots() {
+    return nextSlot.get();
+  }
+
+  /**
+   * @return number of released slots that are reused for the next data maps
+   */
+  public int getNumFreeSlots() {
+    synchronized (freeSlots) {
+      return freeSlots.size();
+    }
+  }
+
+  private int acquireSlot() {
+    synchronized (freeSlots) {
+      if (!freeSlots.isEmpty()) {
+        return freeSlots.removeInt(freeSlots.size() - 1);
+      }
+    }
+    return nextSlot.getAndIncrement();
+  }
+
+  /**
+   * Clears all values of a slot and makes it available for new data maps. Only call when the
+   * data map of this slot is detached.
+   */
+  void releaseSlot(int slot) {
+    for (DataColumn column : orderedColumns) {
+      column.remove(slot);
+    }
+    synchronized (freeSlots) {
+      freeSlots.add(slot);
+    }
+  }
+
+  @Nullable
+  DataColumn getColumn(Object type) {
+    return type instanceof DataType<?> dt ? columns.get(dt) : null;
+  }
+
+  @NotNull
+  DataColumn getOrCreateColumn(@NotNull DataType<?> type) {
+    final DataColumn column = columns.get(type);
+    if (column != null) {
+      return column;
+    }
+    synchronized (this) {
+      return columns.computeIfAbsent(type, t -> {
+        final DataColumn created = new DataColumn(t);
+        final DataColumn[] ordered = Arrays.copyOf(orderedColumns, orderedColumns.length + 1);
+        ordered[ordered.length - 1] = created;
+        orderedColumns = ordered;
+        return created;
+      });
+    }
+  }
+
+  DataColumn[] getColumns() {
+    return orderedColumns;
+  }
+
+  void typeAdded(DataType type) {
+    onTypeAdded.accept(type);
+  }
+}
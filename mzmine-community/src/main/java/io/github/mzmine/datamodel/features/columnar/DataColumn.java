@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.columnar;
+
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.DoubleType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.FloatType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.IntegerType;
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * One column of a {@link ColumnarDataStore}. Values of {@link FloatType}, {@link DoubleType}, and
+ * {@link IntegerType} are kept in primitive arrays, all other values as objects. Values of an
+ * unexpected class are kept as objects as well. Storage is allocated in chunks that are never
+ * moved, so that concurrent writes to different slots are never lost during growth.
+ * <p>
+ * Same as for a HashMap, concurrent access to the same slot needs external synchronization.
+ */
+final class DataColumn {
+
+  static final int CHUNK_BITS = 10;
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  // slot states
+  private static final byte ABSENT = 0;
+  private static final byte NULL_VALUE = 1;
+  private static final byte PRIMITIVE = 2;
+  private static final byte OBJECT = 3;
+
+  private final @NotNull DataType<?> type;
+  private final @NotNull Kind kind;
+  // copy on write directory for safe publication of new chunks
+  private volatile Chunk[] chunks = new Chunk[0];
+
+  DataColumn(@NotNull DataType<?> type) {
+    this.type = type;
+    kind = switch (type) {
+      case FloatType _ -> Kind.FLOAT;
+      case DoubleType _ -> Kind.DOUBLE;
+      case IntegerType _ -> Kind.INT;
+      default -> Kind.OBJECT;
+    };
+  }
+
+  @NotNull
+  DataType<?> getType() {
+    return type;
+  }
+
+  boolean contains(int slot) {
+    final Chunk chunk = chunk(slot);
+    return chunk != null && chunk.states[slot & CHUNK_MASK] != ABSENT;
+  }
+
+  @Nullable
+  Object get(int slot) {
+    final Chunk chunk = chunk(slot);
+    if (chunk == null) {
+      return null;
+    }
+    final int i = slot & CHUNK_MASK;
+    return switch (chunk.states[i]) {
+      case PRIMITIVE -> switch (kind) {
+        case FLOAT -> chunk.floats[i];
+        case DOUBLE -> chunk.doubles[i];
+        case INT -> chunk.ints[i];
+        case OBJECT -> throw new IllegalStateException("Object column has no primitive values");
+      };
+      case OBJECT -> chunk.objects[i];
+      default -> null;
+    };
+  }
+
+  /**
+   * @return the previous value
+   */
+  @Nullable
+  Object put(int slot, @Nullable Object value) {
+    final Chunk chunk = getOrCreateChunk(slot);
+    final int i = slot & CHUNK_MASK;
+    final Object old = get(slot);
+    if (chunk.objects != null) {
+      chunk.objects[i] = null;
+    }
+
+    if (value == null) {
+      chunk.states[i] = NULL_VALUE;
+      return old;
+    }
+    switch (kind) {
+      case FLOAT -> {
+        if (value instanceof Float f) {
+          chunk.floats[i] = f;
+          chunk.states[i] = PRIMITIVE;
+          return old;
+        }
+      }
+      case DOUBLE -> {
+        if (value instanceof Double d) {
+          chunk.doubles[i] = d;
+          chunk.states[i] = PRIMITIVE;
+          return old;
+        }
+      }
+      case INT -> {
+        if (value instanceof Integer v) {
+          chunk.ints[i] = v;
+          chunk.states[i] = PRIMITIVE;
+          return old;
+        }
+      }
+      case OBJECT -> {
+      }
+    }
+    chunk.objectsOrCreate()[i] = value;
+    chunk.states[i] = OBJECT;
+    return old;
+  }
+
+  /**
+   * @return the previous value
+   */
+  @Nullable
+  Object remove(int slot) {
+    final Chunk chunk = chunk(slot);
+    if (chunk == null) {
+      return null;
+    }
+    final Object old = get(slot);
+    final int i = slot & CHUNK_MASK;
+    chunk.states[i] = ABSENT;
+    if (chunk.objects != null) {
+      chunk.objects[i] = null;
+    }
+    return old;
+  }
+
+  @Nullable
+  private Chunk chunk(int slot) {
+    final Chunk[] chunks = this.chunks;
+    final int c = slot >>> CHUNK_BITS;
+    return c < chunks.length ? chunks[c] : null;
+  }
+
+  @NotNull
+  private Chunk getOrCreateChunk(int slot) {
+    final Chunk chunk = chunk(slot);
+    if (chunk != null) {
+      return chunk;
+    }
+    synchronized (this) {
+      final int c = slot >>> CHUNK_BITS;
+      Chunk[] current = chunks;
+      if (c < current.length && current[c] != null) {
+        return current[c];
+      }
+      final Chunk[] directory = Arrays.copyOf(current, Math.max(current.length, c + 1));
+      final Chunk created = new Chunk(kind);
+      directory[c] = created;
+      chunks = directory;
+      return created;
+    }
+  }
+
+  private enum Kind {
+    FLOAT, DOUBLE, INT, OBJECT
+  }
+
+  private static final class Chunk {
+
+    private final byte[] states = new byte[CHUNK_SIZE];
+    private final float[] floats;
+    private final double[] doubles;
+    private final int[] ints;
+    // object values or values of an unexpected class in primitive columns
+    private volatile Object[] objects;
+
+    private Chunk(Kind kind) {
+      floats = kind == Kind.FLOAT ? new float[CHUNK_SIZE] : null;
+      doubles = kind == Kind.DOUBLE ? new double[CHUNK_SIZE] : null;
+      ints = kind == Kind.INT ? new int[CHUNK_SIZE] : null;
+      objects = kind == Kind.OBJECT ? new Object[CHUNK_SIZE] : null;
+    }
+
+    private synchronized Object[] objectsOrCreate() {
+      if (objects == null) {
+        objects = new Object[CHUNK_SIZE];
+      }
+      return objects;
+    }
+  }
+}
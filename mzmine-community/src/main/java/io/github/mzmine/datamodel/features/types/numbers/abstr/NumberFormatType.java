@@ -26,6 +26,7 @@
 package io.github.mzmine.datamodel.features.types.numbers.abstr;
 
 import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.util.ThreadSafeNumberFormat;
 import java.text.NumberFormat;
 import org.jetbrains.annotations.NotNull;
 
@@ -40,7 +41,7 @@ public abstract class NumberFormatType<T> extends DataType<T> {
   protected final NumberFormat DEFAULT_FORMAT;
 
   protected NumberFormatType(NumberFormat defaultFormat) {
-    DEFAULT_FORMAT = defaultFormat;
+    DEFAULT_FORMAT = defaultFormat == null ? null : ThreadSafeNumberFormat.of(defaultFormat);
   }
 
   public abstract NumberFormat getFormat();
@@ -26,6 +26,7 @@
 package io.github.mzmine.datamodel.features.types.numbers.abstr;
 
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.util.ThreadSafeNumberFormat;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 
@@ -34,7 +35,8 @@ import java.text.NumberFormat;
  */
 public abstract class PercentType extends FloatType {
 
-  private static final NumberFormat defaultFormatter = new DecimalFormat("0.00 %");
+  private static final NumberFormat defaultFormatter = ThreadSafeNumberFormat.of(
+      new DecimalFormat("0.00 %"));
 
   protected PercentType() {
     super(defaultFormatter);
@@ -26,13 +26,14 @@
 package io.github.mzmine.datamodel.features.types.otherdectectors;
 
 import io.github.mzmine.datamodel.features.types.numbers.abstr.DoubleType;
+import io.github.mzmine.util.ThreadSafeNumberFormat;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import org.jetbrains.annotations.NotNull;
 
 public class WavelengthType extends DoubleType {
 
-  private static NumberFormat DEFAULT_FORMAT = new DecimalFormat("0.0");
+  private static NumberFormat DEFAULT_FORMAT = ThreadSafeNumberFormat.of(new DecimalFormat("0.0"));
 
   public WavelengthType() {
     super(DEFAULT_FORMAT);
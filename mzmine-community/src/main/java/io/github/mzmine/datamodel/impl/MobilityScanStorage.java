@@ -180,15 +180,33 @@ public class MobilityScanStorage {
 
     if (!massDetector.filtersActive()) {
       // no need to run mass detection in this case.
-      massListBasePeakIndices = rawBasePeakIndices;
-      massListMaxNumPoints = rawMaxNumPoints;
-      massListMzValues = rawMzValues;
-      massListIntensityValues = rawIntensityValues;
-      massListStorageOffsets = rawStorageOffsets;
+      useRawDataAsMassLists();
       return;
     }
 
-    // mobility scan -> [0][] = mzs, [1][] = intensities
+    setMassLists(storage, detectMobilityScanMassLists(massDetector, denormalizeMSnScans));
+  }
+
+  /**
+   * Uses the raw data of all mobility scans as mass lists without copying
+   */
+  public void useRawDataAsMassLists() {
+    massListBasePeakIndices = rawBasePeakIndices;
+    massListMaxNumPoints = rawMaxNumPoints;
+    massListMzValues = rawMzValues;
+    massListIntensityValues = rawIntensityValues;
+    massListStorageOffsets = rawStorageOffsets;
+  }
+
+  /**
+   * Runs the mass detection on all mobility scans without storing the results. Use
+   * {@link #setMassLists(MemoryMapStorage, List)} to add them. Allows to detect masses of multiple
+   * frames in parallel and to write them to the storage in order.
+   *
+   * @return mobility scan -> [0][] = mzs, [1][] = intensities
+   */
+  public @NotNull List<double[][]> detectMobilityScanMassLists(@NotNull MassDetector massDetector,
+      boolean denormalizeMSnScans) {
     final List<double[][]> data = new ArrayList<>();
 
     for (MobilityScan mobilityScan : getMobilityScans()) {
@@ -199,8 +217,7 @@ public class MobilityScanStorage {
       }
       data.add(mzIntensity);
     }
-
-    setMassLists(storage, data);
+    return data;
   }
 
   /**
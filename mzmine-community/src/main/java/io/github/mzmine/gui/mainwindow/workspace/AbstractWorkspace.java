@@ -47,6 +47,7 @@ import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.M
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.minimumsearch.MinimumSearchFeatureResolverModule;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.noiseamplitude.NoiseAmplitudeResolverModule;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.savitzkygolay.SavitzkyGolayResolverModule;
+import io.github.mzmine.modules.dataprocessing.featdet_fused.FusedFeatureDetectionModule;
 import io.github.mzmine.modules.dataprocessing.featdet_imagebuilder.ImageBuilderModule;
 import io.github.mzmine.modules.dataprocessing.featdet_imsexpander.ImsExpanderModule;
 import io.github.mzmine.modules.dataprocessing.featdet_maldispotfeaturedetection.MaldiSpotFeatureDetectionModule;
@@ -231,7 +232,7 @@ public abstract class AbstractWorkspace implements Workspace {
 
   protected Menu buildDefaultLcMsSubMenu() {
     return addModuleMenuItems("LC-MS", ModularADAPChromatogramBuilderModule.class,
-        TargetedFeatureDetectionModule.class);
+        FusedFeatureDetectionModule.class, TargetedFeatureDetectionModule.class);
   }
 
   protected Menu buildDefaultGcMsSubMenu() {
@@ -34,6 +34,7 @@ import io.github.mzmine.javafx.dialogs.DialogLoggerUtil;
 import io.github.mzmine.main.ConfigService;
 import io.github.mzmine.main.KeepInMemory;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.batchmode.BatchStepResultCache;
 import io.github.mzmine.modules.io.download.AssetGroup;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
@@ -43,6 +44,7 @@ import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.FontSpecs;
 import io.github.mzmine.parameters.parametertypes.HiddenParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.OptOutParameter;
 import io.github.mzmine.parameters.parametertypes.OptionalParameter;
 import io.github.mzmine.parameters.parametertypes.StringParameter;
@@ -73,6 +75,7 @@ import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
+import javafx.scene.control.Button;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser.ExtensionFilter;
 import org.jetbrains.annotations.Nullable;
@@ -126,6 +129,55 @@ public class MZminePreferences extends SimpleParameterSet {
       Typically the Java Virtual Machine will hold on to RAM and manage it to achieve the highest throughput.
       The recommendation is to keep this setting turned off.""", false);
 
+  public static final BooleanParameter profileBatchSteps = new BooleanParameter(
+      "Profile batch steps", """
+      Records the cpu time, allocated memory, peak heap, garbage collection pauses, threads, \
+      and disk reads and writes of each batch step and its tasks. The report is written as \
+      batch_profile files next to the first export of the batch (or the working directory). \
+      Batch steps are also recorded as events in Java Flight Recorder recordings.""", false);
+
+  public static final BooleanParameter pipelineBatchSamples = new BooleanParameter(
+      "Pipeline samples in batch", """
+      Consecutive batch steps that process each raw data file or feature list on its own \
+      (e.g., mass detection, chromatogram building, smoothing, resolving, isotope filters) run as a \
+      pipeline per sample. Each sample continues with the next step as soon as it is finished, \
+      the first step that combines samples (e.g., alignment) waits for all samples.""", false);
+
+  public static final OptionalParameter<IntegerParameter> cacheBatchStepResults = new OptionalParameter<>(
+      new IntegerParameter("Cache batch step results", """
+          Stores the feature lists of each feature detection and processing batch step in the \
+          batch_step_cache folder of the mzmine directory. When a batch is run again, all steps with \
+          the same parameters and inputs as before are restored from the cache and only the steps \
+          after the first change are recalculated. Raw data steps always run. \
+          The value is the maximum size in GB, the least recently used results are removed when it is reached. \
+          Use the "Clear batch step cache" button to remove all results.""", 20, 1, null), false);
+
+  public static final OptionalParameter<IntegerParameter> batchShardWorkers = new OptionalParameter<>(
+      new IntegerParameter("Sharded batch workers", """
+          Only used when running a batch from the command line. Splits the raw data files into \
+          shards and runs the sample steps of the batch (import, raw data methods, chromatogram \
+          building, smoothing, resolving, isotope filters) in this number of separate worker \
+          processes. Their feature lists are written to the temp directory and the following steps \
+          (e.g., alignment, gap filling, annotation) run in the main process. Each worker only \
+          holds its shard in memory. The temp directory needs enough space for all feature lists.""",
+          4, 2, 256), false);
+
+  public static final OptionalParameter<IntegerParameter> spectrumEmbeddingCache = new OptionalParameter<>(
+      new IntegerParameter("Spectrum embedding cache", """
+          Stores the embeddings predicted by MS2Deepscore and DreaMS models in the mzmine user directory. \
+          Spectra that were already predicted by the same model are reused in all later runs, \
+          e.g., when networking the same feature list again with different settings. \
+          The value is the maximum size in MB, the least recently used embeddings are removed when it is reached.""",
+          1024, 1, 2047), false);
+
+  public static final OptionalParameter<IntegerParameter> spectralLibraryCache = new OptionalParameter<>(
+      new IntegerParameter("Spectral library cache", """
+          Compiles imported spectral libraries into a binary file in the library_cache folder of \
+          the mzmine directory. Later imports of the same unchanged library open this file \
+          instead of parsing the library again and only load the spectra that are accessed. \
+          The value is the maximum size in GB, the least recently used libraries are removed when it is reached.""",
+          10, 1, null), true);
+
   public static final BooleanParameter deleteTempFiles = new BooleanParameter(
       "Fast temp files cleanup", """
       Cleanup temp files as soon as possible. This is the new default behavior. \
@@ -187,10 +239,26 @@ public class MZminePreferences extends SimpleParameterSet {
           + " memory mapping is a fast and memory efficient way to handle data, therefore, the "
           + "default is to memory map all spectral data and feature data with the option %s. On "
           + "systems where memory (RAM) is no concern, viable options are %s and %s, to keep all in memory "
-          + "or to keep mass lists and feauture data in memory, respectively.", KeepInMemory.NONE,
-      KeepInMemory.ALL, KeepInMemory.MASSES_AND_FEATURES), KeepInMemory.values(),
+          + "or to keep mass lists and feauture data in memory, respectively. %s keeps feature data "
+          + "in memory while there is enough free memory and moves the feature data of the least "
+          + "recently used feature lists to memory mapped files under memory pressure.",
+      KeepInMemory.NONE, KeepInMemory.ALL, KeepInMemory.MASSES_AND_FEATURES, KeepInMemory.AUTO),
+      KeepInMemory.values(),
       KeepInMemory.NONE);
 
+  public static final BooleanParameter columnarFeatureStorage = new BooleanParameter(
+      "Columnar feature list storage", """
+      Stores the values of all rows and features of a feature list in one column per data type \
+      instead of one map per row and feature. Numbers are stored as primitives, which reduces \
+      the memory consumption of large feature lists, e.g., after alignment of many samples. \
+      Only applies to feature lists created afterwards.""", false);
+
+  public static final BooleanParameter binaryFeatureListProjectFormat = new BooleanParameter(
+      "Binary feature list project format", """
+      Saves feature lists to projects as binary columns instead of xml. Saving and loading large \
+      feature lists is much faster, but the projects can only be opened by this or newer \
+      versions of mzmine. Projects in the xml format can still be loaded.""", false);
+
   /*public static final BooleanParameter applyTimsPressureCompensation = new BooleanParameter(
       "Use MALDI-TIMS pressure compensation", """
       Specifies if mobility values from Bruker timsTOF fleX MALDI raw data shall be recalibrated using a Bruker algorithm.
@@ -263,9 +331,11 @@ public class MZminePreferences extends SimpleParameterSet {
 
   public MZminePreferences() {
     super(// start with performance
-        new Parameter[]{numOfThreads, memoryOption, tempDirectory, runGCafterBatchStep,
-            deleteTempFiles,
-        proxySettings,
+        new Parameter[]{numOfThreads, memoryOption, columnarFeatureStorage,
+            binaryFeatureListProjectFormat, tempDirectory,
+            runGCafterBatchStep, profileBatchSteps, pipelineBatchSamples, cacheBatchStepResults,
+            batchShardWorkers, spectrumEmbeddingCache, spectralLibraryCache, deleteTempFiles,
+            proxySettings,
         /*applyTimsPressureCompensation,*/
         // visuals
         // number formats
@@ -306,8 +376,10 @@ public class MZminePreferences extends SimpleParameterSet {
     GroupedParameterSetupDialog dialog = new GroupedParameterSetupDialog(valueCheckRequired, this);
 
     // add groups
-    dialog.addParameterGroup("General", numOfThreads, memoryOption, tempDirectory,
-        runGCafterBatchStep, deleteTempFiles, proxySettings
+    dialog.addParameterGroup("General", numOfThreads, memoryOption, columnarFeatureStorage,
+        binaryFeatureListProjectFormat, tempDirectory, runGCafterBatchStep, profileBatchSteps,
+        pipelineBatchSamples, cacheBatchStepResults, batchShardWorkers, spectrumEmbeddingCache,
+        spectralLibraryCache, deleteTempFiles, proxySettings
         /*, applyTimsPressureCompensation*/);
     dialog.addParameterGroup("Formats", mzFormat, rtFormat, mobilityFormat, ccsFormat,
         intensityFormat, ppmFormat, scoreFormat, unitFormat);
@@ -321,6 +393,17 @@ public class MZminePreferences extends SimpleParameterSet {
 //    });
     dialog.setFilterText(filterParameters);
 
+    final Button clearStepCache = new Button("Clear batch step cache");
+    clearStepCache.setOnAction(_ -> {
+      if (DialogLoggerUtil.showDialogYesNo("Clear batch step cache",
+          "Remove all cached batch step results?")) {
+        final long bytes = BatchStepResultCache.clear();
+        DialogLoggerUtil.showMessageDialog("Cleared batch step cache",
+            "Removed %d MB of cached batch step results.".formatted(bytes >> 20));
+      }
+    });
+    dialog.getButtonBar().getButtons().add(clearStepCache);
+
     // check
     dialog.showAndWait();
     final ExitCode retVal = dialog.getExitCode();
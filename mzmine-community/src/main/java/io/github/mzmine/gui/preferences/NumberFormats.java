@@ -26,6 +26,7 @@
 package io.github.mzmine.gui.preferences;
 
 import com.google.common.collect.Range;
+import io.github.mzmine.util.ThreadSafeNumberFormat;
 import java.text.NumberFormat;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,6 +41,20 @@ public record NumberFormats(NumberFormat mzFormat, NumberFormat rtFormat,
   private static final Logger logger = Logger.getLogger(NumberFormats.class.getName());
   private static final String empty = "";
 
+  /**
+   * Formats are shared by all threads, e.g., during parallel export
+   */
+  public NumberFormats {
+    mzFormat = ThreadSafeNumberFormat.of(mzFormat);
+    rtFormat = ThreadSafeNumberFormat.of(rtFormat);
+    mobilityFormat = ThreadSafeNumberFormat.of(mobilityFormat);
+    ccsFormat = ThreadSafeNumberFormat.of(ccsFormat);
+    intensityFormat = ThreadSafeNumberFormat.of(intensityFormat);
+    ppmFormat = ThreadSafeNumberFormat.of(ppmFormat);
+    percentFormat = ThreadSafeNumberFormat.of(percentFormat);
+    scoreFormat = ThreadSafeNumberFormat.of(scoreFormat);
+  }
+
   private static String range(Range<? extends Number> range, NumberFormat format) {
     return range != null ? format.format(range.lowerEndpoint()) + " - " + format.format(
         range.upperEndpoint()) : null;
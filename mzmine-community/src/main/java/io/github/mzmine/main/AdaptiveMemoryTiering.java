@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.main;
+
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
+import io.github.mzmine.project.ProjectService;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Backs {@link KeepInMemory#AUTO}. New feature data is kept in RAM, mass lists and raw scans are
+ * memory mapped. A daemon timer samples heap and off-heap (direct buffer) usage. Under memory
+ * pressure, the feature data of the least recently used feature list is spilled: all feature
+ * series are rewritten into a new memory mapped {@link MemoryMapStorage} and the heap arrays are
+ * released. Once there is enough headroom again, the most recently used spilled feature list is
+ * reloaded into RAM. The most recently used feature list is never spilled.
+ * <p>
+ * A feature list is used when it is added to the project or when a module adds an applied method.
+ * Feature data that a module adds to a spilled feature list later is stored in RAM until the next
+ * spill.
+ */
+public final class AdaptiveMemoryTiering {
+
+  private static final Logger logger = Logger.getLogger(AdaptiveMemoryTiering.class.getName());
+
+  /**
+   * spill a feature list if the heap or direct memory usage exceeds this fraction
+   */
+  static final double SPILL_THRESHOLD = 0.8;
+  /**
+   * reload a feature list if the usage stayed below this fraction for
+   * {@link #RELOAD_AFTER_SAMPLES}
+   */
+  static final double RELOAD_THRESHOLD = 0.5;
+  static final int RELOAD_AFTER_SAMPLES = 3;
+  private static final long SAMPLE_INTERVAL_MS = 2000;
+
+  private static @Nullable AdaptiveMemoryTiering active;
+  private static @Nullable Timer timer;
+
+  // weak keys, removed feature lists are not kept alive
+  private final Map<ModularFeatureList, Use> uses = new WeakHashMap<>();
+  private long clock = 0;
+  private int samplesBelowReload = 0;
+  private int spills = 0;
+  private int reloads = 0;
+
+  AdaptiveMemoryTiering() {
+  }
+
+  /**
+   * Starts sampling the memory usage. Replaces a running instance.
+   */
+  public static synchronized void start() {
+    stop();
+    MemoryMapStorage.setStoreAllInRam(false);
+    MemoryMapStorage.setStoreFeaturesInRam(true);
+    final AdaptiveMemoryTiering tiering = new AdaptiveMemoryTiering();
+    active = tiering;
+
+    timer = new Timer("Adaptive memory tiering", true);
+    timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        try {
+          tiering.update(MemoryUsage.current(),
+              ProjectService.getProject().getCurrentFeatureLists());
+        } catch (Exception e) {
+          logger.log(Level.WARNING, "Error in adaptive memory tiering " + e.getMessage(), e);
+        }
+      }
+    }, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS);
+    logger.info("Started adaptive memory tiering: feature data is kept in RAM while there is "
+                + "headroom");
+  }
+
+  /**
+   * Stops sampling. Spilled feature lists stay memory mapped.
+   */
+  public static synchronized void stop() {
+    if (timer != null) {
+      timer.cancel();
+      timer = null;
+    }
+    if (active != null) {
+      logger.info("Stopped adaptive memory tiering after %d spills and %d reloads".formatted(
+          active.spills, active.reloads));
+      active = null;
+    }
+  }
+
+  public static synchronized boolean isActive() {
+    return active != null;
+  }
+
+  /**
+   * Spills or reloads at most one feature list per call
+   */
+  synchronized void update(@NotNull MemoryUsage usage,
+      @NotNull List<? extends FeatureList> featureLists) {
+    final List<ModularFeatureList> lists = new ArrayList<>();
+    for (FeatureList flist : featureLists) {
+      if (flist instanceof ModularFeatureList modular) {
+        lists.add(modular);
+        trackUse(modular);
+      }
+    }
+
+    final double pressure = usage.pressure();
+    if (pressure >= SPILL_THRESHOLD) {
+      samplesBelowReload = 0;
+      final ModularFeatureList coldest = findLeastRecentlyUsedInRam(lists);
+      if (coldest != null) {
+        final int series = rewriteFeatureData(coldest, MemoryMapStorage.create());
+        uses.get(coldest).spilled = true;
+        spills++;
+        logger.info(("High memory usage (%s), spilled %d feature series of %s to memory mapped "
+                     + "temp files").formatted(usage, series, coldest.getName()));
+      }
+      return;
+    }
+
+    if (pressure >= RELOAD_THRESHOLD) {
+      samplesBelowReload = 0;
+      return;
+    }
+    samplesBelowReload++;
+    if (samplesBelowReload < RELOAD_AFTER_SAMPLES) {
+      return;
+    }
+    samplesBelowReload = 0;
+    final ModularFeatureList hottest = findMostRecentlySpilled(lists);
+    if (hottest != null) {
+      final int series = rewriteFeatureData(hottest, null);
+      uses.get(hottest).spilled = false;
+      reloads++;
+      logger.info("Memory headroom available (%s), reloaded %d feature series of %s into RAM"
+          .formatted(usage, series, hottest.getName()));
+    }
+  }
+
+  synchronized boolean isSpilled(@NotNull ModularFeatureList flist) {
+    final Use use = uses.get(flist);
+    return use != null && use.spilled;
+  }
+
+  /**
+   * New feature lists and feature lists with a new applied method are used now
+   */
+  private void trackUse(@NotNull ModularFeatureList flist) {
+    final int methods = flist.getAppliedMethods().size();
+    final Use use = uses.get(flist);
+    if (use == null) {
+      uses.put(flist, new Use(++clock, methods));
+    } else if (use.methods != methods) {
+      use.lastUse = ++clock;
+      use.methods = methods;
+    }
+  }
+
+  /**
+   * @return the least recently used feature list in RAM, never the most recently used of all
+   */
+  private @Nullable ModularFeatureList findLeastRecentlyUsedInRam(
+      @NotNull List<ModularFeatureList> lists) {
+    ModularFeatureList newest = null;
+    for (ModularFeatureList flist : lists) {
+      if (newest == null || uses.get(flist).lastUse > uses.get(newest).lastUse) {
+        newest = flist;
+      }
+    }
+    ModularFeatureList coldest = null;
+    for (ModularFeatureList flist : lists) {
+      final Use use = uses.get(flist);
+      if (flist == newest || use.spilled) {
+        continue;
+      }
+      if (coldest == null || use.lastUse < uses.get(coldest).lastUse) {
+        coldest = flist;
+      }
+    }
+    return coldest;
+  }
+
+  private @Nullable ModularFeatureList findMostRecentlySpilled(
+      @NotNull List<ModularFeatureList> lists) {
+    ModularFeatureList hottest = null;
+    for (ModularFeatureList flist : lists) {
+      final Use use = uses.get(flist);
+      if (use.spilled && (hottest == null || use.lastUse > uses.get(hottest).lastUse)) {
+        hottest = flist;
+      }
+    }
+    return hottest;
+  }
+
+  /**
+   * Copies all feature series that are not in the target storage yet and replaces them in the
+   * features. Series that a task replaced during the copy are kept.
+   *
+   * @param storage memory mapped storage or null to copy into RAM
+   * @return the number of rewritten series
+   */
+  static int rewriteFeatureData(@NotNull ModularFeatureList flist,
+      @Nullable MemoryMapStorage storage) {
+    final boolean toMapped = storage != null;
+    int rewritten = 0;
+    for (FeatureListRow row : flist.getRows().toArray(FeatureListRow[]::new)) {
+      for (ModularFeature feature : row.getFeatures()) {
+        final IonTimeSeries<? extends Scan> series = feature.getFeatureData();
+        if (series == null || series.getNumberOfValues() == 0
+            || series.getMZValueBuffer().isMapped() == toMapped) {
+          continue;
+        }
+        final var copy = (IonTimeSeries<? extends Scan>) series.copy(storage);
+        if (feature.getFeatureData() == series) {
+          feature.set(FeatureDataType.class, copy);
+          rewritten++;
+        }
+      }
+    }
+    return rewritten;
+  }
+
+  private static final class Use {
+
+    private long lastUse;
+    private int methods;
+    private boolean spilled;
+
+    private Use(long lastUse, int methods) {
+      this.lastUse = lastUse;
+      this.methods = methods;
+    }
+  }
+
+  /**
+   * @param heapUsed   used heap in bytes
+   * @param heapMax    maximum heap in bytes
+   * @param directUsed used direct (off-heap) buffers in bytes. The default limit of direct memory
+   *                   equals the maximum heap
+   * @param mappedUsed memory mapped buffers in bytes. Only reported, as mapped files are paged by
+   *                   the operating system
+   */
+  record MemoryUsage(long heapUsed, long heapMax, long directUsed, long mappedUsed) {
+
+    private static final double MB = 1 << 20;
+
+    static MemoryUsage current() {
+      final Runtime runtime = Runtime.getRuntime();
+      long direct = 0;
+      long mapped = 0;
+      for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+        if (pool.getName().startsWith("mapped")) {
+          mapped += Math.max(pool.getMemoryUsed(), 0);
+        } else {
+          direct += Math.max(pool.getMemoryUsed(), 0);
+        }
+      }
+      return new MemoryUsage(runtime.totalMemory() - runtime.freeMemory(), runtime.maxMemory(),
+          direct, mapped);
+    }
+
+    double pressure() {
+      return Math.max(heapUsed, directUsed) / (double) heapMax;
+    }
+
+    @Override
+    public String toString() {
+      return "heap %.0f of %.0f MB, direct %.0f MB, mapped %.0f MB".formatted(heapUsed / MB,
+          heapMax / MB, directUsed / MB, mappedUsed / MB);
+    }
+  }
+}
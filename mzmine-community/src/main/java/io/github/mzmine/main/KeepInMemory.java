@@ -32,7 +32,13 @@ import io.github.mzmine.util.MemoryMapStorage;
  */
 public enum KeepInMemory {
 
-  NONE, ALL, FEATURES, MASS_LISTS, RAW_SCANS, MASSES_AND_FEATURES;
+  NONE, ALL, FEATURES, MASS_LISTS, RAW_SCANS, MASSES_AND_FEATURES,
+  /**
+   * Keeps feature data in RAM while there is headroom and moves the feature data of the least
+   * recently used feature lists to memory mapped files under memory pressure, see
+   * {@link AdaptiveMemoryTiering}
+   */
+  AUTO;
 
   public static KeepInMemory parse(String s) {
     s = s.toLowerCase();
@@ -43,6 +49,7 @@ public enum KeepInMemory {
       case "centroids" -> MASS_LISTS;
       case "raw" -> RAW_SCANS;
       case "masses_features" -> MASSES_AND_FEATURES;
+      case "auto" -> AUTO;
       default -> throw new IllegalStateException("Unexpected value: " + s);
     };
   }
@@ -51,7 +58,15 @@ public enum KeepInMemory {
    * Apply this option for memory mapping
    */
   public void enforceToMemoryMapping() {
+    if (this == AUTO) {
+      // keep the state of a running instance when the preferences are applied again
+      if (!AdaptiveMemoryTiering.isActive()) {
+        AdaptiveMemoryTiering.start();
+      }
+      return;
+    }
     // reset
+    AdaptiveMemoryTiering.stop();
     MemoryMapStorage.setStoreAllInRam(false);
     // keep all in memory? (features, scans, ... in RAM instead of MemoryMapStorage
     switch (this) {
@@ -66,6 +81,9 @@ public enum KeepInMemory {
         MemoryMapStorage.setStoreMassListsInRam(true);
         MemoryMapStorage.setStoreFeaturesInRam(true);
       }
+      case AUTO -> {
+        // handled above
+      }
     }
   }
 }
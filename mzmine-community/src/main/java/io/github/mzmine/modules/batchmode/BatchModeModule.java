@@ -156,10 +156,19 @@ public class BatchModeModule implements MZmineProcessingModule {
       newQueue.setOutputBaseFile(overrideOutBaseFile);
     }
 
+    // large batches may run the sample steps in multiple processes
+    final int numWorkers = ShardedBatchRunner.getNumWorkers();
+    if (numWorkers > 1 && ShardedBatchRunner.findSampleStepsEnd(newQueue) > 0) {
+      return ShardedBatchRunner.run(newQueue, project, numWorkers, moduleCallDate);
+    }
+
     ParameterSet parameters = new BatchModeParameters();
     parameters.getParameter(BatchModeParameters.batchQueue).setValue(newQueue);
     BatchTask batchTask = new BatchTask(project, parameters, moduleCallDate);
     batchTask.run();
+    if (ShardedBatchRunner.isWorker()) {
+      ShardedBatchRunner.writeWorkerResults(batchTask, project);
+    }
     return batchTask;
   }
 
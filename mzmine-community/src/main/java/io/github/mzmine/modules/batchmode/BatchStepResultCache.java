@@ -0,0 +1,641 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.MZmineModuleCategory.MainCategory;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat;
+import io.github.mzmine.modules.visualization.projectmetadata.table.MetadataTable;
+import io.github.mzmine.modules.visualization.projectmetadata.table.columns.MetadataColumn;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterUtils;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNamesParameter;
+import io.github.mzmine.parameters.parametertypes.filenames.FileSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParameter;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.XMLUtils;
+import io.github.mzmine.util.files.FileAndPathUtil;
+import io.github.mzmine.util.io.SemverVersionReader;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Content addressed cache of batch step results. The key of each step is a hash of the key of the
+ * previous step, the module, its parameters, and the size and modification date of all input files
+ * of the parameters. The first key also covers the mzmine version and the raw data files, feature
+ * lists, spectral libraries and metadata that are already in the project. Changing one step
+ * therefore changes the keys of all following steps.
+ * <p>
+ * Feature detection and processing steps store the feature lists they create (or modify in place)
+ * in the {@link FeatureListBinaryFormat}. When a step with the same key is run again, it is skipped
+ * and its results are restored. Consecutive cached steps only load the feature lists that remain
+ * in the project when the next step has to run. Raw data steps modify the raw data files and are
+ * always run, all other steps (import, export, ...) are run but not cached. Other steps that may
+ * change feature lists in place depend on inputs that are not part of the keys, so all steps after
+ * them are neither restored nor cached.
+ * <p>
+ * The size of the cache directory is limited, the least recently used entries are removed after
+ * each new entry.
+ */
+public final class BatchStepResultCache {
+
+  static final String CACHE_DIR = "batch_step_cache";
+  private static final Logger logger = Logger.getLogger(BatchStepResultCache.class.getName());
+  private static final String MANIFEST_FILE = "step.manifest";
+  private static final int MAGIC = 0x4D5A5343; // MZSC
+  private static final int VERSION = 1;
+  private static final String TEMP_PREFIX = "tmp_";
+  private static final long BYTES_PER_GB = 1L << 30;
+  private static final long STALE_TEMP_MILLIS = 24 * 60 * 60 * 1000L;
+
+  private final @NotNull MZmineProject project;
+  private final @NotNull File cacheDir;
+  private final @NotNull BooleanSupplier isCanceled;
+  private final long maxBytes;
+  private final Map<CacheStatus, Integer> statusCounts = new LinkedHashMap<>();
+
+  // key of the project state after the last step
+  private HashCode stateKey;
+  // current step
+  private HashCode stepKey;
+  private List<FeatureList> beforeFeatureLists = List.of();
+  private List<RawDataFile> beforeDataFiles = List.of();
+
+  // restored results that are only loaded when needed, by feature list name
+  private final Map<String, CachedFeatureList> pendingFeatureLists = new LinkedHashMap<>();
+  private final Set<String> pendingRemoved = new HashSet<>();
+  private boolean pending = false;
+  // a step changed feature lists with inputs that are not covered by the keys
+  private boolean disabled = false;
+
+  // feature lists created by the last steps, tracked like the batch last feature lists
+  private List<String> createdNames = List.of();
+  private List<String> previousCreatedNames = List.of();
+
+  /**
+   * @param maxSizeGB maximum size of the cache directory
+   */
+  BatchStepResultCache(@NotNull MZmineProject project, @NotNull BooleanSupplier isCanceled,
+      int maxSizeGB) {
+    this(project, isCanceled, getCacheDir(), maxSizeGB * BYTES_PER_GB);
+  }
+
+  BatchStepResultCache(@NotNull MZmineProject project, @NotNull BooleanSupplier isCanceled,
+      @NotNull File cacheDir, long maxBytes) {
+    this.project = project;
+    this.isCanceled = isCanceled;
+    this.cacheDir = cacheDir;
+    this.maxBytes = maxBytes;
+    stateKey = hashProjectState(project);
+  }
+
+  private static File getCacheDir() {
+    return FileAndPathUtil.resolveInMzmineDir(CACHE_DIR);
+  }
+
+  /**
+   * Removes all cached batch step results
+   *
+   * @return the number of removed bytes
+   */
+  public static long clear() {
+    final File dir = getCacheDir();
+    if (!dir.isDirectory()) {
+      return 0;
+    }
+    final long bytes = FileUtils.sizeOfDirectory(dir);
+    FileUtils.deleteQuietly(dir);
+    logger.info("Cleared batch step cache %s (%d MB)".formatted(dir, bytes >> 20));
+    return bytes;
+  }
+
+  /**
+   * Data already in the project before the batch is part of the first key. The mzmine version is
+   * included, because module implementations may change between versions.
+   */
+  private static HashCode hashProjectState(MZmineProject project) {
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putString(String.valueOf(SemverVersionReader.getMZmineVersion()),
+        StandardCharsets.UTF_8);
+    for (RawDataFile raw : project.getCurrentRawDataFiles()) {
+      hasher.putString(raw.getName(), StandardCharsets.UTF_8);
+      if (raw.getAbsolutePath() != null) {
+        putFile(hasher, new File(raw.getAbsolutePath()));
+      }
+    }
+    for (FeatureList flist : project.getCurrentFeatureLists()) {
+      hasher.putString(flist.getName(), StandardCharsets.UTF_8);
+      hasher.putString(Objects.requireNonNullElse(flist.getDateCreated(), ""),
+          StandardCharsets.UTF_8);
+      hasher.putInt(flist.getNumberOfRows());
+    }
+    // libraries and metadata are used by annotation and processing steps
+    for (SpectralLibrary library : project.getCurrentSpectralLibraries()) {
+      putFile(hasher, library.getPath());
+      hasher.putInt(library.size());
+    }
+    final MetadataTable metadata = project.getProjectMetadata();
+    for (MetadataColumn<?> column : metadata.getColumns().stream()
+        .sorted(Comparator.comparing(MetadataColumn::getTitle)).toList()) {
+      hasher.putString(column.getTitle(), StandardCharsets.UTF_8);
+      for (RawDataFile raw : project.getCurrentRawDataFiles()) {
+        hasher.putString(String.valueOf(metadata.getValue(column, raw)), StandardCharsets.UTF_8);
+      }
+    }
+    return hasher.hash();
+  }
+
+  private static void putFile(Hasher hasher, File file) {
+    hasher.putString(file.getAbsolutePath(), StandardCharsets.UTF_8);
+    // folders like Bruker .d only change their modification date
+    hasher.putLong(file.isFile() ? file.length() : 0L);
+    hasher.putLong(file.lastModified());
+  }
+
+  /**
+   * @return the module category or null
+   */
+  @Nullable
+  private static MainCategory getMainCategory(@NotNull MZmineProcessingStep<?> step) {
+    final MZmineModule module = step.getModule();
+    return module instanceof MZmineRunnableModule runnable
+        ? runnable.getModuleCategory().getMainCategory() : null;
+  }
+
+  /**
+   * @return true if the results of the step are stored in the cache
+   */
+  static boolean isCacheable(@NotNull MZmineProcessingStep<?> step) {
+    final MainCategory category = getMainCategory(step);
+    return category == MainCategory.FEATURE_DETECTION
+           || category == MainCategory.FEATURE_PROCESSING;
+  }
+
+  /**
+   * @return true if the step only works on raw data files and can run before restored feature
+   * lists are loaded
+   */
+  static boolean isRawDataStep(@NotNull MZmineProcessingStep<?> step) {
+    return getMainCategory(step) == MainCategory.SPECTRAL_DATA
+           && ParameterUtils.streamParametersDeep(step.getParameterSet(),
+        FeatureListsParameter.class).findAny().isEmpty();
+  }
+
+  /**
+   * @return true if the step is not cached but may change feature lists in place, e.g., with
+   * spectral libraries or other data that is not part of the keys
+   */
+  static boolean mayChangeFeatureListsUncached(@NotNull MZmineProcessingStep<?> step) {
+    if (isCacheable(step)) {
+      return false;
+    }
+    final MainCategory category = getMainCategory(step);
+    // export and visualization only read feature lists
+    return category != MainCategory.FEATURE_IO && category != MainCategory.VISUALIZATION
+           && ParameterUtils.streamParametersDeep(step.getParameterSet(),
+        FeatureListsParameter.class).findAny().isPresent();
+  }
+
+  /**
+   * Computes the key of the next step. Call before the batch last files and feature lists are set.
+   */
+  void startStep(@NotNull MZmineProcessingStep<?> step) {
+    final ParameterSet parameters = step.getParameterSet();
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putBytes(stateKey.asBytes());
+    hasher.putString(step.getModule().getClass().getName(), StandardCharsets.UTF_8);
+    hasher.putString(parametersToXml(parameters), StandardCharsets.UTF_8);
+    // content of input files
+    ParameterUtils.streamParametersDeep(parameters).forEach(p -> {
+      if (p instanceof FileNamesParameter fnp && fnp.getValue() != null) {
+        for (File file : fnp.getValue()) {
+          putFile(hasher, file);
+        }
+      } else if (p instanceof FileNameParameter fnp && fnp.getType() == FileSelectionType.OPEN
+                 && fnp.getValue() != null) {
+        putFile(hasher, fnp.getValue());
+      }
+    });
+    stepKey = hasher.hash();
+    stateKey = stepKey;
+  }
+
+  private static String parametersToXml(ParameterSet parameters) {
+    try {
+      final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+          .newDocument();
+      final Element element = document.createElement("parameters");
+      document.appendChild(element);
+      parameters.saveValuesToXML(element);
+      return Objects.requireNonNullElse(XMLUtils.nodeToString(element), "");
+    } catch (ParserConfigurationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private File getEntryDir() {
+    return new File(cacheDir, stepKey.toString());
+  }
+
+  /**
+   * Restores the results of the current step if they are cached. The feature lists are only loaded
+   * by {@link #loadRestoredFeatureLists()}.
+   *
+   * @return true if the step was restored and does not need to run
+   */
+  boolean restore(@NotNull MZmineProcessingStep<?> step) {
+    if (disabled || !isCacheable(step)) {
+      return false;
+    }
+    final File entryDir = getEntryDir();
+    final CacheEntry entry = readEntry(entryDir);
+    if (entry == null) {
+      return false;
+    }
+    // least recently used entries are pruned first
+    entryDir.setLastModified(System.currentTimeMillis());
+
+    for (String name : entry.removed()) {
+      pendingFeatureLists.remove(name);
+      pendingRemoved.add(name);
+    }
+    final List<String> created = new ArrayList<>();
+    for (int i = 0; i < entry.names().size(); i++) {
+      final String name = entry.names().get(i);
+      pendingFeatureLists.remove(name);
+      pendingFeatureLists.put(name, new CachedFeatureList(entryDir, i));
+      // replaces a feature list that was modified in place
+      pendingRemoved.add(name);
+      if (entry.created().get(i)) {
+        created.add(name);
+      }
+    }
+    pending = true;
+    setCreatedNames(created);
+    countStatus(step, CacheStatus.HIT);
+    return true;
+  }
+
+  /**
+   * @return true if restored feature lists need to be loaded before the step can run
+   */
+  boolean needsRestoredFeatureLists(@NotNull MZmineProcessingStep<?> step) {
+    return pending && !isRawDataStep(step);
+  }
+
+  /**
+   * Loads all restored feature lists that remain in the project and replaces the feature lists
+   * with the same names.
+   *
+   * @return false if a feature list cannot be loaded
+   */
+  boolean loadRestoredFeatureLists() {
+    if (!pending) {
+      return true;
+    }
+    final MemoryMapStorage storage = MemoryMapStorage.forFeatureList();
+    final List<ModularFeatureList> loaded = pendingFeatureLists.entrySet().parallelStream()
+        .map(e -> e.getValue().load(project, storage, e.getKey(), isCanceled)).toList();
+    if (loaded.stream().anyMatch(Objects::isNull)) {
+      // remove all entries that may be broken
+      pendingFeatureLists.values().stream().map(CachedFeatureList::entryDir).distinct()
+          .forEach(FileUtils::deleteQuietly);
+      return false;
+    }
+
+    project.removeFeatureLists(project.getCurrentFeatureLists().stream()
+        .filter(flist -> pendingRemoved.contains(flist.getName())).toList());
+    for (ModularFeatureList flist : loaded) {
+      project.addFeatureList(flist);
+    }
+    pendingFeatureLists.clear();
+    pendingRemoved.clear();
+    pending = false;
+    return true;
+  }
+
+  /**
+   * Call before the step runs
+   */
+  void beforeRun() {
+    beforeFeatureLists = project.getCurrentFeatureLists();
+    beforeDataFiles = project.getCurrentRawDataFiles();
+  }
+
+  /**
+   * Stores the results of the step that just finished in the cache.
+   */
+  void afterRun(@NotNull MZmineProcessingStep<?> step) {
+    final List<FeatureList> after = project.getCurrentFeatureLists();
+    final List<FeatureList> created = new ArrayList<>(after);
+    created.removeAll(beforeFeatureLists);
+    final List<FeatureList> removed = new ArrayList<>(beforeFeatureLists);
+    removed.removeAll(after);
+    final List<RawDataFile> createdFiles = new ArrayList<>(project.getCurrentRawDataFiles());
+    createdFiles.removeAll(beforeDataFiles);
+    beforeFeatureLists = List.of();
+    beforeDataFiles = List.of();
+    setCreatedNames(created.stream().map(FeatureList::getName).toList());
+
+    if (!disabled && mayChangeFeatureListsUncached(step)) {
+      disabled = true;
+      logger.info(() -> ("Batch step %s may change feature lists with data that is not part of "
+                         + "the cache keys. The following steps are not cached.").formatted(
+          step.getModule().getName()));
+    }
+    if (disabled || !isCacheable(step) || !createdFiles.isEmpty()) {
+      countStatus(step, CacheStatus.NOT_CACHED);
+      return;
+    }
+    countStatus(step, CacheStatus.MISS);
+
+    // the selected feature lists were modified in place
+    final List<FeatureList> outputs = new ArrayList<>(created);
+    if (created.isEmpty()) {
+      ParameterUtils.streamParametersDeep(step.getParameterSet(), FeatureListsParameter.class)
+          .map(FeatureListsParameter::getValue).filter(Objects::nonNull)
+          .flatMap(selection -> Arrays.stream(selection.getMatchingFeatureLists()))
+          .filter(after::contains).distinct().forEach(outputs::add);
+    }
+    if ((outputs.isEmpty() && removed.isEmpty()) || !outputs.stream()
+        .allMatch(ModularFeatureList.class::isInstance)) {
+      return;
+    }
+
+    try {
+      writeEntry(getEntryDir(), outputs, new HashSet<>(created),
+          removed.stream().map(FeatureList::getName).toList());
+      prune();
+    } catch (Exception e) {
+      logger.log(Level.WARNING,
+          "Cannot cache results of batch step " + step.getModule().getName() + ". "
+          + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Removes the least recently used entries until the cache fits into the maximum size. Entries
+   * that are restored but not loaded yet are kept.
+   */
+  void prune() {
+    final File[] dirs = cacheDir.listFiles(File::isDirectory);
+    if (dirs == null) {
+      return;
+    }
+    final Set<File> inUse = new HashSet<>();
+    pendingFeatureLists.values().forEach(cached -> inUse.add(cached.entryDir()));
+    inUse.add(getEntryDir());
+
+    // temporary folders of crashed runs
+    final long staleTime = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+    Arrays.stream(dirs).filter(dir -> dir.getName().startsWith(TEMP_PREFIX))
+        .filter(dir -> dir.lastModified() < staleTime).forEach(FileUtils::deleteQuietly);
+
+    // most recently used first
+    final List<File> entries = Arrays.stream(dirs)
+        .filter(dir -> !dir.getName().startsWith(TEMP_PREFIX))
+        .sorted(Comparator.comparingLong(File::lastModified).reversed()).toList();
+    long bytes = 0;
+    for (File dir : entries) {
+      final long size = FileUtils.sizeOfDirectory(dir);
+      if (bytes + size > maxBytes && !inUse.contains(dir)) {
+        FileUtils.deleteQuietly(dir);
+        logger.fine(() -> "Removed batch step cache entry " + dir.getName());
+      } else {
+        bytes += size;
+      }
+    }
+  }
+
+  private void setCreatedNames(List<String> created) {
+    createdNames = created;
+    if (!created.isEmpty()) {
+      previousCreatedNames = created;
+    }
+  }
+
+  /**
+   * @return the feature lists created by the last step. Only valid after all restored feature
+   * lists were loaded.
+   */
+  @NotNull
+  List<FeatureList> getCreatedFeatureLists() {
+    return findFeatureLists(createdNames);
+  }
+
+  /**
+   * @return the feature lists created by the last step that created feature lists. Only valid after
+   * all restored feature lists were loaded.
+   */
+  @NotNull
+  List<FeatureList> getPreviousCreatedFeatureLists() {
+    return findFeatureLists(previousCreatedNames);
+  }
+
+  private List<FeatureList> findFeatureLists(Collection<String> names) {
+    return project.getCurrentFeatureLists().stream()
+        .filter(flist -> names.contains(flist.getName())).toList();
+  }
+
+  private void countStatus(MZmineProcessingStep<?> step, CacheStatus status) {
+    statusCounts.merge(status, 1, Integer::sum);
+    logger.info(() -> "Batch step %s: %s (key %s)".formatted(step.getModule().getName(),
+        status.toString(), stepKey));
+  }
+
+  /**
+   * @return number of steps with a status
+   */
+  int getCount(@NotNull CacheStatus status) {
+    return statusCounts.getOrDefault(status, 0);
+  }
+
+  @Override
+  public String toString() {
+    return "Batch step cache: %d hits, %d misses, %d not cached".formatted(
+        getCount(CacheStatus.HIT), getCount(CacheStatus.MISS), getCount(CacheStatus.NOT_CACHED));
+  }
+
+  /**
+   * Writes the entry to a temporary folder first that is then moved to the final location
+   */
+  private void writeEntry(File entryDir, List<FeatureList> outputs, Set<FeatureList> created,
+      List<String> removed)
+      throws IOException, XMLStreamException, ParserConfigurationException, TransformerException {
+    Files.createDirectories(cacheDir.toPath());
+    final File tempDir = Files.createTempDirectory(cacheDir.toPath(), TEMP_PREFIX).toFile();
+    try {
+      for (int i = 0; i < outputs.size(); i++) {
+        if (!new FeatureListFiles(tempDir, i).write((ModularFeatureList) outputs.get(i),
+            isCanceled)) {
+          return;
+        }
+      }
+      try (var out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(new File(tempDir, MANIFEST_FILE))))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(outputs.size());
+        for (FeatureList flist : outputs) {
+          out.writeUTF(flist.getName());
+          out.writeBoolean(created.contains(flist));
+        }
+        out.writeInt(removed.size());
+        for (String name : removed) {
+          out.writeUTF(name);
+        }
+      }
+      FileUtils.deleteQuietly(entryDir);
+      Files.move(tempDir.toPath(), entryDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      FileUtils.deleteQuietly(tempDir);
+    }
+  }
+
+  /**
+   * @return the entry or null if it does not exist or is invalid
+   */
+  @Nullable
+  private static CacheEntry readEntry(File entryDir) {
+    final File manifest = new File(entryDir, MANIFEST_FILE);
+    if (!manifest.isFile()) {
+      return null;
+    }
+    try (var in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(manifest)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      final int numOutputs = in.readInt();
+      final List<String> names = new ArrayList<>(numOutputs);
+      final List<Boolean> created = new ArrayList<>(numOutputs);
+      for (int i = 0; i < numOutputs; i++) {
+        names.add(in.readUTF());
+        created.add(in.readBoolean());
+      }
+      final int numRemoved = in.readInt();
+      final List<String> removed = new ArrayList<>(numRemoved);
+      for (int i = 0; i < numRemoved; i++) {
+        removed.add(in.readUTF());
+      }
+      return new CacheEntry(names, created, removed);
+    } catch (IOException e) {
+      logger.log(Level.WARNING,
+          "Cannot read batch step cache entry " + entryDir + ". Will run the step again.", e);
+      return null;
+    }
+  }
+
+  enum CacheStatus {
+    HIT, MISS, NOT_CACHED;
+
+    @Override
+    public String toString() {
+      return switch (this) {
+        case HIT -> "restored from cache";
+        case MISS -> "not in cache";
+        case NOT_CACHED -> "not cached";
+      };
+    }
+  }
+
+  /**
+   * @param names   all feature lists that were created or modified by the step
+   * @param created true if the feature list was created, false if modified
+   * @param removed names of feature lists that were removed by the step
+   */
+  private record CacheEntry(List<String> names, List<Boolean> created, List<String> removed) {
+
+  }
+
+  /**
+   * A feature list in a cache entry
+   */
+  private record CachedFeatureList(FeatureListFiles files) {
+
+    private CachedFeatureList(File entryDir, int index) {
+      this(new FeatureListFiles(entryDir, index));
+    }
+
+    File entryDir() {
+      return files.dir();
+    }
+
+    @Nullable
+    ModularFeatureList load(MZmineProject project, MemoryMapStorage storage, String name,
+        BooleanSupplier isCanceled) {
+      try {
+        return files.read(project, storage, isCanceled);
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Cannot restore feature list " + name + " from " + entryDir(),
+            e);
+        return null;
+      }
+    }
+  }
+}
@@ -35,10 +35,12 @@ import io.github.mzmine.gui.DesktopService;
 import io.github.mzmine.gui.preferences.MZminePreferences;
 import io.github.mzmine.javafx.concurrent.threading.FxThread;
 import io.github.mzmine.javafx.dialogs.DialogLoggerUtil;
+import io.github.mzmine.main.ConfigService;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.batchmode.change_outfiles.ChangeOutputFilesUtils;
+import io.github.mzmine.modules.batchmode.timing.BatchStepProfiler;
 import io.github.mzmine.modules.batchmode.timing.StepTimeMeasurement;
 import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportParameters;
 import io.github.mzmine.parameters.Parameter;
@@ -76,6 +78,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.scene.control.Alert.AlertType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Batch mode task
@@ -92,6 +95,10 @@ public class BatchTask extends AbstractTask {
   private final int datasets;
   private final List<StepTimeMeasurement> stepTimes = new ArrayList<>();
   private final boolean runGCafterBatchStep;
+  // only set if batch steps are profiled
+  private final @Nullable BatchStepProfiler profiler;
+  // only set if batch step results are cached
+  private final @Nullable BatchStepResultCache stepCache;
   private int processedSteps;
   private List<File> subDirectories;
   private List<RawDataFile> createdDataFiles;
@@ -114,9 +121,15 @@ public class BatchTask extends AbstractTask {
     super(null, moduleCallDate);
     this.runGCafterBatchStep = requireNonNullElse(
         getPreference(MZminePreferences.runGCafterBatchStep), false);
+    profiler = requireNonNullElse(getPreference(MZminePreferences.profileBatchSteps), false)
+        ? new BatchStepProfiler() : null;
 
     setName("Batch task");
     this.project = project;
+    final Integer stepCacheSizeGB = ConfigService.getPreferences()
+        .getEmbeddedParameterValueIfSelectedOrElse(MZminePreferences.cacheBatchStepResults, null);
+    stepCache = stepCacheSizeGB != null ? new BatchStepResultCache(project, this::isCanceled,
+        stepCacheSizeGB) : null;
     this.queue = parameters.getParameter(BatchModeParameters.batchQueue).getValue();
     // advanced parameters
     useAdvanced = false;
@@ -147,16 +160,15 @@ public class BatchTask extends AbstractTask {
    * Runs all tasks in a single {@link ThreadPoolTask} on the {@link TaskController#getExecutor()}
    * default executor
    *
-   * @param method     for logging
+   * @param name       for logging
    * @param tasksToRun list will be cleared after scheduling to avoid memory leak in long running
    *                   tasks. all tasks will be organized by ThreadPool
    * @return the {@link TaskStatus} of the carrier task reflecting the worst case of the sub tasks
    * meaning that if any had an error > cancel > finished
    */
-  private TaskStatus runInTaskPool(final MZmineProcessingModule method,
-      final List<Task> tasksToRun) {
+  private TaskStatus runInTaskPool(final String name, final List<Task> tasksToRun) {
     TaskController taskController = MZmineCore.getTaskController();
-    var description = "%s on %d items".formatted(method.getName(), tasksToRun.size());
+    var description = "%s on %d items".formatted(name, tasksToRun.size());
     var threadPoolTask = ThreadPoolTask.createDefaultTaskManagerPool(description, tasksToRun);
     // clear tasks to not leak the long running tasks by keeping them alive
     tasksToRun.clear();
@@ -221,6 +233,9 @@ public class BatchTask extends AbstractTask {
     }
     stepTimes.add(new StepTimeMeasurement(0, "WHOLE BATCH", duration, runGCafterBatchStep));
     printBatchTimes();
+    if (profiler != null) {
+      profiler.writeReport(BatchStepProfiler.findReportDirectory(queue), profiler.finishBatch());
+    }
   }
 
   private void runBatchQueue() {
@@ -286,18 +301,39 @@ public class BatchTask extends AbstractTask {
       // run step
       final int stepNumber = i % stepsPerDataset;
       Instant start = Instant.now();
+      // consecutive per sample steps may run as one pipeline per sample
+      final SamplePipeline pipeline = createSamplePipeline(stepNumber);
+      String stepName = pipeline == null ? queue.get(stepNumber).getModule().getName()
+          : pipeline.getStepNames();
+      if (profiler != null) {
+        profiler.startStep(stepNumber + 1, stepName);
+      }
 
       // the heavy lifting
-      processQueueStep(stepNumber);
-      processedSteps++;
+      if (stepCache != null) {
+        if (processQueueStepWithCache(stepNumber)) {
+          stepName += " (cached)";
+        }
+        processedSteps++;
+      } else if (pipeline == null) {
+        processQueueStep(stepNumber);
+        processedSteps++;
+      } else {
+        processSamplePipeline(pipeline);
+        processedSteps += pipeline.getNumSteps();
+        i += pipeline.getNumSteps() - 1;
+      }
+
+      if (profiler != null) {
+        profiler.finishStep();
+      }
 
       Duration duration = Duration.between(start, Instant.now());
       if (runGCafterBatchStep) {
         System.gc();
       }
       stepTimes.add(
-          new StepTimeMeasurement(stepNumber + 1, queue.get(stepNumber).getModule().getName(),
-              duration, runGCafterBatchStep));
+          new StepTimeMeasurement(stepNumber + 1, stepName, duration, runGCafterBatchStep));
 
       // If we are canceled or ran into error, stop here
       if (getStatus() == TaskStatus.ERROR) {
@@ -316,6 +352,14 @@ public class BatchTask extends AbstractTask {
         return;
       }
     }
+
+    if (stepCache != null) {
+      // load the results of the last cached steps
+      if (!loadRestoredFeatureLists()) {
+        return;
+      }
+      logger.info(stepCache.toString());
+    }
   }
 
   private void printBatchTimes() {
@@ -356,6 +400,24 @@ public class BatchTask extends AbstractTask {
     }
   }
 
+  /**
+   * Sets the raw data files and feature lists that the first step uses as the results of the
+   * previous batch step, e.g., the results of another batch.
+   */
+  void setInitialBatchLast(@NotNull List<RawDataFile> dataFiles,
+      @NotNull List<FeatureList> featureLists) {
+    previousCreatedDataFiles = new ArrayList<>(dataFiles);
+    previousCreatedFeatureLists = new ArrayList<>(featureLists);
+  }
+
+  /**
+   * @return the feature lists created by the last step that created feature lists
+   */
+  @NotNull
+  List<FeatureList> getLastCreatedFeatureLists() {
+    return createdFeatureLists.isEmpty() ? previousCreatedFeatureLists : createdFeatureLists;
+  }
+
   public List<StepTimeMeasurement> getStepTimes() {
     return stepTimes;
   }
@@ -364,6 +426,105 @@ public class BatchTask extends AbstractTask {
     return processedSteps % stepsPerDataset;
   }
 
+  /**
+   * @return a pipeline if the preferences allow it and the steps starting at stepNumber can be run
+   * per sample, otherwise null
+   */
+  @Nullable
+  private SamplePipeline createSamplePipeline(int stepNumber) {
+    // cached steps are restored one by one
+    if (stepCache != null || !requireNonNullElse(
+        getPreference(MZminePreferences.pipelineBatchSamples), false)) {
+      return null;
+    }
+    final int end = SamplePipeline.findSegmentEnd(queue, stepNumber);
+    if (end - stepNumber < 2) {
+      return null;
+    }
+
+    // If the last step did not produce any data files or feature lists, use
+    // the ones from the previous step
+    if (createdDataFiles.isEmpty()) {
+      createdDataFiles = previousCreatedDataFiles;
+    }
+    if (createdFeatureLists.isEmpty()) {
+      createdFeatureLists = previousCreatedFeatureLists;
+    }
+    return SamplePipeline.create(project, queue, stepNumber, end, createdDataFiles,
+        createdFeatureLists);
+  }
+
+  private void processSamplePipeline(@NotNull SamplePipeline pipeline) {
+    logger.info("Starting steps %s as pipeline per sample".formatted(pipeline.getStepNames()));
+
+    final List<FeatureList> beforeFeatureLists = project.getCurrentFeatureLists();
+    final List<RawDataFile> beforeDataFiles = project.getCurrentRawDataFiles();
+
+    final List<Task> sampleTasks = pipeline.getSampleTasks();
+    if (profiler != null) {
+      profiler.wrapTasks(sampleTasks);
+    }
+    final TaskStatus status = runInTaskPool(pipeline.getStepNames(), sampleTasks);
+    if (status != TaskStatus.FINISHED) {
+      return;
+    }
+
+    createdDataFiles = new ArrayList<>(project.getCurrentRawDataFiles());
+    createdDataFiles.removeAll(beforeDataFiles);
+    // keep the sample order instead of the order the samples finished in
+    createdFeatureLists = new ArrayList<>(pipeline.getResultFeatureLists());
+    createdFeatureLists.removeAll(beforeFeatureLists);
+
+    if (!createdDataFiles.isEmpty()) {
+      previousCreatedDataFiles = createdDataFiles;
+    }
+    if (!createdFeatureLists.isEmpty()) {
+      previousCreatedFeatureLists = createdFeatureLists;
+    }
+  }
+
+  /**
+   * Restores the step from the {@link #stepCache} or runs it and stores its results
+   *
+   * @return true if the step was restored from the cache
+   */
+  private boolean processQueueStepWithCache(int stepNumber) {
+    final MZmineProcessingStep<?> step = queue.get(stepNumber);
+    stepCache.startStep(step);
+    if (stepCache.restore(step)) {
+      return true;
+    }
+    if (stepCache.needsRestoredFeatureLists(step) && !loadRestoredFeatureLists()) {
+      return false;
+    }
+
+    stepCache.beforeRun();
+    processQueueStep(stepNumber);
+    if (getStatus() == TaskStatus.PROCESSING) {
+      stepCache.afterRun(step);
+    }
+    return false;
+  }
+
+  /**
+   * Loads the feature lists of restored steps into the project and updates the batch last feature
+   * lists
+   *
+   * @return false on error
+   */
+  private boolean loadRestoredFeatureLists() {
+    if (!stepCache.loadRestoredFeatureLists()) {
+      if (!isCanceled()) {
+        error("Cannot restore the results of cached batch steps. The cache entries were removed, "
+              + "please run the batch again.");
+      }
+      return false;
+    }
+    createdFeatureLists = new ArrayList<>(stepCache.getCreatedFeatureLists());
+    previousCreatedFeatureLists = new ArrayList<>(stepCache.getPreviousCreatedFeatureLists());
+    return true;
+  }
+
   private void processQueueStep(int stepNumber) {
     logger.info("Starting step # " + (stepNumber + 1));
 
@@ -430,6 +591,10 @@ public class BatchTask extends AbstractTask {
       return;
     }
 
+    if (profiler != null) {
+      profiler.wrapTasks(currentStepTasks);
+    }
+
     // If current step didn't produce any tasks, continue with next step
     if (currentStepTasks.isEmpty()) {
       // this might be the case for AllSpectralDataImportModule if all files are already loaded
@@ -446,7 +611,7 @@ public class BatchTask extends AbstractTask {
     final TaskStatus status;
     // create ThreadPool
     if (currentStepTasks.size() > 1) {
-      status = runInTaskPool(method, currentStepTasks);
+      status = runInTaskPool(method.getName(), currentStepTasks);
     } else {
       // Submit the tasks to the task controller for processing
       status = runTasksIndividually(currentStepTasks);
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListLoadTask;
+import io.github.mzmine.modules.io.projectsave.FeatureListSaveTask;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Files of a feature list that is stored outside of a project in the
+ * {@link FeatureListBinaryFormat}, e.g., by the {@link BatchStepResultCache}.
+ *
+ * @param dir   the directory of the files
+ * @param index the index of the feature list in the directory
+ */
+record FeatureListFiles(@NotNull File dir, int index) {
+
+  File metadataFile() {
+    return new File(dir, "flist_" + index + FeatureListSaveTask.METADATA_FILE_SUFFIX);
+  }
+
+  File dataFile() {
+    return new File(dir, "flist_" + index + FeatureListBinaryFormat.DATA_FILE_SUFFIX);
+  }
+
+  File seriesFile() {
+    return new File(dir, "flist_" + index + FeatureListBinaryFormat.SERIES_FILE_SUFFIX);
+  }
+
+  /**
+   * @return false if canceled
+   */
+  boolean write(@NotNull ModularFeatureList flist, @NotNull BooleanSupplier isCanceled)
+      throws IOException, XMLStreamException, ParserConfigurationException, TransformerException {
+    return FeatureListSaveTask.writeBinaryFeatureList(flist, metadataFile(), dataFile(),
+        seriesFile(), isCanceled);
+  }
+
+  /**
+   * @param project the project with all raw data files of the feature list. The feature list is
+   *                not added to the project.
+   * @return the feature list or null if canceled or the metadata cannot be read
+   */
+  @Nullable
+  ModularFeatureList read(@NotNull MZmineProject project, @Nullable MemoryMapStorage storage,
+      @NotNull BooleanSupplier isCanceled) throws IOException, XMLStreamException {
+    return FeatureListLoadTask.readBinaryFeatureList(project, storage, metadataFile(), dataFile(),
+        seriesFile(), isCanceled);
+  }
+}
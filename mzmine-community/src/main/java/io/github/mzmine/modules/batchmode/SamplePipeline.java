@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.impl.FeatureListTaskModule;
+import io.github.mzmine.modules.impl.RawDataFileTaskModule;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.EmbeddedParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs consecutive batch steps that create one task per raw data file or feature list as a
+ * pipeline per sample. Each sample advances through all steps of the segment on its own, so a slow
+ * file does not hold back the others. The first step after the segment, e.g., the alignment, waits
+ * for all samples as before.
+ * <p>
+ * A step is part of a segment if its module is a {@link RawDataFileTaskModule} or
+ * {@link FeatureListTaskModule} and it uses the files or feature lists of the previous batch step.
+ * Each sample runs the tasks of its steps sequentially on one thread of the task pool.
+ */
+class SamplePipeline {
+
+  private static final Logger logger = Logger.getLogger(SamplePipeline.class.getName());
+
+  private final @NotNull MZmineProject project;
+  private final @NotNull List<MZmineProcessingStep<?>> steps;
+  private final int firstStep;
+  private final @Nullable MemoryMapStorage[] storages;
+  private final @NotNull Instant[] moduleCallDates;
+  private final List<SampleTask> samples = new ArrayList<>();
+
+  private SamplePipeline(@NotNull MZmineProject project, @NotNull List<MZmineProcessingStep<?>> steps,
+      int firstStep) {
+    this.project = project;
+    this.steps = steps;
+    this.firstStep = firstStep;
+    // one storage and call date per step, shared by all samples like a regular module call
+    storages = new MemoryMapStorage[steps.size()];
+    moduleCallDates = new Instant[steps.size()];
+    for (int i = 0; i < steps.size(); i++) {
+      storages[i] = switch (steps.get(i).getModule()) {
+        case RawDataFileTaskModule module -> module.createStorage();
+        case FeatureListTaskModule module -> module.createStorage();
+        default -> throw new IllegalStateException("Unexpected module in sample pipeline");
+      };
+      moduleCallDates[i] = Instant.now();
+    }
+  }
+
+  /**
+   * @return the exclusive end of the steps starting at start that can be pipelined per sample.
+   * Pipelining only makes sense if the result is at least start + 2.
+   */
+  static int findSegmentEnd(@NotNull BatchQueue queue, int start) {
+    int end = start;
+    while (end < queue.size() && isSampleStep(queue.get(end))) {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * @return true if the step creates one task per raw data file or feature list of the previous
+   * batch step
+   */
+  static boolean isSampleStep(@NotNull MZmineProcessingStep<?> step) {
+    final MZmineModule module = step.getModule();
+    final ParameterSet parameters = step.getParameterSet();
+    if (module instanceof RawDataFileTaskModule) {
+      return usesOnlyBatchLast(parameters, true) && !hasParameter(parameters,
+          FeatureListsParameter.class);
+    }
+    if (module instanceof FeatureListTaskModule) {
+      return usesOnlyBatchLast(parameters, false) && !hasParameter(parameters,
+          RawDataFilesParameter.class);
+    }
+    return false;
+  }
+
+  private static boolean usesOnlyBatchLast(ParameterSet parameters, boolean rawDataFiles) {
+    boolean found = false;
+    for (Parameter<?> p : parameters.getParameters()) {
+      if (rawDataFiles && p instanceof RawDataFilesParameter rdp) {
+        final RawDataFilesSelection selection = rdp.getValue();
+        if (selection == null
+            || selection.getSelectionType() != RawDataFilesSelectionType.BATCH_LAST_FILES) {
+          return false;
+        }
+        found = true;
+      } else if (!rawDataFiles && p instanceof FeatureListsParameter flp) {
+        final FeatureListsSelection selection = flp.getValue();
+        if (selection == null || selection.getSelectionType()
+                                 != FeatureListsSelectionType.BATCH_LAST_FEATURELISTS) {
+          return false;
+        }
+        found = true;
+      }
+    }
+    return found;
+  }
+
+  private static boolean hasParameter(ParameterSet parameters,
+      Class<? extends Parameter<?>> type) {
+    return Arrays.stream(parameters.getParameters()).anyMatch(type::isInstance);
+  }
+
+  /**
+   * Creates the pipeline tasks, one for each sample
+   *
+   * @param firstStep        index of the first step in the queue
+   * @param end              exclusive end of the segment
+   * @param lastFiles        the raw data files of the previous batch step
+   * @param lastFeatureLists the feature lists of the previous batch step
+   * @return the pipeline or null if the inputs cannot be split into samples. In this case the steps
+   * are run one after another.
+   */
+  @Nullable
+  static SamplePipeline create(@NotNull MZmineProject project, @NotNull BatchQueue queue,
+      int firstStep, int end, @NotNull List<RawDataFile> lastFiles,
+      @NotNull List<FeatureList> lastFeatureLists) {
+    // feature lists of a single raw data file belong to that sample
+    final Map<RawDataFile, List<FeatureList>> sampleFeatureLists = new LinkedHashMap<>();
+    for (FeatureList flist : lastFeatureLists) {
+      if (flist.getRawDataFiles().size() == 1) {
+        sampleFeatureLists.computeIfAbsent(flist.getRawDataFile(0), _ -> new ArrayList<>())
+            .add(flist);
+      }
+    }
+
+    final List<RawDataFile> sampleFiles;
+    if (queue.get(firstStep).getModule() instanceof RawDataFileTaskModule) {
+      sampleFiles = lastFiles;
+    } else {
+      if (sampleFeatureLists.values().stream().mapToInt(List::size).sum()
+          != lastFeatureLists.size()) {
+        logger.fine("Cannot pipeline batch steps on feature lists of multiple samples");
+        return null;
+      }
+      sampleFiles = List.copyOf(sampleFeatureLists.keySet());
+    }
+    if (sampleFiles.isEmpty()) {
+      return null;
+    }
+
+    final SamplePipeline pipeline = new SamplePipeline(project,
+        new ArrayList<>(queue.subList(firstStep, end)), firstStep);
+    for (RawDataFile raw : sampleFiles) {
+      pipeline.samples.add(pipeline.new SampleTask(raw,
+          sampleFeatureLists.getOrDefault(raw, List.of())));
+    }
+    return pipeline;
+  }
+
+  /**
+   * @return one task per sample
+   */
+  @NotNull
+  List<Task> getSampleTasks() {
+    return new ArrayList<>(samples);
+  }
+
+  /**
+   * @return the number of batch steps in this pipeline
+   */
+  int getNumSteps() {
+    return steps.size();
+  }
+
+  /**
+   * @return the names of all steps
+   */
+  @NotNull
+  String getStepNames() {
+    return steps.stream().map(step -> step.getModule().getName())
+        .collect(Collectors.joining(", "));
+  }
+
+  /**
+   * @return the last feature lists of all samples in sample order. Only valid after all samples
+   * finished.
+   */
+  @NotNull
+  List<FeatureList> getResultFeatureLists() {
+    return samples.stream().flatMap(sample -> sample.featureLists.stream()).toList();
+  }
+
+  /**
+   * Sets the batch last files and feature lists of the sample
+   *
+   * @return false if a selection is missing
+   */
+  private static boolean setBatchLast(ParameterSet parameters, RawDataFile[] files,
+      FeatureList[] featureLists) {
+    for (Parameter<?> p : parameters.getParameters()) {
+      if (p instanceof RawDataFilesParameter rdp) {
+        if (rdp.getValue() == null) {
+          return false;
+        }
+        rdp.getValue().setBatchLastFiles(files);
+      } else if (p instanceof FeatureListsParameter flp) {
+        if (flp.getValue() == null) {
+          return false;
+        }
+        flp.getValue().setBatchLastFeatureLists(featureLists);
+      } else if (p instanceof EmbeddedParameterSet embedded) {
+        if (!setBatchLast(embedded.getEmbeddedParameters(), files, featureLists)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Runs all steps of the segment for one sample
+   */
+  private final class SampleTask extends AbstractTask {
+
+    private final @NotNull RawDataFile raw;
+    private List<FeatureList> featureLists;
+    private volatile @Nullable Task currentTask;
+    private volatile int finishedSteps;
+
+    private SampleTask(@NotNull RawDataFile raw, @NotNull List<FeatureList> featureLists) {
+      super(null, Instant.now());
+      this.raw = raw;
+      this.featureLists = featureLists;
+    }
+
+    @Override
+    public void run() {
+      setStatus(TaskStatus.PROCESSING);
+      for (int i = 0; i < steps.size(); i++) {
+        if (isCanceled() || !runStep(i)) {
+          return;
+        }
+        finishedSteps++;
+      }
+      currentTask = null;
+      setStatus(TaskStatus.FINISHED);
+    }
+
+    /**
+     * @return false on error or cancel
+     */
+    private boolean runStep(int index) {
+      final MZmineProcessingStep<?> step = steps.get(index);
+      final MZmineModule module = step.getModule();
+      final String stepName = "batch step %d (%s) on %s".formatted(firstStep + index + 1,
+          module.getName(), raw.getName());
+
+      final ParameterSet parameters = step.getParameterSet().cloneParameterSet();
+      final List<String> messages = new ArrayList<>();
+      if (!setBatchLast(parameters, new RawDataFile[]{raw}, featureLists.toArray(FeatureList[]::new))
+          || !parameters.checkParameterValues(messages)) {
+        error("Invalid parameter settings for %s: %s".formatted(stepName, messages));
+        return false;
+      }
+
+      final List<Task> tasks = new ArrayList<>();
+      if (module instanceof RawDataFileTaskModule rawModule) {
+        tasks.add(rawModule.createTask(project, parameters, moduleCallDates[index],
+            storages[index], raw));
+      } else if (module instanceof FeatureListTaskModule flistModule) {
+        for (FeatureList flist : featureLists) {
+          tasks.add(flistModule.createTask(project, parameters, moduleCallDates[index],
+              storages[index], flist));
+        }
+      }
+
+      final Set<FeatureList> before = new HashSet<>(sampleFeatureListsInProject());
+      for (Task task : tasks) {
+        currentTask = task;
+        if (isCanceled()) {
+          return false;
+        }
+        task.run();
+        if (task.getStatus() == TaskStatus.ERROR) {
+          error("Error in %s: %s".formatted(stepName, task.getErrorMessage()));
+          return false;
+        }
+        if (task.getStatus() == TaskStatus.CANCELED) {
+          cancel();
+          return false;
+        }
+      }
+
+      // the new feature lists of this sample are the input of the next steps, otherwise the
+      // step worked in place
+      final List<FeatureList> created = sampleFeatureListsInProject().stream()
+          .filter(flist -> !before.contains(flist)).toList();
+      if (!created.isEmpty()) {
+        featureLists = created;
+      }
+      return true;
+    }
+
+    private List<FeatureList> sampleFeatureListsInProject() {
+      return project.getCurrentFeatureLists().stream().filter(
+              flist -> flist.getRawDataFiles().size() == 1 && flist.getRawDataFile(0).equals(raw))
+          .toList();
+    }
+
+    @Override
+    public void cancel() {
+      super.cancel();
+      final Task task = currentTask;
+      if (task != null) {
+        task.cancel();
+      }
+    }
+
+    @Override
+    public String getTaskDescription() {
+      final Task task = currentTask;
+      return task == null ? "Batch steps on " + raw.getName() : task.getTaskDescription();
+    }
+
+    @Override
+    public double getFinishedPercentage() {
+      final Task task = currentTask;
+      final double current = task == null || finishedSteps >= steps.size() ? 0
+          : task.getFinishedPercentage();
+      return Math.min(1d, (finishedSteps + current) / steps.size());
+    }
+  }
+}
@@ -0,0 +1,551 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.ConfigService;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionModule;
+import io.github.mzmine.modules.impl.MZmineProcessingStepImpl;
+import io.github.mzmine.modules.io.import_rawdata_all.AdvancedSpectraImportParameters;
+import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportModule;
+import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.XMLUtils;
+import io.github.mzmine.util.files.FileAndPathUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Runs a batch of many raw data files in multiple local worker processes. The raw data files are
+ * split into shards and each worker runs the sample steps at the start of the batch (import, mass
+ * detection, and steps that process each sample on its own) on one shard. The workers write their
+ * feature lists and the mass lists of their raw data files to a shared directory in the temp
+ * directory. After all workers finished, the main process imports the raw data files without mass
+ * detection, attaches the mass lists of the workers, loads the feature lists of all workers, and
+ * runs the following steps that combine the samples, e.g., alignment, gap filling and annotation.
+ * <p>
+ * Memory: the feature lists reference the scans of the raw data files and the following steps,
+ * e.g., gap filling, read the raw data. Therefore, the main process still loads the raw data of
+ * all files after the workers finished. Sharding only limits the memory of the sample steps, i.e.,
+ * building and resolving the chromatograms and their intermediate feature lists, to the files of
+ * one shard. Batches with other raw data methods than mass detection are not sharded, as their
+ * results would differ between the workers and the main process. Mass lists of ion mobility data
+ * cannot be transferred, the main process runs the mass detection again in this case.
+ * <p>
+ * Workers are started with the same java runtime, class path and JVM arguments, and the
+ * {@link #WORKER_OUTPUT_PROPERTY} system property. The heap limit is replaced by an equal share of
+ * the heap of the main process, which is idle while the workers run. The processors are split
+ * equally between the workers. Only used in headless batch mode.
+ */
+final class ShardedBatchRunner {
+
+  /**
+   * System property with the output directory of a worker process
+   */
+  static final String WORKER_OUTPUT_PROPERTY = "mzmine.batch.shardOutput";
+  private static final Logger logger = Logger.getLogger(ShardedBatchRunner.class.getName());
+  private static final String FINISHED_FILE = "shard.finished";
+  private static final String MASS_LISTS_FINISHED_FILE = "masslists.finished";
+  private static final String WORKER_LOG_FILE = "worker.log";
+  /**
+   * JVM arguments that define the heap size. Replaced by the share of each worker.
+   */
+  private static final List<String> HEAP_ARGUMENTS = List.of("-Xmx", "-Xms",
+      "-XX:MaxRAMPercentage", "-XX:MinRAMPercentage", "-XX:InitialRAMPercentage", "-XX:MaxRAM=",
+      "-XX:MaxHeapSize", "-XX:InitialHeapSize");
+
+  private ShardedBatchRunner() {
+  }
+
+  /**
+   * @return true if this process is a worker of a sharded batch
+   */
+  static boolean isWorker() {
+    return System.getProperty(WORKER_OUTPUT_PROPERTY) != null;
+  }
+
+  /**
+   * @return the number of worker processes or 0 if the batch is not sharded
+   */
+  static int getNumWorkers() {
+    if (isWorker() || !MZmineCore.isHeadLessMode()) {
+      return 0;
+    }
+    final Integer workers = ConfigService.getPreferences()
+        .getEmbeddedParameterValueIfSelectedOrElse(MZminePreferences.batchShardWorkers, null);
+    return workers == null ? 0 : workers;
+  }
+
+  /**
+   * @return the exclusive end of the sample steps at the start of the batch. 0 if the batch cannot
+   * be sharded.
+   */
+  static int findSampleStepsEnd(@NotNull BatchQueue queue) {
+    if (queue.isEmpty() || !(queue.getFirst()
+        .getModule() instanceof AllSpectralDataImportModule)) {
+      return 0;
+    }
+    int end = 1;
+    boolean hasSampleStep = false;
+    while (end < queue.size()) {
+      final MZmineProcessingStep<?> step = queue.get(end);
+      if (SamplePipeline.isSampleStep(step)) {
+        hasSampleStep = true;
+      } else if (!BatchStepResultCache.isRawDataStep(step)) {
+        break;
+      } else if (!(step.getModule() instanceof MassDetectionModule)) {
+        // the main process cannot reproduce the raw data files of other raw data methods
+        if (!hasSampleStep) {
+          return 0;
+        }
+        break;
+      }
+      end++;
+    }
+    // sharding only raw data steps does not reduce the memory
+    return hasSampleStep ? end : 0;
+  }
+
+  /**
+   * Splits the files into consecutive shards of equal size. The first shards are smaller if the
+   * files cannot be split equally.
+   */
+  static File[][] splitShards(@NotNull File[] files, int numShards) {
+    final File[][] shards = new File[numShards][];
+    for (int i = 0; i < numShards; i++) {
+      shards[i] = Arrays.copyOfRange(files, (int) ((long) i * files.length / numShards),
+          (int) ((long) (i + 1) * files.length / numShards));
+    }
+    return shards;
+  }
+
+  /**
+   * Runs the batch in worker processes and this process
+   *
+   * @return the batch task of the last steps or the task that failed
+   */
+  @Nullable
+  static BatchTask run(@NotNull BatchQueue queue, @NotNull MZmineProject project, int numWorkers,
+      @NotNull Instant moduleCallDate) {
+    final int end = findSampleStepsEnd(queue);
+    final File[] files = queue.getFirst().getParameterSet()
+        .getValue(AllSpectralDataImportParameters.fileNames);
+    numWorkers = Math.min(numWorkers, files.length);
+    logger.info("Running sample steps of batch on %d files in %d worker processes".formatted(
+        files.length, numWorkers));
+
+    File dir = null;
+    final List<File> shardDirs = new ArrayList<>();
+    final List<Process> workers = new ArrayList<>();
+    try {
+      try {
+        dir = FileAndPathUtil.createTempDirectory("mzmine_batch_shards").toFile();
+        final File config = new File(dir, "worker_config.xml");
+        ConfigService.getConfiguration().saveConfiguration(config);
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / numWorkers);
+        // the main process keeps one share for the steps after the workers
+        final long heapMb = Math.max(256,
+            (Runtime.getRuntime().maxMemory() / (numWorkers + 1)) >> 20);
+        final List<String> jvmArguments = workerJvmArguments(
+            ManagementFactory.getRuntimeMXBean().getInputArguments(), heapMb);
+        final File[][] shards = splitShards(files, numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+          final File shardDir = new File(dir, "shard_" + i);
+          Files.createDirectories(shardDir.toPath());
+          shardDirs.add(shardDir);
+          final File batchFile = new File(shardDir, "worker_batch.xml");
+          writeWorkerBatch(queue, end, shards[i], batchFile);
+          workers.add(startWorker(jvmArguments, shardDir, batchFile, config, threads));
+        }
+      } catch (IOException | ParserConfigurationException | TransformerException e) {
+        logger.log(Level.SEVERE, "Cannot start batch worker processes. " + e.getMessage(), e);
+        return null;
+      }
+
+      // wait for all workers before the raw data is loaded in this process
+      for (int i = 0; i < workers.size(); i++) {
+        try {
+          final int exitCode = workers.get(i).waitFor();
+          if (exitCode != 0) {
+            logger.severe("Batch worker %d failed with exit code %d. See the log:%n%s".formatted(i,
+                exitCode, readWorkerLog(shardDirs.get(i))));
+            return null;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          logger.log(Level.SEVERE, "Interrupted while waiting for batch workers", e);
+          return null;
+        }
+      }
+
+      // mass lists are transferred from the workers unless a worker could not write them
+      final boolean transferMassLists = shardDirs.stream()
+          .allMatch(shardDir -> new File(shardDir, MASS_LISTS_FINISHED_FILE).isFile());
+      final BatchQueue rawDataQueue = new BatchQueue();
+      if (transferMassLists) {
+        rawDataQueue.add(createImportWithoutMassDetection(queue.getFirst()));
+      } else {
+        logger.info("Mass lists of batch workers are not available, running mass detection again");
+        for (int i = 0; i < end; i++) {
+          final MZmineProcessingStep<MZmineProcessingModule> step = queue.get(i);
+          if (i == 0 || BatchStepResultCache.isRawDataStep(step)) {
+            rawDataQueue.add(cloneStep(step));
+          }
+        }
+      }
+      final BatchTask rawDataTask = createBatchTask(rawDataQueue, project, moduleCallDate);
+      rawDataTask.run();
+      if (!rawDataTask.isFinished()) {
+        return rawDataTask;
+      }
+
+      // load the results in the order of the files
+      final List<FeatureList> featureLists = new ArrayList<>();
+      final MemoryMapStorage storage = MemoryMapStorage.forFeatureList();
+      final MemoryMapStorage massListStorage = MemoryMapStorage.forMassList();
+      for (File shardDir : shardDirs) {
+        try {
+          if (transferMassLists && !readMassLists(shardDir, project, massListStorage)) {
+            rawDataTask.error("Cannot read the mass lists of batch worker in " + shardDir);
+            return rawDataTask;
+          }
+          final List<ModularFeatureList> loaded = readWorkerResults(shardDir, project, storage,
+              rawDataTask::isCanceled);
+          if (loaded == null) {
+            rawDataTask.error("Cannot read the results of batch worker in " + shardDir);
+            return rawDataTask;
+          }
+          loaded.forEach(project::addFeatureList);
+          featureLists.addAll(loaded);
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+          rawDataTask.error("Cannot read the results of batch worker in " + shardDir, e);
+          return rawDataTask;
+        }
+      }
+      logger.info("Loaded %d feature lists of %d batch workers".formatted(featureLists.size(),
+          shardDirs.size()));
+
+      if (end == queue.size()) {
+        return rawDataTask;
+      }
+      final BatchQueue remainingQueue = new BatchQueue();
+      for (int i = end; i < queue.size(); i++) {
+        remainingQueue.add(cloneStep(queue.get(i)));
+      }
+      final BatchTask task = createBatchTask(remainingQueue, project, moduleCallDate);
+      task.setInitialBatchLast(project.getCurrentRawDataFiles(), featureLists);
+      task.run();
+      return task;
+    } finally {
+      workers.forEach(Process::destroy);
+      if (dir != null) {
+        FileUtils.deleteQuietly(dir);
+      }
+    }
+  }
+
+  /**
+   * @return the last lines of the worker log, the log is deleted with the temp directory
+   */
+  private static String readWorkerLog(File shardDir) {
+    try {
+      final List<String> lines = Files.readAllLines(new File(shardDir, WORKER_LOG_FILE).toPath(),
+          StandardCharsets.UTF_8);
+      return String.join("\n", lines.subList(Math.max(0, lines.size() - 50), lines.size()));
+    } catch (IOException e) {
+      return "Cannot read worker log: " + e.getMessage();
+    }
+  }
+
+  private static BatchTask createBatchTask(BatchQueue queue, MZmineProject project,
+      Instant moduleCallDate) {
+    final ParameterSet parameters = new BatchModeParameters();
+    parameters.getParameter(BatchModeParameters.batchQueue).setValue(queue);
+    return new BatchTask(project, parameters, moduleCallDate);
+  }
+
+  private static MZmineProcessingStep<MZmineProcessingModule> cloneStep(
+      MZmineProcessingStep<MZmineProcessingModule> step) {
+    return new MZmineProcessingStepImpl<>(step.getModule(),
+        step.getParameterSet().cloneParameterSet());
+  }
+
+  /**
+   * @return the import step with the same scan filter and processing but without mass detection
+   */
+  private static MZmineProcessingStep<MZmineProcessingModule> createImportWithoutMassDetection(
+      MZmineProcessingStep<MZmineProcessingModule> importStep) {
+    final MZmineProcessingStep<MZmineProcessingModule> step = cloneStep(importStep);
+    final ParameterSet advanced = step.getParameterSet()
+        .getParameter(AllSpectralDataImportParameters.advancedImport).getEmbeddedParameters();
+    advanced.setParameter(AdvancedSpectraImportParameters.msMassDetection, false);
+    advanced.setParameter(AdvancedSpectraImportParameters.ms2MassDetection, false);
+    return step;
+  }
+
+  /**
+   * Writes the sample steps of the batch with the files of one shard
+   */
+  private static void writeWorkerBatch(BatchQueue queue, int end, File[] shardFiles, File file)
+      throws ParserConfigurationException, TransformerException, IOException {
+    final BatchQueue workerQueue = new BatchQueue();
+    for (int i = 0; i < end; i++) {
+      workerQueue.add(cloneStep(queue.get(i)));
+    }
+    workerQueue.getFirst().getParameterSet()
+        .setParameter(AllSpectralDataImportParameters.fileNames, shardFiles);
+
+    final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .newDocument();
+    final Element element = document.createElement("batch");
+    document.appendChild(element);
+    workerQueue.saveToXml(element);
+    XMLUtils.saveToFile(file, document);
+  }
+
+  /**
+   * @param inputArguments the JVM arguments of this process
+   * @param heapMb         the maximum heap of a worker
+   * @return the JVM arguments of a worker without debug agents and with its own heap limit
+   */
+  static List<String> workerJvmArguments(@NotNull List<String> inputArguments, long heapMb) {
+    final List<String> arguments = new ArrayList<>();
+    for (String arg : inputArguments) {
+      // debug agents would use the same port
+      if (arg.startsWith("-agentlib:jdwp") || arg.startsWith("-D" + WORKER_OUTPUT_PROPERTY)
+          || HEAP_ARGUMENTS.stream().anyMatch(arg::startsWith)) {
+        continue;
+      }
+      arguments.add(arg);
+    }
+    arguments.add("-Xmx" + heapMb + "m");
+    return arguments;
+  }
+
+  /**
+   * Starts mzmine in headless mode with the same java runtime and class path
+   */
+  private static Process startWorker(List<String> jvmArguments, File shardDir, File batchFile,
+      File config, int threads) throws IOException {
+    final List<String> command = new ArrayList<>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(jvmArguments);
+    command.add("-D" + WORKER_OUTPUT_PROPERTY + "=" + shardDir.getAbsolutePath());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(MZmineCore.class.getName());
+    command.addAll(List.of("-batch", batchFile.getAbsolutePath(), "-pref", config.getAbsolutePath(),
+        "-threads", String.valueOf(threads), "-temp",
+        new File(shardDir, "tmp").getAbsolutePath()));
+
+    logger.fine(() -> "Starting batch worker: " + String.join(" ", command));
+    return new ProcessBuilder(command).redirectErrorStream(true)
+        .redirectOutput(new File(shardDir, WORKER_LOG_FILE)).start();
+  }
+
+  /**
+   * Called by a worker process after its batch finished. Writes the mass lists of the raw data
+   * files and the feature lists of the last step to the output directory.
+   */
+  static void writeWorkerResults(@NotNull BatchTask task, @NotNull MZmineProject project) {
+    if (!task.isFinished()) {
+      return;
+    }
+    final File dir = new File(System.getProperty(WORKER_OUTPUT_PROPERTY));
+    final List<FeatureList> featureLists = task.getLastCreatedFeatureLists();
+    try {
+      writeMassLists(dir, project.getCurrentRawDataFiles());
+      if (!writeFeatureLists(dir, featureLists, task::isCanceled)) {
+        return;
+      }
+      logger.info("Wrote %d feature lists of batch worker to %s".formatted(featureLists.size(),
+          dir.getAbsolutePath()));
+    } catch (Exception e) {
+      task.error("Cannot write the results of batch worker to " + dir.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Writes the feature lists and marks the results as complete
+   *
+   * @return false if canceled
+   */
+  static boolean writeFeatureLists(@NotNull File dir, @NotNull List<FeatureList> featureLists,
+      @NotNull BooleanSupplier isCanceled)
+      throws IOException, XMLStreamException, ParserConfigurationException, TransformerException {
+    for (int i = 0; i < featureLists.size(); i++) {
+      if (!new FeatureListFiles(dir, i).write((ModularFeatureList) featureLists.get(i),
+          isCanceled)) {
+        return false;
+      }
+    }
+    Files.writeString(new File(dir, FINISHED_FILE).toPath(), String.valueOf(featureLists.size()),
+        StandardCharsets.UTF_8);
+    return true;
+  }
+
+  /**
+   * @return the feature lists of a worker or null if the worker did not finish or was canceled
+   */
+  @Nullable
+  static List<ModularFeatureList> readWorkerResults(@NotNull File shardDir,
+      @NotNull MZmineProject project, @Nullable MemoryMapStorage storage,
+      @NotNull BooleanSupplier isCanceled) throws IOException, XMLStreamException {
+    final File finished = new File(shardDir, FINISHED_FILE);
+    if (!finished.isFile()) {
+      return null;
+    }
+    final int numFeatureLists = Integer.parseInt(
+        Files.readString(finished.toPath(), StandardCharsets.UTF_8).trim());
+    final List<ModularFeatureList> featureLists = new ArrayList<>(numFeatureLists);
+    for (int i = 0; i < numFeatureLists; i++) {
+      final ModularFeatureList flist = new FeatureListFiles(shardDir, i).read(project, storage,
+          isCanceled);
+      if (flist == null) {
+        return null;
+      }
+      featureLists.add(flist);
+    }
+    return featureLists;
+  }
+
+  private static File massListFile(File dir, int index) {
+    return new File(dir, "masslists_" + index + ".bin");
+  }
+
+  /**
+   * Writes the mass lists of all scans of the raw data files. Mass lists of ion mobility files are
+   * not written, the main process runs the mass detection again.
+   */
+  static void writeMassLists(@NotNull File dir, @NotNull List<RawDataFile> files)
+      throws IOException {
+    if (files.stream().anyMatch(IMSRawDataFile.class::isInstance)) {
+      return;
+    }
+    for (int i = 0; i < files.size(); i++) {
+      final RawDataFile file = files.get(i);
+      try (var out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(massListFile(dir, i))))) {
+        out.writeUTF(file.getName());
+        final List<Scan> scans = file.getScans();
+        out.writeInt(scans.size());
+        for (Scan scan : scans) {
+          final MassList massList = scan.getMassList();
+          if (massList == null) {
+            out.writeInt(-1);
+            continue;
+          }
+          final int n = massList.getNumberOfDataPoints();
+          out.writeInt(n);
+          for (double mz : massList.getMzValues(new double[n])) {
+            out.writeDouble(mz);
+          }
+          for (double intensity : massList.getIntensityValues(new double[n])) {
+            out.writeDouble(intensity);
+          }
+        }
+      }
+    }
+    Files.writeString(new File(dir, MASS_LISTS_FINISHED_FILE).toPath(),
+        String.valueOf(files.size()), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Adds the mass lists of a worker to the scans of the raw data files with the same names
+   *
+   * @return false if a raw data file is missing or has a different number of scans
+   */
+  static boolean readMassLists(@NotNull File dir, @NotNull MZmineProject project,
+      @Nullable MemoryMapStorage storage) throws IOException {
+    final int numFiles = Integer.parseInt(
+        Files.readString(new File(dir, MASS_LISTS_FINISHED_FILE).toPath(), StandardCharsets.UTF_8)
+            .trim());
+    for (int i = 0; i < numFiles; i++) {
+      try (var in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(massListFile(dir, i))))) {
+        final RawDataFile file = project.getDataFileByName(in.readUTF());
+        final int numScans = in.readInt();
+        if (file == null || file.getNumOfScans() != numScans) {
+          return false;
+        }
+        for (int s = 0; s < numScans; s++) {
+          final int n = in.readInt();
+          if (n < 0) {
+            continue;
+          }
+          final double[] mzs = new double[n];
+          final double[] intensities = new double[n];
+          for (int j = 0; j < n; j++) {
+            mzs[j] = in.readDouble();
+          }
+          for (int j = 0; j < n; j++) {
+            intensities[j] = in.readDouble();
+          }
+          file.getScan(s).addMassList(new SimpleMassList(storage, mzs, intensities));
+        }
+      }
+    }
+    return true;
+  }
+}
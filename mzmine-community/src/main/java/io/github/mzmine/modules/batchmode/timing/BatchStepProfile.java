@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode.timing;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Resources used by one batch step. Values are -1 if the JVM or operating system does not
+ * provide the counter.
+ *
+ * @param step           step number starting at 1, 0 for the whole batch
+ * @param subTasks       number of tasks created by the module
+ * @param cpuSeconds     cpu time of the whole process while this step was running
+ * @param peakHeapMB     upper bound of the used heap during this step
+ * @param gcPauseSeconds accumulated garbage collection time
+ * @param peakThreads    maximum number of live threads during this step
+ * @param endThreads     number of live threads after this step
+ */
+@JsonPropertyOrder({"step", "name", "subTasks", "wallSeconds", "cpuSeconds", "allocatedMB",
+    "peakHeapMB", "gcCount", "gcPauseSeconds", "peakThreads", "endThreads", "readMB",
+    "writtenMB"})
+public record BatchStepProfile(int step, String name, int subTasks, double wallSeconds,
+                               double cpuSeconds, double allocatedMB, double peakHeapMB,
+                               long gcCount, double gcPauseSeconds, int peakThreads,
+                               int endThreads, double readMB, double writtenMB) {
+
+  private static final double MB = 1024 * 1024;
+
+  /**
+   * Call directly after the step finished and before {@link ResourceSnapshot#resetPeaks()}
+   */
+  static BatchStepProfile between(int step, String name, int subTasks, ResourceSnapshot start,
+      ResourceSnapshot end) {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    final long cpu = ResourceSnapshot.delta(start.cpuNanos(), end.cpuNanos());
+    final long gcMillis = ResourceSnapshot.delta(start.gcMillis(), end.gcMillis());
+    return new BatchStepProfile(step, name, subTasks, (end.nanoTime() - start.nanoTime()) / 1e9,
+        cpu < 0 ? -1 : cpu / 1e9,
+        toMB(ResourceSnapshot.delta(start.allocatedBytes(), end.allocatedBytes())),
+        toMB(ResourceSnapshot.peakHeapBytes()), end.gcCount() - start.gcCount(),
+        gcMillis / 1000d, threads.getPeakThreadCount(), threads.getThreadCount(),
+        toMB(ResourceSnapshot.delta(start.readBytes(), end.readBytes())),
+        toMB(ResourceSnapshot.delta(start.writtenBytes(), end.writtenBytes())));
+  }
+
+  static double toMB(long bytes) {
+    return bytes < 0 ? -1 : bytes / MB;
+  }
+
+  @Override
+  public String toString() {
+    return "Step %d: %s took %.3f s wall, %.3f s cpu, allocated %.1f MB, peak heap %.1f MB, %d GCs (%.3f s)".formatted(
+        step, name, wallSeconds, cpuSeconds, allocatedMB, peakHeapMB, gcCount, gcPauseSeconds);
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode.timing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.batchmode.BatchQueue;
+import io.github.mzmine.parameters.ParameterUtils;
+import io.github.mzmine.parameters.parametertypes.filenames.FileNameSuffixExportParameter;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.util.files.FileAndPathUtil;
+import io.github.mzmine.util.io.CsvWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Profiles the resource usage of batch steps and their sub tasks. Each step is surrounded by a
+ * {@link BatchStepEvent} and each sub task by a {@link SubTaskEvent} for flight recordings. Steps
+ * are profiled on the batch thread and must be started and finished sequentially.
+ */
+public class BatchStepProfiler {
+
+  private static final Logger logger = Logger.getLogger(BatchStepProfiler.class.getName());
+
+  private final List<BatchStepProfile> steps = new ArrayList<>();
+  // filled concurrently by the sub tasks
+  private final List<SubTaskProfile> subTasks = Collections.synchronizedList(new ArrayList<>());
+  private final ResourceSnapshot batchStart;
+
+  // current step
+  private @Nullable BatchStepEvent event;
+  private @Nullable ResourceSnapshot stepStart;
+  private int step;
+  private String module;
+  private int stepTasks;
+
+  public BatchStepProfiler() {
+    ResourceSnapshot.resetPeaks();
+    batchStart = ResourceSnapshot.take();
+  }
+
+  /**
+   * @return the directory of the first export in the queue or the working directory
+   */
+  @NotNull
+  public static File findReportDirectory(@NotNull BatchQueue queue) {
+    return queue.stream().map(MZmineProcessingStep::getParameterSet).filter(Objects::nonNull)
+        .flatMap(params -> ParameterUtils.streamParametersDeep(params,
+            FileNameSuffixExportParameter.class)).map(FileNameSuffixExportParameter::getValue)
+        .filter(Objects::nonNull).map(File::getAbsoluteFile).map(File::getParentFile)
+        .filter(Objects::nonNull).findFirst()
+        .orElseGet(() -> new File(System.getProperty("user.dir")));
+  }
+
+  /**
+   * @param step step number starting at 1
+   */
+  public void startStep(int step, @NotNull String module) {
+    this.step = step;
+    this.module = module;
+    stepTasks = 0;
+    ResourceSnapshot.resetPeaks();
+    event = new BatchStepEvent();
+    event.step = step;
+    event.module = module;
+    event.begin();
+    stepStart = ResourceSnapshot.take();
+  }
+
+  /**
+   * Replaces all tasks by tasks that measure their own thread's resource usage. Call between
+   * {@link #startStep(int, String)} and {@link #finishStep()}.
+   *
+   * @param tasks the tasks of the current step, elements are replaced in place
+   */
+  public void wrapTasks(@NotNull List<Task> tasks) {
+    stepTasks += tasks.size();
+    tasks.replaceAll(task -> new ProfiledTask(task, step, module, subTasks::add));
+  }
+
+  /**
+   * @return the profile of the current step
+   */
+  @NotNull
+  public BatchStepProfile finishStep() {
+    if (stepStart == null || event == null) {
+      throw new IllegalStateException("No batch step was started");
+    }
+    final ResourceSnapshot end = ResourceSnapshot.take();
+    final BatchStepProfile profile = BatchStepProfile.between(step, module, stepTasks, stepStart,
+        end);
+
+    event.subTasks = stepTasks;
+    event.allocatedBytes = ResourceSnapshot.delta(stepStart.allocatedBytes(),
+        end.allocatedBytes());
+    event.commit();
+    event = null;
+    stepStart = null;
+
+    steps.add(profile);
+    logger.fine(profile::toString);
+    return profile;
+  }
+
+  /**
+   * @return the profile of the whole batch as step 0, peaks are the maximum of all steps
+   */
+  @NotNull
+  public BatchStepProfile finishBatch() {
+    final BatchStepProfile batch = BatchStepProfile.between(0, "WHOLE BATCH",
+        steps.stream().mapToInt(BatchStepProfile::subTasks).sum(), batchStart,
+        ResourceSnapshot.take());
+    final double peakHeap = steps.stream().mapToDouble(BatchStepProfile::peakHeapMB)
+        .reduce(batch.peakHeapMB(), Math::max);
+    final int peakThreads = steps.stream().mapToInt(BatchStepProfile::peakThreads)
+        .reduce(batch.peakThreads(), Math::max);
+    return new BatchStepProfile(0, batch.name(), batch.subTasks(), batch.wallSeconds(),
+        batch.cpuSeconds(), batch.allocatedMB(), peakHeap, batch.gcCount(),
+        batch.gcPauseSeconds(), peakThreads, batch.endThreads(), batch.readMB(),
+        batch.writtenMB());
+  }
+
+  public List<BatchStepProfile> getSteps() {
+    return steps;
+  }
+
+  public List<SubTaskProfile> getSubTasks() {
+    synchronized (subTasks) {
+      return List.copyOf(subTasks);
+    }
+  }
+
+  /**
+   * Writes batch_profile_steps.csv, batch_profile_tasks.csv, and batch_profile.json to the
+   * directory. Failures are only logged as profiling should never fail a batch.
+   *
+   * @param batch the profile of the whole batch, see {@link #finishBatch()}
+   */
+  public void writeReport(@NotNull File directory, @NotNull BatchStepProfile batch) {
+    final List<BatchStepProfile> allSteps = new ArrayList<>(steps);
+    allSteps.add(batch);
+    final List<SubTaskProfile> tasks = getSubTasks();
+    try {
+      FileAndPathUtil.createDirectory(directory);
+      CsvWriter.writeToFile(new File(directory, "batch_profile_steps.csv"), allSteps,
+          BatchStepProfile.class);
+      CsvWriter.writeToFile(new File(directory, "batch_profile_tasks.csv"), tasks,
+          SubTaskProfile.class);
+      new ObjectMapper().writerWithDefaultPrettyPrinter()
+          .writeValue(new File(directory, "batch_profile.json"), new Report(allSteps, tasks));
+      logger.info("Wrote batch profile to " + directory.getAbsolutePath());
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot write batch profile: " + e.getMessage(), e);
+    }
+  }
+
+  record Report(List<BatchStepProfile> steps, List<SubTaskProfile> subTasks) {
+
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode.timing;
+
+import io.github.mzmine.taskcontrol.DelegatingTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.taskcontrol.TaskStatusListener;
+import java.lang.management.ManagementFactory;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Delegates to a task and measures the cpu time and allocated bytes of the thread that runs it.
+ * Status changes and cancel requests are forwarded to the task.
+ */
+class ProfiledTask implements DelegatingTask {
+
+  private final Task task;
+  private final int step;
+  private final String module;
+  private final Consumer<SubTaskProfile> resultConsumer;
+
+  ProfiledTask(Task task, int step, String module, Consumer<SubTaskProfile> resultConsumer) {
+    this.task = task;
+    this.step = step;
+    this.module = module;
+    this.resultConsumer = resultConsumer;
+  }
+
+  @Override
+  public void run() {
+    // description may change during processing and is only available before
+    final String description = task.getTaskDescription();
+    final var threads = ManagementFactory.getThreadMXBean() instanceof
+        com.sun.management.ThreadMXBean t && t.isCurrentThreadCpuTimeSupported()
+        && t.isThreadAllocatedMemorySupported() ? t : null;
+
+    final long startCpu = threads != null ? threads.getCurrentThreadCpuTime() : -1;
+    final long startAllocated = threads != null ? threads.getCurrentThreadAllocatedBytes() : -1;
+    final SubTaskEvent event = new SubTaskEvent();
+    event.step = step;
+    event.module = module;
+    event.task = description;
+    event.begin();
+    final long start = System.nanoTime();
+    try {
+      task.run();
+    } finally {
+      event.commit();
+      final long wall = System.nanoTime() - start;
+      final long cpu =
+          threads != null ? ResourceSnapshot.delta(startCpu, threads.getCurrentThreadCpuTime())
+              : -1;
+      final long allocated = threads != null ? ResourceSnapshot.delta(startAllocated,
+          threads.getCurrentThreadAllocatedBytes()) : -1;
+      resultConsumer.accept(
+          new SubTaskProfile(step, module, description, String.valueOf(task.getStatus()),
+              wall / 1e9, cpu < 0 ? -1 : cpu / 1e9, BatchStepProfile.toMB(allocated)));
+    }
+  }
+
+  @Override
+  public @NotNull Task getDelegate() {
+    return task;
+  }
+
+  @Override
+  public String getTaskDescription() {
+    return task.getTaskDescription();
+  }
+
+  @Override
+  public double getFinishedPercentage() {
+    return task.getFinishedPercentage();
+  }
+
+  @Override
+  public TaskStatus getStatus() {
+    return task.getStatus();
+  }
+
+  @Override
+  public void setStatus(TaskStatus newStatus) {
+    task.setStatus(newStatus);
+  }
+
+  @Override
+  public void error(@Nullable String message, @Nullable Exception exceptionToLog) {
+    task.error(message, exceptionToLog);
+  }
+
+  @Override
+  public String getErrorMessage() {
+    return task.getErrorMessage();
+  }
+
+  @Override
+  public TaskPriority getTaskPriority() {
+    return task.getTaskPriority();
+  }
+
+  @Override
+  public void cancel() {
+    task.cancel();
+  }
+
+  @Override
+  public void addTaskStatusListener(TaskStatusListener list) {
+    task.addTaskStatusListener(list);
+  }
+
+  @Override
+  public boolean removeTaskStatusListener(TaskStatusListener list) {
+    return task.removeTaskStatusListener(list);
+  }
+
+  @Override
+  public void clearTaskStatusListener() {
+    task.clearTaskStatusListener();
+  }
+}
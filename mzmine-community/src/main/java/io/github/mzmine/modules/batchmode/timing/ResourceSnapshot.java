@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode.timing;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Process wide resource counters at one point in time. Counters that are not supported by the JVM
+ * or operating system are -1. The difference between two snapshots is the usage in between.
+ *
+ * @param nanoTime       {@link System#nanoTime()}
+ * @param cpuNanos       cpu time of the whole process
+ * @param allocatedBytes bytes allocated on the heap by all threads since JVM start
+ * @param gcCount        number of collections of all garbage collectors
+ * @param gcMillis       accumulated collection time of all garbage collectors
+ * @param readBytes      bytes read from the storage layer by this process (Linux only)
+ * @param writtenBytes   bytes written to the storage layer by this process (Linux only)
+ */
+record ResourceSnapshot(long nanoTime, long cpuNanos, long allocatedBytes, long gcCount,
+                        long gcMillis, long readBytes, long writtenBytes) {
+
+  private static final Path PROC_IO = Path.of("/proc/self/io");
+
+  static ResourceSnapshot take() {
+    long gcCount = 0;
+    long gcMillis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      // -1 if undefined for this collector
+      gcCount += Math.max(gc.getCollectionCount(), 0);
+      gcMillis += Math.max(gc.getCollectionTime(), 0);
+    }
+
+    long cpuNanos = -1;
+    if (ManagementFactory.getOperatingSystemMXBean() instanceof
+        com.sun.management.OperatingSystemMXBean os) {
+      cpuNanos = os.getProcessCpuTime();
+    }
+
+    long allocated = -1;
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+        && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+      allocated = threads.getTotalThreadAllocatedBytes();
+    }
+
+    long read = -1;
+    long written = -1;
+    if (Files.isReadable(PROC_IO)) {
+      try {
+        for (String line : Files.readAllLines(PROC_IO)) {
+          if (line.startsWith("read_bytes:")) {
+            read = Long.parseLong(line.substring(11).trim());
+          } else if (line.startsWith("write_bytes:")) {
+            written = Long.parseLong(line.substring(12).trim());
+          }
+        }
+      } catch (IOException | NumberFormatException _) {
+        // only available on some systems
+      }
+    }
+
+    return new ResourceSnapshot(System.nanoTime(), cpuNanos, allocated, gcCount, gcMillis, read,
+        written);
+  }
+
+  /**
+   * Resets the peak usage of all heap memory pools and the peak thread count
+   */
+  static void resetPeaks() {
+    for (MemoryPoolMXBean pool : heapPools()) {
+      pool.resetPeakUsage();
+    }
+    ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+  }
+
+  /**
+   * @return the sum of the peak usage of all heap memory pools since the last
+   * {@link #resetPeaks()}. This is an upper bound as the pools may peak at different times.
+   */
+  static long peakHeapBytes() {
+    long sum = 0;
+    for (MemoryPoolMXBean pool : heapPools()) {
+      sum += pool.getPeakUsage().getUsed();
+    }
+    return sum;
+  }
+
+  private static List<MemoryPoolMXBean> heapPools() {
+    return ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid()).toList();
+  }
+
+  /**
+   * @return difference of a counter or -1 if it is not supported
+   */
+  static long delta(long start, long end) {
+    return start < 0 || end < 0 ? -1 : end - start;
+  }
+}
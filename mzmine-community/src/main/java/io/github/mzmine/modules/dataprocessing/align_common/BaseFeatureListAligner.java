@@ -38,21 +38,20 @@ import io.github.mzmine.javafx.components.factories.FxTextFlows;
 import io.github.mzmine.javafx.components.factories.FxTexts;
 import io.github.mzmine.javafx.dialogs.DialogLoggerUtil;
 import io.github.mzmine.main.ConfigService;
-import io.github.mzmine.modules.dataprocessing.align_join.RowVsRowScore;
+import io.github.mzmine.modules.dataprocessing.align_common.RowAlignmentScores.ScoreBlocks;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.progress.TotalFinishedItemsProgress;
 import io.github.mzmine.util.FeatureListRowSorter;
 import io.github.mzmine.util.FeatureListUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.mzio.links.MzioMZmineLinks;
-import it.unimi.dsi.fastutil.objects.Object2BooleanOpenHashMap;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -115,21 +114,34 @@ public class BaseFeatureListAligner {
     return alignedFeatureList;
   }
 
+  /**
+   * Adds the features of each row to its best scoring base row. A row is only aligned once. Base
+   * rows only receive features of raw data files that they do not contain yet. Independent blocks
+   * of scores are processed in parallel.
+   *
+   * @return aligned flags for each row in {@link RowAlignmentScores#getRowsToAdd()}
+   */
   @NotNull
-  public static Object2BooleanOpenHashMap<FeatureListRow> addFeaturesBasedOnScores(
-      Collection<RowVsRowScore> scoresList, final ModularFeatureList alignedFeatureList,
-      final FeatureCloner featureCloner, final AtomicLong alignedRows) {
-    // natural order is reversed so best highest score is first element
-    final RowVsRowScore[] scores = scoresList.stream().sorted().toArray(RowVsRowScore[]::new);
-
+  public static boolean[] addFeaturesBasedOnScores(final RowAlignmentScores scores,
+      final ModularFeatureList alignedFeatureList, final FeatureCloner featureCloner,
+      final AtomicLong alignedRows) {
     // track if row was aligned
-    final Object2BooleanOpenHashMap<FeatureListRow> alignedRowsMap = new Object2BooleanOpenHashMap<>(
-        scores.length);
-
-    for (RowVsRowScore score : scores) {
-      final FeatureListRow alignedRow = score.getAlignedBaseRow();
-      final FeatureListRow row = score.getRowToAdd();
-      if (!alignedRowsMap.getOrDefault(row, false)) {
+    final boolean[] alignedRowsMap = new boolean[scores.getRowsToAdd().length];
+
+    // each row and base row is part of only one block
+    final ScoreBlocks blocks = scores.groupIndependentBlocks();
+    final int[] order = blocks.order();
+    final int[] blockStarts = blocks.blockStarts();
+    IntStream.range(0, blocks.numBlocks()).parallel().forEach(block -> {
+      // best score first
+      for (int i = blockStarts[block]; i < blockStarts[block + 1]; i++) {
+        final int score = order[i];
+        final int rowIndex = scores.getRowIndex(score);
+        if (alignedRowsMap[rowIndex]) {
+          continue;
+        }
+        final FeatureListRow alignedRow = scores.getBaseRow(score);
+        final FeatureListRow row = scores.getRowToAdd(score);
         // no row was aligned
         // put all features of the row into the aligned row
         for (Feature feature : row.getFeatures()) {
@@ -140,12 +152,12 @@ public class BaseFeatureListAligner {
             // this is resolved later by a GCConsensunsPostProcessor
             // row bindings are then updated at last
             alignedRow.addFeature(dataFile, newFeature, false);
-            alignedRowsMap.put(row, true);
+            alignedRowsMap[rowIndex] = true;
             alignedRows.getAndIncrement();
           }
         }
       }
-    }
+    });
 
     return alignedRowsMap;
   }
@@ -154,31 +166,35 @@ public class BaseFeatureListAligner {
    * Remove all rows that were algined in this step. Modifies the argument list
    *
    * @param allRows        FeatureList<List<Rows>>
-   * @param alignedRowsMap marks all aligned rows
+   * @param alignedRowsMap marks all aligned rows in the flattened order of allRows
    * @return number of aligned and remaining rows
    */
   public static AlignedRemainingRows removeAlignedRows(List<List<FeatureListRow>> allRows,
-      Object2BooleanOpenHashMap<FeatureListRow> alignedRowsMap) {
-    AtomicInteger alignedCounter = new AtomicInteger(0);
-    AtomicInteger remainingCounter = new AtomicInteger(0);
+      boolean[] alignedRowsMap) {
+    int alignedCounter = 0;
+    int remainingCounter = 0;
+    int rowIndex = 0;
     final ListIterator<List<FeatureListRow>> iterator = allRows.listIterator();
     while (iterator.hasNext()) {
       // remove aligned rows
       final List<FeatureListRow> featureList = iterator.next();
-      featureList.removeIf(row -> {
-        if (alignedRowsMap.getOrDefault(row, false)) {
-          alignedCounter.incrementAndGet();
-          return true;
+      final List<FeatureListRow> remaining = new ArrayList<>();
+      for (FeatureListRow row : featureList) {
+        if (alignedRowsMap[rowIndex++]) {
+          alignedCounter++;
+        } else {
+          remaining.add(row);
         }
-        remainingCounter.incrementAndGet();
-        return false;
-      });
+      }
+      remainingCounter += remaining.size();
       // remove empty lists
-      if (featureList.isEmpty()) {
+      if (remaining.isEmpty()) {
         iterator.remove();
+      } else {
+        iterator.set(remaining);
       }
     }
-    return new AlignedRemainingRows(alignedCounter.get(), remainingCounter.get());
+    return new AlignedRemainingRows(alignedCounter, remainingCounter);
   }
 
   public ModularFeatureList alignFeatureLists() {
@@ -299,13 +315,16 @@ public class BaseFeatureListAligner {
 
     // align all remaining feature lists onto the feature list with max(row number) = nextBaseRows
     if (!allRows.isEmpty()) {
-      Collection<RowVsRowScore> scoresList = rowAligner.alignRowsOnBaseRows(parentTask, allRows,
+      final RowAlignmentScores scores = rowAligner.alignRowsOnBaseRows(parentTask, allRows,
           nextBaseRows);
+      if (scores == null) {
+        return false; // canceled - checked in main loop
+      }
 
       // after an iteration, rows of all other featureLists have been given a mapping
       // now we have to find the best match
       // track all aligned rows - only align to highest scoring row
-      final var alignedRowsMap = addFeaturesBasedOnScores(scoresList, alignedFeatureList,
+      final var alignedRowsMap = addFeaturesBasedOnScores(scores, alignedFeatureList,
           featureCloner, progress.getFinished());
 
       // keep track of unaligned rows for the next interation.
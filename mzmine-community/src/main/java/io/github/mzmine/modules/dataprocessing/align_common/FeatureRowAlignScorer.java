@@ -30,47 +30,46 @@ import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.dataprocessing.align_gc.GCAlignerTask;
 import io.github.mzmine.modules.dataprocessing.align_join.JoinAlignerTask;
-import io.github.mzmine.modules.dataprocessing.align_join.RowVsRowScore;
 import io.github.mzmine.taskcontrol.Task;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import org.jetbrains.annotations.Nullable;
 
 public interface FeatureRowAlignScorer {
 
   /**
-   * Align rows on base rows
+   * Align rows on base rows. The base rows are indexed once, then all rows are scored in parallel
+   * blocks.
    *
-   * @param unalignedRows  score and align these rows against base
+   * @param unalignedRows  score and align these rows against base. Flattened in this order into
+   *                       {@link RowAlignmentScores#getRowsToAdd()}
    * @param baseRowsSorted the base rows that alignments will be added. Sorted by RT for
    *                       {@link GCAlignerTask} and by mz for {@link JoinAlignerTask}
-   * @return all RowVsRowScores
+   * @return all scores or null if the task was canceled
    */
-  default Collection<RowVsRowScore> alignRowsOnBaseRows(final Task parentTask,
+  @Nullable
+  default RowAlignmentScores alignRowsOnBaseRows(final Task parentTask,
       List<List<FeatureListRow>> unalignedRows, List<FeatureListRow> baseRowsSorted) {
-
-    // key = a row to be aligned, value = all possible matches in the aligned fl and it's scores
-    final ConcurrentLinkedDeque<RowVsRowScore> scoresList = new ConcurrentLinkedDeque<>();
-
-    // stream all rows in all feature lists
-    unalignedRows.stream().flatMap(Collection::stream).parallel().forEach(rowToAdd -> {
-      if (parentTask.isCanceled()) {
-        return;
-      }
-
-      scoreRowAgainstBaseRows(baseRowsSorted, rowToAdd, scoresList);
-    });
-    return scoresList;
+    final FeatureListRow[] rowsToAdd = unalignedRows.stream().flatMap(Collection::stream)
+        .toArray(FeatureListRow[]::new);
+    final RowGridIndex baseRows = createBaseRowIndex(baseRowsSorted);
+    return RowAlignmentScores.calculate(parentTask, rowsToAdd, baseRows, this);
   }
 
   /**
-   * @param baseRowsSorted the base rows to be scored against. sorting may differ between
-   *                       implementations
-   * @param rowToAdd       row to score
-   * @param scoresList     scores are added here
+   * @param baseRowsSorted the base rows of the next iteration
+   * @return an index with cell sizes that fit the tolerances of this scorer
+   */
+  RowGridIndex createBaseRowIndex(List<FeatureListRow> baseRowsSorted);
+
+  /**
+   * @param baseRows the base rows to be scored against
+   * @param rowIndex index of the row to add, used in the scores
+   * @param rowToAdd row to score
+   * @param scores   scores are added here
    */
-  void scoreRowAgainstBaseRows(List<FeatureListRow> baseRowsSorted, FeatureListRow rowToAdd,
-      ConcurrentLinkedDeque<RowVsRowScore> scoresList);
+  void scoreRowAgainstBaseRows(RowGridIndex baseRows, int rowIndex, FeatureListRow rowToAdd,
+      RowAlignmentScores.Builder scores);
 
   void calculateAlignmentScores(ModularFeatureList alignedFeatureList,
       List<FeatureList> originalFeatureLists);
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_common;
+
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.taskcontrol.Task;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * All scores of rows to add against the base rows of one alignment iteration. Stored in primitive
+ * arrays as pairs of row index (into {@link #getRowsToAdd()}), base row position (into
+ * {@link RowGridIndex}) and score. A higher score is a better match.
+ */
+public class RowAlignmentScores {
+
+  /**
+   * number of rows that are scored in one parallel task
+   */
+  private static final int ROWS_PER_BLOCK = 1024;
+
+  private final FeatureListRow[] rowsToAdd;
+  private final RowGridIndex baseRows;
+  private final int[] rowIndices;
+  private final int[] basePositions;
+  private final double[] scores;
+
+  private RowAlignmentScores(FeatureListRow[] rowsToAdd, RowGridIndex baseRows, int[] rowIndices,
+      int[] basePositions, double[] scores) {
+    this.rowsToAdd = rowsToAdd;
+    this.baseRows = baseRows;
+    this.rowIndices = rowIndices;
+    this.basePositions = basePositions;
+    this.scores = scores;
+  }
+
+  /**
+   * Scores all rows against the base rows in parallel blocks of rows
+   *
+   * @return the scores or null if the task was canceled
+   */
+  @Nullable
+  public static RowAlignmentScores calculate(@Nullable Task parentTask,
+      @NotNull FeatureListRow[] rowsToAdd, @NotNull RowGridIndex baseRows,
+      @NotNull FeatureRowAlignScorer scorer) {
+    final int numBlocks = (rowsToAdd.length + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK;
+    final List<Builder> blocks = IntStream.range(0, numBlocks).parallel().mapToObj(block -> {
+      final Builder builder = new Builder();
+      final int end = Math.min(rowsToAdd.length, (block + 1) * ROWS_PER_BLOCK);
+      for (int i = block * ROWS_PER_BLOCK; i < end; i++) {
+        if (parentTask != null && parentTask.isCanceled()) {
+          break;
+        }
+        scorer.scoreRowAgainstBaseRows(baseRows, i, rowsToAdd[i], builder);
+      }
+      return builder;
+    }).toList();
+
+    if (parentTask != null && parentTask.isCanceled()) {
+      return null;
+    }
+
+    // merge in order of blocks to keep the result reproducible
+    final int total = blocks.stream().mapToInt(b -> b.scores.size()).sum();
+    final int[] rowIndices = new int[total];
+    final int[] basePositions = new int[total];
+    final double[] scores = new double[total];
+    int offset = 0;
+    for (Builder block : blocks) {
+      final int n = block.scores.size();
+      block.rowIndices.getElements(0, rowIndices, offset, n);
+      block.basePositions.getElements(0, basePositions, offset, n);
+      block.scores.getElements(0, scores, offset, n);
+      offset += n;
+    }
+    return new RowAlignmentScores(rowsToAdd, baseRows, rowIndices, basePositions, scores);
+  }
+
+  public int size() {
+    return scores.length;
+  }
+
+  public FeatureListRow[] getRowsToAdd() {
+    return rowsToAdd;
+  }
+
+  public int getRowIndex(int scoreIndex) {
+    return rowIndices[scoreIndex];
+  }
+
+  public FeatureListRow getRowToAdd(int scoreIndex) {
+    return rowsToAdd[rowIndices[scoreIndex]];
+  }
+
+  public FeatureListRow getBaseRow(int scoreIndex) {
+    return baseRows.getRow(basePositions[scoreIndex]);
+  }
+
+  public double getScore(int scoreIndex) {
+    return scores[scoreIndex];
+  }
+
+  /**
+   * Groups the scores into independent blocks. Two scores are in the same block if they share a
+   * row to add or a base row (directly or over other scores). Assigning rows by best score only
+   * depends on the scores of the same block, so that blocks can be processed in parallel with the
+   * same result as processing all scores in one sorted pass.
+   *
+   * @return the score indices sorted by block and by descending score within each block
+   */
+  public ScoreBlocks groupIndependentBlocks() {
+    final int numRows = rowsToAdd.length;
+    // union find over rows to add [0, numRows) and base rows [numRows, numRows + base rows)
+    final int[] parents = new int[numRows + baseRows.size()];
+    for (int i = 0; i < parents.length; i++) {
+      parents[i] = i;
+    }
+    for (int s = 0; s < scores.length; s++) {
+      final int a = find(parents, rowIndices[s]);
+      final int b = find(parents, numRows + basePositions[s]);
+      if (a != b) {
+        parents[Math.max(a, b)] = Math.min(a, b);
+      }
+    }
+
+    final int[] roots = new int[scores.length];
+    final int[] order = new int[scores.length];
+    for (int s = 0; s < scores.length; s++) {
+      roots[s] = find(parents, rowIndices[s]);
+      order[s] = s;
+    }
+
+    // best score first, ties are resolved by row and base row to be reproducible
+    IntArrays.parallelQuickSort(order, (a, b) -> {
+      int result = Integer.compare(roots[a], roots[b]);
+      if (result == 0) {
+        result = Double.compare(scores[b], scores[a]);
+      }
+      if (result == 0) {
+        result = Integer.compare(rowIndices[a], rowIndices[b]);
+      }
+      if (result == 0) {
+        result = Integer.compare(basePositions[a], basePositions[b]);
+      }
+      return result;
+    });
+
+    final IntArrayList blockStarts = new IntArrayList();
+    for (int i = 0; i < order.length; i++) {
+      if (i == 0 || roots[order[i]] != roots[order[i - 1]]) {
+        blockStarts.add(i);
+      }
+    }
+    blockStarts.add(order.length);
+    return new ScoreBlocks(order, blockStarts.toIntArray());
+  }
+
+  private static int find(int[] parents, int node) {
+    while (parents[node] != node) {
+      // path halving
+      parents[node] = parents[parents[node]];
+      node = parents[node];
+    }
+    return node;
+  }
+
+  /**
+   * Collects the scores of one block of rows
+   */
+  public static class Builder {
+
+    private final IntArrayList rowIndices = new IntArrayList();
+    private final IntArrayList basePositions = new IntArrayList();
+    private final DoubleArrayList scores = new DoubleArrayList();
+
+    /**
+     * @param rowIndex     index of the row to add
+     * @param basePosition position of the base row in the {@link RowGridIndex}
+     * @param score        higher is better
+     */
+    public void add(int rowIndex, int basePosition, double score) {
+      rowIndices.add(rowIndex);
+      basePositions.add(basePosition);
+      scores.add(score);
+    }
+  }
+
+  /**
+   * @param order       score indices sorted by block and descending score
+   * @param blockStarts start of each block in order, last element is the end of the last block
+   */
+  public record ScoreBlocks(int[] order, int[] blockStarts) {
+
+    public int numBlocks() {
+      return blockStarts.length - 1;
+    }
+  }
+}
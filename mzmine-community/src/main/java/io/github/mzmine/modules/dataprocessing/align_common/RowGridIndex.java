@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_common;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Grid index over the base rows of one alignment iteration. Rows are binned into m/z x RT cells
+ * and stored sorted by cell, so that a search only visits the few cells that overlap the search
+ * ranges. Row values are kept in primitive arrays, mobility is checked on the candidates of the
+ * visited cells. Rows without RT are kept in an extra cell per m/z bin that is always visited,
+ * same as {@link io.github.mzmine.util.FeatureListUtils#getCandidatesWithinRanges}.
+ * <p>
+ * Positions used in this index are the positions in grid order, use {@link #getRow(int)}.
+ */
+public class RowGridIndex {
+
+  /**
+   * limits the number of cells per dimension for very small tolerances
+   */
+  private static final int MAX_CELLS = 1 << 16;
+
+  private final FeatureListRow[] rows;
+  private final double[] mzs;
+  // NaN if missing
+  private final float[] rts;
+  private final float[] mobilities;
+  private final long[] cellKeys;
+
+  private final double minMz;
+  private final double mzCellWidth;
+  private final int numMzCells;
+  private final double minRt;
+  private final double rtCellWidth;
+  private final int numRtCells;
+
+  /**
+   * @param mzCellWidth the width of the m/z cells, 0 to use a single m/z cell
+   * @param rtCellWidth the width of the RT cells, 0 to use a single RT cell
+   */
+  public RowGridIndex(@NotNull List<? extends FeatureListRow> baseRows, double mzCellWidth,
+      double rtCellWidth) {
+    final int n = baseRows.size();
+    final double[] mzs = new double[n];
+    final float[] rts = new float[n];
+    final float[] mobilities = new float[n];
+    double minMz = Double.POSITIVE_INFINITY;
+    double maxMz = Double.NEGATIVE_INFINITY;
+    double minRt = Double.POSITIVE_INFINITY;
+    double maxRt = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < n; i++) {
+      final FeatureListRow row = baseRows.get(i);
+      mzs[i] = row.getAverageMZ();
+      final Float rt = row.getAverageRT();
+      rts[i] = rt == null ? Float.NaN : rt;
+      final Float mobility = row.getAverageMobility();
+      mobilities[i] = mobility == null ? Float.NaN : mobility;
+
+      minMz = Math.min(minMz, mzs[i]);
+      maxMz = Math.max(maxMz, mzs[i]);
+      if (rt != null) {
+        minRt = Math.min(minRt, rt);
+        maxRt = Math.max(maxRt, rt);
+      }
+    }
+
+    this.minMz = minMz;
+    this.minRt = minRt;
+    this.mzCellWidth = cellWidth(minMz, maxMz, mzCellWidth);
+    this.rtCellWidth = cellWidth(minRt, maxRt, rtCellWidth);
+    numMzCells = numCells(minMz, maxMz, this.mzCellWidth);
+    numRtCells = numCells(minRt, maxRt, this.rtCellWidth);
+
+    final long[] keys = new long[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = cellKey(mzCell(mzs[i]), Float.isNaN(rts[i]) ? numRtCells : rtCell(rts[i]));
+    }
+
+    // stable sort to keep the input order within cells
+    final int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    IntArrays.mergeSort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+    rows = new FeatureListRow[n];
+    this.mzs = new double[n];
+    this.rts = new float[n];
+    this.mobilities = new float[n];
+    cellKeys = new long[n];
+    for (int i = 0; i < n; i++) {
+      final int source = order[i];
+      rows[i] = baseRows.get(source);
+      this.mzs[i] = mzs[source];
+      this.rts[i] = rts[source];
+      this.mobilities[i] = mobilities[source];
+      cellKeys[i] = keys[source];
+    }
+  }
+
+  /**
+   * Creates an index with cells that are as wide as the tolerance ranges at the highest m/z and
+   * RT, so that a search visits at most three cells per dimension.
+   *
+   * @param mzTolerance null to use a single m/z cell
+   * @param rtTolerance null to use a single RT cell
+   */
+  public static RowGridIndex create(@NotNull List<? extends FeatureListRow> baseRows,
+      @Nullable MZTolerance mzTolerance, @Nullable RTTolerance rtTolerance) {
+    double maxMz = 0;
+    float maxRt = 0;
+    for (FeatureListRow row : baseRows) {
+      maxMz = Math.max(maxMz, row.getAverageMZ());
+      final Float rt = row.getAverageRT();
+      if (rt != null) {
+        maxRt = Math.max(maxRt, rt);
+      }
+    }
+    final double mzWidth = mzTolerance == null ? 0 : width(mzTolerance.getToleranceRange(maxMz));
+    final double rtWidth = rtTolerance == null ? 0 : width(rtTolerance.getToleranceRange(maxRt));
+    return new RowGridIndex(baseRows, mzWidth, rtWidth);
+  }
+
+  private static double width(Range<? extends Number> range) {
+    return range.upperEndpoint().doubleValue() - range.lowerEndpoint().doubleValue();
+  }
+
+  private static double cellWidth(double min, double max, double width) {
+    if (!(width > 0) || !Double.isFinite(width) || !(max > min)) {
+      return 0;
+    }
+    return Math.max(width, (max - min) / (MAX_CELLS - 1));
+  }
+
+  private static int numCells(double min, double max, double width) {
+    return width > 0 ? (int) ((max - min) / width) + 1 : 1;
+  }
+
+  private int mzCell(double mz) {
+    return cell(mz, minMz, mzCellWidth, numMzCells);
+  }
+
+  private int rtCell(double rt) {
+    return cell(rt, minRt, rtCellWidth, numRtCells);
+  }
+
+  private static int cell(double value, double min, double width, int numCells) {
+    if (width <= 0 || !(value > min)) {
+      return 0;
+    }
+    return (int) Math.min((value - min) / width, numCells - 1);
+  }
+
+  /**
+   * One extra RT cell per m/z cell holds the rows without RT
+   */
+  private long cellKey(int mzCell, int rtCell) {
+    return (long) mzCell * (numRtCells + 1) + rtCell;
+  }
+
+  public int size() {
+    return rows.length;
+  }
+
+  public FeatureListRow getRow(int position) {
+    return rows[position];
+  }
+
+  public FeatureListRow[] getRows() {
+    return rows;
+  }
+
+  /**
+   * Same filter as {@link io.github.mzmine.util.FeatureListUtils#getCandidatesWithinRanges}: m/z
+   * needs to be within the range, RT and mobility within the range or missing. Use Range.all() to
+   * deactivate a filter.
+   *
+   * @param candidateConsumer receives the position of each candidate
+   */
+  public void forEachCandidate(@NotNull Range<Double> mzRange, @NotNull Range<Float> rtRange,
+      @NotNull Range<Float> mobilityRange, @NotNull IntConsumer candidateConsumer) {
+    if (rows.length == 0) {
+      return;
+    }
+    final Bounds mz = Bounds.of(mzRange);
+    final Bounds rt = Bounds.of(rtRange);
+    final Bounds mobility = Bounds.of(mobilityRange);
+
+    final int firstMzCell = mzCell(mz.lower());
+    final int lastMzCell = mzCell(mz.upper());
+    final int firstRtCell = rtCell(rt.lower());
+    final int lastRtCell = rtCell(rt.upper());
+
+    for (int mzCell = firstMzCell; mzCell <= lastMzCell; mzCell++) {
+      // cells with RT and the cell without RT
+      collect(cellKey(mzCell, firstRtCell), cellKey(mzCell, lastRtCell), mz, rt, mobility,
+          candidateConsumer);
+      final long missingRtKey = cellKey(mzCell, numRtCells);
+      collect(missingRtKey, missingRtKey, mz, rt, mobility, candidateConsumer);
+    }
+  }
+
+  private void collect(long firstKey, long lastKey, Bounds mz, Bounds rt, Bounds mobility,
+      IntConsumer candidateConsumer) {
+    final int end = upperBound(lastKey);
+    for (int i = lowerBound(firstKey); i < end; i++) {
+      if (mz.contains(mzs[i]) //
+          && (Float.isNaN(rts[i]) || rt.contains(rts[i])) //
+          && (Float.isNaN(mobilities[i]) || mobility.contains(mobilities[i]))) {
+        candidateConsumer.accept(i);
+      }
+    }
+  }
+
+  /**
+   * @return first position with key >= value
+   */
+  private int lowerBound(long key) {
+    int low = 0;
+    int high = cellKeys.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (cellKeys[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return first position with key > value
+   */
+  private int upperBound(long key) {
+    int low = 0;
+    int high = cellKeys.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (cellKeys[mid] <= key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Primitive bounds of a guava range to avoid boxing in the candidate loop
+   */
+  private record Bounds(double lower, boolean lowerClosed, double upper, boolean upperClosed) {
+
+    static Bounds of(Range<? extends Number> range) {
+      final double lower = range.hasLowerBound() ? range.lowerEndpoint().doubleValue()
+          : Double.NEGATIVE_INFINITY;
+      final double upper = range.hasUpperBound() ? range.upperEndpoint().doubleValue()
+          : Double.POSITIVE_INFINITY;
+      return new Bounds(lower,
+          !range.hasLowerBound() || range.lowerBoundType() == BoundType.CLOSED, upper,
+          !range.hasUpperBound() || range.upperBoundType() == BoundType.CLOSED);
+    }
+
+    boolean contains(double value) {
+      return (lowerClosed ? value >= lower : value > lower) //
+             && (upperClosed ? value <= upper : value < upper);
+    }
+  }
+}
@@ -32,8 +32,9 @@ import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.dataprocessing.align_common.FeatureRowAlignScorer;
+import io.github.mzmine.modules.dataprocessing.align_common.RowAlignmentScores;
+import io.github.mzmine.modules.dataprocessing.align_common.RowGridIndex;
 import io.github.mzmine.modules.dataprocessing.align_join.RowAlignmentScoreCalculator;
-import io.github.mzmine.modules.dataprocessing.align_join.RowVsRowScore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
@@ -43,7 +44,6 @@ import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunctions;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import org.jetbrains.annotations.Nullable;
 
 /**
@@ -66,27 +66,28 @@ public class GcRowAlignScorer implements FeatureRowAlignScorer {
   }
 
   @Override
-  public void scoreRowAgainstBaseRows(final List<FeatureListRow> baseRowsByRt,
-      final FeatureListRow rowToAdd, final ConcurrentLinkedDeque<RowVsRowScore> scoresList) {
+  public RowGridIndex createBaseRowIndex(final List<FeatureListRow> baseRowsByRt) {
+    // only RT is used to find candidates
+    return RowGridIndex.create(baseRowsByRt, null, rtTolerance);
+  }
+
+  @Override
+  public void scoreRowAgainstBaseRows(final RowGridIndex baseRows, final int rowIndex,
+      final FeatureListRow rowToAdd, final RowAlignmentScores.Builder scores) {
 
     final Range<Float> rtRange = rtTolerance.getToleranceRange(rowToAdd.getAverageRT());
     // find all rows in the aligned rows that might match
-    final List<FeatureListRow> candidatesInAligned = FeatureListUtils.getCandidatesWithinRtRange(
-        rtRange, baseRowsByRt, true);
-    if (candidatesInAligned.isEmpty()) {
-      return;
-    }
-
     // calculate score for unaligned row against all candidates
-    for (FeatureListRow candidateInAligned : candidatesInAligned) {
+    baseRows.forEachCandidate(Range.all(), rtRange, Range.all(), candidate -> {
       // retention time is already checked for candidates
+      final FeatureListRow candidateInAligned = baseRows.getRow(candidate);
       SpectralSimilarity similarity = checkSpectralSimilarity(rowToAdd, candidateInAligned);
       if (similarity != null) {
-        final RowVsRowScore score = new RowVsRowScore(rowToAdd, candidateInAligned, rtRange,
-            rtWeight, similarity.getScore(), 1);
-        scoresList.add(score);
+        final double score = FeatureListUtils.getAlignmentScore(candidateInAligned, rtRange,
+            similarity.getScore(), rtWeight, 1);
+        scores.add(rowIndex, candidate, score);
       }
-    }
+    });
   }
 
   private SpectralSimilarity checkSpectralSimilarity(FeatureListRow row, FeatureListRow candidate) {
@@ -33,6 +33,8 @@ import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.dataprocessing.align_common.FeatureRowAlignScorer;
+import io.github.mzmine.modules.dataprocessing.align_common.RowAlignmentScores;
+import io.github.mzmine.modules.dataprocessing.align_common.RowGridIndex;
 import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreCalculator;
 import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreParameters;
 import io.github.mzmine.parameters.ParameterSet;
@@ -46,7 +48,6 @@ import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunctions;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
  * the row aligner used by {@link JoinAlignerTask}. Based on weighted mz, rt, mobility difference
@@ -122,8 +123,14 @@ public class JoinRowAlignScorer implements FeatureRowAlignScorer {
   }
 
   @Override
-  public void scoreRowAgainstBaseRows(final List<FeatureListRow> baseRowsByMz,
-      final FeatureListRow rowToAdd, final ConcurrentLinkedDeque<RowVsRowScore> scoresList) {
+  public RowGridIndex createBaseRowIndex(final List<FeatureListRow> baseRowsByMz) {
+    return RowGridIndex.create(baseRowsByMz, mzWeight > 0 ? mzTolerance : null,
+        rtWeight > 0 ? rtTolerance : null);
+  }
+
+  @Override
+  public void scoreRowAgainstBaseRows(final RowGridIndex baseRows, final int rowIndex,
+      final FeatureListRow rowToAdd, final RowAlignmentScores.Builder scores) {
     // ranges are build with prechecks - so if there is no mobility use Range.all() to deactivate the filter
     final Range<Double> mzRange =
         mzWeight > 0 ? mzTolerance.getToleranceRange(rowToAdd.getAverageMZ()) : Range.all();
@@ -134,22 +141,16 @@ public class JoinRowAlignScorer implements FeatureRowAlignScorer {
             ? mobilityTolerance.getToleranceRange(rowToAdd.getAverageMobility()) : Range.all();
 
     // find all rows in the aligned rows that might match
-    List<FeatureListRow> candidatesInAligned = FeatureListUtils.getCandidatesWithinRanges(mzRange,
-        rtRange, mobilityRange, baseRowsByMz, true);
-
-    if (candidatesInAligned.isEmpty()) {
-      return;
-    }
-
-    // calculate score for unaligned row against all candidates
-    for (FeatureListRow candidateInAligned : candidatesInAligned) {
+    // and calculate score for unaligned row against all candidates
+    baseRows.forEachCandidate(mzRange, rtRange, mobilityRange, candidate -> {
+      final FeatureListRow candidateInAligned = baseRows.getRow(candidate);
       // retention time and m/z is already checked for candidates
       if (additionalChecks(rowToAdd, candidateInAligned)) {
-        final RowVsRowScore score = new RowVsRowScore(rowToAdd, candidateInAligned, mzRange,
+        final double score = FeatureListUtils.getAlignmentScore(candidateInAligned, mzRange,
             rtRange, mobilityRange, null, mzWeight, rtWeight, mobilityWeight, 0);
-        scoresList.add(score);
+        scores.add(rowIndex, candidate, score);
       }
-    }
+    });
   }
 
   private boolean additionalChecks(final FeatureListRow row,
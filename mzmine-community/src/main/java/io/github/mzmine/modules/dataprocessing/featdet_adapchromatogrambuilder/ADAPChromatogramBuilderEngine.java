@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.operations.AbstractTaskSubSupplier;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Builds the ADAP chromatograms of one raw data file. The result contains all chromatograms that
+ * passed the filters (including zero edges for chromatography), sorted by ascending m/z ranges.
+ * Returns null if the parent task was canceled.
+ */
+abstract class ADAPChromatogramBuilderEngine extends
+    AbstractTaskSubSupplier<List<SimpleIonTimeSeries>> {
+
+  protected final RawDataFile dataFile;
+  protected final Scan[] scans;
+  protected final ScanSelection scanSelection;
+  protected final int totalDataPoints;
+  protected final MZTolerance mzTolerance;
+  protected final double minHighestPoint;
+  protected final double minGroupIntensity;
+  protected final int minimumConsecutiveScans;
+  protected final int minimumTotalScans;
+  protected final boolean addZeros;
+  protected final @Nullable MemoryMapStorage storage;
+  protected double progress = 0;
+
+  /**
+   * @param scans           all scans that match the scan selection, sorted by retention time
+   * @param totalDataPoints the number of mass list data points in all scans
+   * @param addZeros        add a zero intensity data point to the edges of each consecutive
+   *                        segment. Only used in chromatography
+   */
+  protected ADAPChromatogramBuilderEngine(@Nullable Task parentTask, RawDataFile dataFile,
+      Scan[] scans, ScanSelection scanSelection, int totalDataPoints, MZTolerance mzTolerance,
+      double minHighestPoint, double minGroupIntensity, int minimumConsecutiveScans,
+      int minimumTotalScans, boolean addZeros, @Nullable MemoryMapStorage storage) {
+    super(parentTask);
+    this.dataFile = dataFile;
+    this.scans = scans;
+    this.scanSelection = scanSelection;
+    this.totalDataPoints = totalDataPoints;
+    this.mzTolerance = mzTolerance;
+    this.minHighestPoint = minHighestPoint;
+    this.minGroupIntensity = minGroupIntensity;
+    this.minimumConsecutiveScans = minimumConsecutiveScans;
+    this.minimumTotalScans = minimumTotalScans;
+    this.addZeros = addZeros;
+    this.storage = storage;
+  }
+
+  @Override
+  public @NotNull String getTaskDescription() {
+    return "Building chromatograms in " + dataFile.getName();
+  }
+
+  @Override
+  public double getFinishedPercentage() {
+    return progress;
+  }
+}
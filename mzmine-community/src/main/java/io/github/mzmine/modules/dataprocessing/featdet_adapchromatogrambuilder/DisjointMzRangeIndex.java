@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import java.util.Arrays;
+
+/**
+ * Primitive replacement for a {@code TreeRangeMap<Double, Integer>} that only holds disjoint
+ * closed-open ranges {@code [lower, upper)}. Entries are kept sorted by their lower bound in
+ * blocks of limited size so that lookups are two binary searches and insertions only shift a
+ * single block. Values are int ids, -1 is returned for missing entries.
+ * <p>
+ * Positions returned by {@link #find(double)} are only valid until the next call to
+ * {@link #put(double, double, int)}.
+ */
+class DisjointMzRangeIndex {
+
+  public static final long NOT_FOUND = -1L;
+  private static final int BLOCK_SIZE = 512;
+
+  private double[] blockFirstLower = new double[8];
+  private double[][] lowers = new double[8][];
+  private double[][] uppers = new double[8][];
+  private int[][] values = new int[8][];
+  private int[] sizes = new int[8];
+  private int numBlocks = 0;
+  private int size = 0;
+
+  private static int block(long pos) {
+    return (int) (pos >>> 32);
+  }
+
+  private static int index(long pos) {
+    return (int) pos;
+  }
+
+  private static long pos(int block, int index) {
+    return ((long) block << 32) | (index & 0xffffffffL);
+  }
+
+  /**
+   * @return the number of ranges
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the position of the range that contains the value or {@link #NOT_FOUND}
+   */
+  public long find(double value) {
+    final int b = floorBlock(value);
+    if (b < 0) {
+      return NOT_FOUND;
+    }
+    // last entry with lower <= value, always >= 0 as the first lower of the block is <= value
+    final int i = upperBound(lowers[b], sizes[b], value) - 1;
+    return value < uppers[b][i] ? pos(b, i) : NOT_FOUND;
+  }
+
+  /**
+   * @return the id of the range that contains the value or -1
+   */
+  public int get(double value) {
+    final long pos = find(value);
+    return pos == NOT_FOUND ? -1 : valueAt(pos);
+  }
+
+  public double lowerAt(long pos) {
+    return lowers[block(pos)][index(pos)];
+  }
+
+  public double upperAt(long pos) {
+    return uppers[block(pos)][index(pos)];
+  }
+
+  public int valueAt(long pos) {
+    return values[block(pos)][index(pos)];
+  }
+
+  /**
+   * Puts a new closed-open range. Same as {@code TreeRangeMap.put} for the special case that only
+   * ranges that are fully enclosed by the new range may overlap with it. Those ranges are
+   * removed.
+   */
+  public void put(double lower, double upper, int value) {
+    // remove all enclosed ranges
+    while (true) {
+      final long ceil = ceilingPos(lower);
+      if (ceil == NOT_FOUND || lowerAt(ceil) >= upper) {
+        break;
+      }
+      removeAt(block(ceil), index(ceil));
+    }
+
+    if (numBlocks == 0) {
+      addBlock(0);
+    }
+    int b = Math.max(floorBlock(lower), 0);
+    int i = lowerBound(lowers[b], sizes[b], lower);
+    if (sizes[b] == BLOCK_SIZE) {
+      splitBlock(b);
+      final int half = sizes[b];
+      if (i > half) {
+        b++;
+        i -= half;
+      }
+    }
+    insertAt(b, i, lower, upper, value);
+  }
+
+  /**
+   * @return all ids sorted by ascending ranges
+   */
+  public int[] valuesInOrder() {
+    final int[] result = new int[size];
+    int n = 0;
+    for (int b = 0; b < numBlocks; b++) {
+      System.arraycopy(values[b], 0, result, n, sizes[b]);
+      n += sizes[b];
+    }
+    return result;
+  }
+
+  /**
+   * @return first position with lower >= value or {@link #NOT_FOUND}
+   */
+  private long ceilingPos(double value) {
+    if (numBlocks == 0) {
+      return NOT_FOUND;
+    }
+    int b = Math.max(floorBlock(value), 0);
+    final int i = lowerBound(lowers[b], sizes[b], value);
+    if (i < sizes[b]) {
+      return pos(b, i);
+    }
+    return b + 1 < numBlocks ? pos(b + 1, 0) : NOT_FOUND;
+  }
+
+  /**
+   * @return last block with a first lower bound <= value or -1
+   */
+  private int floorBlock(double value) {
+    return upperBound(blockFirstLower, numBlocks, value) - 1;
+  }
+
+  /**
+   * @return first index with array[index] >= value
+   */
+  private static int lowerBound(double[] array, int length, double value) {
+    int low = 0;
+    int high = length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (array[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return first index with array[index] > value
+   */
+  private static int upperBound(double[] array, int length, double value) {
+    int low = 0;
+    int high = length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (array[mid] <= value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void insertAt(int b, int i, double lower, double upper, int value) {
+    final int n = sizes[b];
+    System.arraycopy(lowers[b], i, lowers[b], i + 1, n - i);
+    System.arraycopy(uppers[b], i, uppers[b], i + 1, n - i);
+    System.arraycopy(values[b], i, values[b], i + 1, n - i);
+    lowers[b][i] = lower;
+    uppers[b][i] = upper;
+    values[b][i] = value;
+    sizes[b]++;
+    size++;
+    if (i == 0) {
+      blockFirstLower[b] = lower;
+    }
+  }
+
+  private void removeAt(int b, int i) {
+    final int n = sizes[b];
+    System.arraycopy(lowers[b], i + 1, lowers[b], i, n - i - 1);
+    System.arraycopy(uppers[b], i + 1, uppers[b], i, n - i - 1);
+    System.arraycopy(values[b], i + 1, values[b], i, n - i - 1);
+    sizes[b]--;
+    size--;
+    if (sizes[b] == 0) {
+      removeBlock(b);
+    } else if (i == 0) {
+      blockFirstLower[b] = lowers[b][0];
+    }
+  }
+
+  /**
+   * Moves the upper half of a full block into a new block at b+1
+   */
+  private void splitBlock(int b) {
+    addBlock(b + 1);
+    final int half = sizes[b] / 2;
+    final int moved = sizes[b] - half;
+    System.arraycopy(lowers[b], half, lowers[b + 1], 0, moved);
+    System.arraycopy(uppers[b], half, uppers[b + 1], 0, moved);
+    System.arraycopy(values[b], half, values[b + 1], 0, moved);
+    sizes[b] = half;
+    sizes[b + 1] = moved;
+    blockFirstLower[b + 1] = lowers[b + 1][0];
+  }
+
+  private void addBlock(int b) {
+    if (numBlocks == sizes.length) {
+      final int capacity = sizes.length * 2;
+      blockFirstLower = Arrays.copyOf(blockFirstLower, capacity);
+      lowers = Arrays.copyOf(lowers, capacity);
+      uppers = Arrays.copyOf(uppers, capacity);
+      values = Arrays.copyOf(values, capacity);
+      sizes = Arrays.copyOf(sizes, capacity);
+    }
+    final int moved = numBlocks - b;
+    System.arraycopy(blockFirstLower, b, blockFirstLower, b + 1, moved);
+    System.arraycopy(lowers, b, lowers, b + 1, moved);
+    System.arraycopy(uppers, b, uppers, b + 1, moved);
+    System.arraycopy(values, b, values, b + 1, moved);
+    System.arraycopy(sizes, b, sizes, b + 1, moved);
+    lowers[b] = new double[BLOCK_SIZE];
+    uppers[b] = new double[BLOCK_SIZE];
+    values[b] = new int[BLOCK_SIZE];
+    sizes[b] = 0;
+    numBlocks++;
+  }
+
+  private void removeBlock(int b) {
+    final int moved = numBlocks - b - 1;
+    System.arraycopy(blockFirstLower, b + 1, blockFirstLower, b, moved);
+    System.arraycopy(lowers, b + 1, lowers, b, moved);
+    System.arraycopy(uppers, b + 1, uppers, b, moved);
+    System.arraycopy(values, b + 1, values, b, moved);
+    System.arraycopy(sizes, b + 1, sizes, b, moved);
+    numBlocks--;
+    lowers[numBlocks] = null;
+    uppers[numBlocks] = null;
+    values[numBlocks] = null;
+  }
+}
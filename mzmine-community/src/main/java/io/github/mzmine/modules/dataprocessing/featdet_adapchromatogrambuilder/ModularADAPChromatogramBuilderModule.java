@@ -28,7 +28,7 @@ package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.MZmineModuleCategory;
-import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.impl.RawDataFileTaskModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.util.ExitCode;
@@ -36,8 +36,9 @@ import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import java.util.Collection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-public class ModularADAPChromatogramBuilderModule implements MZmineProcessingModule {
+public class ModularADAPChromatogramBuilderModule implements RawDataFileTaskModule {
 
   private static final String MODULE_NAME = "Chromatogram builder";
   private static final String MODULE_DESCRIPTION = "This module connects data points from mass lists and builds chromatograms.";
@@ -57,24 +58,36 @@ public class ModularADAPChromatogramBuilderModule implements MZmineProcessingMod
   public ExitCode runModule(@NotNull MZmineProject project, @NotNull ParameterSet parameters,
       @NotNull Collection<Task> tasks, @NotNull Instant moduleCallDate) {
     // one memory map storage per module call to reduce number of files and connect related feature lists
-    MemoryMapStorage storage = MemoryMapStorage.forFeatureList();
+    MemoryMapStorage storage = createStorage();
 
     RawDataFile[] dataFiles = parameters.getParameter(ADAPChromatogramBuilderParameters.dataFiles)
         .getValue().getMatchingRawDataFiles();
 
     for (final RawDataFile file : dataFiles) {
-      // only the image builder supplies a minimum number of total scans
-      // chrom builder uses min consecutive scans
-      // TODO why clone? usually not needed
-      Task newTask = ModularADAPChromatogramBuilderTask.forChromatography(project, file,
-          parameters.cloneParameterSet(true), storage, moduleCallDate,
-          ModularADAPChromatogramBuilderModule.class);
+      Task newTask = createTask(project, parameters, moduleCallDate, storage, file);
       tasks.add(newTask);
     }
 
     return ExitCode.OK;
   }
 
+  @Override
+  public @Nullable MemoryMapStorage createStorage() {
+    return MemoryMapStorage.forFeatureList();
+  }
+
+  @Override
+  public @NotNull Task createTask(@NotNull MZmineProject project, @NotNull ParameterSet parameters,
+      @NotNull Instant moduleCallDate, @Nullable MemoryMapStorage storage,
+      @NotNull RawDataFile raw) {
+    // only the image builder supplies a minimum number of total scans
+    // chrom builder uses min consecutive scans
+    // TODO why clone? usually not needed
+    return ModularADAPChromatogramBuilderTask.forChromatography(project, raw,
+        parameters.cloneParameterSet(true), storage, moduleCallDate,
+        ModularADAPChromatogramBuilderModule.class);
+  }
+
   @Override
   public @NotNull MZmineModuleCategory getModuleCategory() {
     return MZmineModuleCategory.EIC_DETECTION;
@@ -26,18 +26,13 @@
 package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
 
 
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeMap;
-import com.google.common.collect.TreeRangeMap;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
-import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
-import io.github.mzmine.datamodel.data_access.ScanDataAccess;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
@@ -52,18 +47,14 @@ import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
-import io.github.mzmine.util.DataPointSorter;
 import io.github.mzmine.util.DataTypeUtils;
 import io.github.mzmine.util.FeatureConvertors;
 import io.github.mzmine.util.FeatureListUtils;
 import io.github.mzmine.util.MemoryMapStorage;
-import io.github.mzmine.util.SortingDirection;
-import io.github.mzmine.util.SortingProperty;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import java.time.Instant;
 import java.util.Arrays;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.List;
 import static java.util.Objects.requireNonNullElse;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -93,6 +84,7 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
   private final boolean isImaging;
   private double progress = 0.0;
   private ModularFeatureList newFeatureList;
+  private ADAPChromatogramBuilderEngine builder;
 
   /**
    * @param callingModule     {@link ImageBuilderModule} or
@@ -152,14 +144,16 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    return progress;
+    if (progress >= 1d) {
+      return 1d;
+    }
+    return builder == null ? 0d : builder.getFinishedPercentage() * 0.9;
   }
 
   public RawDataFile getDataFile() {
     return dataFile;
   }
 
-  @SuppressWarnings("UnstableApiUsage")
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
@@ -228,16 +222,6 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
       }
     }
 
-    // make a list of all the data points
-    // sort data points by intensity
-    // loop through list
-    // add data point to chromatogrm or make new one
-    // update mz avg and other stuff
-    //
-
-    // map the mz tolerance to chromatograms
-    RangeMap<Double, ADAPChromatogram> rangeToChromMap = TreeRangeMap.create();
-
     // make a list of all the data points
     final int totalDps = Arrays.stream(scans).map(s -> {
       if (s.getMassList() != null) {
@@ -247,91 +231,31 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
       DesktopService.getDesktop().displayErrorMessage(ex.getMessage());
       throw ex;
     }).mapToInt(MassSpectrum::getNumberOfDataPoints).sum();
-    int dpCounter = 0;
-
-    ExpandedDataPoint[] allMzValues = new ExpandedDataPoint[totalDps];
-
-    ScanDataAccess scanData = EfficientDataAccess.of(dataFile, ScanDataType.MASS_LIST,
-        scanSelection);
-
-    progress = 0;
-    double progressStep = 0.1 / scanData.getNumberOfScans();
-    while (scanData.hasNextScan()) {
-      if (isCanceled()) {
-        return;
-      }
 
-      Scan scan;
-      try {
-        scan = scanData.nextScan();
-      } catch (MissingMassListException e) {
-        setStatus(TaskStatus.ERROR);
-        StringBuilder b = new StringBuilder("Scan #");
-        b.append(scanData.getCurrentScan().getScanNumber()).append(" from ");
-        b.append(dataFile.getName());
-        b.append(
-            " does not have a mass list. Please run \"Raw data methods\" -> \"Mass detection\"");
-        if (dataFile instanceof IMSRawDataFile) {
-          b.append("\nIMS files require mass detection on the frame level (Scan type = \"Frames ");
-          b.append("only\" or \"All scan types\"");
-        }
-        setErrorMessage(b.toString());
-        e.printStackTrace();
-        return;
-      }
-
-      int dps = scanData.getNumberOfDataPoints();
-      for (int i = 0; i < dps; i++) {
-        ExpandedDataPoint curDatP = new ExpandedDataPoint(scanData.getMzValue(i),
-            scanData.getIntensityValue(i), scan);
-        allMzValues[dpCounter] = curDatP;
-        dpCounter++;
+    // build chromatograms on primitive arrays, sorted by m/z
+    builder = new PrimitiveADAPChromatogramBuilder(this, dataFile, scans, scanSelection, totalDps,
+        mzTolerance, minHighestPoint, minGroupIntensity, minimumConsecutiveScans,
+        minimumTotalScans, !isImaging, getMemoryMapStorage());
+    final List<SimpleIonTimeSeries> chromatograms;
+    try {
+      chromatograms = builder.get();
+    } catch (MissingMassListException e) {
+      setStatus(TaskStatus.ERROR);
+      StringBuilder b = new StringBuilder(e.getMessage());
+      b.append(" in ").append(dataFile.getName());
+      b.append(". Please run \"Raw data methods\" -> \"Mass detection\"");
+      if (dataFile instanceof IMSRawDataFile) {
+        b.append("\nIMS files require mass detection on the frame level (Scan type = \"Frames ");
+        b.append("only\" or \"All scan types\"");
       }
-      progress += progressStep;
+      setErrorMessage(b.toString());
+      e.printStackTrace();
+      return;
     }
-
-    // sort data points by intensity
-    Arrays.parallelSort(allMzValues,
-        new DataPointSorter(SortingProperty.Intensity, SortingDirection.Descending));
-
-    // count starts at 1 since we already have added one with a single point.
-    progress = 0.1;
-    progressStep = (allMzValues.length > 0) ? 0.45 / allMzValues.length : 0.0;
-
-    for (ExpandedDataPoint mzFeature : allMzValues) {
-
-      progress += progressStep;
-
-      if (isCanceled()) {
-        return;
-      }
-
-      if (mzFeature == null || Double.isNaN(mzFeature.getMZ()) || Double.isNaN(
-          mzFeature.getIntensity())) {
-        continue;
-      }
-
-      final Entry<Range<Double>, ADAPChromatogram> existing = rangeToChromMap.getEntry(
-          mzFeature.getMZ());
-      if (existing != null) {
-        // add data point to chromatogram
-        existing.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
-      } else {
-        // skip it entierly if the intensity is not high enough
-        if (mzFeature.getIntensity() < minHighestPoint) {
-          continue;
-        }
-        // add a new chromatogram to the range map - limit ranges to avoid overlap
-        startNewChromatogramLimitMzRanges(rangeToChromMap, mzFeature);
-      }
+    if (chromatograms == null || isCanceled()) {
+      return;
     }
 
-    // finish chromatograms sorted by m/z
-    final Map<Range<Double>, ADAPChromatogram> finalRangeMap = rangeToChromMap.asMapOfRanges();
-
-    int numChromatograms = finalRangeMap.size();
-    progressStep = numChromatograms > 0 ? 0.45 / numChromatograms : 0.0;
-
     // Create new feature list
     newFeatureList = new ModularFeatureList(dataFile + " " + suffix, getMemoryMapStorage(),
         dataFile);
@@ -339,36 +263,22 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     DataTypeUtils.addDefaultChromatographicTypeColumns(newFeatureList);
 
     int newFeatureID = 1;
-    // add chromatograms that match criteria
-    for (ADAPChromatogram chromatogram : finalRangeMap.values()) {
+    for (SimpleIonTimeSeries chromatogram : chromatograms) {
       if (isCanceled()) {
         return;
       }
 
-      progress += progressStep;
-
-      // And remove chromatograms who dont have a certain number of continous points above the
-      // IntensityThresh2 level.
-      var dps = chromatogram.getNumberOfDataPoints();
-      if (dps >= minimumTotalScans && chromatogram.matchesMinContinuousDataPoints(scans,
-          minGroupIntensity, minimumConsecutiveScans, minHighestPoint)) {
-        // add zeros to edges
-        if (!isImaging) {
-          chromatogram.addNZeros(scans, 1, 1);
-        }
-
-        // add to list
-        ModularFeature modular = FeatureConvertors.ADAPChromatogramToModularFeature(newFeatureList,
-            dataFile, chromatogram, mzTolerance);
-        ModularFeatureListRow newRow = new ModularFeatureListRow(newFeatureList, newFeatureID,
-            modular);
-        newFeatureList.addRow(newRow);
-        // activate shape for this row
-        if (!isImaging) {
-          newRow.set(FeatureShapeType.class, true);
-        }
-        newFeatureID++;
+      // add to list
+      ModularFeature modular = FeatureConvertors.chromatogramSeriesToModularFeature(newFeatureList,
+          dataFile, chromatogram, mzTolerance);
+      ModularFeatureListRow newRow = new ModularFeatureListRow(newFeatureList, newFeatureID,
+          modular);
+      newFeatureList.addRow(newRow);
+      // activate shape for this row
+      if (!isImaging) {
+        newRow.set(FeatureShapeType.class, true);
       }
+      newFeatureID++;
     }
 
     // sort and reset IDs here to have the same sorting for every feature list
@@ -389,51 +299,4 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     logger.info(() -> "Finished chromatogram builder on " + dataFile);
   }
 
-  /**
-   * Starts a new chromatogram and limits its range so that it does not overlap with existing m/z
-   * ranges
-   *
-   * @param rangeToChromMap started chromatograms with their non overlapping m/z range
-   * @param mzFeature       current tested data point
-   */
-  @SuppressWarnings("UnstableApiUsage")
-  private void startNewChromatogramLimitMzRanges(RangeMap<Double, ADAPChromatogram> rangeToChromMap,
-      ExpandedDataPoint mzFeature) {
-    // start new chromatogram and create new range (subract overlapping existing ranges)
-    Range<Double> toleranceRange = mzTolerance.getToleranceRange(mzFeature.getMZ());
-
-    // look +- mz tolerance to see if ther is a range near by.
-    // If there is use the proper boundry of that range for the
-    // new range to insure than NON OF THE RANGES OVERLAP.
-    final Entry<Range<Double>, ADAPChromatogram> minusRange = rangeToChromMap.getEntry(
-        toleranceRange.lowerEndpoint());
-    final Entry<Range<Double>, ADAPChromatogram> plusRange = rangeToChromMap.getEntry(
-        toleranceRange.upperEndpoint());
-
-    // If both of the above ranges are null then we make the new range spaning the full
-    // mz tolerance range.
-    // If one or both are not null we need to properly modify the range of the new
-    // chromatogram so that none of the points are overlapping.
-    Double toBeLowerBound =
-        minusRange == null ? toleranceRange.lowerEndpoint() : minusRange.getKey().upperEndpoint();
-    Double toBeUpperBound =
-        plusRange == null ? toleranceRange.upperEndpoint() : plusRange.getKey().lowerEndpoint();
-
-    if (toBeLowerBound < toBeUpperBound) {
-      // use closed open so that every value may be captured by rangeMap
-      Range<Double> newRange = Range.closedOpen(toBeLowerBound, toBeUpperBound);
-      ADAPChromatogram newChrom = new ADAPChromatogram();
-      newChrom.addMzFeature(mzFeature.getScan(), mzFeature);
-
-      rangeToChromMap.put(newRange, newChrom);
-    } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
-      plusRange.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
-    } else {
-      throw new IllegalStateException(
-          String.format("Incorrect range [%f, %f] for m/z %f", toBeLowerBound, toBeUpperBound,
-              mzFeature.getMZ()));
-    }
-  }
-
 }
-
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
+import io.github.mzmine.datamodel.data_access.ScanDataAccess;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.util.MemoryMapStorage;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Allocation free version of the original object based chromatogram builder. All mass list signals
+ * are kept in parallel primitive arrays (m/z, intensity, scan index) and sorted by an index
+ * permutation instead of sorting {@link ExpandedDataPoint}s. The non-overlapping m/z ranges of the
+ * chromatograms are kept in a {@link DisjointMzRangeIndex} instead of a guava TreeRangeMap and
+ * chromatograms only exist as ids until the final time series are created.
+ * <p>
+ * The results are identical to the original RangeMap based builder: the data points are
+ * processed in the same order (descending intensity, descending m/z, then acquisition order like
+ * the stable parallel sort), the m/z ranges are limited the same way, and only the first (highest)
+ * data point per scan is added to a chromatogram. The scans are expected in ascending order of scan
+ * number and retention time, like the ADAPChromatogram sorts them.
+ * <p>
+ * {@link #build(Consumer)} passes each chromatogram on as soon as it is complete, so that callers
+ * can process chromatograms without keeping all of them.
+ */
+public final class PrimitiveADAPChromatogramBuilder extends ADAPChromatogramBuilderEngine {
+
+  public PrimitiveADAPChromatogramBuilder(@Nullable Task parentTask, RawDataFile dataFile,
+      Scan[] scans, ScanSelection scanSelection, int totalDataPoints, MZTolerance mzTolerance,
+      double minHighestPoint, double minGroupIntensity, int minimumConsecutiveScans,
+      int minimumTotalScans, boolean addZeros, @Nullable MemoryMapStorage storage) {
+    super(parentTask, dataFile, scans, scanSelection, totalDataPoints, mzTolerance,
+        minHighestPoint, minGroupIntensity, minimumConsecutiveScans, minimumTotalScans, addZeros,
+        storage);
+  }
+
+  @Override
+  public List<SimpleIonTimeSeries> get() {
+    final List<SimpleIonTimeSeries> result = new ArrayList<>();
+    return build(result::add) ? result : null;
+  }
+
+  /**
+   * Builds the chromatograms and passes each one to the consumer in the order of ascending m/z
+   * ranges, same as {@link #get()}.
+   *
+   * @param consumer receives each chromatogram that passed the filters
+   * @return false if the parent task was canceled
+   */
+  public boolean build(Consumer<SimpleIonTimeSeries> consumer) {
+    final double[] mzs = new double[totalDataPoints];
+    final double[] intensities = new double[totalDataPoints];
+    final int[] scanIndices = new int[totalDataPoints];
+
+    ScanDataAccess scanData = EfficientDataAccess.of(dataFile, ScanDataType.MASS_LIST,
+        scanSelection);
+
+    progress = 0;
+    double progressStep = 0.1 / scanData.getNumberOfScans();
+    int dpCounter = 0;
+    int scanIndex = 0;
+    while (scanData.hasNextScan()) {
+      if (isCanceled()) {
+        return false;
+      }
+      scanData.nextScan();
+
+      final int dps = scanData.getNumberOfDataPoints();
+      for (int i = 0; i < dps; i++) {
+        mzs[dpCounter] = scanData.getMzValue(i);
+        intensities[dpCounter] = scanData.getIntensityValue(i);
+        scanIndices[dpCounter] = scanIndex;
+        dpCounter++;
+      }
+      scanIndex++;
+      progress += progressStep;
+    }
+    if (scanIndex != scans.length) {
+      throw new IllegalStateException(
+          "Number of scans in data access (%d) does not match the selected scans (%d)".formatted(
+              scanIndex, scans.length));
+    }
+
+    // sort data point indices by intensity, m/z (both descending) and then by acquisition order
+    final int numDps = dpCounter;
+    final int[] order = new int[numDps];
+    for (int i = 0; i < numDps; i++) {
+      order[i] = i;
+    }
+    IntArrays.parallelQuickSort(order, (a, b) -> {
+      int result = Double.compare(intensities[b], intensities[a]);
+      if (result != 0) {
+        return result;
+      }
+      result = Double.compare(mzs[b], mzs[a]);
+      return result != 0 ? result : Integer.compare(a, b);
+    });
+
+    progress = 0.1;
+    progressStep = numDps > 0 ? 0.35 / numDps : 0.0;
+
+    // chromatogram id for each position in order, -1 if not added
+    final int[] chromOfSorted = new int[numDps];
+    final DisjointMzRangeIndex rangeIndex = new DisjointMzRangeIndex();
+    int numChroms = 0;
+
+    for (int sortedIndex = 0; sortedIndex < numDps; sortedIndex++) {
+      progress += progressStep;
+      chromOfSorted[sortedIndex] = -1;
+
+      if ((sortedIndex & 0xffff) == 0 && isCanceled()) {
+        return false;
+      }
+
+      final int dp = order[sortedIndex];
+      final double mz = mzs[dp];
+      final double intensity = intensities[dp];
+      if (Double.isNaN(mz) || Double.isNaN(intensity)) {
+        continue;
+      }
+
+      final int existing = rangeIndex.get(mz);
+      if (existing != -1) {
+        chromOfSorted[sortedIndex] = existing;
+      } else if (intensity >= minHighestPoint) {
+        // start a new chromatogram and limit its range to avoid overlap
+        chromOfSorted[sortedIndex] = startNewChromatogramLimitMzRanges(rangeIndex, mz, numChroms);
+        if (chromOfSorted[sortedIndex] == numChroms) {
+          numChroms++;
+        }
+      }
+    }
+
+    // group data points by chromatogram, keep the intensity order within each chromatogram
+    final int[] chromStart = new int[numChroms + 1];
+    for (int sortedIndex = 0; sortedIndex < numDps; sortedIndex++) {
+      if (chromOfSorted[sortedIndex] != -1) {
+        chromStart[chromOfSorted[sortedIndex] + 1]++;
+      }
+    }
+    for (int c = 0; c < numChroms; c++) {
+      chromStart[c + 1] += chromStart[c];
+    }
+    final int[] members = new int[chromStart[numChroms]];
+    final int[] fill = Arrays.copyOf(chromStart, numChroms);
+    for (int sortedIndex = 0; sortedIndex < numDps; sortedIndex++) {
+      final int chrom = chromOfSorted[sortedIndex];
+      if (chrom != -1) {
+        members[fill[chrom]++] = order[sortedIndex];
+      }
+    }
+
+    final int[] finalChroms = rangeIndex.valuesInOrder();
+    progress = 0.55;
+    progressStep = finalChroms.length > 0 ? 0.45 / finalChroms.length : 0.0;
+
+    // scratch buffers, reset after each chromatogram
+    final int[] dpOfScan = new int[scans.length];
+    Arrays.fill(dpOfScan, -1);
+    final int[] detected = new int[scans.length];
+    final int[] withZeros = new int[scans.length];
+
+    for (final int chrom : finalChroms) {
+      if (isCanceled()) {
+        return false;
+      }
+      progress += progressStep;
+
+      // only the first (highest) data point per scan is used
+      int numDetected = 0;
+      double mzSum = 0;
+      for (int m = chromStart[chrom]; m < chromStart[chrom + 1]; m++) {
+        final int dp = members[m];
+        final int scan = scanIndices[dp];
+        if (dpOfScan[scan] == -1) {
+          dpOfScan[scan] = dp;
+          detected[numDetected++] = scan;
+          mzSum += mzs[dp];
+        }
+      }
+      Arrays.sort(detected, 0, numDetected);
+
+      if (numDetected >= minimumTotalScans && matchesMinContinuousDataPoints(detected,
+          numDetected, dpOfScan, intensities)) {
+        final int numValues =
+            addZeros ? addZeroEdges(detected, numDetected, dpOfScan, withZeros) : numDetected;
+        final int[] seriesScans = addZeros ? withZeros : detected;
+        final double zeroMz = mzSum / numDetected;
+
+        final double[] seriesMzs = new double[numValues];
+        final double[] seriesIntensities = new double[numValues];
+        final List<Scan> seriesScanList = new ArrayList<>(numValues);
+        for (int i = 0; i < numValues; i++) {
+          final int scan = seriesScans[i];
+          final int dp = dpOfScan[scan];
+          seriesMzs[i] = dp == -1 ? zeroMz : mzs[dp];
+          seriesIntensities[i] = dp == -1 ? 0d : intensities[dp];
+          seriesScanList.add(scans[scan]);
+        }
+        consumer.accept(
+            new SimpleIonTimeSeries(storage, seriesMzs, seriesIntensities, seriesScanList));
+      }
+
+      // reset scratch
+      for (int i = 0; i < numDetected; i++) {
+        dpOfScan[detected[i]] = -1;
+      }
+    }
+    progress = 1d;
+    return true;
+  }
+
+  /**
+   * Same as {@link ADAPChromatogram#matchesMinContinuousDataPoints(Scan[], double, int, double)}
+   * on the sorted scan indices of the detected data points.
+   */
+  private boolean matchesMinContinuousDataPoints(int[] detected, int numDetected, int[] dpOfScan,
+      double[] intensities) {
+    if (minimumConsecutiveScans <= 1 && numDetected > 0) {
+      return true;
+    }
+
+    int connectedScans = 0;
+    double maxCurrentHeight = 0d;
+    for (int i = 0; i < numDetected; i++) {
+      final int scan = detected[i];
+      if (i > 0 && detected[i - 1] + 1 != scan) {
+        // gap
+        connectedScans = 0;
+      }
+      final double intensity = intensities[dpOfScan[scan]];
+      if (intensity >= minGroupIntensity) {
+        connectedScans++;
+        // track height of current segment
+        if (maxCurrentHeight < intensity) {
+          maxCurrentHeight = intensity;
+        }
+        if (connectedScans >= minimumConsecutiveScans && maxCurrentHeight >= minHighestPoint) {
+          return true;
+        }
+      } else {
+        connectedScans = 0;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Same as {@link ADAPChromatogram#addNZeros(Scan[], int, int)} with one zero on each edge of a
+   * segment of consecutive scans.
+   *
+   * @param target receives the sorted scan indices of data points and zeros
+   * @return the number of scan indices in target
+   */
+  private int addZeroEdges(int[] detected, int numDetected, int[] dpOfScan, int[] target) {
+    int n = 0;
+    for (int i = 0; i < numDetected; i++) {
+      final int scan = detected[i];
+      final int before = scan - 1;
+      // leading zero, may already be added as the trailing zero of the last segment
+      if (before >= 0 && dpOfScan[before] == -1 && (n == 0 || target[n - 1] != before)) {
+        target[n++] = before;
+      }
+      target[n++] = scan;
+      final int after = scan + 1;
+      if (after < scans.length && dpOfScan[after] == -1) {
+        target[n++] = after;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Starts a new chromatogram and limits its range so that it does not overlap with existing m/z
+   * ranges.
+   *
+   * @param newChromId the id of the new chromatogram
+   * @return the new chromatogram id or the id of the chromatogram that the data point was added to
+   * if its range could not be limited
+   */
+  private int startNewChromatogramLimitMzRanges(DisjointMzRangeIndex rangeIndex, double mz,
+      int newChromId) {
+    final Range<Double> toleranceRange = mzTolerance.getToleranceRange(mz);
+    final double toleranceLower = toleranceRange.lowerEndpoint();
+    final double toleranceUpper = toleranceRange.upperEndpoint();
+
+    final long minusRange = rangeIndex.find(toleranceLower);
+    final long plusRange = rangeIndex.find(toleranceUpper);
+
+    final double lower = minusRange == DisjointMzRangeIndex.NOT_FOUND ? toleranceLower
+        : rangeIndex.upperAt(minusRange);
+    final double upper = plusRange == DisjointMzRangeIndex.NOT_FOUND ? toleranceUpper
+        : rangeIndex.lowerAt(plusRange);
+
+    if (lower < upper) {
+      rangeIndex.put(lower, upper, newChromId);
+      return newChromId;
+    } else if (lower == upper && plusRange != DisjointMzRangeIndex.NOT_FOUND) {
+      return rangeIndex.valueAt(plusRange);
+    } else {
+      throw new IllegalStateException(
+          String.format("Incorrect range [%f, %f] for m/z %f", lower, upper, mz));
+    }
+  }
+}
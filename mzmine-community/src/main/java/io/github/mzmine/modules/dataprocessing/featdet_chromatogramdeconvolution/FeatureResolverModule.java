@@ -29,7 +29,7 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.modules.MZmineModuleCategory;
-import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.impl.FeatureListTaskModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.util.ExitCode;
@@ -37,8 +37,9 @@ import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import java.util.Collection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-public abstract class FeatureResolverModule implements MZmineProcessingModule {
+public abstract class FeatureResolverModule implements FeatureListTaskModule {
 
   private static final String MODULE_NAME = "Chromatogram deconvolution";
   private static final String MODULE_DESCRIPTION = "This module separates each detected chromatogram into individual peaks.";
@@ -53,15 +54,27 @@ public abstract class FeatureResolverModule implements MZmineProcessingModule {
   public ExitCode runModule(@NotNull MZmineProject project, @NotNull final ParameterSet parameters,
       @NotNull final Collection<Task> tasks, @NotNull Instant moduleCallDate) {
     // one memory map storage per module call to reduce number of files and connect related feature lists
-    MemoryMapStorage storage = MemoryMapStorage.forFeatureList();
+    MemoryMapStorage storage = createStorage();
 
     FeatureList[] peakLists = parameters.getParameter(GeneralResolverParameters.PEAK_LISTS)
         .getValue().getMatchingFeatureLists();
     for (final FeatureList peakList : peakLists) {
-      tasks.add(new FeatureResolverTask(project, storage, peakList, parameters,
-          FeatureDataUtils.DEFAULT_CENTER_FUNCTION, moduleCallDate));
+      tasks.add(createTask(project, parameters, moduleCallDate, storage, peakList));
     }
 
     return ExitCode.OK;
   }
+
+  @Override
+  public @Nullable MemoryMapStorage createStorage() {
+    return MemoryMapStorage.forFeatureList();
+  }
+
+  @Override
+  public @NotNull Task createTask(@NotNull MZmineProject project, @NotNull ParameterSet parameters,
+      @NotNull Instant moduleCallDate, @Nullable MemoryMapStorage storage,
+      @NotNull FeatureList featureList) {
+    return new FeatureResolverTask(project, storage, featureList, parameters,
+        FeatureDataUtils.DEFAULT_CENTER_FUNCTION, moduleCallDate);
+  }
 }
@@ -36,6 +36,7 @@ import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
@@ -67,7 +68,9 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class FeatureResolverTask extends AbstractTask {
 
@@ -87,6 +90,9 @@ public class FeatureResolverTask extends AbstractTask {
         ;
       }).collect(Collectors.toSet());
 
+  // number of rows resolved with one data access and resolver in parallel
+  private static final int ROWS_PER_CHUNK = 512;
+
   // Feature lists.
   private final MZmineProject project;
   private final FeatureList originalPeakList;
@@ -94,6 +100,8 @@ public class FeatureResolverTask extends AbstractTask {
   private final ParameterSet parameters;
   // function to find center mz of all feature data points
   private final CenterFunction mzCenterFunction;
+  // feature lists with more rows than one chunk are resolved in parallel chunks if true
+  private final boolean parallelChunks;
   private FeatureList newPeakList;
   // Counters.
   private int processedRows;
@@ -114,6 +122,15 @@ public class FeatureResolverTask extends AbstractTask {
   public FeatureResolverTask(final MZmineProject project, MemoryMapStorage storage,
       final FeatureList list, final ParameterSet parameterSet, CenterFunction mzCenterFunction,
       @NotNull Instant moduleCallDate) {
+    this(project, storage, list, parameterSet, mzCenterFunction, moduleCallDate, true);
+  }
+
+  /**
+   * @param parallelChunks resolve the rows in parallel chunks or all rows in one sequential chunk
+   */
+  FeatureResolverTask(final MZmineProject project, MemoryMapStorage storage,
+      final FeatureList list, final ParameterSet parameterSet, CenterFunction mzCenterFunction,
+      @NotNull Instant moduleCallDate, boolean parallelChunks) {
     super(storage, moduleCallDate);
 
     // Initialize.
@@ -124,6 +141,7 @@ public class FeatureResolverTask extends AbstractTask {
     processedRows = 0;
     totalRows = 0;
     this.mzCenterFunction = mzCenterFunction;
+    this.parallelChunks = parallelChunks;
   }
 
   @Override
@@ -163,6 +181,9 @@ public class FeatureResolverTask extends AbstractTask {
               (ModularFeatureList) originalPeakList) != null) {
             dimensionIndependentResolve((ModularFeatureList) originalPeakList);
           }
+          if (isCanceled()) {
+            return;
+          }
           // resolving finished
 
           // sort and reset IDs here to ahve the same sorting for every feature list
@@ -213,41 +234,55 @@ public class FeatureResolverTask extends AbstractTask {
       return;
     }
 
-    final RawDataFile dataFile = originalFeatureList.getRawDataFile(0);
     final ModularFeatureList resolvedFeatureList = createNewFeatureList(originalFeatureList);
 
-    final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
-        EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile);
-
+    final List<FeatureListRow> rows = List.copyOf(originalFeatureList.getRows());
     processedRows = 0;
-    totalRows = originalFeatureList.getNumberOfRows();
+    totalRows = rows.size();
     int peakId = 1;
 
     int c = 0;
 
-    while (access.hasNextFeature()) {
-      final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
-      final List<IonTimeSeries<? extends Scan>> resolvedSeries = resolver.resolve(access,
-          getMemoryMapStorage());
-
-      for (IonTimeSeries<? extends Scan> resolved : resolvedSeries) {
-        final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
-            peakId++);
-        final ModularFeature f = new ModularFeature(resolvedFeatureList,
-            originalFeature.getRawDataFile(), originalFeature.getFeatureStatus());
-        DataTypeUtils.copyAllBut(originalFeature, f, featureCopyExcludedTypes);
-
-        f.set(FeatureDataType.class, resolved);
-        FeatureDataUtils.recalculateIonSeriesDependingTypes(f);
+    // chunks of consecutive rows are resolved in parallel, each with its own data access and
+    // resolver, as both hold buffers. Rows are created in the original row order afterwards so that
+    // IDs are the same as for sequential resolving
+    final int rowsPerChunk = parallelChunks ? ROWS_PER_CHUNK : Math.max(1, rows.size());
+    final int numChunks = (rows.size() + rowsPerChunk - 1) / rowsPerChunk;
+    final int chunksPerStep = Runtime.getRuntime().availableProcessors();
+
+    for (int firstChunk = 0; firstChunk < numChunks; firstChunk += chunksPerStep) {
+      final List<List<ResolvedFeature>> resolvedChunks = IntStream.range(firstChunk,
+              Math.min(firstChunk + chunksPerStep, numChunks)).parallel()
+          .mapToObj(chunk -> resolveChunk(originalFeatureList, rows.subList(chunk * rowsPerChunk,
+              Math.min((chunk + 1) * rowsPerChunk, rows.size())), chunk == 0 ? resolver : null))
+          .toList();
+
+      for (List<ResolvedFeature> chunk : resolvedChunks) {
+        if (isCanceled()) {
+          return;
+        }
+        for (ResolvedFeature resolvedFeature : chunk) {
+          final ModularFeature originalFeature = resolvedFeature.original();
+          for (IonTimeSeries<? extends Scan> resolved : resolvedFeature.resolved()) {
+            final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
+                peakId++);
+            final ModularFeature f = new ModularFeature(resolvedFeatureList,
+                originalFeature.getRawDataFile(), originalFeature.getFeatureStatus());
+            DataTypeUtils.copyAllBut(originalFeature, f, featureCopyExcludedTypes);
+
+            f.set(FeatureDataType.class, resolved);
+            FeatureDataUtils.recalculateIonSeriesDependingTypes(f);
 //        handleMrmTraces(f);
 
-        newRow.addFeature(originalFeature.getRawDataFile(), f);
-        resolvedFeatureList.addRow(newRow);
-        if (resolved.getSpectra().size() <= 3) {
-          c++;
+            newRow.addFeature(originalFeature.getRawDataFile(), f);
+            resolvedFeatureList.addRow(newRow);
+            if (resolved.getSpectra().size() <= 3) {
+              c++;
+            }
+          }
+          processedRows++;
         }
       }
-      processedRows++;
     }
     logger.info(c + "/" + resolvedFeatureList.getNumberOfRows()
         + " have less than 4 scans (frames for IMS data)");
@@ -260,6 +295,34 @@ public class FeatureResolverTask extends AbstractTask {
     newPeakList = resolvedFeatureList;
   }
 
+  /**
+   * Resolves all features of a chunk of rows with its own data access.
+   *
+   * @param resolver the resolver or null to create a new one. Resolvers hold buffers and are not
+   *                 thread safe, so every chunk that runs in parallel needs its own instance.
+   * @return the resolved series of each feature in the order of the rows. Empty if the task was
+   * canceled.
+   */
+  private List<ResolvedFeature> resolveChunk(ModularFeatureList originalFeatureList,
+      List<FeatureListRow> rows, @Nullable Resolver resolver) {
+    final Resolver chunkResolver = resolver != null ? resolver
+        : ((GeneralResolverParameters) parameters).getResolver(parameters, originalFeatureList);
+    final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
+        EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, originalFeatureList.getRawDataFile(0),
+        rows);
+
+    final List<ResolvedFeature> resolvedFeatures = new ArrayList<>(rows.size());
+    while (access.hasNextFeature()) {
+      if (isCanceled()) {
+        return List.of();
+      }
+      final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
+      resolvedFeatures.add(new ResolvedFeature(originalFeature,
+          chunkResolver.resolve(access, getMemoryMapStorage())));
+    }
+    return resolvedFeatures;
+  }
+
   /**
    * Currently unused. Only the main trace in the {@link FeatureDataType} is resolved, so
    * reintegration is possible later from the {@link MrmTransitionList} without having to re-process
@@ -336,4 +399,12 @@ public class FeatureResolverTask extends AbstractTask {
 
     return resolvedFeatureList;
   }
+
+  /**
+   * The resolved series of an original feature
+   */
+  private record ResolvedFeature(ModularFeature original,
+                                 List<IonTimeSeries<? extends Scan>> resolved) {
+
+  }
 }
@@ -111,7 +111,7 @@ public class MinimumSearchFeatureResolverParameters extends GeneralResolverParam
     return IonMobilitySupport.SUPPORTED;
   }
 
-  private enum Setup {
+  public enum Setup {
     FULL, INTEGRATED;
   }
 }
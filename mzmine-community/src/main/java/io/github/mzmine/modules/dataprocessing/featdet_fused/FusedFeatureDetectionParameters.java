@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_fused;
+
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.minimumsearch.MinimumSearchFeatureResolverParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.SmoothingParameters;
+import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2SubParameters;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.impl.IonMobilitySupport;
+import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.DoubleParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.StringParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelectionParameter;
+import io.github.mzmine.parameters.parametertypes.submodules.OptionalModuleParameter;
+import io.github.mzmine.parameters.parametertypes.submodules.ParameterSetParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZToleranceParameter;
+import io.github.mzmine.parameters.parametertypes.tolerances.ToleranceType;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The chromatogram builder parameters are named like the
+ * {@link io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ADAPChromatogramBuilderParameters}.
+ */
+public class FusedFeatureDetectionParameters extends SimpleParameterSet {
+
+  public static final RawDataFilesParameter dataFiles = new RawDataFilesParameter();
+
+  public static final ScanSelectionParameter scanSelection = new ScanSelectionParameter(
+      new ScanSelection(1));
+
+  public static final IntegerParameter minimumConsecutiveScans = new IntegerParameter(
+      "Minimum consecutive scans",
+      "This number of scans needs to be above the specified 'Minimum intensity for consecutive scans' to detect EICs.",
+      5, true, 1, null);
+
+  public static final DoubleParameter minGroupIntensity = new DoubleParameter(
+      "Minimum intensity for consecutive scans",
+      "This threshold is only used to find consecutive scans (data points) above a certain intensity.",
+      MZmineCore.getConfiguration().getIntensityFormat(), 0d);
+
+  public static final DoubleParameter minHighestPoint = new DoubleParameter(
+      "Minimum absolute height",
+      "Points below this intensity will not be considered in starting a new chromatogram",
+      MZmineCore.getConfiguration().getIntensityFormat());
+
+  public static final MZToleranceParameter mzTolerance = new MZToleranceParameter(
+      ToleranceType.SCAN_TO_SCAN, 0.002, 10);
+
+  public static final OptionalModuleParameter<SmoothingParameters> smoothing = new OptionalModuleParameter<>(
+      "Smoothing", "Smooth each chromatogram before resolving.",
+      new SmoothingParameters(SmoothingParameters.Setup.INTEGRATED), true);
+
+  public static final ParameterSetParameter<MinimumSearchFeatureResolverParameters> resolver = new ParameterSetParameter<>(
+      "Local minimum resolver", "Resolves each chromatogram into features.",
+      new MinimumSearchFeatureResolverParameters(
+          MinimumSearchFeatureResolverParameters.Setup.INTEGRATED));
+
+  public static final OptionalModuleParameter<GroupMS2SubParameters> groupMS2Parameters = new OptionalModuleParameter<>(
+      "MS/MS scan pairing", "Set MS/MS scan pairing parameters.", new GroupMS2SubParameters(),
+      true);
+
+  public static final StringParameter suffix = new StringParameter("Suffix",
+      "This string is added to filename as suffix", "resolved");
+
+  public FusedFeatureDetectionParameters() {
+    super(new Parameter[]{dataFiles, scanSelection, minimumConsecutiveScans, minGroupIntensity,
+        minHighestPoint, mzTolerance, smoothing, resolver, groupMS2Parameters, suffix});
+  }
+
+  @NotNull
+  @Override
+  public IonMobilitySupport getIonMobilitySupport() {
+    return IonMobilitySupport.UNSUPPORTED;
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_fused;
+
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
+import io.github.mzmine.datamodel.data_access.FeatureDataAccess;
+import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.PrimitiveADAPChromatogramBuilder;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.GeneralResolverParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.Resolver;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.ResolvingDimension;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.minimumsearch.MinimumSearchFeatureResolverParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.FeatureSmoothingOptions;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.SmoothingAlgorithm;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.SmoothingParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.ZeroHandlingType;
+import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2Processor;
+import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2SubParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.ParameterUtils;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.DataTypeUtils;
+import io.github.mzmine.util.FeatureListUtils;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.exceptions.MissingMassListException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Builds the ADAP chromatograms of one raw data file and smooths and resolves them in chunks as
+ * soon as the chromatogram builder completes them. The chromatograms and smoothed chromatograms
+ * are only kept in memory for the current chunk and never written to the
+ * {@link MemoryMapStorage}. Only the resolved feature list is stored and added to the project.
+ */
+public class FusedFeatureDetectionTask extends AbstractTask {
+
+  private static final Logger logger = Logger.getLogger(FusedFeatureDetectionTask.class.getName());
+
+  // number of chromatograms that are smoothed and resolved with one data access
+  private static final int CHROMATOGRAMS_PER_CHUNK = 512;
+
+  private final MZmineProject project;
+  private final RawDataFile dataFile;
+  private final ParameterSet parameters;
+  private final ScanSelection scanSelection;
+  private final MZTolerance mzTolerance;
+  private final String suffix;
+
+  private final List<FeatureListRow> chunk = new ArrayList<>(CHROMATOGRAMS_PER_CHUNK);
+  private PrimitiveADAPChromatogramBuilder builder;
+  private GroupMS2Processor groupMS2Task;
+  // in memory list of the current chunk of chromatograms, never added to the project
+  private ModularFeatureList chromatogramList;
+  private ModularFeatureList resolvedFeatureList;
+  private SmoothingAlgorithm smoother;
+  private Resolver resolver;
+  private int chromatogramId = 1;
+  private int resolvedId = 1;
+  private int numChromatograms = 0;
+
+  public FusedFeatureDetectionTask(MZmineProject project, RawDataFile dataFile,
+      ParameterSet parameters, @Nullable MemoryMapStorage storage,
+      @NotNull Instant moduleCallDate) {
+    super(storage, moduleCallDate);
+    this.project = project;
+    this.dataFile = dataFile;
+    this.parameters = parameters;
+    scanSelection = parameters.getValue(FusedFeatureDetectionParameters.scanSelection);
+    mzTolerance = parameters.getValue(FusedFeatureDetectionParameters.mzTolerance);
+    suffix = parameters.getValue(FusedFeatureDetectionParameters.suffix);
+  }
+
+  @Override
+  public String getTaskDescription() {
+    if (groupMS2Task != null) {
+      return groupMS2Task.getTaskDescription();
+    }
+    return "Detecting and resolving chromatograms in " + dataFile;
+  }
+
+  @Override
+  public double getFinishedPercentage() {
+    if (groupMS2Task != null) {
+      return groupMS2Task.getFinishedPercentage();
+    }
+    return builder == null ? 0d : builder.getFinishedPercentage();
+  }
+
+  @Override
+  public void run() {
+    setStatus(TaskStatus.PROCESSING);
+    logger.info(() -> "Started fused feature detection on " + dataFile);
+
+    final Scan[] scans = scanSelection.getMatchingScans(dataFile);
+    if (scans.length == 0) {
+      error("""
+          There are no scans in file "%s" satisfying scan filters. Consider updating filters
+          with "Show" on the "Scan filters" parameter. Filter was: %s""".formatted(
+          dataFile.getName(), scanSelection.toShortDescription()));
+      return;
+    }
+
+    float prevRT = Float.NEGATIVE_INFINITY;
+    for (Scan s : scans) {
+      if (s.isEmptyScan()) {
+        continue;
+      }
+      if (s.getRetentionTime() < prevRT) {
+        error("Retention time of scan #" + s.getScanNumber() + " in file " + dataFile.getName()
+              + " is smaller then the retention time of the previous scan."
+              + " Please make sure you only use scans with increasing retention times.");
+        return;
+      }
+      prevRT = s.getRetentionTime();
+    }
+
+    try {
+      final int totalDps = Arrays.stream(scans).map(s -> {
+        if (s.getMassList() == null) {
+          throw new MissingMassListException(s);
+        }
+        return s.getMassList();
+      }).mapToInt(MassSpectrum::getNumberOfDataPoints).sum();
+
+      chromatogramList = new ModularFeatureList(dataFile + " chromatograms", null, dataFile);
+      chromatogramList.setSelectedScans(dataFile, Arrays.asList(scans));
+
+      resolvedFeatureList = new ModularFeatureList(dataFile + " " + suffix, getMemoryMapStorage(),
+          dataFile);
+      DataTypeUtils.addDefaultChromatographicTypeColumns(resolvedFeatureList);
+      resolvedFeatureList.setSelectedScans(dataFile, Arrays.asList(scans));
+
+      final SmoothingParameters smoothingParameters = parameters.getEmbeddedParametersIfSelectedOrElse(
+          FusedFeatureDetectionParameters.smoothing, null);
+      smoother =
+          smoothingParameters != null ? FeatureSmoothingOptions.createSmoother(smoothingParameters)
+              : null;
+      resolver = createResolver();
+
+      // chromatograms are created in memory (without storage) and processed in chunks.
+      // Same as the chromatogram builder, min total scans equals min consecutive scans
+      builder = new PrimitiveADAPChromatogramBuilder(this, dataFile, scans, scanSelection, totalDps,
+          mzTolerance, parameters.getValue(FusedFeatureDetectionParameters.minHighestPoint),
+          parameters.getValue(FusedFeatureDetectionParameters.minGroupIntensity),
+          parameters.getValue(FusedFeatureDetectionParameters.minimumConsecutiveScans),
+          parameters.getValue(FusedFeatureDetectionParameters.minimumConsecutiveScans), true,
+          null);
+      if (!builder.build(this::addChromatogram) || isCanceled()) {
+        return;
+      }
+      processChunk();
+
+      logger.info("Resolved %d chromatograms into %d features in %s".formatted(numChromatograms,
+          resolvedFeatureList.getNumberOfRows(), dataFile.getName()));
+
+      // sort and reset IDs here to have the same sorting for every feature list
+      FeatureListUtils.sortByDefaultRT(resolvedFeatureList, true);
+
+      final GroupMS2SubParameters ms2params = parameters.getEmbeddedParametersIfSelectedOrElse(
+          FusedFeatureDetectionParameters.groupMS2Parameters, null);
+      if (ms2params != null) {
+        groupMS2Task = new GroupMS2Processor(this, resolvedFeatureList, ms2params);
+        groupMS2Task.process();
+      }
+      if (isCanceled()) {
+        return;
+      }
+
+      dataFile.getAppliedMethods().forEach(m -> resolvedFeatureList.getAppliedMethods().add(m));
+      resolvedFeatureList.getAppliedMethods().add(
+          new SimpleFeatureListAppliedMethod(FusedFeatureDetectionModule.class, parameters,
+              getModuleCallDate()));
+      project.addFeatureList(resolvedFeatureList);
+    } catch (MissingMassListException e) {
+      error(e.getMessage() + " in " + dataFile.getName()
+            + ". Please run \"Raw data methods\" -> \"Mass detection\"");
+      return;
+    } catch (Exception e) {
+      error("Fused feature detection error: " + e.getMessage(), e);
+      return;
+    }
+
+    setStatus(TaskStatus.FINISHED);
+    logger.info(() -> "Finished fused feature detection on " + dataFile);
+  }
+
+  /**
+   * The resolver needs the full resolver parameters, so the integrated parameters are copied to a
+   * new parameter set. Only resolving in retention time is supported.
+   */
+  private Resolver createResolver() {
+    final var resolverParameters = (MinimumSearchFeatureResolverParameters) new MinimumSearchFeatureResolverParameters()
+        .cloneParameterSet();
+    ParameterUtils.copyParameters(parameters.getValue(FusedFeatureDetectionParameters.resolver),
+        resolverParameters);
+    resolverParameters.setParameter(GeneralResolverParameters.dimension,
+        ResolvingDimension.RETENTION_TIME);
+    resolverParameters.setParameter(GeneralResolverParameters.groupMS2Parameters, false);
+    return resolverParameters.getResolver(resolverParameters, chromatogramList);
+  }
+
+  /**
+   * Called by the chromatogram builder for every finished chromatogram
+   */
+  private void addChromatogram(SimpleIonTimeSeries chromatogram) {
+    final ModularFeature feature = new ModularFeature(chromatogramList, dataFile, chromatogram,
+        FeatureStatus.DETECTED);
+    chunk.add(new ModularFeatureListRow(chromatogramList, chromatogramId++, feature));
+    numChromatograms++;
+    if (chunk.size() >= CHROMATOGRAMS_PER_CHUNK) {
+      processChunk();
+    }
+  }
+
+  /**
+   * Smooths and resolves the current chunk of chromatograms. Only the resolved features are
+   * written to the storage.
+   */
+  private void processChunk() {
+    if (chunk.isEmpty() || isCanceled()) {
+      chunk.clear();
+      return;
+    }
+
+    if (smoother != null) {
+      final FeatureDataAccess access = EfficientDataAccess.of(chromatogramList,
+          EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile, chunk);
+      while (access.hasNextFeature()) {
+        final ModularFeature feature = (ModularFeature) access.nextFeature();
+        final IonTimeSeries<? extends Scan> smoothed = smoother.smoothFeature(null, access,
+            feature, ZeroHandlingType.KEEP);
+        feature.set(FeatureDataType.class, smoothed);
+        FeatureDataUtils.recalculateIonSeriesDependingTypes(feature);
+      }
+    }
+
+    final FeatureDataAccess access = EfficientDataAccess.of(chromatogramList,
+        EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile, chunk);
+    while (access.hasNextFeature()) {
+      access.nextFeature();
+      final List<IonTimeSeries<? extends Scan>> resolvedSeries = resolver.resolve(access,
+          getMemoryMapStorage());
+      for (IonTimeSeries<? extends Scan> resolved : resolvedSeries) {
+        final ModularFeature f = new ModularFeature(resolvedFeatureList, dataFile, resolved,
+            FeatureStatus.DETECTED);
+        resolvedFeatureList.addRow(
+            new ModularFeatureListRow(resolvedFeatureList, resolvedId++, f));
+      }
+    }
+    chunk.clear();
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Thread local scratch lists for mass detectors. Detected masses are collected in lists that are
+ * reused for every scan of a thread and only copied to right sized result arrays in
+ * {@link #toMassValues()}. Detectors call {@link #get()} at the start of a scan and must not call
+ * another detector before the result was created.
+ */
+public final class MassDetectionBuffer {
+
+  private static final int INITIAL_CAPACITY = 1024;
+  /**
+   * larger lists are trimmed on reuse so that single huge spectra do not pin memory in pool threads
+   */
+  private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+  private static final ThreadLocal<MassDetectionBuffer> buffers = ThreadLocal.withInitial(
+      MassDetectionBuffer::new);
+
+  private final DoubleArrayList mzs = new DoubleArrayList(INITIAL_CAPACITY);
+  private final DoubleArrayList intensities = new DoubleArrayList(INITIAL_CAPACITY);
+  private final IntArrayList indices = new IntArrayList(64);
+
+  private MassDetectionBuffer() {
+  }
+
+  /**
+   * @return the cleared buffer of the current thread
+   */
+  public static @NotNull MassDetectionBuffer get() {
+    final MassDetectionBuffer buffer = buffers.get();
+    buffer.clear();
+    return buffer;
+  }
+
+  private void clear() {
+    mzs.clear();
+    intensities.clear();
+    indices.clear();
+    if (mzs.elements().length > MAX_RETAINED_CAPACITY) {
+      mzs.trim(INITIAL_CAPACITY);
+      intensities.trim(INITIAL_CAPACITY);
+    }
+  }
+
+  public void add(double mz, double intensity) {
+    mzs.add(mz);
+    intensities.add(intensity);
+  }
+
+  /**
+   * @return scratch list for data point indices, e.g., of the current m/z peak
+   */
+  public @NotNull IntArrayList indices() {
+    return indices;
+  }
+
+  /**
+   * @return [mzs, intensities] copied to new arrays
+   */
+  public double[][] toMassValues() {
+    return new double[][]{mzs.toDoubleArray(), intensities.toDoubleArray()};
+  }
+}
@@ -28,7 +28,7 @@ package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.modules.MZmineModuleCategory;
-import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.impl.RawDataFileTaskModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.util.ExitCode;
@@ -36,8 +36,9 @@ import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import java.util.Collection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-public class MassDetectionModule implements MZmineProcessingModule {
+public class MassDetectionModule implements RawDataFileTaskModule {
 
   private static final String MODULE_NAME = "Mass detection";
   private static final String MODULE_DESCRIPTION =
@@ -63,16 +64,28 @@ public class MassDetectionModule implements MZmineProcessingModule {
 
     // create a single storage map for all mass lists that were created with the same parameters
     // i.e., in the same mass detection run
-    final MemoryMapStorage storageMemoryMap = MemoryMapStorage.forMassList();
+    final MemoryMapStorage storageMemoryMap = createStorage();
 
     for (RawDataFile dataFile : dataFiles) {
-      Task newTask = new MassDetectionTask(dataFile, parameters, storageMemoryMap, moduleCallDate);
+      Task newTask = createTask(project, parameters, moduleCallDate, storageMemoryMap, dataFile);
       tasks.add(newTask);
     }
 
     return ExitCode.OK;
   }
 
+  @Override
+  public @Nullable MemoryMapStorage createStorage() {
+    return MemoryMapStorage.forMassList();
+  }
+
+  @Override
+  public @NotNull Task createTask(@NotNull MZmineProject project, @NotNull ParameterSet parameters,
+      @NotNull Instant moduleCallDate, @Nullable MemoryMapStorage storage,
+      @NotNull RawDataFile raw) {
+    return new MassDetectionTask(raw, parameters, storage, moduleCallDate);
+  }
+
   @Override
   public @NotNull MZmineModuleCategory getModuleCategory() {
     return MZmineModuleCategory.RAWDATA;
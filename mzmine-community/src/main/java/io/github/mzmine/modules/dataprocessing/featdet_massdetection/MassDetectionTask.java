@@ -25,6 +25,7 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
 
+import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
@@ -39,13 +40,23 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.scans.ScanUtils;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class MassDetectionTask extends AbstractTask {
 
   private static final Logger logger = Logger.getLogger(MassDetectionTask.class.getName());
+  private static final int SCANS_PER_SHARD = 64;
+  /**
+   * frames carry the mass lists of all their mobility scans, keep fewer of them in flight
+   */
+  private static final int SCANS_PER_SHARD_IMS = 16;
   private final RawDataFile dataFile;
   private final ScanSelection scanSelection;
   private final SelectedScanTypes scanTypes;
@@ -93,47 +104,32 @@ public class MassDetectionTask extends AbstractTask {
 
       logger.info("Started mass detector on " + dataFile);
 
-      // uses only a single array for each (mz and intensity) to loop over all scans
-      ScanDataAccess data = EfficientDataAccess.of(dataFile, EfficientDataAccess.ScanDataType.RAW,
-          scanSelection);
-      totalScans = data.getNumberOfScans();
-
-      // all scans
-      while (data.hasNextScan()) {
-        if (isCanceled()) {
-          return;
-        }
-
-        Scan scan = data.nextScan();
-        assert scan != null;
-
-        double[][] mzPeaks;
-        if (scanTypes.applyTo(scan)) {
-          // run mass detection on data object
-          // [mzs, intensities]
-          mzPeaks = detector.getMassValues(data);
-
-          // denormalize scan intensities if injection time of trapped instrument was used.
-          // this is only done for MS2 because absolute intensities do not matter there
-          // MS1 needs to be normalized by injection time, which is already done during data acquisition
-          if (denormalizeMSnScans && scan.getMSLevel() > 1) {
-            ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzPeaks[1],
-                scan.getInjectionTime());
+      final Scan[] scans = scanSelection.getMatchingScans(dataFile);
+      totalScans = scans.length;
+
+      // shards of consecutive scans are detected in parallel, each with its own data access that
+      // uses only a single array for each (mz and intensity) to loop over its scans.
+      // Mass lists are added in scan order so that the storage is filled sequentially
+      final int scansPerShard =
+          dataFile instanceof IMSRawDataFile ? SCANS_PER_SHARD_IMS : SCANS_PER_SHARD;
+      final int numShards = (scans.length + scansPerShard - 1) / scansPerShard;
+      final int shardsPerStep = Runtime.getRuntime().availableProcessors();
+
+      for (int firstShard = 0; firstShard < numShards; firstShard += shardsPerStep) {
+        final List<List<DetectedMasses>> detected = IntStream.range(firstShard,
+                Math.min(firstShard + shardsPerStep, numShards)).parallel()
+            .mapToObj(shard -> detectShard(scans, shard * scansPerShard,
+                Math.min((shard + 1) * scansPerShard, scans.length))).toList();
+
+        for (List<DetectedMasses> shard : detected) {
+          if (isCanceled()) {
+            return;
+          }
+          for (DetectedMasses masses : shard) {
+            addMassLists(masses);
+            processedScans++;
           }
-
-          // add mass list to scans and frames
-          scan.addMassList(new SimpleMassList(getMemoryMapStorage(), mzPeaks[0], mzPeaks[1]));
-        }
-
-        if (scan instanceof SimpleFrame frame && (scanTypes == SelectedScanTypes.MOBLITY_SCANS
-                                                  || scanTypes == SelectedScanTypes.SCANS)) {
-          // for ion mobility, detect subscans, too
-          frame.getMobilityScanStorage()
-              .generateAndAddMobilityScanMassLists(getMemoryMapStorage(), detector,
-                  denormalizeMSnScans);
         }
-
-        processedScans++;
       }
 
       dataFile.getAppliedMethods().add(
@@ -150,4 +146,82 @@ public class MassDetectionTask extends AbstractTask {
 
     logger.info("Finished mass detector on " + dataFile);
   }
+
+  /**
+   * Detects the masses of scans [start, end). Thread safe as long as the detector is.
+   *
+   * @return the detected masses in scan order or an empty list if the task was canceled
+   */
+  private List<DetectedMasses> detectShard(Scan[] scans, int start, int end) {
+    final ScanDataAccess data = EfficientDataAccess.of(dataFile,
+        EfficientDataAccess.ScanDataType.RAW, Arrays.asList(scans).subList(start, end));
+    final List<DetectedMasses> result = new ArrayList<>(end - start);
+
+    while (data.hasNextScan()) {
+      if (isCanceled()) {
+        return List.of();
+      }
+
+      Scan scan = data.nextScan();
+      assert scan != null;
+
+      double[][] mzPeaks = null;
+      if (scanTypes.applyTo(scan)) {
+        // run mass detection on data object
+        // [mzs, intensities]
+        mzPeaks = detector.getMassValues(data);
+
+        // denormalize scan intensities if injection time of trapped instrument was used.
+        // this is only done for MS2 because absolute intensities do not matter there
+        // MS1 needs to be normalized by injection time, which is already done during data acquisition
+        if (denormalizeMSnScans && scan.getMSLevel() > 1) {
+          ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzPeaks[1],
+              scan.getInjectionTime());
+        }
+      }
+
+      List<double[][]> mobilityScanPeaks = null;
+      if (scan instanceof SimpleFrame frame && detector.filtersActive() && detectMobilityScans()) {
+        // for ion mobility, detect subscans, too
+        mobilityScanPeaks = frame.getMobilityScanStorage()
+            .detectMobilityScanMassLists(detector, denormalizeMSnScans);
+      }
+
+      result.add(new DetectedMasses(scan, mzPeaks, mobilityScanPeaks));
+    }
+    return result;
+  }
+
+  private void addMassLists(DetectedMasses masses) {
+    final Scan scan = masses.scan();
+    if (masses.mzPeaks() != null) {
+      // add mass list to scans and frames
+      scan.addMassList(
+          new SimpleMassList(getMemoryMapStorage(), masses.mzPeaks()[0], masses.mzPeaks()[1]));
+    }
+
+    if (scan instanceof SimpleFrame frame && detectMobilityScans()) {
+      if (masses.mobilityScanPeaks() != null) {
+        frame.getMobilityScanStorage()
+            .setMassLists(getMemoryMapStorage(), masses.mobilityScanPeaks());
+      } else {
+        // no need to run mass detection in this case.
+        frame.getMobilityScanStorage().useRawDataAsMassLists();
+      }
+    }
+  }
+
+  private boolean detectMobilityScans() {
+    return scanTypes == SelectedScanTypes.MOBLITY_SCANS || scanTypes == SelectedScanTypes.SCANS;
+  }
+
+  /**
+   * @param mzPeaks           [mzs, intensities] or null if the scan type was not selected
+   * @param mobilityScanPeaks detected masses of all mobility scans or null if the raw data is used
+   *                          or the scan is no frame
+   */
+  private record DetectedMasses(@NotNull Scan scan, double @Nullable [][] mzPeaks,
+                                @Nullable List<double[][]> mobilityScanPeaks) {
+
+  }
 }
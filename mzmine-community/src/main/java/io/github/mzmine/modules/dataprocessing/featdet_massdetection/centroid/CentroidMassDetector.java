@@ -27,9 +27,9 @@ package io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid;
 
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -53,22 +53,19 @@ public class CentroidMassDetector implements MassDetector {
   public static double[][] getMassValues(double[] mzs, double[] intensities, double noiseLevel) {
     assert mzs.length == intensities.length;
 
-    // use number of centroid signals as base array list capacity
     final int points = mzs.length;
-    // lists of primitive doubles
-    DoubleArrayList pickedMZs = new DoubleArrayList(points);
-    DoubleArrayList pickedIntensities = new DoubleArrayList(points);
+    // thread local lists of primitive doubles
+    final MassDetectionBuffer picked = MassDetectionBuffer.get();
 
     // Find possible mzPeaks
     for (int i = 0; i < points; i++) {
       // Is intensity above the noise level?
       if (intensities[i] >= noiseLevel) {
         // Yes, then mark this index as mzPeak
-        pickedMZs.add(mzs[i]);
-        pickedIntensities.add(intensities[i]);
+        picked.add(mzs[i], intensities[i]);
       }
     }
-    return new double[][]{pickedMZs.toDoubleArray(), pickedIntensities.toDoubleArray()};
+    return picked.toMassValues();
   }
 
   @Override
@@ -92,11 +89,9 @@ public class CentroidMassDetector implements MassDetector {
   @Override
   public double[][] getMassValues(MassSpectrum spectrum) {
 
-    // use number of centroid signals as base array list capacity
     final int points = spectrum.getNumberOfDataPoints();
-    // lists of primitive doubles
-    DoubleArrayList mzs = new DoubleArrayList(points);
-    DoubleArrayList intensities = new DoubleArrayList(points);
+    // thread local lists of primitive doubles
+    final MassDetectionBuffer picked = MassDetectionBuffer.get();
 
     // Find possible mzPeaks
     for (int i = 0; i < points; i++) {
@@ -105,11 +100,10 @@ public class CentroidMassDetector implements MassDetector {
       double mz = spectrum.getMzValue(i);
       if (intensity >= noiseLevel) {
         // Yes, then mark this index as mzPeak
-        mzs.add(mz);
-        intensities.add(intensity);
+        picked.add(mz, intensity);
       }
     }
-    return new double[][]{mzs.toDoubleArray(), intensities.toDoubleArray()};
+    return picked.toMassValues();
   }
 
   @Override
@@ -28,11 +28,10 @@ package io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass;
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.impl.SimpleMassSpectrum;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
-import java.util.ArrayList;
-import java.util.List;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.jetbrains.annotations.NotNull;
 
 public class ExactMassDetector implements MassDetector {
@@ -58,13 +57,12 @@ public class ExactMassDetector implements MassDetector {
   }
   @NotNull
   public static double[][] getMassValues(MassSpectrum spectrum, double noiseLevel) {
-    // lists of primitive doubles
-    DoubleArrayList mzs = new DoubleArrayList(128);
-    DoubleArrayList intensities = new DoubleArrayList(128);
+    // thread local lists of primitive doubles
+    final MassDetectionBuffer picked = MassDetectionBuffer.get();
 
     // First get all candidate peaks (local maximum)
     int localMaximumIndex = 0;
-    ArrayList<Integer> rangeDataPoints = new ArrayList<>();
+    final IntArrayList rangeDataPoints = picked.indices();
 
     boolean ascending = true;
 
@@ -101,8 +99,7 @@ public class ExactMassDetector implements MassDetector {
         // Add the m/z peak if it is above the noise level or m/z value corresponds to isotope mass
         if (spectrum.getIntensityValue(localMaximumIndex) > noiseLevel) {
           // Add data point to lists
-          mzs.add(exactMz);
-          intensities.add(spectrum.getIntensityValue(localMaximumIndex));
+          picked.add(exactMz, spectrum.getIntensityValue(localMaximumIndex));
         }
 
         // Reset and start with new peak
@@ -112,7 +109,7 @@ public class ExactMassDetector implements MassDetector {
     }
 
     // Return an array of detected MzPeaks sorted by MZ
-    return new double[][]{mzs.toDoubleArray(), intensities.toDoubleArray()};
+    return picked.toMassValues();
   }
 
   @Override
@@ -144,7 +141,7 @@ public class ExactMassDetector implements MassDetector {
    * @return double
    */
   private static double calculateExactMass(MassSpectrum spectrum, int topIndex,
-      List<Integer> rangeDataPoints) {
+      IntArrayList rangeDataPoints) {
 
     /*
      * According with the FWHM concept, the exact mass of this peak is the half point of FWHM. In
@@ -164,19 +161,19 @@ public class ExactMassDetector implements MassDetector {
     for (int i = 0; i < rangeDataPoints.size() - 1; i++) {
 
       // Left side of the curve
-      if ((spectrum.getIntensityValue(rangeDataPoints.get(i)) <= halfIntensity) && (
-          spectrum.getMzValue(rangeDataPoints.get(i)) < spectrum.getMzValue(topIndex)) && (
-          spectrum.getIntensityValue(rangeDataPoints.get(i + 1)) >= halfIntensity)) {
+      if ((spectrum.getIntensityValue(rangeDataPoints.getInt(i)) <= halfIntensity) && (
+          spectrum.getMzValue(rangeDataPoints.getInt(i)) < spectrum.getMzValue(topIndex)) && (
+          spectrum.getIntensityValue(rangeDataPoints.getInt(i + 1)) >= halfIntensity)) {
 
         // First point with intensity just less than half of total
         // intensity
-        double leftY1 = spectrum.getIntensityValue(rangeDataPoints.get(i));
-        double leftX1 = spectrum.getMzValue(rangeDataPoints.get(i));
+        double leftY1 = spectrum.getIntensityValue(rangeDataPoints.getInt(i));
+        double leftX1 = spectrum.getMzValue(rangeDataPoints.getInt(i));
 
         // Second point with intensity just bigger than half of total
         // intensity
-        double leftY2 = spectrum.getIntensityValue(rangeDataPoints.get(i + 1));
-        double leftX2 = spectrum.getMzValue(rangeDataPoints.get(i + 1));
+        double leftY2 = spectrum.getIntensityValue(rangeDataPoints.getInt(i + 1));
+        double leftX2 = spectrum.getMzValue(rangeDataPoints.getInt(i + 1));
 
         // We calculate the slope with formula m = Y1 - Y2 / X1 - X2
         double mLeft = (leftY1 - leftY2) / (leftX1 - leftX2);
@@ -196,19 +193,19 @@ public class ExactMassDetector implements MassDetector {
       }
 
       // Right side of the curve
-      if ((spectrum.getIntensityValue(rangeDataPoints.get(i)) >= halfIntensity) && (
-          spectrum.getMzValue(rangeDataPoints.get(i)) > spectrum.getMzValue(topIndex)) && (
-          spectrum.getIntensityValue(rangeDataPoints.get(i + 1)) <= halfIntensity)) {
+      if ((spectrum.getIntensityValue(rangeDataPoints.getInt(i)) >= halfIntensity) && (
+          spectrum.getMzValue(rangeDataPoints.getInt(i)) > spectrum.getMzValue(topIndex)) && (
+          spectrum.getIntensityValue(rangeDataPoints.getInt(i + 1)) <= halfIntensity)) {
 
         // First point with intensity just bigger than half of total
         // intensity
-        double rightY1 = spectrum.getIntensityValue(rangeDataPoints.get(i));
-        double rightX1 = spectrum.getMzValue(rangeDataPoints.get(i));
+        double rightY1 = spectrum.getIntensityValue(rangeDataPoints.getInt(i));
+        double rightX1 = spectrum.getMzValue(rangeDataPoints.getInt(i));
 
         // Second point with intensity just less than half of total
         // intensity
-        double rightY2 = spectrum.getIntensityValue(rangeDataPoints.get(i + 1));
-        double rightX2 = spectrum.getMzValue(rangeDataPoints.get(i + 1));
+        double rightY2 = spectrum.getIntensityValue(rangeDataPoints.getInt(i + 1));
+        double rightX2 = spectrum.getMzValue(rangeDataPoints.getInt(i + 1));
 
         // We calculate the slope with formula m = Y1 - Y2 / X1 - X2
         double mRight = (rightY1 - rightY2) / (rightX1 - rightX2);
@@ -27,10 +27,10 @@ package io.github.mzmine.modules.dataprocessing.featdet_massdetection.factor_of_
 
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetector;
 import io.github.mzmine.parameters.ParameterSet;
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -63,23 +63,20 @@ public class FactorOfLowestMassDetector implements MassDetector {
     // get the minimum intensity and base noise on this
     double noiseLevel = minIntensity(spectrum) * noiseFactor;
 
-    // use number of centroid signals as base array list capacity
     final int points = spectrum.getNumberOfDataPoints();
 
-    // lists of primitive doubles
-    DoubleArrayList mzs = new DoubleArrayList(points);
-    DoubleArrayList intensities = new DoubleArrayList(points);
+    // thread local lists of primitive doubles
+    final MassDetectionBuffer picked = MassDetectionBuffer.get();
     // Find possible mzPeaks
     for (int i = 0; i < points; i++) {
       // Is intensity above the noise level?
       double intensity = spectrum.getIntensityValue(i);
       if (intensity >= noiseLevel) {
         // add data point
-        mzs.add(spectrum.getMzValue(i));
-        intensities.add(intensity);
+        picked.add(spectrum.getMzValue(i), intensity);
       }
     }
-    return new double[][]{mzs.toDoubleArray(), intensities.toDoubleArray()};
+    return picked.toMassValues();
   }
 
   public static double[][] getMassValues(double[] mzs, double[] intensities,
@@ -94,22 +91,19 @@ public class FactorOfLowestMassDetector implements MassDetector {
     // get the minimum intensity and base noise on this
     double noiseLevel = minIntensity(intensities) * noiseFactor;
 
-    // use number of centroid signals as base array list capacity
     final int points = mzs.length;
-    // lists of primitive doubles
-    DoubleArrayList pickedMZs = new DoubleArrayList(points);
-    DoubleArrayList pickedIntensities = new DoubleArrayList(points);
+    // thread local lists of primitive doubles
+    final MassDetectionBuffer picked = MassDetectionBuffer.get();
 
     // Find possible mzPeaks
     for (int i = 0; i < points; i++) {
       // Is intensity above the noise level?
       if (intensities[i] >= noiseLevel) {
         // Yes, then mark this index as mzPeak
-        pickedMZs.add(mzs[i]);
-        pickedIntensities.add(intensities[i]);
+        picked.add(mzs[i], intensities[i]);
       }
     }
-    return new double[][]{pickedMZs.toDoubleArray(), pickedIntensities.toDoubleArray()};
+    return picked.toMassValues();
   }
 
   private static double minIntensity(double[] rawIntensities) {
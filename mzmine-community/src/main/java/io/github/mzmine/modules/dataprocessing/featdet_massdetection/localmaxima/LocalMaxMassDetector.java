@@ -25,8 +25,8 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.localmaxima;
 
-import gnu.trove.list.array.TDoubleArrayList;
 import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
 import org.jetbrains.annotations.NotNull;
@@ -63,9 +63,8 @@ public class LocalMaxMassDetector implements MassDetector {
 
   @Override
   public double[][] getMassValues(MassSpectrum scan) {
-    // lists of primitive doubles
-    TDoubleArrayList mzs = new TDoubleArrayList(128);
-    TDoubleArrayList intensities = new TDoubleArrayList(128);
+    // thread local lists of primitive doubles
+    final MassDetectionBuffer picked = MassDetectionBuffer.get();
 
     // All data points of current m/z peak
 
@@ -101,8 +100,7 @@ public class LocalMaxMassDetector implements MassDetector {
 
         // Add the m/z peak if it is above the noise level
         if (scan.getIntensityValue(currentMzPeakTop) > noiseLevel) {
-          mzs.add(scan.getMzValue(currentMzPeakTop));
-          intensities.add(scan.getIntensityValue(currentMzPeakTop));
+          picked.add(scan.getMzValue(currentMzPeakTop), scan.getIntensityValue(currentMzPeakTop));
         }
 
         // Reset and start with new peak
@@ -110,7 +108,7 @@ public class LocalMaxMassDetector implements MassDetector {
       }
     }
     // Return an array of detected MzPeaks sorted by MZ
-    return new double[][]{mzs.toArray(), intensities.toArray()};
+    return picked.toMassValues();
   }
 
   @Override
@@ -26,9 +26,10 @@
 package io.github.mzmine.modules.dataprocessing.featdet_smoothing;
 
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.MZmineModuleCategory;
-import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.impl.FeatureListTaskModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.util.ExitCode;
@@ -38,7 +39,7 @@ import java.util.Collection;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public class SmoothingModule implements MZmineProcessingModule {
+public class SmoothingModule implements FeatureListTaskModule {
 
   private static final String name = "Smoothing";
 
@@ -68,14 +69,27 @@ public class SmoothingModule implements MZmineProcessingModule {
     final ModularFeatureList[] flists = parameters.getParameter(SmoothingParameters.featureLists)
         .getValue().getMatchingFeatureLists();
 
-    final MemoryMapStorage storage = MemoryMapStorage.forFeatureList();
+    final MemoryMapStorage storage = createStorage();
     for (ModularFeatureList flist : flists) {
-      tasks.add(new SmoothingTask(project, flist, storage, parameters, moduleCallDate));
+      tasks.add(createTask(project, parameters, moduleCallDate, storage, flist));
     }
 
     return ExitCode.OK;
   }
 
+  @Override
+  public @Nullable MemoryMapStorage createStorage() {
+    return MemoryMapStorage.forFeatureList();
+  }
+
+  @Override
+  public @NotNull Task createTask(@NotNull MZmineProject project, @NotNull ParameterSet parameters,
+      @NotNull Instant moduleCallDate, @Nullable MemoryMapStorage storage,
+      @NotNull FeatureList featureList) {
+    return new SmoothingTask(project, (ModularFeatureList) featureList, storage, parameters,
+        moduleCallDate);
+  }
+
   @NotNull
   @Override
   public MZmineModuleCategory getModuleCategory() {
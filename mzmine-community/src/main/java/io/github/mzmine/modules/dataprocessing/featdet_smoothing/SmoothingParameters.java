@@ -57,7 +57,7 @@ public class SmoothingParameters extends SimpleParameterSet {
         "https://mzmine.github.io/mzmine_documentation/module_docs/featdet_smoothing/smoothing.html");
   }
 
-  private enum Setup {
+  public enum Setup {
     FULL, INTEGRATED
   }
 
@@ -26,17 +26,20 @@
 package io.github.mzmine.modules.dataprocessing.filter_isotopefinder;
 
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.MZmineModuleCategory;
-import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.impl.FeatureListTaskModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.util.ExitCode;
+import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import java.util.Collection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-public class IsotopeFinderModule implements MZmineProcessingModule {
+public class IsotopeFinderModule implements FeatureListTaskModule {
 
   public static final String MODULE_NAME = "Isotopic peaks finder";
   public static final String MODULE_DESCRIPTION = "Find isotope signals in the FWHM of all features in the list";
@@ -60,13 +63,26 @@ public class IsotopeFinderModule implements MZmineProcessingModule {
         .getParameter(IsotopeFinderParameters.featureLists).getValue().getMatchingFeatureLists();
 
     for (final ModularFeatureList featureList : featureLists) {
-      Task newTask = new IsotopeFinderTask(project, featureList, parameters, moduleCallDate);
+      Task newTask = createTask(project, parameters, moduleCallDate, null, featureList);
       tasks.add(newTask);
     }
 
     return ExitCode.OK;
   }
 
+  @Override
+  public @Nullable MemoryMapStorage createStorage() {
+    return null;
+  }
+
+  @Override
+  public @NotNull Task createTask(@NotNull MZmineProject project, @NotNull ParameterSet parameters,
+      @NotNull Instant moduleCallDate, @Nullable MemoryMapStorage storage,
+      @NotNull FeatureList featureList) {
+    return new IsotopeFinderTask(project, (ModularFeatureList) featureList, parameters,
+        moduleCallDate);
+  }
+
   @Override
   public @NotNull MZmineModuleCategory getModuleCategory() {
     return MZmineModuleCategory.ISOTOPES;
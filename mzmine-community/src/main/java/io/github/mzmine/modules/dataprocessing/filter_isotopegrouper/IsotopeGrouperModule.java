@@ -26,9 +26,10 @@
 package io.github.mzmine.modules.dataprocessing.filter_isotopegrouper;
 
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.MZmineModuleCategory;
-import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.impl.FeatureListTaskModule;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.util.ExitCode;
@@ -36,12 +37,13 @@ import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import java.util.Collection;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class implements a simple isotopic peaks grouper method based on searching for neighbouring
  * peaks from expected locations.
  */
-public class IsotopeGrouperModule implements MZmineProcessingModule {
+public class IsotopeGrouperModule implements FeatureListTaskModule {
 
   public static final String MODULE_NAME = "13C isotope filter (formerly: isotope grouper)";
   private static final String MODULE_DESCRIPTION =
@@ -66,11 +68,10 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
 
     ModularFeatureList[] featureLists = parameters.getParameter(IsotopeGrouperParameters.peakLists)
         .getValue().getMatchingFeatureLists();
-    final MemoryMapStorage storage = MemoryMapStorage.forFeatureList();
+    final MemoryMapStorage storage = createStorage();
 
     for (final ModularFeatureList featureList : featureLists) {
-      Task newTask = new IsotopeGrouperTask(project, featureList, parameters, storage,
-          moduleCallDate);
+      Task newTask = createTask(project, parameters, moduleCallDate, storage, featureList);
       tasks.add(newTask);
     }
 
@@ -78,6 +79,19 @@ public class IsotopeGrouperModule implements MZmineProcessingModule {
 
   }
 
+  @Override
+  public @Nullable MemoryMapStorage createStorage() {
+    return MemoryMapStorage.forFeatureList();
+  }
+
+  @Override
+  public @NotNull Task createTask(@NotNull MZmineProject project, @NotNull ParameterSet parameters,
+      @NotNull Instant moduleCallDate, @Nullable MemoryMapStorage storage,
+      @NotNull FeatureList featureList) {
+    return new IsotopeGrouperTask(project, (ModularFeatureList) featureList, parameters, storage,
+        moduleCallDate);
+  }
+
   @Override
   public @NotNull MZmineModuleCategory getModuleCategory() {
     return MZmineModuleCategory.ISOTOPES;
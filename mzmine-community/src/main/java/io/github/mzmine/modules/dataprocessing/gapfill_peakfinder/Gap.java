@@ -268,4 +268,11 @@ public class Gap {
   public FeatureListRow getFeatureListRow() {
     return featureListRow;
   }
+
+  /**
+   * @return the retention time range that this gap accepts scans in
+   */
+  public Range<Float> getRtRange() {
+    return rtRange;
+  }
 }
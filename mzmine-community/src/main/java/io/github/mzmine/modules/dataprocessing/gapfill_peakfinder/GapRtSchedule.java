@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Schedules gaps by their retention time range so that each scan is only offered to the gaps that
+ * accept it. Gaps are sorted by the lower RT bound and opened once the scan cursor reaches them,
+ * and retired once the cursor passed their upper bound. Offering scans in ascending RT order
+ * therefore costs O(scans + gaps + active gaps) instead of O(scans × gaps).
+ * <p>
+ * Scans in decreasing RT order are supported but trigger a rescan of all gaps.
+ *
+ * @param <T> the gap type
+ */
+public class GapRtSchedule<T extends Gap> {
+
+  private final List<T> gapsByStart;
+  private final List<T> active = new ArrayList<>();
+  private int nextGap = 0;
+  private float lastRt = Float.NEGATIVE_INFINITY;
+
+  public GapRtSchedule(@NotNull List<? extends T> gaps) {
+    gapsByStart = new ArrayList<>(gaps);
+    gapsByStart.sort(Comparator.comparingDouble(gap -> gap.getRtRange().lowerEndpoint()));
+  }
+
+  /**
+   * Moves the scan cursor to the retention time.
+   *
+   * @return the open gaps, their RT range starts before or at the retention time and ends at or
+   * after it. The exact range check (open or closed bounds) is done by
+   * {@link Gap#offerNextScan(io.github.mzmine.datamodel.Scan)}. The list is reused by the next call
+   * and must not be modified.
+   */
+  public @NotNull List<T> advanceTo(float rt) {
+    if (rt < lastRt) {
+      // scans are not sorted by RT, start over
+      active.clear();
+      nextGap = 0;
+    }
+    lastRt = rt;
+
+    // retire gaps that the cursor passed
+    active.removeIf(gap -> gap.getRtRange().upperEndpoint() < rt);
+
+    // open all gaps that start before the cursor
+    while (nextGap < gapsByStart.size()) {
+      final T gap = gapsByStart.get(nextGap);
+      if (gap.getRtRange().lowerEndpoint() > rt) {
+        break;
+      }
+      nextGap++;
+      if (gap.getRtRange().upperEndpoint() >= rt) {
+        active.add(gap);
+      }
+    }
+    return active;
+  }
+
+  /**
+   * @return number of scheduled gaps
+   */
+  public int size() {
+    return gapsByStart.size();
+  }
+}
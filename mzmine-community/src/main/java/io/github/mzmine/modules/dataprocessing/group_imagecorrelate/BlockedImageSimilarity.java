@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_imagecorrelate;
+
+import io.github.mzmine.util.maths.similarity.SimilarityMeasure;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * All pairs image similarity of {@link PackedImages}. The pairs are processed in tiles of
+ * {@link #TILE} x {@link #TILE} images and blocks of {@link #BLOCK_WORDS} * 64 pixels, so that
+ * the pixel blocks of both tile sides stay in the cpu cache while all pairs of the tile are
+ * accumulated. Only pixels that are kept in at least one of the two images are used, same as
+ * in the per pair calculation.
+ * <p>
+ * Pairs of the same images always result in the same score, independent of being calculated in
+ * a tile or by {@link #similarity(PackedImages, int, int)}.
+ */
+final class BlockedImageSimilarity {
+
+  private static final int TILE = 64;
+  private static final int BLOCK_WORDS = 16;
+  // count, sumX, sumY, sumXY, sumX2, sumY2
+  private static final int SUMS = 6;
+
+  private final SimilarityMeasure measure;
+  private final int minPixels;
+
+  /**
+   * @param minPixels minimum pixels for pearson correlation, otherwise 0
+   */
+  BlockedImageSimilarity(SimilarityMeasure measure, int minPixels) {
+    if (!isSupported(measure)) {
+      throw new IllegalArgumentException("Unsupported similarity measure " + measure);
+    }
+    this.measure = measure;
+    this.minPixels = minPixels;
+  }
+
+  static boolean isSupported(SimilarityMeasure measure) {
+    return measure == SimilarityMeasure.PEARSON || measure == SimilarityMeasure.COSINE_SIM;
+  }
+
+  /**
+   * Tile of images [first, first+TILE) x [second, second+TILE)
+   */
+  private record Tile(int first, int second) {
+
+  }
+
+  /**
+   * @param minScore  pairs below are not reported. The score is compared as float, because
+   *                  single similarities are stored as float
+   * @param processed is incremented by the number of processed pairs
+   * @return map of pair key of {@link PackedImages#rowIndex(int)} (see {@link #pairKey(int, int)})
+   * to similarity or null if canceled
+   */
+  Long2DoubleMap calculateAboveThreshold(PackedImages images, double minScore,
+      BooleanSupplier isCanceled, AtomicLong processed) {
+    final int n = images.size();
+    final int tilesPerSide = (n + TILE - 1) / TILE;
+    final List<Tile> tiles = IntStream.range(0, tilesPerSide).boxed().<Tile>mapMulti(
+        (first, consumer) -> {
+          for (int second = first; second < tilesPerSide; second++) {
+            consumer.accept(new Tile(first * TILE, second * TILE));
+          }
+        }).toList();
+
+    final List<Long2DoubleMap> results = tiles.parallelStream().map(tile -> {
+      if (isCanceled.getAsBoolean()) {
+        return null;
+      }
+      return calculateTile(images, tile, minScore, processed);
+    }).toList();
+
+    if (isCanceled.getAsBoolean()) {
+      return null;
+    }
+    final Long2DoubleMap merged = new Long2DoubleOpenHashMap();
+    for (final Long2DoubleMap result : results) {
+      merged.putAll(result);
+    }
+    return merged;
+  }
+
+  private Long2DoubleMap calculateTile(PackedImages images, Tile tile, double minScore,
+      AtomicLong processed) {
+    final int endA = Math.min(tile.first() + TILE, images.size());
+    final int endB = Math.min(tile.second() + TILE, images.size());
+    final boolean diagonal = tile.first() == tile.second();
+    final double[] sums = new double[TILE * TILE * SUMS];
+
+    final int words = images.words();
+    for (int w0 = 0; w0 < words; w0 += BLOCK_WORDS) {
+      final int w1 = Math.min(w0 + BLOCK_WORDS, words);
+      for (int a = tile.first(); a < endA; a++) {
+        final float[] valuesA = images.values(a);
+        final long[] bitsA = images.keptBits(a);
+        final int startB = diagonal ? a + 1 : tile.second();
+        for (int b = startB; b < endB; b++) {
+          final int offset = ((a - tile.first()) * TILE + (b - tile.second())) * SUMS;
+          accumulate(valuesA, bitsA, images.values(b), images.keptBits(b), w0, w1, sums, offset);
+        }
+      }
+    }
+
+    final Long2DoubleMap result = new Long2DoubleOpenHashMap();
+    long pairs = 0;
+    for (int a = tile.first(); a < endA; a++) {
+      final int startB = diagonal ? a + 1 : tile.second();
+      for (int b = startB; b < endB; b++) {
+        pairs++;
+        final int offset = ((a - tile.first()) * TILE + (b - tile.second())) * SUMS;
+        final double score = score(sums, offset);
+        if ((float) score >= minScore) {
+          result.put(pairKey(images.rowIndex(a), images.rowIndex(b)), score);
+        }
+      }
+    }
+    processed.addAndGet(pairs);
+    return result;
+  }
+
+  /**
+   * Similarity of a single pair
+   */
+  double similarity(PackedImages images, int a, int b) {
+    final double[] sums = new double[SUMS];
+    final float[] valuesA = images.values(a);
+    final long[] bitsA = images.keptBits(a);
+    final float[] valuesB = images.values(b);
+    final long[] bitsB = images.keptBits(b);
+    final int words = images.words();
+    // same blocks as in tiles to get the same rounding
+    for (int w0 = 0; w0 < words; w0 += BLOCK_WORDS) {
+      accumulate(valuesA, bitsA, valuesB, bitsB, w0, Math.min(w0 + BLOCK_WORDS, words), sums, 0);
+    }
+    return score(sums, 0);
+  }
+
+  /**
+   * Adds the sums of one block of pixels that are kept in at least one of the images
+   */
+  private static void accumulate(float[] valuesA, long[] bitsA, float[] valuesB, long[] bitsB,
+      int fromWord, int toWord, double[] sums, int offset) {
+    int count = 0;
+    double sumX = 0.0, sumY = 0.0, sumXY = 0.0;
+    double sumX2 = 0.0, sumY2 = 0.0;
+    for (int w = fromWord; w < toWord; w++) {
+      long bits = bitsA[w] | bitsB[w];
+      final int base = w << 6;
+      while (bits != 0) {
+        final int i = base + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        count++;
+        final double x = valuesA[i];
+        final double y = valuesB[i];
+        sumX += x;
+        sumY += y;
+        sumXY += x * y;
+        sumX2 += x * x;
+        sumY2 += y * y;
+      }
+    }
+    sums[offset] += count;
+    sums[offset + 1] += sumX;
+    sums[offset + 2] += sumY;
+    sums[offset + 3] += sumXY;
+    sums[offset + 4] += sumX2;
+    sums[offset + 5] += sumY2;
+  }
+
+  private double score(double[] sums, int offset) {
+    final double values = sums[offset];
+    final double sumX = sums[offset + 1];
+    final double sumY = sums[offset + 2];
+    final double sumXY = sums[offset + 3];
+    final double sumX2 = sums[offset + 4];
+    final double sumY2 = sums[offset + 5];
+
+    if (measure == SimilarityMeasure.COSINE_SIM) {
+      return sumXY / (Math.sqrt(sumX2) * Math.sqrt(sumY2));
+    }
+
+    // pearson
+    if (values < minPixels) {
+      return 0d;
+    }
+    final double numerator = values * sumXY - sumX * sumY;
+    final double denominator = Math.sqrt(
+        (values * sumX2 - sumX * sumX) * (values * sumY2 - sumY * sumY));
+    if (denominator == 0) {
+      return 0d;
+    }
+    return numerator / denominator;
+  }
+
+  /**
+   * @return order independent key of two row indices
+   */
+  static long pairKey(int rowA, int rowB) {
+    return ((long) Math.min(rowA, rowB) << 32) | Math.max(rowA, rowB);
+  }
+}
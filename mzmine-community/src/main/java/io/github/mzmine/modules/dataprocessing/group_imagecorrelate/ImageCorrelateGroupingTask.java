@@ -49,11 +49,15 @@ import io.github.mzmine.util.exceptions.MissingMassListException;
 import io.github.mzmine.util.maths.Combinatorics;
 import io.github.mzmine.util.maths.Transform;
 import io.github.mzmine.util.maths.similarity.SimilarityMeasure;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
@@ -164,6 +168,10 @@ public class ImageCorrelateGroupingTask extends AbstractTask {
    */
   public void checkAllFeatures(R2RMap<RowsRelationship> mapSimilarity)
       throws MissingMassListException {
+    if (BlockedImageSimilarity.isSupported(similarityMeasure)) {
+      checkAllFeaturesBlocked(mapSimilarity);
+      return;
+    }
     // prefilter rows: check feature height and sort data
     Map<Feature, FilteredRowData> mapFeatureData = new HashMap<>();
     FeatureDataAccess featureDataAccess = EfficientDataAccess.of(featureList,
@@ -196,6 +204,99 @@ public class ImageCorrelateGroupingTask extends AbstractTask {
         "Image correlation: Performed %d pairwise comparisons of rows.".formatted(comparedPairs));
   }
 
+  /**
+   * All pairs similarity on packed images in cache blocked tiles. Only pairs that reach the
+   * minimum similarity in at least one raw data file are kept. Results are the same as in
+   * {@link #checkR2RAllFeaturesImageSimilarity(Map, FeatureListRow, FeatureListRow, R2RMap)}
+   * except for the float precision of the packed intensities.
+   *
+   * @param mapSimilarity map for all image similarity edges
+   */
+  private void checkAllFeaturesBlocked(R2RMap<RowsRelationship> mapSimilarity) {
+    final List<FeatureListRow> rows = featureList.getRows();
+    final Map<FeatureListRow, Integer> rowIndices = new HashMap<>();
+    for (int i = 0; i < rows.size(); i++) {
+      rowIndices.put(rows.get(i), i);
+    }
+
+    // pack filtered and transformed images of each raw data file
+    final Map<RawDataFile, PackedImages> imagesOfFiles = new LinkedHashMap<>();
+    FeatureDataAccess featureDataAccess = EfficientDataAccess.of(featureList,
+        FeatureDataType.INCLUDE_ZEROS);
+    while (featureDataAccess.hasNextFeature()) {
+      Feature f = featureDataAccess.nextFeature();
+      Integer rowIndex = rowIndices.get(f.getRow());
+      if (rowIndex == null) {
+        continue;
+      }
+      double[] intensities = featureDataAccess.getIntensityValuesCopy();
+      var data = FilteredRowData.create(intensities, lowerQuantile, upperQuantile, noiseLevel,
+          Transform.SQRT);
+      imagesOfFiles.computeIfAbsent(f.getRawDataFile(), _ -> new PackedImages(data.size()))
+          .add(rowIndex, data.intensities(), data.noiseLevelOrLowerPercentile(),
+              data.upperPercentile());
+    }
+
+    totalMaxPairs = imagesOfFiles.values().stream()
+        .mapToLong(images -> Combinatorics.uniquePairs(images.size())).sum();
+    logger.log(Level.INFO,
+        () -> MessageFormat.format("Checking image similarity on {0} rows", rows.size()));
+
+    final BlockedImageSimilarity similarity = new BlockedImageSimilarity(similarityMeasure,
+        minimumNumberOfCorrelatedPixels);
+    final Map<RawDataFile, Long2DoubleMap> scoresOfFiles = new HashMap<>();
+    final LongSet candidatePairs = new LongOpenHashSet();
+    for (var entry : imagesOfFiles.entrySet()) {
+      var scores = similarity.calculateAboveThreshold(entry.getValue(), minR, this::isCanceled,
+          processedPairs);
+      if (scores == null) {
+        return;
+      }
+      scoresOfFiles.put(entry.getKey(), scores);
+      candidatePairs.addAll(scores.keySet());
+    }
+
+    // similarities are added for all raw data files of a pair, also below the minimum
+    Arrays.stream(candidatePairs.toLongArray()).parallel().forEach(key -> {
+      final FeatureListRow a = rows.get((int) (key >>> 32));
+      final FeatureListRow b = rows.get((int) key);
+      RowsRelationship imageSimilarities = null;
+      for (Feature fa : a.getFeatures()) {
+        RawDataFile dataFile = fa.getRawDataFile();
+        if (b.getFeature(dataFile) == null) {
+          continue;
+        }
+        double score = 0;
+        final Long2DoubleMap scores = scoresOfFiles.get(dataFile);
+        final PackedImages images = imagesOfFiles.get(dataFile);
+        if (scores != null && scores.containsKey(key)) {
+          score = scores.get(key);
+        } else if (images != null) {
+          int imageA = images.imageOfRow((int) (key >>> 32));
+          int imageB = images.imageOfRow((int) key);
+          if (imageA >= 0 && imageB >= 0) {
+            score = similarity.similarity(images, Math.min(imageA, imageB),
+                Math.max(imageA, imageB));
+          }
+        }
+
+        if (singleRawFile) {
+          imageSimilarities = new R2RSimpleSimilarity(a, b, Type.MS1_FEATURE_CORR, (float) score);
+        } else {
+          if (imageSimilarities == null) {
+            imageSimilarities = new R2RSimpleSimilarityList(a, b, Type.MS1_FEATURE_CORR);
+          }
+          ((R2RSimpleSimilarityList) imageSimilarities).addSimilarity(score);
+        }
+      }
+      if (imageSimilarities != null && imageSimilarities.getScore() >= minR) {
+        mapSimilarity.add(a, b, imageSimilarities);
+      }
+    });
+    logger.info("Image correlation: Performed %d pairwise comparisons of rows in blocks.".formatted(
+        processedPairs.get()));
+  }
+
   //Intensities have to be sorted by scan number
 
   /**
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_imagecorrelate;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The images of all features of one raw data file as float vectors of the same pixel order. Pixels
+ * that pass the noise and hotspot filters of a feature are flagged in a bit set, so that pixels
+ * that are filtered out in both images of a pair can be skipped 64 at a time.
+ */
+final class PackedImages {
+
+  private final int pixels;
+  private final int words;
+  private final List<float[]> values = new ArrayList<>();
+  private final List<long[]> keptBits = new ArrayList<>();
+  private final List<Integer> rowIndices = new ArrayList<>();
+  private final Int2IntMap imageOfRow = new Int2IntOpenHashMap();
+
+  PackedImages(int pixels) {
+    this.pixels = pixels;
+    this.words = (pixels + 63) >>> 6;
+    imageOfRow.defaultReturnValue(-1);
+  }
+
+  /**
+   * Adds an image. A pixel is kept if its value is within the limits, same as the filters applied
+   * before the similarity calculation.
+   *
+   * @param rowIndex    index of the row in the feature list
+   * @param intensities transformed intensities of all pixels
+   * @param lowerLimit  values below are filtered out
+   * @param upperLimit  values above are filtered out, no upper limit if <= 0
+   */
+  void add(int rowIndex, double[] intensities, double lowerLimit, double upperLimit) {
+    if (intensities.length != pixels) {
+      throw new IllegalArgumentException(
+          "All images of a raw data file need %d pixels but got %d".formatted(pixels,
+              intensities.length));
+    }
+    final float[] packed = new float[pixels];
+    final long[] bits = new long[words];
+    for (int i = 0; i < pixels; i++) {
+      final double value = intensities[i];
+      packed[i] = (float) value;
+      if (value >= lowerLimit && (upperLimit <= 0 || value <= upperLimit)) {
+        bits[i >>> 6] |= 1L << i;
+      }
+    }
+    imageOfRow.put(rowIndex, values.size());
+    values.add(packed);
+    keptBits.add(bits);
+    rowIndices.add(rowIndex);
+  }
+
+  int pixels() {
+    return pixels;
+  }
+
+  int size() {
+    return values.size();
+  }
+
+  int words() {
+    return words;
+  }
+
+  float[] values(int image) {
+    return values.get(image);
+  }
+
+  long[] keptBits(int image) {
+    return keptBits.get(image);
+  }
+
+  int rowIndex(int image) {
+    return rowIndices.get(image);
+  }
+
+  /**
+   * @return the image of a row or -1 if the row has no feature in this raw data file
+   */
+  int imageOfRow(int rowIndex) {
+    return imageOfRow.get(rowIndex);
+  }
+}
@@ -26,9 +26,7 @@
 package io.github.mzmine.modules.dataprocessing.group_spectral_networking.cosine_no_precursor;
 
 
-import static io.github.mzmine.modules.dataprocessing.group_spectral_networking.modified_cosine.ModifiedCosineSpectralNetworkingTask.SIZE_OVERLAP;
 import static io.github.mzmine.modules.dataprocessing.group_spectral_networking.modified_cosine.ModifiedCosineSpectralNetworkingTask.addNetworkStatisticsToRows;
-import static io.github.mzmine.modules.dataprocessing.group_spectral_networking.modified_cosine.ModifiedCosineSpectralNetworkingTask.createMS2Sim;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.Scan;
@@ -45,6 +43,7 @@ import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.dataprocessing.group_spectral_networking.MainSpectralNetworkingParameters;
 import io.github.mzmine.modules.dataprocessing.group_spectral_networking.SpectralSignalFilter;
 import io.github.mzmine.modules.dataprocessing.group_spectral_networking.modified_cosine.FilteredRowData;
+import io.github.mzmine.modules.dataprocessing.group_spectral_networking.modified_cosine.ModifiedCosineKernel;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractFeatureListTask;
@@ -77,6 +76,7 @@ public class NoPrecursorCosineSpectralNetworkingTask extends AbstractFeatureList
   // target
   private final SpectralSignalFilter signalFilter;
   private final List<FeatureListRow> rows;
+  private final ModifiedCosineKernel kernel;
   private long totalMaxPairs = 0;
 
   public NoPrecursorCosineSpectralNetworkingTask(final ParameterSet mainParameters,
@@ -105,6 +105,7 @@ public class NoPrecursorCosineSpectralNetworkingTask extends AbstractFeatureList
     // embedded signal filters
     signalFilter = subParams.getValue(NoPrecursorCosineSpectralNetworkingParameters.signalFilters)
         .createFilter();
+    kernel = new ModifiedCosineKernel(mzTolerance, minMatch);
   }
 
   @Override
@@ -179,25 +180,11 @@ public class NoPrecursorCosineSpectralNetworkingTask extends AbstractFeatureList
 
   private boolean checkSpectralPair(final FilteredRowData a, final FilteredRowData b,
       final R2RMap<RowsRelationship> mapSimilarity) {
-    return checkR2RMs2Similarity(mapSimilarity, a.row(), b.row(), a.data(), b.data(),
-        Type.MS2_COSINE_SIM);
-  }
-
-  /**
-   * @param mapSimilarity map to add new MS cosine similarity edges to
-   * @param a             row a
-   * @param b             row b
-   * @param simType       similarity type
-   */
-  public boolean checkR2RMs2Similarity(R2RMap<RowsRelationship> mapSimilarity, FeatureListRow a,
-      FeatureListRow b, DataPoint[] sortedA, DataPoint[] sortedB, Type simType) {
-    // align and check spectra
-    SpectralSimilarity spectralSim = createMS2Sim(mzTolerance, sortedA, sortedB, minMatch,
-        SIZE_OVERLAP);
-
+    // cosine on the packed data, without precursor shift
+    SpectralSimilarity spectralSim = kernel.calculate(a.packed(), b.packed(), -1d, -1d);
     if (spectralSim != null && spectralSim.cosine() >= minCosineSimilarity) {
-      var r2r = new R2RSpectralSimilarity(a, b, simType, spectralSim);
-      mapSimilarity.add(a, b, r2r);
+      var r2r = new R2RSpectralSimilarity(a.row(), b.row(), Type.MS2_COSINE_SIM, spectralSim);
+      mapSimilarity.add(a.row(), b.row(), r2r);
       return true;
     }
     return false;
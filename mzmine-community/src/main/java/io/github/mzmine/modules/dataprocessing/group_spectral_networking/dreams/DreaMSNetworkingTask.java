@@ -25,15 +25,10 @@
 
 package io.github.mzmine.modules.dataprocessing.group_spectral_networking.dreams;
 
-import static io.github.mzmine.modules.dataprocessing.group_spectral_networking.ms2deepscore.MS2DeepscoreNetworkingTask.convertMatrixToR2RMap;
 import static io.github.mzmine.modules.dataprocessing.group_spectral_networking.ms2deepscore.MS2DeepscoreNetworkingTask.getScanAndApplyPrechecks;
 import static io.github.mzmine.util.collections.CollectionUtils.argsortReversed;
-import static io.github.mzmine.util.scans.similarity.impl.ms2deepscore.EmbeddingBasedSimilarity.dotProduct;
 
 import ai.djl.MalformedModelException;
-import ai.djl.ndarray.NDArray;
-import ai.djl.ndarray.NDArrays;
-import ai.djl.ndarray.NDList;
 import ai.djl.repository.zoo.ModelNotFoundException;
 import ai.djl.translate.TranslateException;
 import io.github.mzmine.datamodel.MZmineProject;
@@ -51,6 +46,8 @@ import io.github.mzmine.taskcontrol.AbstractFeatureListTask;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.scans.FragmentScanSelection;
 import io.github.mzmine.util.scans.similarity.impl.DreaMS.DreaMSModel;
+import io.github.mzmine.util.scans.similarity.impl.ms2deepscore.EmbeddingCache;
+import io.github.mzmine.util.scans.similarity.impl.ms2deepscore.EmbeddingMatrix;
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
@@ -146,49 +143,38 @@ public class DreaMSNetworkingTask extends AbstractFeatureListTask {
       }
     }
 
-    // Predict the matrix of pairwise DreaMS similarities
-    float[][] similarityMatrix;
+    // Predict the DreaMS embeddings in batches and compare them block wise without a full matrix
+    // reuse embeddings of spectra that were already predicted by the same model
+    final EmbeddingCache cache = EmbeddingCache.fromPreferences(dreamsModelFile, dreamsSettingsFile);
+    EmbeddingMatrix embeddings;
     try {
-      // Pre-process mass spectra
-      float[][][] tensorizedSpectra = model.getSpectrumTensorizer().tensorizeSpectra(scanList);
-
-      // Process the tensorizedSpectra in batches
-      int totalSpectra = tensorizedSpectra.length;
-      NDList allPredictions = new NDList();
-
-      for (int start = 0; start < totalSpectra; start += batchSize) {
-        // Determine the end index for the current batch
-        int end = Math.min(start + batchSize, totalSpectra);
-
-        // Extract the batch as a 3D slice
-        float[][][] batchSlices = new float[end - start][][];
-        System.arraycopy(tensorizedSpectra, start, batchSlices, 0, end - start);
-
-        // Predict embeddings for the current batch
-        processedItems += end - start;
-        NDArray batchPredictions = model.predictEmbeddingFromTensors(batchSlices);
-
-        // Add the predictions for the current batch to all predictions
-        allPredictions.add(batchPredictions);
+      embeddings = model.predictEmbeddingMatrix(scanList, batchSize, cache, processed -> processedItems += processed);
+      if (cache != null) {
+        logger.info(cache.toString());
       }
 
-      // Combine all predictions into a single NDArray (stacked along the batch dimension)
-      NDArray embeddings = NDArrays.concat(allPredictions);
-
-      // Compute DreaMS similarities
-      similarityMatrix = dotProduct(embeddings, embeddings);
     } catch (TranslateException e) {
       throw new RuntimeException(e);
     }
 
-    // Choose numNeighbors nearest neighbors for each spectrum and retain all similarities above minScore
+    R2RMap<R2RSimpleSimilarity> relationsMap = new R2RMap<>();
+    final boolean finished;
     if (numNeighbors != null) {
-      similarityMatrix = toKNNMatrix(similarityMatrix, numNeighbors, minScore);
+      // numNeighbors nearest neighbors for each spectrum and all similarities above minScore
+      finished = embeddings.forEachNearestNeighbor(numNeighbors, minScore, this::isCanceled,
+          (a, b, score) -> {
+            if (score > minScoreNeighbors) {
+              addRelationship(relationsMap, featureListRows, a, b, score);
+            }
+          });
+    } else {
+      finished = embeddings.forEachPairAbove(minScore, this::isCanceled,
+          (a, b, score) -> addRelationship(relationsMap, featureListRows, a, b, score));
+    }
+    if (!finished) {
+      return;
     }
 
-    // Convert the similarity matrix to a R2RMap
-    R2RMap<R2RSimpleSimilarity> relationsMap = convertMatrixToR2RMap(featureListRows,
-        similarityMatrix, numNeighbors != null ? minScoreNeighbors : minScore, Type.DREAMS);
     R2RNetworkingMaps rowMaps = featureList.getRowMaps();
     rowMaps.addAllRowsRelationships(relationsMap, Type.DREAMS);
 
@@ -217,6 +203,12 @@ public class DreaMSNetworkingTask extends AbstractFeatureListTask {
     return List.of(featureLists);
   }
 
+  private static void addRelationship(R2RMap<R2RSimpleSimilarity> relationsMap,
+      List<FeatureListRow> rows, int a, int b, float score) {
+    relationsMap.add(rows.get(a), rows.get(b),
+        new R2RSimpleSimilarity(rows.get(a), rows.get(b), Type.DREAMS, score));
+  }
+
   public static float[][] toKNNMatrix(float[][] matrix, int k, double retainElementsAbove) {
     // Create a new matrix to store the result
     int n = matrix.length;
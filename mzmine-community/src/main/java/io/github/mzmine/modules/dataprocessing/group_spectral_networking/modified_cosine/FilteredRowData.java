@@ -27,10 +27,20 @@ package io.github.mzmine.modules.dataprocessing.group_spectral_networking.modifi
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.util.scans.similarity.Weights;
 
 /**
  * the filtered data of the best MS2 scan from row
+ *
+ * @param data   data points sorted by intensity
+ * @param packed the data packed for the {@link ModifiedCosineKernel}
  */
-public record FilteredRowData(FeatureListRow row, DataPoint[] data) {
+public record FilteredRowData(FeatureListRow row, DataPoint[] data, PackedSpectrum packed) {
 
+  /**
+   * Packs the data with the default {@link Weights#SQRT} weights of the cosine similarity
+   */
+  public FilteredRowData(FeatureListRow row, DataPoint[] data) {
+    this(row, data, PackedSpectrum.of(data, Weights.SQRT));
+  }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_spectral_networking.modified_cosine;
+
+import io.github.mzmine.datamodel.features.correlation.SpectralSimilarity;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Allocation free version of
+ * {@link ModifiedCosineSpectralNetworkingTask#createMS2SimModificationAware} with the
+ * {@link ModifiedCosineSpectralNetworkingTask#SIZE_OVERLAP} overlap function on
+ * {@link PackedSpectrum}s. Signals are matched the same way as in
+ * {@link io.github.mzmine.util.scans.ScanAlignment#alignOfSortedModAware}: each signal of spectrum b
+ * (by descending intensity) is matched to the most intense unmatched signal of spectrum a within
+ * the tolerance (directly or shifted by the precursor difference). Matched peaks, cosine and
+ * explained intensity are summed up in one pass in the same order as the aligned list, so that
+ * the results are identical. Thread safe, uses thread local buffers.
+ */
+public class ModifiedCosineKernel {
+
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private final MZTolerance mzTol;
+  private final double minMatch;
+
+  public ModifiedCosineKernel(@NotNull MZTolerance mzTol, double minMatch) {
+    this.mzTol = mzTol;
+    this.minMatch = minMatch;
+  }
+
+  /**
+   * @param precursorMzA precursor m/z of a, the modification aware matching is only used if both
+   *                     precursors are > 0
+   * @param precursorMzB precursor m/z of b
+   * @return the spectral similarity if number of overlapping signals >= minimum, else null
+   */
+  @Nullable
+  public SpectralSimilarity calculate(@NotNull PackedSpectrum a, @NotNull PackedSpectrum b,
+      double precursorMzA, double precursorMzB) {
+    final boolean modAware = precursorMzA > 0 && precursorMzB > 0;
+    // signals of b are matched against a, shifted by this delta
+    final double deltaMz = precursorMzA - precursorMzB;
+
+    final Scratch scratch = SCRATCH.get();
+    final int generation = scratch.next(a.size());
+    final int[] matchedA = scratch.matched;
+
+    int overlap = 0;
+    double dot = 0;
+    double normB = 0;
+    double normA = 0;
+    double totalB = 0;
+    double totalA = 0;
+    double explainedB = 0;
+    double explainedA = 0;
+
+    // first all signals of b with their match in a
+    final double[] mzsB = b.mzs();
+    for (int i = 0; i < mzsB.length; i++) {
+      final double mz = mzsB[i];
+      int match = findMatch(a, mz, matchedA, generation, Integer.MAX_VALUE);
+      if (modAware) {
+        match = findMatch(a, mz + deltaMz, matchedA, generation, match);
+      }
+
+      final double weightedB = b.weighted()[i];
+      normB += weightedB * weightedB;
+      totalB += b.intensities()[i];
+      if (match != Integer.MAX_VALUE) {
+        matchedA[match] = generation;
+        overlap++;
+        final double weightedA = a.weighted()[match];
+        dot += weightedB * weightedA;
+        normA += weightedA * weightedA;
+        explainedB += b.intensities()[i];
+        explainedA += a.intensities()[match];
+        totalA += a.intensities()[match];
+      }
+    }
+
+    if (overlap < minMatch) {
+      return null;
+    }
+
+    // then all remaining signals of a
+    for (int rank = 0; rank < a.size(); rank++) {
+      if (matchedA[rank] != generation) {
+        final double weightedA = a.weighted()[rank];
+        normA += weightedA * weightedA;
+        totalA += a.intensities()[rank];
+      }
+    }
+
+    final double cosine = dot / (Math.sqrt(normB) * Math.sqrt(normA));
+    return new SpectralSimilarity(cosine, overlap, b.size(), a.size(), explainedB / totalB,
+        explainedA / totalA);
+  }
+
+  /**
+   * @param bestRank the best rank found so far
+   * @return the lowest rank of an unmatched signal in a within tolerance of mz or bestRank
+   */
+  private int findMatch(PackedSpectrum a, double mz, int[] matchedA, int generation,
+      int bestRank) {
+    final double[] sortedMzs = a.mzSortedMzs();
+    // slightly wider search window, the exact check is done by the tolerance
+    final double tolerance = mzTol.getMzToleranceForMass(mz) + 4 * Math.ulp(mz);
+    final double upper = mz + tolerance;
+    for (int i = lowerBound(sortedMzs, mz - tolerance); i < sortedMzs.length; i++) {
+      if (sortedMzs[i] > upper) {
+        break;
+      }
+      final int rank = a.mzSortedToRank()[i];
+      if (rank < bestRank && matchedA[rank] != generation && mzTol.checkWithinTolerance(mz,
+          sortedMzs[i])) {
+        bestRank = rank;
+      }
+    }
+    return bestRank;
+  }
+
+  /**
+   * @return first index with array[index] >= value
+   */
+  private static int lowerBound(double[] array, double value) {
+    int low = 0;
+    int high = array.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (array[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Marks matched signals with the current generation to avoid clearing the buffer for each pair
+   */
+  private static class Scratch {
+
+    private int[] matched = new int[256];
+    private int generation = 0;
+
+    private int next(int size) {
+      if (matched.length < size) {
+        matched = new int[Math.max(size, matched.length * 2)];
+        generation = 0;
+      }
+      if (generation == Integer.MAX_VALUE) {
+        Arrays.fill(matched, 0);
+        generation = 0;
+      }
+      return ++generation;
+    }
+  }
+}
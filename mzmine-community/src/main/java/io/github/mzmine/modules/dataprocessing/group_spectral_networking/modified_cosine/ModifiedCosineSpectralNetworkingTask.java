@@ -102,6 +102,7 @@ public class ModifiedCosineSpectralNetworkingTask extends AbstractFeatureListTas
   private long totalMaxPairs = 0;
   // this is always off for now. Could be reintroduced as separate similarity metric
   private final @NotNull FragmentScanSelection scanMergeSelect;
+  private final ModifiedCosineKernel kernel;
 
   public ModifiedCosineSpectralNetworkingTask(final ParameterSet mainParameters,
       @NotNull ModularFeatureList featureList, @NotNull Instant moduleCallDate,
@@ -138,6 +139,7 @@ public class ModifiedCosineSpectralNetworkingTask extends AbstractFeatureListTas
     // embedded signal filters
     signalFilter = subParams.getValue(ModifiedCosineSpectralNetworkingParameters.signalFilters)
         .createFilter();
+    kernel = new ModifiedCosineKernel(mzTolerance, minMatch);
   }
 
   /**
@@ -472,7 +474,7 @@ public class ModifiedCosineSpectralNetworkingTask extends AbstractFeatureListTas
     for (final FilteredRowData a : scans1) {
       for (final FilteredRowData b : scans2) {
         // align and check spectra
-        var result = calcSpectralSimilarity(a.row(), b.row(), a.data(), b.data());
+        var result = calcSpectralSimilarity(a, b);
         if (result != null && (best == null || result.cosine() > best.cosine())) {
           best = result;
         }
@@ -536,10 +538,14 @@ public class ModifiedCosineSpectralNetworkingTask extends AbstractFeatureListTas
   }
 
 
-  private @Nullable SpectralSimilarity calcSpectralSimilarity(final FeatureListRow a,
-      final FeatureListRow b, final DataPoint[] sortedA, final DataPoint[] sortedB) {
-    return createMS2SimModificationAware(mzTolerance, sortedA, sortedB, minMatch, SIZE_OVERLAP,
-        a.getAverageMZ(), b.getAverageMZ());
+  /**
+   * Same result as {@link #createMS2SimModificationAware} with {@link #SIZE_OVERLAP} on the packed
+   * data
+   */
+  private @Nullable SpectralSimilarity calcSpectralSimilarity(final FilteredRowData a,
+      final FilteredRowData b) {
+    return kernel.calculate(a.packed(), b.packed(), a.row().getAverageMZ(),
+        b.row().getAverageMZ());
   }
 
   @Override
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_spectral_networking.modified_cosine;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.util.scans.similarity.Weights;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A filtered spectrum packed once into primitive arrays for the {@link ModifiedCosineKernel}. The
+ * rank of a signal is its index in the original intensity sorted order.
+ *
+ * @param mzs            m/z by rank
+ * @param intensities    intensity by rank
+ * @param weighted       weighted intensity by rank, see {@link Weights#apply(double, double)}
+ * @param mzSortedMzs    m/z in ascending order
+ * @param mzSortedToRank the rank of each signal in mzSortedMzs
+ */
+public record PackedSpectrum(double[] mzs, double[] intensities, double[] weighted,
+                             double[] mzSortedMzs, int[] mzSortedToRank) {
+
+  /**
+   * @param sortedByIntensity data points sorted by descending intensity
+   * @param weights           the weights for the cosine similarity
+   */
+  public static PackedSpectrum of(@NotNull DataPoint[] sortedByIntensity,
+      @NotNull Weights weights) {
+    final int n = sortedByIntensity.length;
+    final double[] mzs = new double[n];
+    final double[] intensities = new double[n];
+    final double[] weighted = new double[n];
+    final int[] mzSortedToRank = new int[n];
+    for (int i = 0; i < n; i++) {
+      final DataPoint dp = sortedByIntensity[i];
+      mzs[i] = dp.getMZ();
+      intensities[i] = dp.getIntensity();
+      // same as ScanAlignment.toIntensityMatrixWeighted
+      weighted[i] =
+          Math.pow(intensities[i], weights.getIntensity()) * Math.pow(mzs[i], weights.getMz());
+      mzSortedToRank[i] = i;
+    }
+    IntArrays.mergeSort(mzSortedToRank, (a, b) -> Double.compare(mzs[a], mzs[b]));
+
+    final double[] mzSortedMzs = new double[n];
+    for (int i = 0; i < n; i++) {
+      mzSortedMzs[i] = mzs[mzSortedToRank[i]];
+    }
+    return new PackedSpectrum(mzs, intensities, weighted, mzSortedMzs, mzSortedToRank);
+  }
+
+  public int size() {
+    return mzs.length;
+  }
+}
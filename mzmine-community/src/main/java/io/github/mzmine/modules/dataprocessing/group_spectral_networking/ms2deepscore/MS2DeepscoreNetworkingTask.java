@@ -44,6 +44,8 @@ import io.github.mzmine.taskcontrol.AbstractFeatureListTask;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import io.github.mzmine.util.scans.FragmentScanSelection;
+import io.github.mzmine.util.scans.similarity.impl.ms2deepscore.EmbeddingCache;
+import io.github.mzmine.util.scans.similarity.impl.ms2deepscore.EmbeddingMatrix;
 import io.github.mzmine.util.scans.similarity.impl.ms2deepscore.MS2DeepscoreModel;
 import java.io.File;
 import java.io.IOException;
@@ -61,6 +63,10 @@ import org.jetbrains.annotations.Nullable;
 public class MS2DeepscoreNetworkingTask extends AbstractFeatureListTask {
 
   private static final Logger logger = Logger.getLogger(MS2DeepscoreNetworkingTask.class.getName());
+  /**
+   * Number of spectra per model prediction, limits the memory of tensors
+   */
+  private static final int PREDICTION_BATCH_SIZE = 512;
   private final @NotNull FeatureList[] featureLists;
   private final int minSignals;
   private final double minScore;
@@ -132,16 +138,28 @@ public class MS2DeepscoreNetworkingTask extends AbstractFeatureListTask {
       }
     }
 
-    float[][] similarityMatrix;
+    // predict embeddings in batches and find neighbors block wise without the full matrix
+    // reuse embeddings of spectra that were already predicted by the same model
+    final EmbeddingCache cache = EmbeddingCache.fromPreferences(ms2deepscoreModelFile, ms2deepscoreSettingsFile);
+    EmbeddingMatrix embeddings;
     try {
-      similarityMatrix = model.predictMatrixSymmetric(scanList);
+      embeddings = model.predictEmbeddingMatrix(scanList, PREDICTION_BATCH_SIZE, cache, finishedItems::addAndGet);
+      if (cache != null) {
+        logger.info(cache.toString());
+      }
+
     } catch (TranslateException e) {
       throw new RuntimeException(e);
     }
     description = "Calculate MS2Deepscore similarity";
-//    Convert the similarity matrix to a R2RMap
-    R2RMap<R2RSimpleSimilarity> relationsMap = convertMatrixToR2RMap(featureListRows,
-        similarityMatrix, minScore, Type.MS2Deepscore);
+    R2RMap<R2RSimpleSimilarity> relationsMap = new R2RMap<>();
+    boolean finished = embeddings.forEachPairAbove(minScore, this::isCanceled,
+        (a, b, score) -> relationsMap.add(featureListRows.get(a), featureListRows.get(b),
+            new R2RSimpleSimilarity(featureListRows.get(a), featureListRows.get(b),
+                Type.MS2Deepscore, score)));
+    if (!finished) {
+      return;
+    }
     R2RNetworkingMaps rowMaps = featureList.getRowMaps();
     rowMaps.addAllRowsRelationships(relationsMap, Type.MS2Deepscore);
     // stats are currently only available for modified cosine
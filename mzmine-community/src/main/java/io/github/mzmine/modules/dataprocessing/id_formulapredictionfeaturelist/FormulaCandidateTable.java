@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_formulapredictionfeaturelist;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.openscience.cdk.formula.MolecularFormulaGenerator;
+import org.openscience.cdk.formula.MolecularFormulaRange;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.interfaces.IIsotope;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+/**
+ * Mass sorted table of candidate formulas within the element ranges of a formula prediction.
+ * Candidates are generated lazily in buckets of fixed mass width and kept as compact element
+ * counts, so that rows with close masses share the generation. Range queries are answered by
+ * binary search in the covered buckets. Thread safe, each bucket is only generated once.
+ */
+class FormulaCandidateTable {
+
+  /**
+   * the generator checks masses on its own, slightly widen its range so that no formula at a
+   * bucket border is lost
+   */
+  private static final double GENERATOR_MARGIN = 1E-6;
+
+  private final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+  private final MolecularFormulaRange elementCounts;
+  private final IIsotope[] isotopes;
+  private final double[] isotopeMasses;
+  private final double bucketWidth;
+  private final Map<Long, Supplier<Bucket>> buckets = new ConcurrentHashMap<>();
+  private final Set<MolecularFormulaGenerator> runningGenerators = ConcurrentHashMap.newKeySet();
+  private volatile boolean canceled = false;
+
+  /**
+   * @param bucketWidth mass width of a bucket. Should be in the range of the search windows
+   */
+  FormulaCandidateTable(@NotNull MolecularFormulaRange elementCounts, double bucketWidth) {
+    this.elementCounts = elementCounts;
+    this.bucketWidth = bucketWidth;
+    final List<IIsotope> list = new ArrayList<>();
+    elementCounts.isotopes().forEach(list::add);
+    isotopes = list.toArray(IIsotope[]::new);
+    isotopeMasses = new double[isotopes.length];
+    for (int i = 0; i < isotopes.length; i++) {
+      isotopeMasses[i] = isotopes[i].getExactMass();
+    }
+  }
+
+  /**
+   * @return all candidate formulas with a mass within [minMass, maxMass], sorted by mass. Empty if
+   * canceled
+   */
+  public @NotNull List<IMolecularFormula> getFormulas(double minMass, double maxMass) {
+    final List<IMolecularFormula> formulas = new ArrayList<>();
+    final long first = bucketKey(minMass);
+    final long last = bucketKey(maxMass);
+    for (long key = first; key <= last && !canceled; key++) {
+      final Bucket bucket = buckets.computeIfAbsent(key,
+          k -> Suppliers.memoize(() -> generateBucket(k))).get();
+      final double[] masses = bucket.masses();
+      for (int i = bucket.lowerBound(minMass); i < masses.length && masses[i] <= maxMass; i++) {
+        formulas.add(createFormula(bucket, i));
+      }
+    }
+    return canceled ? List.of() : formulas;
+  }
+
+  /**
+   * Releases all buckets that only hold masses below this value
+   */
+  public void releaseBelow(double mass) {
+    final long key = bucketKey(mass);
+    buckets.keySet().removeIf(k -> k < key);
+  }
+
+  public int getNumberOfBuckets() {
+    return buckets.size();
+  }
+
+  /**
+   * Stops all running generators, queries return empty results afterwards
+   */
+  public void cancel() {
+    canceled = true;
+    runningGenerators.forEach(MolecularFormulaGenerator::cancel);
+  }
+
+  private IMolecularFormula createFormula(Bucket bucket, int index) {
+    final IMolecularFormula formula = builder.newInstance(IMolecularFormula.class);
+    final int offset = index * isotopes.length;
+    for (int i = 0; i < isotopes.length; i++) {
+      final int count = bucket.counts()[offset + i];
+      if (count > 0) {
+        formula.addIsotope(isotopes[i], count);
+      }
+    }
+    return formula;
+  }
+
+  private long bucketKey(double mass) {
+    return (long) Math.floor(mass / bucketWidth);
+  }
+
+  private Bucket generateBucket(long key) {
+    final double lower = key * bucketWidth;
+    final double upper = (key + 1) * bucketWidth;
+    final MolecularFormulaGenerator generator = new MolecularFormulaGenerator(builder,
+        lower - GENERATOR_MARGIN, upper + GENERATOR_MARGIN, elementCounts);
+    runningGenerators.add(generator);
+
+    final DoubleArrayList masses = new DoubleArrayList();
+    final ShortArrayList counts = new ShortArrayList();
+    try {
+      IMolecularFormula formula;
+      while (!canceled && (formula = generator.getNextFormula()) != null) {
+        double mass = 0;
+        for (int i = 0; i < isotopes.length; i++) {
+          mass += formula.getIsotopeCount(isotopes[i]) * isotopeMasses[i];
+        }
+        // each formula belongs to exactly one bucket [lower, upper)
+        if (mass < lower || mass >= upper) {
+          continue;
+        }
+        masses.add(mass);
+        for (IIsotope isotope : isotopes) {
+          counts.add((short) formula.getIsotopeCount(isotope));
+        }
+      }
+    } finally {
+      runningGenerators.remove(generator);
+    }
+    return Bucket.sorted(masses.toDoubleArray(), counts.toShortArray(), isotopes.length);
+  }
+
+  /**
+   * @param masses sorted masses
+   * @param counts element counts of all formulas, one value per isotope of the element ranges
+   */
+  private record Bucket(double[] masses, short[] counts) {
+
+    static Bucket sorted(double[] masses, short[] counts, int stride) {
+      final int[] order = new int[masses.length];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      IntArrays.quickSort(order, (a, b) -> Double.compare(masses[a], masses[b]));
+
+      final double[] sortedMasses = new double[masses.length];
+      final short[] sortedCounts = new short[counts.length];
+      for (int i = 0; i < order.length; i++) {
+        sortedMasses[i] = masses[order[i]];
+        System.arraycopy(counts, order[i] * stride, sortedCounts, i * stride, stride);
+      }
+      return new Bucket(sortedMasses, sortedCounts);
+    }
+
+    /**
+     * @return first index with a mass >= value
+     */
+    int lowerBound(double value) {
+      int low = 0;
+      int high = masses.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (masses[mid] < value) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
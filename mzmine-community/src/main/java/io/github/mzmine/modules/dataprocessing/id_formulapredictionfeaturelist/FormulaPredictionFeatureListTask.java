@@ -43,6 +43,7 @@ import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions
 import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.rdbe.RDBERestrictionParameters;
 import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreCalculator;
 import io.github.mzmine.modules.tools.isotopepatternscore.IsotopePatternScoreParameters;
+import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCache;
 import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCalculator;
 import io.github.mzmine.modules.tools.msmsscore.MSMSScore;
 import io.github.mzmine.modules.tools.msmsscore.MSMSScoreCalculator;
@@ -54,18 +55,18 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.FormulaUtils;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
-import org.openscience.cdk.formula.MolecularFormulaGenerator;
 import org.openscience.cdk.formula.MolecularFormulaRange;
-import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.interfaces.IMolecularFormula;
-import org.openscience.cdk.silent.SilentChemObjectBuilder;
 
 public class FormulaPredictionFeatureListTask extends AbstractTask {
 
+  private static final int ROWS_PER_BLOCK = 256;
+  private static final double MIN_BUCKET_WIDTH = 1E-4;
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private final MolecularFormulaRange elementCounts;
   private final Double minIsotopeScore;
@@ -84,10 +85,9 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
   private float sortPPMFactor;
   private float sortMSMSFactor;
   private float sortIsotopeFactor;
-  private MolecularFormulaGenerator generator;
+  private volatile FormulaCandidateTable candidates;
   private String message;
   private int totalRows, finishedRows;
-  private List<ResultFormula> resultingFormulas;
   private Range<Double> rdbeRange;
   private Boolean rdbeIsInteger;
   private Boolean checkHCRatio;
@@ -195,63 +195,52 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
 
     setStatus(TaskStatus.PROCESSING);
 
-    totalRows = featureList.getNumberOfRows();
-
     featureList.addRowType(DataTypes.get(
         io.github.mzmine.datamodel.features.types.annotations.formula.FormulaListType.class));
 
-    for (FeatureListRow row : featureList.getRows()) {
-
-      if (row.getPeakIdentities().size() > 0) {
-        continue;
-      }
-      this.resultingFormulas = new ArrayList<>();
-
-      double searchedMass =
-          (row.getAverageMZ() - ionType.getAddedMass()) * Math.abs(ionType.getCharge());
+    // rows sorted by mass share the lazily generated candidate buckets of the table
+    final List<FeatureListRow> rows = featureList.getRows().stream()
+        .filter(row -> row.getPeakIdentities().isEmpty())
+        .sorted(Comparator.comparingDouble(this::getSearchedMass)).toList();
+    totalRows = rows.size();
+
+    if (!rows.isEmpty()) {
+      final double medianMass = getSearchedMass(rows.get(rows.size() / 2));
+      final Range<Double> medianRange = mzTolerance.getToleranceRange(medianMass);
+      candidates = new FormulaCandidateTable(elementCounts,
+          Math.max(medianRange.upperEndpoint() - medianRange.lowerEndpoint(), MIN_BUCKET_WIDTH));
+    }
 
+    for (int start = 0; start < rows.size(); start += ROWS_PER_BLOCK) {
+      final List<FeatureListRow> block = rows.subList(start,
+          Math.min(start + ROWS_PER_BLOCK, rows.size()));
       message = "Formula prediction for " + MZmineCore.getConfiguration().getMZFormat()
-          .format(searchedMass);
-
-      Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
-
-      IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
-      generator = new MolecularFormulaGenerator(builder, massRange.lowerEndpoint(),
-          massRange.upperEndpoint(), elementCounts);
+          .format(getSearchedMass(block.getFirst()));
 
-      IMolecularFormula cdkFormula;
-
-      // create a map to store ResultFormula and relative mass deviation
-      // for sorting
-      while ((cdkFormula = generator.getNextFormula()) != null) {
-        // Mass is ok, so test other constraints
-        ResultFormula molf = checkConstraints(cdkFormula, row, searchedMass);
-
-        if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
-          return;
-        }
-
-        if (molf != null) {
-          resultingFormulas.add(molf);
-        }
-      }
+      final List<List<ResultFormula>> results = block.parallelStream().map(this::predictFormulas)
+          .toList();
 
-      if (isCanceled()) {
+      if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
         return;
       }
 
       // Add the new formula entry top results
-      if (!resultingFormulas.isEmpty()) {
-        FormulaUtils.sortFormulaList(resultingFormulas, sortPPMFactor, sortIsotopeFactor,
-            sortMSMSFactor);
-        row.setFormulas(resultingFormulas.subList(0,
-            Math.min(resultingFormulas.size(), maxBestFormulasPerFeature)));
+      for (int i = 0; i < block.size(); i++) {
+        final List<ResultFormula> resultingFormulas = results.get(i);
+        if (!resultingFormulas.isEmpty()) {
+          FormulaUtils.sortFormulaList(resultingFormulas, sortPPMFactor, sortIsotopeFactor,
+              sortMSMSFactor);
+          block.get(i).setFormulas(resultingFormulas.subList(0,
+              Math.min(resultingFormulas.size(), maxBestFormulasPerFeature)));
+        }
       }
+      finishedRows += block.size();
 
-      if (isCanceled()) {
-        return;
+      // candidates below the next block are not needed anymore
+      if (start + ROWS_PER_BLOCK < rows.size()) {
+        final double nextMass = getSearchedMass(rows.get(start + ROWS_PER_BLOCK));
+        candidates.releaseBelow(mzTolerance.getToleranceRange(nextMass).lowerEndpoint());
       }
-      finishedRows++;
     }
 
     if (isCanceled()) {
@@ -262,12 +251,42 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
         new SimpleFeatureListAppliedMethod(FormulaPredictionFeatureListModule.class, parameters,
             getModuleCallDate()));
 
-    logger.finest("Finished formula search for all the features");
+    logger.finest("Finished formula search for all the features, isotope pattern cache: "
+        + IsotopePatternCache.getInstance().getStatistics());
 
     setStatus(TaskStatus.FINISHED);
 
   }
 
+  private double getSearchedMass(FeatureListRow row) {
+    return (row.getAverageMZ() - ionType.getAddedMass()) * Math.abs(ionType.getCharge());
+  }
+
+  /**
+   * Thread safe prediction for a single row
+   *
+   * @return all formulas that passed the constraints, empty if canceled
+   */
+  private List<ResultFormula> predictFormulas(FeatureListRow row) {
+    final double searchedMass = getSearchedMass(row);
+    final Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
+
+    final List<ResultFormula> resultingFormulas = new ArrayList<>();
+    for (IMolecularFormula cdkFormula : candidates.getFormulas(massRange.lowerEndpoint(),
+        massRange.upperEndpoint())) {
+      if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
+        return List.of();
+      }
+
+      // Mass is ok, so test other constraints
+      ResultFormula molf = checkConstraints(cdkFormula, row, searchedMass);
+      if (molf != null) {
+        resultingFormulas.add(molf);
+      }
+    }
+    return resultingFormulas;
+  }
+
   /**
    * @param cdkFormula
    * @return null if molecular formula does not match requirements
@@ -354,10 +373,11 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
   public void cancel() {
     super.cancel();
 
-    // We need to cancel the formula generator, because searching for next
+    // We need to cancel the formula generators, because searching for next
     // candidate formula may take a looong time
-    if (generator != null) {
-      generator.cancel();
+    final FormulaCandidateTable table = candidates;
+    if (table != null) {
+      table.cancel();
     }
 
   }
@@ -60,7 +60,6 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -97,7 +96,6 @@ public class FormulaPredictionIonNetworkTask extends AbstractTask {
   private final boolean sortResults;
   private final CreateAvgNetworkFormulasTask netFormulaMerger;
   private final OptionForValues handleHigherMz;
-  private final HashMap<IMolecularFormula, IsotopePattern> predictedPattern = new HashMap<>(1000);
   private MolecularFormulaGenerator generator;
   private String message;
   private int totalRows;
@@ -390,9 +388,8 @@ public class FormulaPredictionIonNetworkTask extends AbstractTask {
       final double detectedPatternHeight = detectedPattern.getBasePeakIntensity();
       final double minPredictedAbundance = isotopeNoiseLevel / detectedPatternHeight;
 
-      predictedIsotopePattern = predictedPattern.computeIfAbsent(cdkFormulaIon,
-          key -> IsotopePatternCalculator.calculateIsotopePattern(cdkFormulaIon,
-              minPredictedAbundance, charge, ionType.getPolarity()));
+      predictedIsotopePattern = IsotopePatternCalculator.calculateIsotopePattern(cdkFormulaIon,
+          minPredictedAbundance, charge, ionType.getPolarity());
 
       isotopeScore = IsotopePatternScoreCalculator.getSimilarityScore(detectedPattern,
           predictedIsotopePattern, isotopeMZTolerance, isotopeNoiseLevel);
@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_localcsvsearch;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.compoundannotations.CompoundDBAnnotation;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.mobilitytolerance.MobilityTolerance;
+import io.github.mzmine.util.files.FileAndPathUtil;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Primitive index of a local compound database. Every entry is one annotation of a CSV line,
+ * either the line itself or one of its ions from the ion library. Entries are sorted by m/z and
+ * hold the RT, mobility and CCS of the line (NaN for wildcards). Annotation objects are not kept,
+ * the task creates them again from the CSV line for entries that match a row.
+ * <p>
+ * Compiled databases are cached in the mzmine user directory. The file name contains a hash of the
+ * CSV content and all settings that change the entries. Files that were not used for a long time
+ * and the least recently used files above the maximum cache size are removed after each write.
+ * <pre>
+ * header             magic, version, byte order, number of entries
+ * m/z                double[numEntries]
+ * RT                 float[numEntries]
+ * mobility           float[numEntries]
+ * CCS                float[numEntries]
+ * line               int[numEntries] index of the CSV line
+ * annotation index   int[numEntries] index in the annotations created from the line
+ * </pre>
+ */
+final class CompiledCompoundDatabase {
+
+  public static final String CACHE_DIR = "compound_db_cache";
+  public static final String FILE_SUFFIX = ".mzcdb";
+  private static final Logger logger = Logger.getLogger(CompiledCompoundDatabase.class.getName());
+
+  private static final long MAGIC = 0x4d5a434442433031L; // MZCDBC01
+  private static final int VERSION = 1;
+  private static final long HEADER_BYTES = 24;
+  private static final int LINES_PER_BLOCK = 1024;
+  static final long MAX_CACHE_BYTES = 2L << 30; // 2 GB
+  static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(90);
+  // temporary files of crashed writes
+  private static final long STALE_TEMP_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private final double[] mzs;
+  private final float[] rts;
+  private final float[] mobilities;
+  private final float[] ccs;
+  private final int[] lines;
+  private final int[] annotationIndices;
+
+  private CompiledCompoundDatabase(double[] mzs, float[] rts, float[] mobilities, float[] ccs,
+      int[] lines, int[] annotationIndices) {
+    this.mzs = mzs;
+    this.rts = rts;
+    this.mobilities = mobilities;
+    this.ccs = ccs;
+    this.lines = lines;
+    this.annotationIndices = annotationIndices;
+  }
+
+  /**
+   * Creates the annotations of all lines in parallel blocks and sorts them by m/z. Annotations
+   * without precursor m/z are skipped.
+   *
+   * @param firstLine         first line with values, the header is skipped
+   * @param numLines          total number of lines including the header
+   * @param lineAnnotations   creates the annotations of a line, needs to return the same list for
+   *                          the same line when called again for matching entries
+   * @param lineFinished      called after each line
+   * @param canceled          stops compilation
+   * @return the database or null if canceled
+   */
+  @Nullable
+  static CompiledCompoundDatabase compile(int firstLine, int numLines,
+      @NotNull IntFunction<List<CompoundDBAnnotation>> lineAnnotations,
+      @NotNull Runnable lineFinished, @NotNull BooleanSupplier canceled) {
+    final int numBlocks = Math.ceilDiv(Math.max(numLines - firstLine, 0), LINES_PER_BLOCK);
+    final List<CompiledCompoundDatabase> blocks = IntStream.range(0, numBlocks).parallel()
+        .mapToObj(block -> {
+          final int start = firstLine + block * LINES_PER_BLOCK;
+          final int end = Math.min(start + LINES_PER_BLOCK, numLines);
+          return compileBlock(start, end, lineAnnotations, lineFinished, canceled);
+        }).toList();
+    if (canceled.getAsBoolean()) {
+      return null;
+    }
+    return sortedByMz(blocks);
+  }
+
+  @Nullable
+  private static CompiledCompoundDatabase compileBlock(int start, int end,
+      IntFunction<List<CompoundDBAnnotation>> lineAnnotations, Runnable lineFinished,
+      BooleanSupplier canceled) {
+    final DoubleArrayList mzs = new DoubleArrayList();
+    final FloatArrayList rts = new FloatArrayList();
+    final FloatArrayList mobilities = new FloatArrayList();
+    final FloatArrayList ccs = new FloatArrayList();
+    final IntArrayList lines = new IntArrayList();
+    final IntArrayList annotationIndices = new IntArrayList();
+    for (int line = start; line < end; line++) {
+      if (canceled.getAsBoolean()) {
+        return null;
+      }
+      final List<CompoundDBAnnotation> annotations = lineAnnotations.apply(line);
+      for (int i = 0; i < annotations.size(); i++) {
+        final CompoundDBAnnotation annotation = annotations.get(i);
+        final Double mz = annotation.getPrecursorMZ();
+        if (mz == null) {
+          continue;
+        }
+        mzs.add(mz.doubleValue());
+        rts.add(wildcardToNaN(annotation.getRT()));
+        mobilities.add(wildcardToNaN(annotation.getMobility()));
+        ccs.add(wildcardToNaN(annotation.getCCS()));
+        lines.add(line);
+        annotationIndices.add(i);
+      }
+      lineFinished.run();
+    }
+    return new CompiledCompoundDatabase(mzs.toDoubleArray(), rts.toFloatArray(),
+        mobilities.toFloatArray(), ccs.toFloatArray(), lines.toIntArray(),
+        annotationIndices.toIntArray());
+  }
+
+  private static float wildcardToNaN(@Nullable Float value) {
+    return value == null || value <= 0 ? Float.NaN : value;
+  }
+
+  private static CompiledCompoundDatabase sortedByMz(List<CompiledCompoundDatabase> blocks) {
+    final int size = blocks.stream().mapToInt(CompiledCompoundDatabase::size).sum();
+    final double[] mzs = new double[size];
+    final float[] rts = new float[size];
+    final float[] mobilities = new float[size];
+    final float[] ccs = new float[size];
+    final int[] lines = new int[size];
+    final int[] annotationIndices = new int[size];
+    int n = 0;
+    for (CompiledCompoundDatabase block : blocks) {
+      final int blockSize = block.size();
+      System.arraycopy(block.mzs, 0, mzs, n, blockSize);
+      System.arraycopy(block.rts, 0, rts, n, blockSize);
+      System.arraycopy(block.mobilities, 0, mobilities, n, blockSize);
+      System.arraycopy(block.ccs, 0, ccs, n, blockSize);
+      System.arraycopy(block.lines, 0, lines, n, blockSize);
+      System.arraycopy(block.annotationIndices, 0, annotationIndices, n, blockSize);
+      n += blockSize;
+    }
+
+    // entries are in line order, stable sort by m/z
+    final int[] order = IntStream.range(0, size).toArray();
+    IntArrays.parallelQuickSort(order, (a, b) -> {
+      final int compare = Double.compare(mzs[a], mzs[b]);
+      return compare != 0 ? compare : Integer.compare(a, b);
+    });
+
+    final CompiledCompoundDatabase sorted = new CompiledCompoundDatabase(new double[size],
+        new float[size], new float[size], new float[size], new int[size], new int[size]);
+    for (int i = 0; i < size; i++) {
+      final int source = order[i];
+      sorted.mzs[i] = mzs[source];
+      sorted.rts[i] = rts[source];
+      sorted.mobilities[i] = mobilities[source];
+      sorted.ccs[i] = ccs[source];
+      sorted.lines[i] = lines[source];
+      sorted.annotationIndices[i] = annotationIndices[source];
+    }
+    return sorted;
+  }
+
+  /**
+   * @param values   all CSV lines
+   * @param settings all settings that change the compiled entries
+   * @return hash of the database content and settings
+   */
+  @NotNull
+  static String contentHash(@NotNull List<String[]> values, @NotNull String settings) {
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putInt(VERSION);
+    hasher.putUnencodedChars(settings);
+    for (String[] line : values) {
+      hasher.putInt(line.length);
+      for (String value : line) {
+        if (value == null) {
+          hasher.putInt(-1);
+        } else {
+          hasher.putInt(value.length());
+          hasher.putUnencodedChars(value);
+        }
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * @return the location of the compiled database in the mzmine user directory
+   */
+  @NotNull
+  static File getCacheFile(@NotNull File source, @NotNull String contentHash) {
+    final String name = FileAndPathUtil.eraseFormat(source.getName())
+                            .replaceAll("[^A-Za-z0-9_-]", "_") + "_" + contentHash.substring(0, 16)
+                        + FILE_SUFFIX;
+    return new File(FileAndPathUtil.resolveInMzmineDir(CACHE_DIR), name);
+  }
+
+  /**
+   * @return the compiled database or null if the file does not exist or is invalid
+   */
+  @Nullable
+  static CompiledCompoundDatabase open(@NotNull File compiled) {
+    if (!compiled.isFile() || compiled.length() < HEADER_BYTES) {
+      return null;
+    }
+    try (var channel = FileChannel.open(compiled.toPath(), StandardOpenOption.READ);
+        var arena = Arena.ofConfined()) {
+      final MemorySegment file = channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+      if (file.get(ValueLayout.JAVA_LONG, 0) != MAGIC
+          || file.get(ValueLayout.JAVA_INT, 8) != VERSION
+          || file.get(ValueLayout.JAVA_INT, 12) != nativeByteOrder()) {
+        return null;
+      }
+      final int size = file.get(ValueLayout.JAVA_INT, 16);
+      if (size < 0 || fileBytes(size) != file.byteSize()) {
+        return null;
+      }
+      final CompiledCompoundDatabase database = new CompiledCompoundDatabase(new double[size],
+          new float[size], new float[size], new float[size], new int[size], new int[size]);
+      long offset = HEADER_BYTES;
+      MemorySegment.copy(file, ValueLayout.JAVA_DOUBLE, offset, database.mzs, 0, size);
+      offset += (long) size * Double.BYTES;
+      for (float[] column : List.of(database.rts, database.mobilities, database.ccs)) {
+        MemorySegment.copy(file, ValueLayout.JAVA_FLOAT, offset, column, 0, size);
+        offset += (long) size * Float.BYTES;
+      }
+      for (int[] column : List.of(database.lines, database.annotationIndices)) {
+        MemorySegment.copy(file, ValueLayout.JAVA_INT, offset, column, 0, size);
+        offset += (long) size * Integer.BYTES;
+      }
+      // least recently used files are pruned first
+      compiled.setLastModified(System.currentTimeMillis());
+      return database;
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING,
+          "Cannot open compiled compound database %s. Will parse the database again. %s".formatted(
+              compiled, e.getMessage()), e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the database to a temporary file that is moved to the target
+   *
+   * @return true on success. Failures are logged as this is only an optimization
+   */
+  boolean write(@NotNull File target) {
+    final int size = size();
+    final Path targetPath = target.toPath();
+    Path tmp = null;
+    try {
+      Files.createDirectories(targetPath.getParent());
+      tmp = Files.createTempFile(targetPath.getParent(), target.getName(), ".tmp");
+      try (var channel = FileChannel.open(tmp, StandardOpenOption.READ,
+          StandardOpenOption.WRITE); var arena = Arena.ofConfined()) {
+        final MemorySegment file = channel.map(MapMode.READ_WRITE, 0, fileBytes(size), arena);
+        long offset = HEADER_BYTES;
+        MemorySegment.copy(mzs, 0, file, ValueLayout.JAVA_DOUBLE, offset, size);
+        offset += (long) size * Double.BYTES;
+        for (float[] column : List.of(rts, mobilities, ccs)) {
+          MemorySegment.copy(column, 0, file, ValueLayout.JAVA_FLOAT, offset, size);
+          offset += (long) size * Float.BYTES;
+        }
+        for (int[] column : List.of(lines, annotationIndices)) {
+          MemorySegment.copy(column, 0, file, ValueLayout.JAVA_INT, offset, size);
+          offset += (long) size * Integer.BYTES;
+        }
+        // header last, an interrupted write never results in a valid file
+        file.set(ValueLayout.JAVA_LONG, 0, MAGIC);
+        file.set(ValueLayout.JAVA_INT, 8, VERSION);
+        file.set(ValueLayout.JAVA_INT, 12, nativeByteOrder());
+        file.set(ValueLayout.JAVA_INT, 16, size);
+        file.force();
+      }
+      Files.move(tmp, targetPath, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING,
+          "Cannot write compiled compound database %s. Will parse the database again next time. %s".formatted(
+              target, e.getMessage()), e);
+      return false;
+    } finally {
+      if (tmp != null) {
+        try {
+          Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+          logger.log(Level.FINE, "Cannot delete temporary file " + tmp, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes compiled databases from the cache directory of the file
+   *
+   * @param keep the file that was just used, is never removed
+   */
+  static void pruneCache(@NotNull File keep) {
+    prune(keep.getParentFile(), keep, MAX_CACHE_BYTES, MAX_AGE_MILLIS);
+  }
+
+  /**
+   * Removes stale temporary files, files that were not used within the maximum age, and the least
+   * recently used files until the directory fits into the maximum size.
+   */
+  static void prune(@Nullable File cacheDir, @Nullable File keep, long maxBytes,
+      long maxAgeMillis) {
+    final File[] files = cacheDir == null ? null : cacheDir.listFiles(File::isFile);
+    if (files == null) {
+      return;
+    }
+    final long now = System.currentTimeMillis();
+    // most recently used first
+    final List<File> sorted = Arrays.stream(files)
+        .sorted(Comparator.comparingLong(File::lastModified).reversed()).toList();
+    long bytes = 0;
+    for (File file : sorted) {
+      final long age = now - file.lastModified();
+      final boolean remove;
+      if (file.equals(keep)) {
+        remove = false;
+      } else if (file.getName().endsWith(".tmp")) {
+        remove = age > STALE_TEMP_MILLIS;
+      } else if (file.getName().endsWith(FILE_SUFFIX)) {
+        remove = age > maxAgeMillis || bytes + file.length() > maxBytes;
+      } else {
+        continue;
+      }
+      if (remove) {
+        try {
+          Files.deleteIfExists(file.toPath());
+          logger.fine(() -> "Removed compiled compound database " + file.getName());
+        } catch (IOException e) {
+          logger.log(Level.FINE, "Cannot delete compiled compound database " + file, e);
+        }
+      } else if (file.getName().endsWith(FILE_SUFFIX)) {
+        bytes += file.length();
+      }
+    }
+  }
+
+  private static long fileBytes(int size) {
+    return HEADER_BYTES + (long) size * (Double.BYTES + 3 * Float.BYTES + 2 * Integer.BYTES);
+  }
+
+  private static int nativeByteOrder() {
+    return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 2;
+  }
+
+  /**
+   * Sweeps the rows against the database. Both are sorted by m/z, so the start of the m/z window
+   * only moves forward. Entries with a RT or mobility outside the tolerance are skipped, all other
+   * checks are left to the consumer.
+   *
+   * @param mzSortedRows     rows sorted by ascending m/z
+   * @param percCcsTolerance relative CCS tolerance or null
+   * @param consumer         called for each row and index of an entry within the tolerances
+   */
+  void forEachCandidate(@NotNull List<FeatureListRow> mzSortedRows,
+      @NotNull MZTolerance mzTolerance, @Nullable RTTolerance rtTolerance,
+      @Nullable MobilityTolerance mobTolerance, @Nullable Double percCcsTolerance,
+      @NotNull ObjIntConsumer<FeatureListRow> consumer) {
+    int start = 0;
+    for (FeatureListRow row : mzSortedRows) {
+      final double mz = row.getAverageMZ();
+      // the tolerance is applied to the database m/z later, slightly wider window here
+      final double tolerance = mzTolerance.getMzToleranceForMass(mz) * 1.01;
+      final double lower = mz - tolerance;
+      final double upper = mz + tolerance;
+      while (start < mzs.length && mzs[start] < lower) {
+        start++;
+      }
+      final Float rt = rtTolerance != null ? row.getAverageRT() : null;
+      final Float mobility = mobTolerance != null ? row.getAverageMobility() : null;
+      final Float rowCcs = percCcsTolerance != null ? row.getAverageCCS() : null;
+
+      for (int i = start; i < mzs.length && mzs[i] <= upper; i++) {
+        if (rt != null && !Float.isNaN(rts[i]) && !rtTolerance.checkWithinTolerance(rts[i], rt)) {
+          continue;
+        }
+        if (mobility != null && !Float.isNaN(mobilities[i])
+            && !mobTolerance.checkWithinTolerance(mobilities[i], mobility)) {
+          continue;
+        }
+        // small margin for the float tolerance range of the final check
+        if (rowCcs != null && !Float.isNaN(ccs[i])
+            && Math.abs(rowCcs - ccs[i]) > ccs[i] * percCcsTolerance * 1.0001) {
+          continue;
+        }
+        consumer.accept(row, i);
+      }
+    }
+  }
+
+  public int size() {
+    return mzs.length;
+  }
+
+  public double getMz(int entry) {
+    return mzs[entry];
+  }
+
+  /**
+   * @return the index of the CSV line
+   */
+  public int getLine(int entry) {
+    return lines[entry];
+  }
+
+  /**
+   * @return the index in the annotations created from the line
+   */
+  public int getAnnotationIndex(int entry) {
+    return annotationIndices[entry];
+  }
+}
@@ -25,7 +25,6 @@
 
 package io.github.mzmine.modules.dataprocessing.id_localcsvsearch;
 
-import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
@@ -58,6 +57,7 @@ import io.github.mzmine.datamodel.features.types.numbers.PrecursorMZType;
 import io.github.mzmine.datamodel.features.types.numbers.RTType;
 import io.github.mzmine.datamodel.identities.iontype.IonTypeParser;
 import io.github.mzmine.modules.dataprocessing.id_ion_identity_networking.ionidnetworking.IonNetworkLibrary;
+import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCache;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.ImportType;
 import io.github.mzmine.parameters.parametertypes.ionidentity.IonLibraryParameterSet;
@@ -68,17 +68,17 @@ import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.CSVParsingUtils;
 import io.github.mzmine.util.FeatureListRowSorter;
-import io.github.mzmine.util.FeatureListUtils;
 import java.io.File;
 import java.nio.file.NoSuchFileException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -141,11 +141,10 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
   private final IonLibraryParameterSet ionLibraryParameterSet;
   private final Boolean filterSamples;
   private final String sampleHeader;
-  private final List<RawDataFile> allRawDataFiles;
   private IonNetworkLibrary ionNetworkLibrary;
 
   private List<String[]> databaseValues;
-  private int finishedLines = 0;
+  private final AtomicInteger finishedLines = new AtomicInteger(0);
   private int sampleColIndex = -1;
 
   LocalCSVDatabaseSearchTask(FeatureList[] featureLists, ParameterSet parameters,
@@ -172,9 +171,6 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
         LocalCSVDatabaseSearchParameters.ionLibrary).getEmbeddedParameters() : null;
     filterSamples = parameters.getValue(LocalCSVDatabaseSearchParameters.filterSamples);
 
-    // all raw data files for a name check if selected
-    allRawDataFiles = Arrays.stream(featureLists).map(FeatureList::getRawDataFiles)
-        .flatMap(Collection::stream).distinct().toList();
     sampleHeader = parameters.getParameter(LocalCSVDatabaseSearchParameters.filterSamples)
         .getEmbeddedParameter().getValue();
 
@@ -209,7 +205,7 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
     if (databaseValues == null) {
       return 0;
     }
-    return ((double) finishedLines) / databaseValues.size();
+    return ((double) finishedLines.get()) / databaseValues.size();
   }
 
   @Override
@@ -263,30 +259,17 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
         }
       }
 
-      // extract rows and sort by mz for binary search
+      final CompiledCompoundDatabase database = loadOrCompileDatabase(lineIds, commentFields);
+      if (database == null) {
+        return; // canceled
+      }
+
+      // extract rows and sort by mz for the sweep against the database
       var mzSortedRows = Arrays.stream(featureLists)
           .map(flist -> flist.getRows().sorted(FeatureListRowSorter.MZ_ASCENDING)).toList();
-
-      for (String[] currentLine : databaseValues) {
-        if (finishedLines == 0) {
-          finishedLines++;
-          continue; // skip header
-        }
-        if (isCanceled()) {
-          return;
-        }
-        try {
-          // check already once for all raw data files
-          if (filterSamples && !matchSample(allRawDataFiles, currentLine[sampleColIndex])) {
-            // sample mismatch for this line
-            continue;
-          }
-
-          processOneLine(mzSortedRows, currentLine, lineIds, commentFields);
-        } catch (Exception e) {
-          logger.log(Level.FINE, "Exception while processing csv line " + finishedLines, e);
-        }
-        finishedLines++;
+      annotateRows(database, mzSortedRows, lineIds, commentFields);
+      if (isCanceled()) {
+        return;
       }
 
       for (final SortedList<FeatureListRow> flist : mzSortedRows) {
@@ -303,6 +286,8 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
         for (FeatureList flist : featureLists) {
           refineAnnotationsByIsotopes(flist);
         }
+        logger.finest(
+            "Isotope pattern cache: " + IsotopePatternCache.getInstance().getStatistics());
       }
 
 
@@ -358,18 +343,61 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
   }
 
   /**
-   * @param mzSortedRows     rows per feature list sorted by mz
-   * @param values           csv values to be parsed into annotation
-   * @param linesWithIndices columns
-   * @param commentFields    comment fields that are put together into the comment
+   * Loads the compiled database from the cache or compiles and caches it. The cache file is
+   * identified by the database content and all settings that change the annotations.
+   *
+   * @return the database or null if canceled
    */
-  @SuppressWarnings("ResultOfMethodCallIgnored")
-  private void processOneLine(final List<SortedList<FeatureListRow>> mzSortedRows,
-      @NotNull String[] values, @NotNull List<ImportType> linesWithIndices,
-      @NotNull final List<ImportType> commentFields) {
+  @Nullable
+  private CompiledCompoundDatabase loadOrCompileDatabase(@NotNull List<ImportType> lineIds,
+      @NotNull List<ImportType> commentFields) {
+    final String settings = lineIds.stream()
+        .map(type -> type.getDataType().getUniqueID() + "@" + type.getColumnIndex())
+        .collect(Collectors.joining(",")) + ";" + commentFields.stream()
+        .map(type -> type.getCsvColumnName() + "@" + type.getColumnIndex())
+        .collect(Collectors.joining(",")) + ";" + (ionNetworkLibrary == null ? "no ions"
+        : ionNetworkLibrary.getAllAdducts().stream().map(Object::toString)
+            .collect(Collectors.joining(",")));
+    final File cacheFile = CompiledCompoundDatabase.getCacheFile(dataBaseFile,
+        CompiledCompoundDatabase.contentHash(databaseValues, settings));
+
+    final CompiledCompoundDatabase cached = CompiledCompoundDatabase.open(cacheFile);
+    if (cached != null) {
+      logger.fine(() -> "Loaded compiled compound database " + cacheFile);
+      finishedLines.set(databaseValues.size());
+      return cached;
+    }
 
-    final List<CompoundDBAnnotation> annotations = getCompoundDBAnnotations(values,
-        linesWithIndices, commentFields);
+    finishedLines.set(1); // header
+    final CompiledCompoundDatabase database = CompiledCompoundDatabase.compile(1,
+        databaseValues.size(), line -> {
+          try {
+            return getCompoundDBAnnotations(databaseValues.get(line), lineIds, commentFields);
+          } catch (Exception e) {
+            logger.log(Level.FINE, "Exception while processing csv line " + line, e);
+            return List.of();
+          }
+        }, finishedLines::incrementAndGet, this::isCanceled);
+    if (database != null && database.write(cacheFile)) {
+      logger.fine(() -> "Compiled compound database %s with %d entries to %s".formatted(
+          dataBaseFile, database.size(), cacheFile));
+      CompiledCompoundDatabase.pruneCache(cacheFile);
+    }
+    return database;
+  }
+
+  /**
+   * Sweeps the rows of each feature list against the database. Annotations are only created for
+   * CSV lines with candidates and shared between feature lists.
+   *
+   * @param mzSortedRows  rows per feature list sorted by mz
+   * @param lineIds       columns
+   * @param commentFields comment fields that are put together into the comment
+   */
+  private void annotateRows(@NotNull CompiledCompoundDatabase database,
+      @NotNull List<SortedList<FeatureListRow>> mzSortedRows, @NotNull List<ImportType> lineIds,
+      @NotNull List<ImportType> commentFields) {
+    final Map<Integer, List<CompoundDBAnnotation>> lineAnnotations = new ConcurrentHashMap<>();
 
     IntStream indexStream = IntStream.range(0, featureLists.length);
     if (featureLists.length > 1000) {
@@ -377,44 +405,39 @@ public class LocalCSVDatabaseSearchTask extends AbstractTask {
     }
     // not all feature lists have all samples
     indexStream.forEach(i -> {
-      var rawFiles = featureLists[i].getRawDataFiles();
-      //  if active, check sample name contains id - this time for the feature list
-      if (!filterSamples || matchSample(rawFiles, values[sampleColIndex])) {
-        var sortedRows = mzSortedRows.get(i);
-
-        for (CompoundDBAnnotation annotation : annotations) {
-          List<FeatureListRow> candidates = binarySearchCandidates(sortedRows, annotation);
-
-          for (FeatureListRow row : candidates) {
-            checkMatchAndAnnotate(annotation, row, mzTolerance, rtTolerance, mobTolerance,
-                ccsTolerance);
-          }
-        }
+      if (isCanceled()) {
+        return;
       }
+      var rawFiles = featureLists[i].getRawDataFiles();
+      // sample filter per line: 0 not checked, 1 match, 2 mismatch
+      final byte[] sampleMatches = filterSamples ? new byte[databaseValues.size()] : null;
+
+      database.forEachCandidate(mzSortedRows.get(i), mzTolerance, rtTolerance, mobTolerance,
+          ccsTolerance, (row, entry) -> {
+            final int line = database.getLine(entry);
+            //  if active, check sample name contains id - this time for the feature list
+            if (sampleMatches != null) {
+              if (sampleMatches[line] == 0) {
+                final String[] values = databaseValues.get(line);
+                sampleMatches[line] = sampleColIndex < values.length && matchSample(rawFiles,
+                    values[sampleColIndex]) ? (byte) 1 : (byte) 2;
+              }
+              if (sampleMatches[line] == 2) {
+                return;
+              }
+            }
+
+            final List<CompoundDBAnnotation> annotations = lineAnnotations.computeIfAbsent(line,
+                l -> getCompoundDBAnnotations(databaseValues.get(l), lineIds, commentFields));
+            final int index = database.getAnnotationIndex(entry);
+            if (index < annotations.size()) {
+              checkMatchAndAnnotate(annotations.get(index), row, mzTolerance, rtTolerance,
+                  mobTolerance, ccsTolerance);
+            }
+          });
     });
   }
 
-  @NotNull
-  private List<FeatureListRow> binarySearchCandidates(final SortedList<FeatureListRow> mzSortedRows,
-      final CompoundDBAnnotation annotation) {
-    // ranges are build with prechecks - so if there is no mobility use Range.all() to deactivate the filter
-    Double mz = annotation.getPrecursorMZ();
-    assert mz != null;
-    final Float rt = annotation.getRT();
-    final Float mobility = annotation.getMobility();
-    var mzRange = mzTolerance.getToleranceRange(mz);
-    Range<Float> rtRange =
-        rtTolerance != null && rt != null ? rtTolerance.getToleranceRange(rt) : Range.all();
-    Range<Float> mobilityRange =
-        mobTolerance != null && mobility != null ? mobTolerance.getToleranceRange(mobility)
-            : Range.all();
-
-    // get all canditates with binary search
-    // CCS is still missing here but will be tested later
-    return FeatureListUtils.getCandidatesWithinRanges(mzRange, rtRange, mobilityRange, mzSortedRows,
-        true);
-  }
-
   @NotNull
   private List<CompoundDBAnnotation> getCompoundDBAnnotations(final @NotNull String[] values,
       final @NotNull List<ImportType> linesWithIndices,
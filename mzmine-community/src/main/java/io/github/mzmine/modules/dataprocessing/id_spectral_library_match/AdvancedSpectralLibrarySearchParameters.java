@@ -67,8 +67,18 @@ public class AdvancedSpectralLibrarySearchParameters extends SimpleParameterSet
           "Useful for scans and libraries with isotope pattern. Minimum matched signals of 13C isotopes, distance of H and 2H or Cl isotopes. Can not be applied with deisotoping",
           3, 0, 1000), false);
 
+  public static final OptionalParameter<IntegerParameter> fragmentIndexPrefilter = new OptionalParameter<>(
+      new IntegerParameter("Fragment index prefilter (max candidates)",
+          "Speeds up searches against large libraries, especially without precursor m/z filter (e.g., MS1 or GC-EI spectra). "
+              + "Library entries are ranked by the number of shared signals with the query spectrum, "
+              + "using an index of the %d most intense signals of each entry. Only the best candidates are scored with the similarity function. ".formatted(
+              FragmentPeakIndex.DEFAULT_INDEXED_SIGNALS)
+              + "Entries that only share low abundant signals may be missed.", 500, 1, null),
+      false);
+
   public AdvancedSpectralLibrarySearchParameters() {
-    super(rtTolerance, riTolerance, ignoreWithoutRI, ccsTolerance, deisotoping, needsIsotopePattern, cropSpectraToOverlap);
+    super(rtTolerance, riTolerance, ignoreWithoutRI, ccsTolerance, deisotoping, needsIsotopePattern, cropSpectraToOverlap,
+        fragmentIndexPrefilter);
   }
 
 
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_spectral_library_match;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntry;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Inverted index over the most intense fragment signals of all spectral library entries. Signals
+ * are binned by m/z and each bin lists the entries with a signal in this bin. A query spectrum
+ * scores the entries by the number of shared signals within the m/z tolerance, so that the exact
+ * and expensive similarity function only needs to be calculated for the best candidates. This is
+ * a heuristic prefilter and may drop entries that share only low abundant signals with the query.
+ * <p>
+ * Entries are referenced by their index in the list that was used to build the index.
+ */
+public final class FragmentPeakIndex {
+
+  /**
+   * Number of most intense signals indexed per library entry and used per query
+   */
+  public static final int DEFAULT_INDEXED_SIGNALS = 20;
+
+  private final int numEntries;
+  private final int indexedSignals;
+  private final MZTolerance mzTolerance;
+  private final double binWidth;
+  // CSR layout: entries of bin b are in postings[binStarts[b], binStarts[b+1])
+  private final int[] binStarts;
+  private final int[] postingEntries;
+  private final float[] postingMzs;
+
+  private FragmentPeakIndex(int numEntries, int indexedSignals, MZTolerance mzTolerance,
+      double binWidth, int[] binStarts, int[] postingEntries, float[] postingMzs) {
+    this.numEntries = numEntries;
+    this.indexedSignals = indexedSignals;
+    this.mzTolerance = mzTolerance;
+    this.binWidth = binWidth;
+    this.binStarts = binStarts;
+    this.postingEntries = postingEntries;
+    this.postingMzs = postingMzs;
+  }
+
+  /**
+   * @param entries                   the library entries, the index refers to positions in this
+   *                                  list
+   * @param mzTolerance               tolerance to match signals
+   * @param indexedSignals            number of most intense signals per entry
+   * @param removePrecursorTolerance  signals around the precursor m/z of each entry are not
+   *                                  indexed if not null. Should reflect the precursor removal
+   *                                  before spectral matching
+   */
+  public static FragmentPeakIndex build(@NotNull List<SpectralLibraryEntry> entries,
+      @NotNull MZTolerance mzTolerance, int indexedSignals,
+      @Nullable MZTolerance removePrecursorTolerance) {
+    final int numEntries = entries.size();
+    // top signals of all entries, NaN for missing
+    final float[] topMzs = new float[numEntries * indexedSignals];
+    Arrays.fill(topMzs, Float.NaN);
+
+    IntStream.range(0, numEntries).parallel().forEach(e -> {
+      final SpectralLibraryEntry entry = entries.get(e);
+      final int n = entry.getNumberOfDataPoints();
+      final double[] mzs = entry.getMzValues(new double[n]);
+      final double[] intensities = entry.getIntensityValues(new double[n]);
+      final Double precursorMz = entry.getPrecursorMZ();
+      if (removePrecursorTolerance != null && precursorMz != null) {
+        final double removeTolerance = removePrecursorTolerance.getMzToleranceForMass(
+            precursorMz);
+        for (int i = 0; i < n; i++) {
+          if (Math.abs(mzs[i] - precursorMz) <= removeTolerance) {
+            intensities[i] = 0;
+          }
+        }
+      }
+      final int[] top = selectMostIntense(intensities, n, indexedSignals);
+      for (int i = 0; i < top.length; i++) {
+        topMzs[e * indexedSignals + i] = (float) mzs[top[i]];
+      }
+    });
+
+    float maxMz = 0;
+    for (float mz : topMzs) {
+      if (mz > maxMz) {
+        maxMz = mz;
+      }
+    }
+    // bins are at least as wide as the tolerance so that each match is within neighboring bins
+    final double binWidth = Math.max(mzTolerance.getMzToleranceForMass(maxMz), 1E-4);
+    final int numBins = (int) (maxMz / binWidth) + 2;
+
+    // count, prefix sum, fill
+    final int[] binStarts = new int[numBins + 1];
+    for (float mz : topMzs) {
+      if (!Float.isNaN(mz)) {
+        binStarts[bin(mz, binWidth) + 1]++;
+      }
+    }
+    for (int b = 0; b < numBins; b++) {
+      binStarts[b + 1] += binStarts[b];
+    }
+    final int[] fill = Arrays.copyOf(binStarts, numBins);
+    final int[] postingEntries = new int[binStarts[numBins]];
+    final float[] postingMzs = new float[binStarts[numBins]];
+    // entries are added in ascending order
+    for (int i = 0; i < topMzs.length; i++) {
+      final float mz = topMzs[i];
+      if (!Float.isNaN(mz)) {
+        final int pos = fill[bin(mz, binWidth)]++;
+        postingEntries[pos] = i / indexedSignals;
+        postingMzs[pos] = mz;
+      }
+    }
+
+    return new FragmentPeakIndex(numEntries, indexedSignals, mzTolerance, binWidth, binStarts,
+        postingEntries, postingMzs);
+  }
+
+  private static int bin(double mz, double binWidth) {
+    return (int) (mz / binWidth);
+  }
+
+  /**
+   * @return indices of the most intense values, zero intensities are excluded
+   */
+  private static int[] selectMostIntense(double[] intensities, int n, int maxSelected) {
+    final int[] selected = new int[Math.min(n, maxSelected)];
+    if (selected.length == 0) {
+      return selected;
+    }
+    int size = 0;
+    for (int i = 0; i < n; i++) {
+      final double intensity = intensities[i];
+      if (!(intensity > 0) || (size == selected.length
+                               && intensity <= intensities[selected[size - 1]])) {
+        continue;
+      }
+      // insertion into the sorted selection, drop the smallest if full
+      int pos = size == selected.length ? size - 1 : size++;
+      while (pos > 0 && intensities[selected[pos - 1]] < intensity) {
+        selected[pos] = selected[pos - 1];
+        pos--;
+      }
+      selected[pos] = i;
+    }
+    return size == selected.length ? selected : Arrays.copyOf(selected, size);
+  }
+
+  public int getNumEntries() {
+    return numEntries;
+  }
+
+  /**
+   * Scores all entries in the index range by the number of query signals that match any of their
+   * indexed signals and selects the best candidates.
+   *
+   * @param query            the query spectra, the most intense signals of each are used
+   * @param fromIndex        first entry index to consider
+   * @param toIndexExclusive last entry index to consider (exclusive)
+   * @param maxCandidates    maximum number of candidates
+   * @return the entry indices of the best candidates sorted ascending. Entries without any
+   * shared signal are never selected
+   */
+  public int[] findCandidates(@NotNull List<DataPoint[]> query, int fromIndex,
+      int toIndexExclusive, int maxCandidates) {
+    // entry -> shared signals (upper 32 bits) and last counted query signal (lower 32 bits)
+    final Int2LongOpenHashMap scores = new Int2LongOpenHashMap();
+    int querySignal = 0;
+    for (DataPoint[] spectrum : query) {
+      final double[] intensities = new double[spectrum.length];
+      for (int i = 0; i < spectrum.length; i++) {
+        intensities[i] = spectrum[i].getIntensity();
+      }
+      for (int signal : selectMostIntense(intensities, spectrum.length, indexedSignals)) {
+        querySignal++;
+        final double mz = spectrum[signal].getMZ();
+        final double tolerance = mzTolerance.getMzToleranceForMass(mz);
+        final int firstBin = Math.max(bin(mz - tolerance, binWidth), 0);
+        final int lastBin = Math.min(bin(mz + tolerance, binWidth), binStarts.length - 2);
+        for (int b = firstBin; b <= lastBin; b++) {
+          for (int p = binStarts[b]; p < binStarts[b + 1]; p++) {
+            final int entry = postingEntries[p];
+            if (entry < fromIndex || entry >= toIndexExclusive
+                || Math.abs(postingMzs[p] - mz) > tolerance) {
+              continue;
+            }
+            final long score = scores.get(entry);
+            // count each query signal only once per entry
+            if ((int) score != querySignal) {
+              scores.put(entry, ((score >>> 32) + 1) << 32 | querySignal);
+            }
+          }
+        }
+      }
+    }
+
+    final int[] candidates = scores.keySet().toIntArray();
+    if (candidates.length > maxCandidates) {
+      // most shared signals first, lower index on ties to stay deterministic
+      IntArrays.quickSort(candidates, (a, b) -> {
+        final int compare = Long.compare(scores.get(b) >>> 32, scores.get(a) >>> 32);
+        return compare != 0 ? compare : Integer.compare(a, b);
+      });
+      final int[] best = Arrays.copyOf(candidates, maxCandidates);
+      Arrays.sort(best);
+      return best;
+    }
+    Arrays.sort(candidates);
+    return candidates;
+  }
+}
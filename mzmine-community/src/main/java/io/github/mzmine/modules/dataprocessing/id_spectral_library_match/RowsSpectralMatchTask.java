@@ -51,6 +51,7 @@ import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.util.RIRecord;
 import io.github.mzmine.util.collections.BinarySearch;
+import io.github.mzmine.util.collections.IndexRange;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import io.github.mzmine.util.scans.FragmentScanSelection;
 import io.github.mzmine.util.scans.ScanAlignment;
@@ -59,8 +60,10 @@ import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunctions;
 import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.FilteredLibraryEntries;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBAnnotation;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntryList;
 
 import java.time.Instant;
 import java.util.ArrayList;
@@ -116,6 +119,9 @@ public class RowsSpectralMatchTask extends AbstractTask {
   private boolean needsIsotopePattern;
   private int minMatchedIsoSignals;
   private double scanPrecursorMZ;
+  // only score the best candidates from the fragment index, 0 if off
+  private int maxFragmentIndexCandidates;
+  private FragmentPeakIndex fragmentIndex;
 
   public RowsSpectralMatchTask(ParameterSet parameters, @NotNull Scan scan,
                                @NotNull Instant moduleCallDate) {
@@ -161,6 +167,8 @@ public class RowsSpectralMatchTask extends AbstractTask {
           .getEmbeddedParameters();
       cropSpectraToOverlap = advanced.getValue(
           AdvancedSpectralLibrarySearchParameters.cropSpectraToOverlap);
+      maxFragmentIndexCandidates = advanced.getEmbeddedParameterValueIfSelectedOrElse(
+          AdvancedSpectralLibrarySearchParameters.fragmentIndexPrefilter, 0);
 
       ccsTolerance = advanced.getValue(AdvancedSpectralLibrarySearchParameters.ccsTolerance)
           ? new PercentTolerance(
@@ -227,6 +235,8 @@ public class RowsSpectralMatchTask extends AbstractTask {
           .getEmbeddedParameters();
       cropSpectraToOverlap = advanced.getValue(
           AdvancedSpectralLibrarySearchParameters.cropSpectraToOverlap);
+      maxFragmentIndexCandidates = advanced.getEmbeddedParameterValueIfSelectedOrElse(
+          AdvancedSpectralLibrarySearchParameters.fragmentIndexPrefilter, 0);
 
       ccsTolerance = advanced.getValue(AdvancedSpectralLibrarySearchParameters.ccsTolerance)
           ? new PercentTolerance(
@@ -300,6 +310,17 @@ public class RowsSpectralMatchTask extends AbstractTask {
       return;
     }
 
+    if (maxFragmentIndexCandidates > 0 && entries.size() > maxFragmentIndexCandidates) {
+      description = "Building fragment index of %d spectral library entries".formatted(
+          entries.size());
+      fragmentIndex = FragmentPeakIndex.build(entries, mzToleranceSpectra,
+          FragmentPeakIndex.DEFAULT_INDEXED_SIGNALS,
+          !msLevelFilter.isMs1Only() && removePrecursor ? mzToleranceRemovePrecursor : null);
+      if (isCanceled()) {
+        return;
+      }
+    }
+
     // run on spectra
     if (scan != null) {
       description = """
@@ -344,18 +365,15 @@ public class RowsSpectralMatchTask extends AbstractTask {
     }
   }
 
+  /**
+   * Filters and sorts on indices, entries of compiled libraries are only created when accessed
+   */
   private @NotNull List<SpectralLibraryEntry> getSortedSpectralLibraryEntries() {
     final List<SpectralLibraryEntry> entries = parameters.getValue(
         SpectralLibrarySearchParameters.libraries).getMatchingLibraryEntriesAndCheckAvailability();
-    var stream = entries.stream().filter(entry -> entry.getNumberOfDataPoints() >= minMatch);
-
-    if (msLevelFilter.isFragmentationNoMS1()) {
-      // remove scans without precursor mz if its MS2
-      // sort by mz for binary search
-      stream = stream.filter(entry -> entry.getPrecursorMZ() != null)
-          .sorted(Comparator.comparing(SpectralLibraryEntry::getPrecursorMZ));
-    }
-    return stream.toList();
+    // remove scans without precursor mz if its MS2
+    // sort by mz for binary search
+    return FilteredLibraryEntries.filter(entries, minMatch, msLevelFilter.isFragmentationNoMS1());
   }
 
   /**
@@ -368,13 +386,15 @@ public class RowsSpectralMatchTask extends AbstractTask {
     try {
       // filter entries first if MS2
       // MS1 is never filtered because of missing precursor mz
-      entries = binaryFindCandidateEntries(entries, ScanUtils.getPrecursorMz(scan));
-      if (entries.isEmpty()) {
+      final IndexRange candidateRange = binaryFindCandidateRange(entries,
+          ScanUtils.getPrecursorMz(scan));
+      if (candidateRange.isEmpty()) {
         return;
       }
 
       // get mass list and perform deisotoping if active
       DataPoint[] masses = getDataPoints(scan, scan.getPrecursorMz());
+      entries = selectCandidateEntries(entries, candidateRange, List.of(masses));
 
       // get a ccs for the precursor of this scan
       final Float precursorCCS = getPrecursorCCSFromMsMs(scan);
@@ -440,8 +460,8 @@ public class RowsSpectralMatchTask extends AbstractTask {
   public int matchRowToLibraries(List<SpectralLibraryEntry> entries, FeatureListRow row) {
     try {
       // filter entries first if not MS1
-      entries = binaryFindCandidateEntries(entries, row.getAverageMZ());
-      if (entries.isEmpty()) {
+      final IndexRange candidateRange = binaryFindCandidateRange(entries, row.getAverageMZ());
+      if (candidateRange.isEmpty()) {
         return 0;
       }
 
@@ -460,6 +480,7 @@ public class RowsSpectralMatchTask extends AbstractTask {
         DataPoint[] rowMassList = getDataPoints(scan, row.getAverageMZ());
         rowMassLists.add(rowMassList);
       }
+      entries = selectCandidateEntries(entries, candidateRange, rowMassLists);
 
       final Float rowCCS = row.getAverageCCS();
       List<SpectralDBAnnotation> ids = null;
@@ -524,21 +545,39 @@ public class RowsSpectralMatchTask extends AbstractTask {
    * Does no filtering in MS1 but for all other filters by precursor mz using binary search.
    *
    * @param entries         original entries will not be changed
-   * @param scanPrecursorMZ if null returns the initial entries - otherwise used as filter if not
-   *                        MS1
-   * @return either filtered sublist or the original list if no filters applicable
+   * @param scanPrecursorMZ if null returns the full range - otherwise used as filter if not MS1
+   * @return either the filtered index range or the full range if no filters applicable
    */
-  private List<SpectralLibraryEntry> binaryFindCandidateEntries(List<SpectralLibraryEntry> entries,
-                                                                @Nullable final Double scanPrecursorMZ) {
+  private IndexRange binaryFindCandidateRange(List<SpectralLibraryEntry> entries,
+                                              @Nullable final Double scanPrecursorMZ) {
     if (scanPrecursorMZ == null || msLevelFilter.isMs1Only()) {
-      return entries;
+      return IndexRange.ofExclusive(0, entries.size());
+    }
+    return BinarySearch.indexRange(mzTolerancePrecursor.getToleranceRange(scanPrecursorMZ),
+        entries.size(), i -> SpectralLibraryEntryList.getPrecursorMz(entries, i));
+  }
+
+  /**
+   * Uses the fragment index (if active) to only select the entries with the most shared signals.
+   *
+   * @param entries        all entries
+   * @param candidateRange the candidates after precursor filtering, not empty
+   * @param queryMassLists the query spectra
+   * @return the candidate entries in original order
+   */
+  private List<SpectralLibraryEntry> selectCandidateEntries(List<SpectralLibraryEntry> entries,
+                                                            IndexRange candidateRange,
+                                                            List<DataPoint[]> queryMassLists) {
+    if (fragmentIndex == null || candidateRange.size() <= maxFragmentIndexCandidates) {
+      return candidateRange.sublist(entries);
+    }
+    final int[] candidates = fragmentIndex.findCandidates(queryMassLists, candidateRange.min(),
+        candidateRange.maxExclusive(), maxFragmentIndexCandidates);
+    final List<SpectralLibraryEntry> selected = new ArrayList<>(candidates.length);
+    for (int candidate : candidates) {
+      selected.add(entries.get(candidate));
     }
-    var indexRange = BinarySearch.indexRange(
-        mzTolerancePrecursor.getToleranceRange(scanPrecursorMZ), entries,
-        SpectralLibraryEntry::getPrecursorMZ);
-    // filter
-    entries = indexRange.sublist(entries);
-    return entries;
+    return selected;
   }
 
   /**
@@ -43,7 +43,8 @@ import org.jetbrains.annotations.Nullable;
 /**
  * A module that creates one task per feature list
  */
-public abstract class TaskPerFeatureListModule extends AbstractProcessingModule {
+public abstract class TaskPerFeatureListModule extends AbstractProcessingModule implements
+    FeatureListTaskModule {
 
   private final boolean requiresMemoryMapping;
 
@@ -73,11 +74,17 @@ public abstract class TaskPerFeatureListModule extends AbstractProcessingModule
    * @param featureList    the feature list extracted from a {@link FeatureListsParameter}
    * @return a new task instance that will be added to the task controller
    */
+  @Override
   @NotNull
   public abstract Task createTask(final @NotNull MZmineProject project,
       final @NotNull ParameterSet parameters, final @NotNull Instant moduleCallDate,
       @Nullable final MemoryMapStorage storage, @NotNull final FeatureList featureList);
 
+  @Override
+  public @Nullable MemoryMapStorage createStorage() {
+    return requiresMemoryMapping ? MemoryMapStorage.forFeatureList() : null;
+  }
+
   @Override
   public @NotNull ExitCode runModule(@NotNull final MZmineProject project,
       @NotNull final ParameterSet parameters, @NotNull final Collection<Task> tasks,
@@ -85,7 +92,7 @@ public abstract class TaskPerFeatureListModule extends AbstractProcessingModule
     try {
       var featureLists = ParameterUtils.getMatchingFeatureListsFromParameter(parameters);
 
-      MemoryMapStorage storage = requiresMemoryMapping ? MemoryMapStorage.forFeatureList() : null;
+      MemoryMapStorage storage = createStorage();
 
       // create and start one task for each feature list
       for (final FeatureList featureList : featureLists) {
@@ -45,7 +45,7 @@ import org.jetbrains.annotations.Nullable;
  * A module that creates one task per RawDataFile
  */
 public abstract class TaskPerRawDataFileModule extends AbstractProcessingModule implements
-    Supplier<MemoryMapStorage> {
+    RawDataFileTaskModule, Supplier<MemoryMapStorage> {
 
   private final boolean requiresMemoryMapping;
 
@@ -75,11 +75,18 @@ public abstract class TaskPerRawDataFileModule extends AbstractProcessingModule
    * @param raw            the raw data file extracted from a {@link RawDataFilesParameter}
    * @return a new task instance that will be added to the task controller
    */
+  @Override
   @NotNull
   public abstract Task createTask(final @NotNull MZmineProject project,
       final @NotNull ParameterSet parameters, final @NotNull Instant moduleCallDate,
       @Nullable final MemoryMapStorage storage, @NotNull final RawDataFile raw);
 
+  @Override
+  public @Nullable MemoryMapStorage createStorage() {
+    // raw data processing modules memory map to mass list storage
+    return requiresMemoryMapping ? MemoryMapStorage.forMassList() : null;
+  }
+
   @Override
   public @NotNull ExitCode runModule(@NotNull final MZmineProject project,
       @NotNull final ParameterSet parameters, @NotNull final Collection<Task> tasks,
@@ -88,8 +95,7 @@ public abstract class TaskPerRawDataFileModule extends AbstractProcessingModule
     try {
       var rawFiles = ParameterUtils.getMatchingRawDataFilesFromParameter(parameters);
 
-      // raw data processing modules memory map to mass list storage
-      MemoryMapStorage storage = requiresMemoryMapping ? MemoryMapStorage.forMassList() : null;
+      MemoryMapStorage storage = createStorage();
 
       // create and start one task for each RawDataFile
       for (final var raw : rawFiles) {
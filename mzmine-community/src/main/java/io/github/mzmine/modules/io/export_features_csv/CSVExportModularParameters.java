@@ -54,6 +54,11 @@ public class CSVExportModularParameters extends SimpleParameterSet {
   public static final ComboParameter<FeatureListRowsFilter> filter = new ComboParameter<>(
       "Filter rows", "Limit the exported rows to those with MS/MS data (or annotated rows)",
       FeatureListRowsFilter.values(), FeatureListRowsFilter.ALL);
+  public static final BooleanParameter numpyColumns = new BooleanParameter(
+      "Export numeric columns as NumPy arrays", """
+      Additionally writes all numeric columns as typed NumPy arrays (.npy) into a folder next to the csv file, \
+      one file per column and a columns.csv index. Python and R can memory map these arrays instead of parsing large csv files.""",
+      false);
   private static final List<ExtensionFilter> extensions = List.of( //
       new ExtensionFilter("comma-separated values", "*.csv"), //
       new ExtensionFilter("All files", "*.*") //
@@ -67,7 +72,7 @@ public class CSVExportModularParameters extends SimpleParameterSet {
 
   public CSVExportModularParameters() {
     super(new Parameter[]{featureLists, filename, fieldSeparator, idSeparator, omitEmptyColumns,
-        filter});
+        filter, numpyColumns});
   }
 
   @Override
@@ -70,6 +70,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -77,6 +78,7 @@ import org.jetbrains.annotations.Nullable;
 public class CSVExportModularTask extends AbstractTask implements ProcessedItemsCounter {
 
   public static final String DATAFILE_PREFIX = "datafile";
+  private static final int ROWS_PER_BLOCK = 256;
   private static final Logger logger = Logger.getLogger(CSVExportModularTask.class.getName());
   private final ModularFeatureList[] featureLists;
   // parameter values
@@ -86,10 +88,11 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
   private final String headerSeparator = ":";
   private final FeatureListRowsFilter rowFilter;
   private final boolean removeEmptyCols;
+  private final boolean exportNumpyColumns;
   private final ParameterSet parameters;
   // track number of exported items
   private final AtomicInteger exportedRows = new AtomicInteger(0);
-  private int processedTypes = 0, totalTypes = 0;
+  private int totalRows = 0;
 
   public CSVExportModularTask(ParameterSet parameters, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate); // no new data stored -> null
@@ -100,6 +103,7 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
     idSeparator = parameters.getParameter(CSVExportModularParameters.idSeparator).getValue();
     this.rowFilter = parameters.getParameter(CSVExportModularParameters.filter).getValue();
     removeEmptyCols = parameters.getValue(CSVExportModularParameters.omitEmptyColumns);
+    exportNumpyColumns = parameters.getValue(CSVExportModularParameters.numpyColumns);
     this.parameters = parameters;
   }
 
@@ -124,6 +128,7 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
     this.idSeparator = idSeparator;
     this.rowFilter = rowFilter;
     this.removeEmptyCols = removeEmptyCols;
+    exportNumpyColumns = false;
     parameters = null;
   }
 
@@ -134,10 +139,10 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
 
   @Override
   public double getFinishedPercentage() {
-    if (totalTypes == 0) {
+    if (totalRows == 0) {
       return 0;
     }
-    return (double) processedTypes / (double) totalTypes;
+    return exportedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -165,7 +170,7 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
 
     // Total number of rows
     for (ModularFeatureList featureList : featureLists) {
-      totalTypes += featureList.getNumberOfRows();
+      totalRows += featureList.getNumberOfRows();
     }
 
     // Process feature lists
@@ -195,7 +200,11 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
 
       try (BufferedWriter writer = Files.newBufferedWriter(curFile.toPath(),
           StandardCharsets.UTF_8)) {
-        exportFeatureList(featureList, writer);
+        final File columnsDirectory = exportNumpyColumns ? new File(curFile.getParentFile(),
+            FileAndPathUtil.eraseFormat(curFile.getName()) + "_columns") : null;
+        if (!exportFeatureList(featureList, writer, columnsDirectory)) {
+          return;
+        }
 
       } catch (IOException e) {
         setStatus(TaskStatus.ERROR);
@@ -226,9 +235,13 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
     }
   }
 
+  /**
+   * @param columnsDirectory directory for the numeric columns as NumPy arrays or null
+   * @return false if canceled
+   */
   @SuppressWarnings("rawtypes")
-  private void exportFeatureList(ModularFeatureList flist, BufferedWriter writer)
-      throws IOException {
+  private boolean exportFeatureList(ModularFeatureList flist, BufferedWriter writer,
+      @Nullable File columnsDirectory) throws IOException {
     final List<FeatureListRow> rows = flist.getRows().stream().filter(rowFilter::accept)
         .sorted(FeatureListRowSorter.DEFAULT_ID).toList();
     List<RawDataFile> rawDataFiles = flist.getRawDataFiles();
@@ -243,60 +256,83 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
 
     final Map<DataType, List<DataType>> rowsSubTypesIndex = indexSubTypes(rowTypes, rows);
 
-    // Write feature row headers
-    StringBuilder header = new StringBuilder(
-        getJoinedHeader(rowTypes, "", rows, false, rowsSubTypesIndex));
+    // define all columns and sub columns, values are only formatted while writing
+    final List<ExportColumn> columns = new ArrayList<>();
+    for (DataType rowType : rowTypes) {
+      addColumnsRecursively(columns, rows, null, "", rowType, rowsSubTypesIndex);
+    }
     for (RawDataFile raw : rawDataFiles) {
-      header.append((header.length() == 0) ? "" : fieldSeparator).append(
-          getJoinedHeader(featureTypes, DATAFILE_PREFIX + headerSeparator + raw.getName(), rows,
-              true, null));
+      final String prefix = DATAFILE_PREFIX + headerSeparator + raw.getName();
+      for (DataType featureType : featureTypes) {
+        addColumnsRecursively(columns, rows, raw, prefix, featureType, null);
+      }
+    }
+    if (isCanceled()) {
+      return false;
     }
 
-    writer.append(header.toString());
+    // Write feature row headers
+    writer.append(columns.stream().map(column -> csvEscape(column.header()))
+        .collect(Collectors.joining(fieldSeparator)));
     writer.newLine();
 
-    // write data
-    totalTypes = rowTypes.size() + featureTypes.size() * rawDataFiles.size();
+    if (!writeRowsInBlocks(writer, rows, columns)) {
+      return false;
+    }
 
-    List<String[]> formattedCols = new ArrayList<>(totalTypes);
+    if (columnsDirectory != null) {
+      return NumpyColumnWriter.writeNumericColumns(columnsDirectory, rows, columns,
+          this::isCanceled);
+    }
+    return true;
+  }
 
-    // list string values for each type and sub type
-    for (DataType rowType : rowTypes) {
+  /**
+   * Formats blocks of rows in parallel and writes them in order. Only a limited number of
+   * formatted blocks is kept in memory at a time.
+   *
+   * @return false if canceled
+   */
+  private boolean writeRowsInBlocks(BufferedWriter writer, List<FeatureListRow> rows,
+      List<ExportColumn> columns) throws IOException {
+    final int numBlocks = (rows.size() + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK;
+    final int blocksPerStep = Runtime.getRuntime().availableProcessors() * 2;
+
+    for (int firstBlock = 0; firstBlock < numBlocks; firstBlock += blocksPerStep) {
       if (isCanceled()) {
-        return;
+        return false;
       }
+      final int endBlock = Math.min(firstBlock + blocksPerStep, numBlocks);
+      final List<String> formattedBlocks = IntStream.range(firstBlock, endBlock).parallel()
+          .mapToObj(block -> formatRows(rows, columns, block * ROWS_PER_BLOCK,
+              Math.min((block + 1) * ROWS_PER_BLOCK, rows.size()))).toList();
 
-      addFormattedColumnsRecursively(formattedCols, rows, null, rowType, rowsSubTypesIndex);
-
-      processedTypes++;
+      for (String block : formattedBlocks) {
+        writer.write(block);
+      }
+      exportedRows.addAndGet(
+          Math.min(endBlock * ROWS_PER_BLOCK, rows.size()) - firstBlock * ROWS_PER_BLOCK);
     }
+    return true;
+  }
 
-    // add feature types for each raw data file
-    for (RawDataFile raw : rawDataFiles) {
-      for (DataType featureType : featureTypes) {
-        if (isCanceled()) {
-          return;
+  /**
+   * @return the formatted lines of all rows from start to end (exclusive)
+   */
+  private String formatRows(List<FeatureListRow> rows, List<ExportColumn> columns, int start,
+      int end) {
+    final StringBuilder lines = new StringBuilder();
+    for (int r = start; r < end; r++) {
+      final FeatureListRow row = rows.get(r);
+      for (int c = 0; c < columns.size(); c++) {
+        if (c > 0) {
+          lines.append(fieldSeparator);
         }
-
-        addFormattedColumnsRecursively(formattedCols, rows, raw, featureType, null);
-        processedTypes++;
+        lines.append(columns.get(c).getFormattedValue(row));
       }
+      lines.append(System.lineSeparator());
     }
-
-    for (int i = 0; i < rows.size(); i++) {
-      // Cancel?
-      if (isCanceled()) {
-        return;
-      }
-
-      final int row = i;
-      writer.append(
-          formattedCols.stream().map(col -> col[row]).collect(Collectors.joining(fieldSeparator)));
-      writer.newLine();
-
-      exportedRows.incrementAndGet();
-      processedTypes++;
-    }
+    return lines.toString();
   }
 
   /**
@@ -357,27 +393,29 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
   }
 
   /**
-   * Adds columns of formatted values for each column / sub column. missing values are replaced by
-   * empty strings or default values
+   * Adds a column for the type or each of its sub columns. Missing values are replaced by empty
+   * strings or default values during formatting.
    *
-   * @param formattedCols the target list
-   * @param rows          the data
-   * @param raw           defines the feature
-   * @param type          the feature data type to be added (and its sub columns)
+   * @param columns the target list
+   * @param rows    the data
+   * @param raw     defines the feature
+   * @param prefix  header prefix, empty for row types
+   * @param type    the feature data type to be added (and its sub columns)
    */
-  private void addFormattedColumnsRecursively(List<String[]> formattedCols,
-      @NotNull final List<FeatureListRow> rows, @Nullable RawDataFile raw,
+  private void addColumnsRecursively(List<ExportColumn> columns,
+      @NotNull final List<FeatureListRow> rows, @Nullable RawDataFile raw, String prefix,
       @NotNull final DataType type, @Nullable final Map<DataType, List<DataType>> subTypesIndex) {
+    final String header =
+        (prefix == null || prefix.isEmpty() ? "" : prefix + headerSeparator) + type.getUniqueID();
 
     if (type instanceof SubColumnsFactory subFactory && subTypesIndex != null
         && subTypesIndex.get(type) != null) {
-      // explicitly indexed types
+      // explicitly indexed types, already checked for containing data in the indexSubTypes method
       final List<DataType> subTypes = subTypesIndex.get(type);
       for (DataType subType : subTypes) {
-        // collect column data
-        String[] column = getDataStream(rows, raw, false).map(
-            data -> getFormattedValue(data, subFactory, subType)).toArray(String[]::new);
-        formattedCols.add(column);
+        columns.add(new ExportColumn(header + headerSeparator + subType.getUniqueID(), raw,
+            data -> getSubColValue(data, subFactory, subType),
+            data -> getFormattedValue(data, subFactory, subType)));
       }
     } else if (type instanceof SubColumnsFactory subFactory) {
       // only "static" sub columns for this type, e.g. for number types as they are a dirty hack
@@ -389,16 +427,14 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
             s))) {
           continue;
         }
-        // collect column data
         final int subIndex = s;
-        String[] column = getDataStream(rows, raw, false).map(
-            data -> getFormattedValue(data, subFactory, subIndex)).toArray(String[]::new);
-        formattedCols.add(column);
+        columns.add(new ExportColumn(header + headerSeparator + subFactory.getUniqueID(s), raw,
+            data -> getSubColValue(data, subFactory, subIndex),
+            data -> getFormattedValue(data, subFactory, subIndex)));
       }
     } else {
-      String[] column = getDataStream(rows, raw, false).map(data -> getFormattedValue(data, type))
-          .toArray(String[]::new);
-      formattedCols.add(column);
+      columns.add(new ExportColumn(header, raw, data -> data == null ? null : data.get(type),
+          data -> getFormattedValue(data, type)));
     }
   }
 
@@ -422,6 +458,40 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
     }
   }
 
+  /**
+   * @return the unformatted sub column value or null if missing
+   */
+  @Nullable
+  private Object getSubColValue(@Nullable ModularDataModel data, SubColumnsFactory subColFactory,
+      int col) {
+    final Object value = data == null ? null : data.get((DataType) subColFactory);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return subColFactory.getSubColValue(col, value);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return the unformatted sub column value or null if missing
+   */
+  @Nullable
+  private Object getSubColValue(@Nullable ModularDataModel data, SubColumnsFactory subColFactory,
+      DataType subCol) {
+    final Object value = data == null ? null : data.get((DataType) subColFactory);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return subColFactory.getSubColValue(subCol, value);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
   /**
    * Get a formatted sub column value by the sub column index. This is required for
    * {@link NumberRangeType}s.
@@ -530,58 +600,6 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
   }
 
 
-  /**
-   * Join headers by field separator and sub data types by headerSeparator (Standard is colon :)
-   *
-   * @param types
-   * @param prefix
-   * @return
-   */
-  private String getJoinedHeader(List<DataType> types, String prefix, List<FeatureListRow> rows,
-      boolean isFeatureType, @Nullable final Map<DataType, List<DataType>> subTypesIndex) {
-    StringBuilder b = new StringBuilder();
-
-    for (DataType mainType : types) {
-      String header = (prefix == null || prefix.isEmpty() ? "" : prefix + headerSeparator)
-          + mainType.getUniqueID();
-      if (mainType instanceof SubColumnsFactory subCols) {
-        if (subTypesIndex != null && subTypesIndex.get(mainType) != null) {
-          // when processing row types which may have "unknown" sub columns
-          final List<DataType> subTypes = subTypesIndex.get(mainType);
-          for (DataType subType : subTypes) {
-            // types in here are already checked for containing data in the indexSubTypes method
-            String field = subType.getUniqueID();
-            if (b.length() != 0) {
-              b.append(fieldSeparator);
-            }
-            b.append(csvEscape(header + headerSeparator + field));
-          }
-
-        } else { // when processing feature types
-          int numberOfSub = subCols.getNumberOfSubColumns();
-          for (int i = 0; i < numberOfSub; i++) {
-            DataType subType = subCols.getType(i);
-            if (!filterType(subType) || (removeEmptyCols && !typeContainData(mainType, rows,
-                isFeatureType, i))) {
-              continue;
-            }
-            String field = subCols.getUniqueID(i);
-            if (b.length() != 0) {
-              b.append(fieldSeparator);
-            }
-            b.append(csvEscape(header + headerSeparator + field));
-          }
-        }
-      } else {
-        if (b.length() != 0) {
-          b.append(fieldSeparator);
-        }
-        b.append(csvEscape(header));
-      }
-    }
-    return b.toString();
-  }
-
   private String csvEscape(String input) {
     return CSVUtils.escape(input, fieldSeparator);
   }
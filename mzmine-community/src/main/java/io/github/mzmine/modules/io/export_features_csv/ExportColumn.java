@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.export_features_csv;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularDataModel;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import java.util.function.Function;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single column of the feature table export
+ *
+ * @param header    the unescaped header
+ * @param raw       the raw data file of feature columns or null for row columns
+ * @param value     the raw value of a row or feature for typed exports, null if missing
+ * @param formatted the escaped csv value of a row or feature, may be null
+ */
+record ExportColumn(@NotNull String header, @Nullable RawDataFile raw,
+                    @NotNull Function<@Nullable ModularDataModel, @Nullable Object> value,
+                    @NotNull Function<@Nullable ModularDataModel, @NotNull String> formatted) {
+
+  /**
+   * @return the row or its feature of this column
+   */
+  @Nullable
+  ModularDataModel source(@NotNull FeatureListRow row) {
+    return raw == null ? row : ((ModularFeatureListRow) row).getFeature(raw);
+  }
+
+  @Nullable
+  Object getValue(@NotNull FeatureListRow row) {
+    return value.apply(source(row));
+  }
+
+  @NotNull
+  String getFormattedValue(@NotNull FeatureListRow row) {
+    return formatted.apply(source(row));
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.export_features_csv;
+
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.util.files.FileAndPathUtil;
+import io.github.mzmine.util.io.CSVUtils;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Writes all numeric columns of the feature table as typed NumPy arrays (.npy, version 1.0), one
+ * file per column, so that they can be memory mapped in Python (numpy.load(file, mmap_mode='r'))
+ * or read in R (RcppCNPy) instead of parsing the csv. Integer columns are written as int32 or
+ * int64. Missing values are NaN, so integer columns with missing values are written as float64.
+ * The columns.csv index lists the file, csv header and data type of each column and row_id.npy
+ * holds the row ids.
+ */
+final class NumpyColumnWriter {
+
+  private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0};
+  private static final int ALIGNMENT = 64;
+  private static final int BUFFER_VALUES = 8192;
+
+  private NumpyColumnWriter() {
+  }
+
+  /**
+   * @param directory target directory, is created if needed
+   * @return false if canceled
+   */
+  static boolean writeNumericColumns(@NotNull File directory, @NotNull List<FeatureListRow> rows,
+      @NotNull List<ExportColumn> columns, @NotNull BooleanSupplier isCanceled)
+      throws IOException {
+    FileAndPathUtil.createDirectory(directory);
+
+    // find types in parallel, columns are independent and values are only read
+    final NumpyType[] types = IntStream.range(0, columns.size()).parallel()
+        .mapToObj(c -> isCanceled.getAsBoolean() ? null : findType(columns.get(c), rows))
+        .toArray(NumpyType[]::new);
+    if (isCanceled.getAsBoolean()) {
+      return false;
+    }
+
+    final int[] rowIds = rows.stream().mapToInt(FeatureListRow::getID).toArray();
+    writeArray(new File(directory, "row_id.npy"), NumpyType.INT32, rowIds.length,
+        i -> rowIds[i]);
+
+    try {
+      IntStream.range(0, columns.size()).parallel().forEach(c -> {
+        if (types[c] == null || isCanceled.getAsBoolean()) {
+          return;
+        }
+        final ExportColumn column = columns.get(c);
+        try {
+          writeArray(new File(directory, fileName(c, column)), types[c], rows.size(),
+              i -> (Number) column.getValue(rows.get(i)));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    if (isCanceled.getAsBoolean()) {
+      return false;
+    }
+
+    try (BufferedWriter writer = Files.newBufferedWriter(
+        new File(directory, "columns.csv").toPath(), StandardCharsets.UTF_8)) {
+      writer.append("file,column,dtype");
+      writer.newLine();
+      writer.append("row_id.npy,id,").append(NumpyType.INT32.descr);
+      writer.newLine();
+      for (int c = 0; c < columns.size(); c++) {
+        if (types[c] == null) {
+          continue;
+        }
+        writer.append(fileName(c, columns.get(c))).append(",")
+            .append(CSVUtils.escape(columns.get(c).header(), ",")).append(",")
+            .append(types[c].descr);
+        writer.newLine();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return file name with the index of the column in the csv and the cleaned header
+   */
+  static String fileName(int index, ExportColumn column) {
+    return index + "_" + column.header().replaceAll("[^a-zA-Z0-9._-]", "_") + ".npy";
+  }
+
+  /**
+   * @return the type of a column that only contains numbers or null if it contains other values or
+   * no values at all. Integer columns without missing values keep their integer type.
+   */
+  @Nullable
+  static NumpyType findType(@NotNull ExportColumn column, @NotNull List<FeatureListRow> rows) {
+    boolean hasValues = false;
+    boolean hasMissing = false;
+    boolean allFloat = true;
+    boolean allInt = true;
+    boolean allLong = true;
+    for (FeatureListRow row : rows) {
+      final Object value = column.getValue(row);
+      if (value == null) {
+        hasMissing = true;
+        continue;
+      }
+      if (!(value instanceof Number)) {
+        return null;
+      }
+      hasValues = true;
+      allFloat &= value instanceof Float;
+      allInt &= value instanceof Integer || value instanceof Short || value instanceof Byte;
+      allLong &= value instanceof Long || value instanceof Integer || value instanceof Short
+          || value instanceof Byte;
+    }
+    if (!hasValues) {
+      return null;
+    }
+    if (allFloat) {
+      return NumpyType.FLOAT32;
+    }
+    if (!hasMissing && allInt) {
+      return NumpyType.INT32;
+    }
+    if (!hasMissing && allLong) {
+      return NumpyType.INT64;
+    }
+    return NumpyType.FLOAT64;
+  }
+
+  /**
+   * Writes a one dimensional little endian array. Missing values are only allowed for float types
+   * and are written as NaN.
+   */
+  static void writeArray(@NotNull File file, @NotNull NumpyType type, int length,
+      @NotNull ValueProvider values) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(channel, ByteBuffer.wrap(header(type, length)));
+
+      final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_VALUES * type.bytes)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      for (int i = 0; i < length; i++) {
+        final Number value = values.get(i);
+        switch (type) {
+          case FLOAT32 -> buffer.putFloat(value == null ? Float.NaN : value.floatValue());
+          case FLOAT64 -> buffer.putDouble(value == null ? Double.NaN : value.doubleValue());
+          case INT32 -> buffer.putInt(requireValue(value, i).intValue());
+          case INT64 -> buffer.putLong(requireValue(value, i).longValue());
+        }
+        if (!buffer.hasRemaining()) {
+          buffer.flip();
+          writeFully(channel, buffer);
+          buffer.clear();
+        }
+      }
+      buffer.flip();
+      writeFully(channel, buffer);
+    }
+  }
+
+  /**
+   * The header is padded with spaces and a newline so that the data starts at an aligned offset
+   */
+  static byte[] header(@NotNull NumpyType type, int length) {
+    final String dict = "{'descr': '%s', 'fortran_order': False, 'shape': (%d,), }".formatted(
+        type.descr, length);
+    final int unpadded = MAGIC.length + 2 + dict.length() + 1;
+    final int padding = (ALIGNMENT - unpadded % ALIGNMENT) % ALIGNMENT;
+    final String header = dict + " ".repeat(padding) + "\n";
+
+    final ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 2 + header.length())
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(MAGIC);
+    buffer.putShort((short) header.length());
+    buffer.put(header.getBytes(StandardCharsets.US_ASCII));
+    return buffer.array();
+  }
+
+  private static Number requireValue(@Nullable Number value, int index) {
+    if (value == null) {
+      throw new IllegalArgumentException("Missing value at index %d in integer array".formatted(
+          index));
+    }
+    return value;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  enum NumpyType {
+    FLOAT32("<f4", 4), FLOAT64("<f8", 8), INT32("<i4", 4), INT64("<i8", 8);
+
+    private final String descr;
+    private final int bytes;
+
+    NumpyType(String descr, int bytes) {
+      this.descr = descr;
+      this.bytes = bytes;
+    }
+
+    String descr() {
+      return descr;
+    }
+  }
+
+  @FunctionalInterface
+  interface ValueProvider {
+
+    /**
+     * @return the value or null if missing
+     */
+    @Nullable Number get(int index);
+  }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.io.import_rawdata_mzml;
+
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import io.github.mzmine.modules.io.import_rawdata_all.spectral_processor.ScanImportProcessorConfig;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLArrayType;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLCV;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLParser;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLRawDataFile;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLTags;
+import io.github.mzmine.util.MemoryMapStorage;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Parses the spectra of an indexedmzML file in parallel. The spectrum offsets of the
+ * {@code <indexList>} split the spectrum list into chunks of consecutive spectra. Each chunk is
+ * parsed and decoded by its own {@link MzMLParser} from a stream of the file header (everything in
+ * front of the first spectrum, including referenceable param groups) followed by the bytes of the
+ * chunk. The header parser additionally reads everything after the spectrum list, e.g.,
+ * chromatograms. Chunks are merged in the order of the file.
+ * <p>
+ * Ion mobility files with one spectrum per mobility scan are grouped into frames across
+ * consecutive spectra, which cannot be split into chunks. Those files are detected by the mobility
+ * accessions in the header and the first spectrum before parsing, and {@link #parse()} returns
+ * null to fall back to sequential parsing. Files with mobility only in later spectra are detected
+ * after parsing.
+ */
+class IndexedMzMLParallelParser {
+
+  private static final Logger logger = Logger.getLogger(
+      IndexedMzMLParallelParser.class.getName());
+
+  /**
+   * Files with less spectra per chunk are parsed sequentially
+   */
+  private static final int MIN_SPECTRA_PER_CHUNK = 200;
+  /**
+   * The indexListOffset is in the last bytes of the file
+   */
+  private static final int TAIL_LENGTH = 4096;
+  private static final Pattern INDEX_LIST_OFFSET_PATTERN = Pattern.compile(
+      "<" + MzMLTags.TAG_INDEX_LIST_OFFSET + ">\\s*(\\d+)\\s*</" + MzMLTags.TAG_INDEX_LIST_OFFSET
+          + ">");
+  private static final byte[] SPECTRUM_START = ("<" + MzMLTags.TAG_SPECTRUM).getBytes(
+      StandardCharsets.US_ASCII);
+  private static final byte[] SPECTRUM_END = ("</" + MzMLTags.TAG_SPECTRUM + ">").getBytes(
+      StandardCharsets.US_ASCII);
+  private static final byte[] SPECTRUM_LIST_END = ("\n</" + MzMLTags.TAG_SPECTRUM_LIST
+      + ">").getBytes(StandardCharsets.US_ASCII);
+  /**
+   * Mobility of single mobility scans and the mobility array of merged mobility spectra
+   */
+  private static final List<String> MOBILITY_ACCESSIONS = List.of(MzMLCV.cvMobilityDriftTime,
+      MzMLCV.cvMobilityInverseReduced, MzMLArrayType.ION_MOBILITY.getAccession());
+
+  private final MSDKmzMLImportTask task;
+  private final File file;
+  private final MemoryMapStorage storage;
+  private final ScanImportProcessorConfig scanProcessorConfig;
+  private final MzMLParser headerParser;
+  private volatile List<MzMLParser> chunkParsers = List.of();
+
+  IndexedMzMLParallelParser(@NotNull MSDKmzMLImportTask task, @NotNull File file,
+      @Nullable MemoryMapStorage storage, @NotNull ScanImportProcessorConfig scanProcessorConfig) {
+    this.task = task;
+    this.file = file;
+    this.storage = storage;
+    this.scanProcessorConfig = scanProcessorConfig;
+    headerParser = new MzMLParser(task, storage, scanProcessorConfig);
+  }
+
+  /**
+   * Reads the spectrum offsets of the index at the end of an indexedmzML file.
+   *
+   * @return the index or null if the file has no readable index
+   */
+  @Nullable
+  static SpectrumIndex readSpectrumIndex(@NotNull FileChannel channel) {
+    try {
+      final long size = channel.size();
+      final int tailLength = (int) Math.min(size, TAIL_LENGTH);
+      final byte[] tail = readBytes(channel, size - tailLength, tailLength);
+      final Matcher matcher = INDEX_LIST_OFFSET_PATTERN.matcher(
+          new String(tail, StandardCharsets.ISO_8859_1));
+      if (!matcher.find()) {
+        return null;
+      }
+      final long indexListOffset = Long.parseLong(matcher.group(1));
+      if (indexListOffset <= 0 || indexListOffset >= size) {
+        return null;
+      }
+
+      final LongArrayList offsets = new LongArrayList();
+      try (var reader = openReader(new ChannelRangeInputStream(channel, indexListOffset, size))) {
+        final XMLStreamReader xmlStreamReader = createXMLStreamReader(reader);
+        boolean inSpectrumIndex = false;
+        while (xmlStreamReader.hasNext()) {
+          final int eventType = xmlStreamReader.next();
+          if (eventType == XMLStreamConstants.START_ELEMENT) {
+            switch (xmlStreamReader.getLocalName()) {
+              case MzMLTags.TAG_INDEX -> inSpectrumIndex = MzMLTags.TAG_SPECTRUM.equals(
+                  xmlStreamReader.getAttributeValue(null, MzMLTags.ATTR_NAME));
+              case MzMLTags.TAG_OFFSET -> {
+                if (inSpectrumIndex) {
+                  offsets.add(Long.parseLong(xmlStreamReader.getElementText().trim()));
+                }
+              }
+              default -> {
+              }
+            }
+          } else if (eventType == XMLStreamConstants.END_ELEMENT
+              && xmlStreamReader.getLocalName().equals(MzMLTags.TAG_INDEX_LIST)) {
+            break;
+          }
+        }
+      }
+      if (offsets.isEmpty()) {
+        return null;
+      }
+      // spectra are merged in the order of the file
+      final long[] sortedOffsets = offsets.toLongArray();
+      Arrays.sort(sortedOffsets);
+      return new SpectrumIndex(sortedOffsets, indexListOffset);
+    } catch (IOException | XMLStreamException | NumberFormatException e) {
+      logger.log(Level.FINE, "Cannot read the index of indexed mzML: " + e.getMessage(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Parses the file in parallel chunks of spectra
+   *
+   * @return the parsed data or null if the file needs to be parsed sequentially or the task was
+   * canceled
+   */
+  @Nullable
+  MzMLRawDataFile parse() throws IOException, XMLStreamException, DataFormatException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final SpectrumIndex index = readSpectrumIndex(channel);
+      if (index == null) {
+        return null;
+      }
+      final long[] offsets = index.spectrumOffsets();
+      final int numChunks = Math.min(offsets.length / MIN_SPECTRA_PER_CHUNK,
+          ForkJoinPool.getCommonPoolParallelism() * 4);
+      if (numChunks < 2 || offsets[0] > Integer.MAX_VALUE) {
+        return null;
+      }
+
+      // chunk i covers the bytes [chunkStarts[i], chunkStarts[i+1])
+      final long[] chunkStarts = new long[numChunks + 1];
+      for (int i = 0; i < numChunks; i++) {
+        chunkStarts[i] = offsets[(int) ((long) i * offsets.length / numChunks)];
+        if (!isSpectrumStart(channel, chunkStarts[i])) {
+          logger.fine(() -> "Spectrum offsets of the index do not match the file " + file);
+          return null;
+        }
+      }
+      final long spectraEnd = findEnd(channel, offsets[offsets.length - 1], SPECTRUM_END,
+          index.indexListOffset());
+      if (spectraEnd < 0) {
+        return null;
+      }
+      chunkStarts[numChunks] = spectraEnd;
+
+      final byte[] header = readBytes(channel, 0, (int) offsets[0]);
+      final long firstSpectrumEnd = offsets.length > 1 ? offsets[1] : spectraEnd;
+      if (firstSpectrumEnd - offsets[0] > Integer.MAX_VALUE) {
+        return null;
+      }
+      if (containsMobility(header) || containsMobility(
+          readBytes(channel, offsets[0], (int) (firstSpectrumEnd - offsets[0])))) {
+        logger.info(() -> "Ion mobility mzML cannot be split into chunks, parsing " + file.getName()
+            + " sequentially");
+        return null;
+      }
+
+      // header with everything after the spectrum list, e.g., chromatograms
+      try (var reader = openReader(new SequenceInputStream(new ByteArrayInputStream(header),
+          new ChannelRangeInputStream(channel, spectraEnd, index.indexListOffset())))) {
+        if (!task.parseEvents(createXMLStreamReader(reader), headerParser, MzMLTags.TAG_MZML)) {
+          return null;
+        }
+      }
+
+      final List<MzMLParser> parsers = IntStream.range(0, numChunks)
+          .mapToObj(_ -> new MzMLParser(task, storage, scanProcessorConfig)).toList();
+      chunkParsers = parsers;
+
+      final boolean finished = IntStream.range(0, numChunks).parallel()
+          .allMatch(i -> parseChunk(channel, header, chunkStarts[i], chunkStarts[i + 1],
+              parsers.get(i)));
+      if (!finished) {
+        return null;
+      }
+
+      if (parsers.stream().anyMatch(p -> !p.getMobilityScanData().isEmpty())) {
+        logger.info(() -> "Ion mobility mzML cannot be split into chunks, parsing " + file.getName()
+            + " sequentially");
+        chunkParsers = List.of();
+        return null;
+      }
+
+      for (MzMLParser parser : parsers) {
+        headerParser.appendSpectra(parser);
+      }
+      return headerParser.getMzMLRawFile();
+    }
+  }
+
+  /**
+   * @return false if the task was canceled
+   */
+  private boolean parseChunk(FileChannel channel, byte[] header, long start, long end,
+      MzMLParser parser) {
+    final InputStream chunk = new SequenceInputStream(Collections.enumeration(
+        List.of(new ByteArrayInputStream(header), new ChannelRangeInputStream(channel, start, end),
+            new ByteArrayInputStream(SPECTRUM_LIST_END))));
+    try (var reader = openReader(chunk)) {
+      return task.parseEvents(createXMLStreamReader(reader), parser, MzMLTags.TAG_SPECTRUM_LIST);
+    } catch (IOException | DataFormatException | XMLStreamException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * The header parser reads all meta-data and receives the spectra of all chunks when finished
+   */
+  public MzMLParser getHeaderParser() {
+    return headerParser;
+  }
+
+  /**
+   * @return the number of spectra parsed by all chunk parsers
+   */
+  public int getParsedSpectra() {
+    int parsed = 0;
+    for (MzMLParser parser : chunkParsers) {
+      parsed += parser.getParsedScans();
+    }
+    return parsed;
+  }
+
+  private static Reader openReader(InputStream is) {
+    return new InputStreamReader(new BufferedInputStream(is, 1 << 16), StandardCharsets.UTF_8);
+  }
+
+  private static XMLStreamReader createXMLStreamReader(Reader reader) throws XMLStreamException {
+    // one factory per reader, factories are not guaranteed to be thread safe
+    final InputFactoryImpl factory = new InputFactoryImpl();
+    factory.configureForSpeed();
+    return factory.createXMLStreamReader(reader);
+  }
+
+  private static byte[] readBytes(FileChannel channel, long position, int length)
+      throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        break;
+      }
+    }
+    return Arrays.copyOf(buffer.array(), buffer.position());
+  }
+
+  /**
+   * @return true if the xml contains a mobility accession. Other elements with the same accessions
+   * only lead to sequential parsing.
+   */
+  static boolean containsMobility(byte[] xml) {
+    final String text = new String(xml, StandardCharsets.ISO_8859_1);
+    return MOBILITY_ACCESSIONS.stream().anyMatch(text::contains);
+  }
+
+  /**
+   * @return true if a spectrum element starts at the position, false for other elements like the
+   * spectrumList
+   */
+  private static boolean isSpectrumStart(FileChannel channel, long position) throws IOException {
+    final byte[] start = readBytes(channel, position, SPECTRUM_START.length + 1);
+    return start.length == SPECTRUM_START.length + 1 && Arrays.equals(start, 0,
+        SPECTRUM_START.length, SPECTRUM_START, 0, SPECTRUM_START.length) && Character.isWhitespace(
+        start[SPECTRUM_START.length]);
+  }
+
+  /**
+   * @return the position after the first occurrence of pattern in [start, end) or -1
+   */
+  private static long findEnd(FileChannel channel, long start, byte[] pattern, long end)
+      throws IOException {
+    try (var is = new BufferedInputStream(new ChannelRangeInputStream(channel, start, end),
+        1 << 16)) {
+      int matched = 0;
+      long position = start;
+      int b;
+      while ((b = is.read()) != -1) {
+        position++;
+        // the first byte is unique in the pattern, so there is no partial overlap to track
+        if (b == pattern[matched]) {
+          matched++;
+          if (matched == pattern.length) {
+            return position;
+          }
+        } else {
+          matched = b == pattern[0] ? 1 : 0;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param spectrumOffsets byte offsets of all spectra sorted ascending
+   * @param indexListOffset byte offset of the index list
+   */
+  record SpectrumIndex(long[] spectrumOffsets, long indexListOffset) {
+
+  }
+
+  /**
+   * Reads a byte range of a channel with positional reads. Multiple streams may read from the same
+   * channel concurrently.
+   */
+  private static class ChannelRangeInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+
+    ChannelRangeInputStream(FileChannel channel, long start, long end) {
+      this.channel = channel;
+      this.position = start;
+      this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] single = new byte[1];
+      return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (position >= end) {
+        return -1;
+      }
+      final int toRead = (int) Math.min(len, end - position);
+      final int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+      if (read <= 0) {
+        return -1;
+      }
+      position += read;
+      return read;
+    }
+  }
+}
@@ -112,10 +112,13 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
   private final @NotNull ScanImportProcessorConfig scanProcessorConfig;
   private final ParameterSet parameters;
   private final Class<? extends MZmineModule> module;
+  // indexed mzML files are parsed in parallel chunks of spectra if true
+  private final boolean parallelIndexedImport;
   private int totalScansAfterFilter = 0, convertedScansAfterFilter;
   private String description;
 
-  private MzMLParser parser;
+  private volatile MzMLParser parser;
+  private volatile @Nullable IndexedMzMLParallelParser parallelParser;
   private RawDataFileImpl newMZmineFile;
 
   /**
@@ -129,6 +132,21 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
         storage);
   }
 
+  /**
+   * Create for file
+   *
+   * @param parallelIndexedImport parse indexed mzML files in parallel chunks of spectra or
+   *                              sequentially
+   */
+  MSDKmzMLImportTask(MZmineProject project, @NotNull File fileToOpen,
+      @NotNull ScanImportProcessorConfig scanProcessorConfig,
+      @NotNull final Class<? extends MZmineModule> module, @NotNull final ParameterSet parameters,
+      @NotNull Instant moduleCallDate, @Nullable final MemoryMapStorage storage,
+      boolean parallelIndexedImport) {
+    this(project, fileToOpen, null, scanProcessorConfig, module, parameters, moduleCallDate,
+        storage, parallelIndexedImport);
+  }
+
   /**
    * Create for input stream
    *
@@ -139,6 +157,15 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
       @Nullable InputStream fisToOpen, @NotNull ScanImportProcessorConfig scanProcessorConfig,
       @NotNull final Class<? extends MZmineModule> module, @NotNull final ParameterSet parameters,
       @NotNull Instant moduleCallDate, @Nullable final MemoryMapStorage storage) {
+    this(project, fileOfInputStream, fisToOpen, scanProcessorConfig, module, parameters,
+        moduleCallDate, storage, true);
+  }
+
+  private MSDKmzMLImportTask(MZmineProject project, @NotNull File fileOfInputStream,
+      @Nullable InputStream fisToOpen, @NotNull ScanImportProcessorConfig scanProcessorConfig,
+      @NotNull final Class<? extends MZmineModule> module, @NotNull final ParameterSet parameters,
+      @NotNull Instant moduleCallDate, @Nullable final MemoryMapStorage storage,
+      boolean parallelIndexedImport) {
     super(storage, moduleCallDate); // storage in raw data file
     this.file = fileOfInputStream;
     this.fis = fisToOpen;
@@ -147,6 +174,7 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
     this.scanProcessorConfig = scanProcessorConfig;
     this.parameters = parameters;
     this.module = module;
+    this.parallelIndexedImport = parallelIndexedImport;
   }
 
   private static boolean isExcludedWatersScan(final BuildingMzMLMobilityScan mzMLScan) {
@@ -492,7 +520,9 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
     if (parser == null) {
       return 0.0;
     }
-    final double msdkProgress = parser.getFinishedPercentage();
+    final int totalScans = getTotalScansInMzML();
+    final double msdkProgress =
+        totalScans == 0 ? 0.0 : Math.min(1.0, (double) getParsedMzMLScans() / totalScans);
     final double parsingProgress = totalScansAfterFilter == 0 ? 0.0
         : (double) convertedScansAfterFilter / totalScansAfterFilter;
     return (msdkProgress * 0.95) + (parsingProgress * 0.05);
@@ -517,6 +547,7 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
    * This is the number of total scans in mzML without filtering
    */
   public int getTotalScansInMzML() {
+    final MzMLParser parser = this.parser;
     if (parser == null) {
       return 0;
     }
@@ -527,10 +558,12 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
    * THis is the number of parsed mzML scans, without filtering
    */
   public int getParsedMzMLScans() {
+    final MzMLParser parser = this.parser;
     if (parser == null) {
       return 0;
     }
-    return parser.getParsedScans();
+    final IndexedMzMLParallelParser parallel = parallelParser;
+    return parser.getParsedScans() + (parallel == null ? 0 : parallel.getParsedSpectra());
   }
 
 // actual parsing
@@ -564,6 +597,12 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
           return parseMzMlInternal(xmlStreamReader);
         }
       } else if (file != null) {
+        // indexed mzML files are split by their spectrum offsets and parsed in parallel
+        final MzMLRawDataFile parallelResult = parseIndexedParallel();
+        if (parallelResult != null || isCanceled()) {
+          return parallelResult;
+        }
+
         logger.finest("Began parsing file: " + file.getAbsolutePath());
         // buffered reader had no performance gains. most likely because the XMLStreamReader already buffers
 //        try (BufferedReader br = Files.newBufferedReader(mzMLFile.toPath(),
@@ -580,39 +619,43 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
     }
   }
 
+  /**
+   * Parses the spectra of an indexed mzML file in parallel.
+   *
+   * @return the parsed data or null if the file needs to be parsed sequentially
+   */
+  @Nullable
+  private MzMLRawDataFile parseIndexedParallel() throws IOException, XMLStreamException {
+    if (!parallelIndexedImport) {
+      return null;
+    }
+    final IndexedMzMLParallelParser indexedParser = new IndexedMzMLParallelParser(this, file,
+        storage, scanProcessorConfig);
+    this.parser = indexedParser.getHeaderParser();
+    this.parallelParser = indexedParser;
+    try {
+      final MzMLRawDataFile result = indexedParser.parse();
+      if (result != null) {
+        logger.finest("Parsed indexed mzML in parallel: " + file.getAbsolutePath());
+        return result;
+      }
+    } catch (DataFormatException e) {
+      throw new RuntimeException(e);
+    }
+    // fall back to sequential parsing
+    this.parser = null;
+    this.parallelParser = null;
+    return null;
+  }
+
   private MzMLRawDataFile parseMzMlInternal(XMLStreamReader xmlStreamReader) throws MSDKException {
     try {
       this.parser = new MzMLParser(this, storage, scanProcessorConfig);
 
-      int eventType;
       try {
-        do {
-          // check if parsing has been cancelled?
-          if (isCanceled()) {
-            return null;
-          }
-
-          eventType = xmlStreamReader.next();
-
-          switch (eventType) {
-            case XMLStreamConstants.START_ELEMENT -> {
-              final String openingTagName = xmlStreamReader.getLocalName();
-              parser.processOpeningTag(xmlStreamReader, openingTagName);
-            }
-            case XMLStreamConstants.END_ELEMENT -> {
-              final String closingTagName = xmlStreamReader.getLocalName();
-              parser.processClosingTag(xmlStreamReader, closingTagName);
-            }
-
-//            processCharacters method is not used in the moment
-//            might be returned if new random access xml parser is introduced
-//            case XMLStreamConstants.CHARACTERS:
-//              parser.processCharacters(xmlStreamReader);
-//              break;
-          }
-
-        } while (eventType != XMLStreamConstants.END_DOCUMENT);
-
+        if (!parseEvents(xmlStreamReader, parser, null)) {
+          return null;
+        }
       } catch (DataFormatException | XMLStreamException e) {
         throw new RuntimeException(e);
       }
@@ -624,6 +667,48 @@ public class MSDKmzMLImportTask extends AbstractTask implements RawDataImportTas
     return parser.getMzMLRawFile();
   }
 
+  /**
+   * Passes all tags to the parser until the document ends or until the closing tag stopAfterTag was
+   * processed.
+   *
+   * @param stopAfterTag stop after this closing tag or null to read the whole document
+   * @return false if the task was canceled
+   */
+  boolean parseEvents(XMLStreamReader xmlStreamReader, MzMLParser parser,
+      @Nullable String stopAfterTag) throws IOException, DataFormatException, XMLStreamException {
+    int eventType;
+    do {
+      // check if parsing has been cancelled?
+      if (isCanceled()) {
+        return false;
+      }
+
+      eventType = xmlStreamReader.next();
+
+      switch (eventType) {
+        case XMLStreamConstants.START_ELEMENT -> {
+          final String openingTagName = xmlStreamReader.getLocalName();
+          parser.processOpeningTag(xmlStreamReader, openingTagName);
+        }
+        case XMLStreamConstants.END_ELEMENT -> {
+          final String closingTagName = xmlStreamReader.getLocalName();
+          parser.processClosingTag(xmlStreamReader, closingTagName);
+          if (closingTagName.equals(stopAfterTag)) {
+            return true;
+          }
+        }
+
+//            processCharacters method is not used in the moment
+//            might be returned if new random access xml parser is introduced
+//            case XMLStreamConstants.CHARACTERS:
+//              parser.processCharacters(xmlStreamReader);
+//              break;
+      }
+
+    } while (eventType != XMLStreamConstants.END_DOCUMENT);
+    return true;
+  }
+
   public File getMzMLFile() {
     return file;
   }
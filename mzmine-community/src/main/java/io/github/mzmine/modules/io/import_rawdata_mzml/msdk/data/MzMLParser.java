@@ -680,6 +680,17 @@ public class MzMLParser {
     return newRawFile;
   }
 
+  /**
+   * Appends all spectra of a parser that only read a chunk of the spectrum list. Chunks need to be
+   * appended in the order of the file.
+   *
+   * @param chunkParser parser that finished reading its chunk
+   */
+  public void appendSpectra(MzMLParser chunkParser) {
+    vars.spectrumList.addAll(chunkParser.vars.spectrumList);
+    vars.mobilityScanData.addAll(chunkParser.vars.mobilityScanData);
+  }
+
   /**
    * Already memory mapped data of all scans
    *
@@ -26,9 +26,12 @@
 package io.github.mzmine.modules.io.import_spectral_library;
 
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.ConfigService;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.spectraldb.compiled.CompiledSpectralLibrary;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntry;
 import io.github.mzmine.util.spectraldb.parser.AutoLibraryParser;
@@ -75,11 +78,29 @@ public class SpectralLibraryImportTask extends AbstractTask {
     setStatus(TaskStatus.PROCESSING);
 
     try {
-      // will block until all library spectra are added to entries list
-      SpectralLibrary library = parseFile(dataBaseFile);
-      // remove empty or 0 intensity spectra
-      library.removeif(this::checkRemoveEntry);
-      library.trim(); // trim to save memory
+      // null if the library cache is turned off
+      final Integer cacheSizeGB = ConfigService.getPreferences()
+          .getEmbeddedParameterValueIfSelectedOrElse(MZminePreferences.spectralLibraryCache, null);
+      SpectralLibrary library =
+          cacheSizeGB != null ? CompiledSpectralLibrary.loadCached(dataBaseFile) : null;
+      if (library != null) {
+        logger.fine(() -> "Opened compiled spectral library for " + dataBaseFile);
+      } else {
+        // will block until all library spectra are added to entries list
+        library = parseFile(dataBaseFile);
+        // remove empty or 0 intensity spectra
+        library.removeif(this::checkRemoveEntry);
+        library.trim(); // trim to save memory
+        if (cacheSizeGB != null && !isCanceled() && library.size() > 0
+            && CompiledSpectralLibrary.writeCache(library, dataBaseFile,
+            (long) cacheSizeGB << 30)) {
+          // switch to the memory mapped entries to release the parsed entries
+          final SpectralLibrary compiled = CompiledSpectralLibrary.loadCached(dataBaseFile);
+          if (compiled != null) {
+            library = compiled;
+          }
+        }
+      }
       final List<SpectralLibraryEntry> entries = library.getEntries();
       if (!entries.isEmpty()) {
         project.addSpectralLibrary(library);
@@ -55,7 +55,8 @@ import java.util.Set;
 public class CachedIMSFrame implements Frame {
 
   private final Frame originalFrame;
-  private List<MobilityScan> cachedScans = null;
+  // feature lists are loaded in parallel, all must share the same mobility scan instances
+  private volatile List<MobilityScan> cachedScans = null;
 
   public CachedIMSFrame(Frame frame) {
     originalFrame = frame;
@@ -83,18 +84,22 @@ public class CachedIMSFrame implements Frame {
 
   @Override
   public @Nullable MobilityScan getMobilityScan(int num) {
-    if (cachedScans == null) {
-      cachedScans = originalFrame.getMobilityScans();
-    }
-    return cachedScans.get(num);
+    return getMobilityScans().get(num);
   }
 
   @Override
   public @NotNull List<MobilityScan> getMobilityScans() {
-    if (cachedScans == null) {
-      cachedScans = originalFrame.getMobilityScans();
+    List<MobilityScan> scans = cachedScans;
+    if (scans == null) {
+      synchronized (this) {
+        scans = cachedScans;
+        if (scans == null) {
+          scans = originalFrame.getMobilityScans();
+          cachedScans = scans;
+        }
+      }
     }
-    return cachedScans;
+    return scans;
   }
 
   @Override
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.io.projectload.version_3_0;
+
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
+import io.github.mzmine.datamodel.features.types.abstr.StringType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.DoubleType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.FloatType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.IntegerType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.LongType;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.function.Predicate;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Binary columnar format of the feature list data. The metadata (applied methods, raw data files,
+ * selected scans) stays in the xml metadata file. The data file starts with a version header and
+ * contains the row ids, the features (row and raw data file index) and one column per
+ * {@link DataType}, first for the rows, then for the features. Each column holds the indices of
+ * all rows/features with a value followed by the values in one of the {@link Codec}s. The
+ * {@link Codec#ION_TIME_SERIES} values are written as raw arrays to a separate series file.
+ * <p>
+ * Numbers and strings are only written as primitives if the type uses the xml methods of its base
+ * class. All other types write their xml representation into the column, so every type that can
+ * be saved to xml is also supported by this format.
+ */
+public final class FeatureListBinaryFormat {
+
+  public static final String DATA_FILE_SUFFIX = "_data.bin";
+  public static final String SERIES_FILE_SUFFIX = "_series.bin";
+  public static final int MAGIC = 0x4D5A464C; // MZFL
+  public static final int VERSION = 1;
+
+  private FeatureListBinaryFormat() {
+  }
+
+  /**
+   * @return the codec for all values of a column
+   */
+  public static Codec codecOf(@NotNull DataType<?> type, @NotNull Collection<?> values) {
+    if (type instanceof FeatureDataType) {
+      return allMatch(values, v -> v.getClass() == SimpleIonTimeSeries.class)
+          ? Codec.ION_TIME_SERIES : Codec.XML;
+    }
+    if (type instanceof FloatType && usesXmlMethodsOf(type, FloatType.class) && allMatch(values,
+        Float.class::isInstance)) {
+      return Codec.FLOAT;
+    }
+    if (type instanceof DoubleType && usesXmlMethodsOf(type, DoubleType.class) && allMatch(values,
+        Double.class::isInstance)) {
+      return Codec.DOUBLE;
+    }
+    if (type instanceof IntegerType && usesXmlMethodsOf(type, IntegerType.class) && allMatch(
+        values, Integer.class::isInstance)) {
+      return Codec.INT;
+    }
+    if (type instanceof LongType && usesXmlMethodsOf(type, LongType.class) && allMatch(values,
+        Long.class::isInstance)) {
+      return Codec.LONG;
+    }
+    if (type instanceof StringType && usesXmlMethodsOf(type, StringType.class) && allMatch(values,
+        String.class::isInstance)) {
+      return Codec.STRING;
+    }
+    return Codec.XML;
+  }
+
+  private static boolean allMatch(Collection<?> values, Predicate<Object> predicate) {
+    for (Object value : values) {
+      if (!predicate.test(value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Subclasses may change how values are saved, those types keep their xml representation
+   */
+  private static boolean usesXmlMethodsOf(DataType<?> type, Class<?> baseClass) {
+    try {
+      final Class<?> typeClass = type.getClass();
+      return typeClass.getMethod("saveToXML", XMLStreamWriter.class, Object.class,
+          ModularFeatureList.class, ModularFeatureListRow.class, ModularFeature.class,
+          RawDataFile.class).getDeclaringClass() == baseClass
+             && typeClass.getMethod("loadFromXML", XMLStreamReader.class, MZmineProject.class,
+          ModularFeatureList.class, ModularFeatureListRow.class, ModularFeature.class,
+          RawDataFile.class).getDeclaringClass() == baseClass;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  public static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length * Integer.BYTES);
+    buffer.asIntBuffer().put(values, 0, length);
+    out.write(buffer.array());
+  }
+
+  public static int[] readInts(DataInputStream in, int length) throws IOException {
+    final int[] values = new int[length];
+    readBuffer(in, length * Integer.BYTES).asIntBuffer().get(values);
+    return values;
+  }
+
+  public static void writeLongs(DataOutputStream out, long[] values, int length)
+      throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length * Long.BYTES);
+    buffer.asLongBuffer().put(values, 0, length);
+    out.write(buffer.array());
+  }
+
+  public static long[] readLongs(DataInputStream in, int length) throws IOException {
+    final long[] values = new long[length];
+    readBuffer(in, length * Long.BYTES).asLongBuffer().get(values);
+    return values;
+  }
+
+  public static void writeFloats(DataOutputStream out, float[] values, int length)
+      throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length * Float.BYTES);
+    buffer.asFloatBuffer().put(values, 0, length);
+    out.write(buffer.array());
+  }
+
+  public static float[] readFloats(DataInputStream in, int length) throws IOException {
+    final float[] values = new float[length];
+    readBuffer(in, length * Float.BYTES).asFloatBuffer().get(values);
+    return values;
+  }
+
+  public static void writeDoubles(DataOutputStream out, double[] values, int length)
+      throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length * Double.BYTES);
+    buffer.asDoubleBuffer().put(values, 0, length);
+    out.write(buffer.array());
+  }
+
+  public static double[] readDoubles(DataInputStream in, int length) throws IOException {
+    final double[] values = new double[length];
+    readBuffer(in, length * Double.BYTES).asDoubleBuffer().get(values);
+    return values;
+  }
+
+  /**
+   * Strings are written with their byte length, {@link DataOutputStream#writeUTF(String)} is
+   * limited to 64k
+   */
+  public static void writeString(DataOutputStream out, String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  public static String readString(DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static ByteBuffer readBuffer(DataInputStream in, int numBytes) throws IOException {
+    final byte[] bytes = new byte[numBytes];
+    in.readFully(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
+
+  /**
+   * Encoding of the values of one column. Never change the ids for compatibility.
+   */
+  public enum Codec {
+    /**
+     * Each value is a separate xml document written by {@link DataType#saveToXML}
+     */
+    XML(0), INT(1), LONG(2), FLOAT(3), DOUBLE(4), STRING(5),
+    /**
+     * {@link SimpleIonTimeSeries} as scan indices, mz and intensity arrays in the series file
+     */
+    ION_TIME_SERIES(6);
+
+    private final byte id;
+
+    Codec(int id) {
+      this.id = (byte) id;
+    }
+
+    public static Codec forId(byte id) {
+      for (Codec codec : values()) {
+        if (codec.id == id) {
+          return codec;
+        }
+      }
+      throw new IllegalArgumentException("Unknown codec id " + id);
+    }
+
+    public byte getId() {
+      return id;
+    }
+  }
+}
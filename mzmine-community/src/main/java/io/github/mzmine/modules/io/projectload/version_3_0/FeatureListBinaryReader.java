@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.io.projectload.version_3_0;
+
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.readDoubles;
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.readFloats;
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.readInts;
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.readLongs;
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.readString;
+
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.ModularDataModel;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.DataTypes;
+import io.github.mzmine.modules.io.projectload.CachedIMSFrame;
+import io.github.mzmine.modules.io.projectload.CachedIMSRawDataFile;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.Codec;
+import io.github.mzmine.util.ParsingUtils;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads the rows and features of a feature list from the {@link FeatureListBinaryFormat}. The
+ * feature list needs to be created from the metadata file before.
+ */
+class FeatureListBinaryReader {
+
+  private static final Logger logger = Logger.getLogger(FeatureListBinaryReader.class.getName());
+
+  private final MZmineProject project;
+  private final ModularFeatureList flist;
+  private final BooleanSupplier isCanceled;
+
+  private ModularFeatureListRow[] rows;
+  private ModularFeature[] features;
+  private int[] featureRowIndices;
+  // files in the project may be cached during import and are used to load types
+  private RawDataFile[] featureFiles;
+  private double progress = 0;
+
+  FeatureListBinaryReader(@NotNull MZmineProject project, @NotNull ModularFeatureList flist,
+      @NotNull BooleanSupplier isCanceled) {
+    this.project = project;
+    this.flist = flist;
+    this.isCanceled = isCanceled;
+  }
+
+  /**
+   * @param data   the columnar data
+   * @param series the raw arrays of the ion time series
+   * @return false if canceled
+   */
+  boolean read(@NotNull DataInputStream data, @NotNull DataInputStream series)
+      throws IOException, XMLStreamException {
+    if (data.readInt() != FeatureListBinaryFormat.MAGIC) {
+      throw new IOException("Not a binary feature list file");
+    }
+    final int version = data.readInt();
+    if (version > FeatureListBinaryFormat.VERSION) {
+      throw new IOException(
+          "Binary feature list version " + version + " is not supported. Update mzmine.");
+    }
+    final String name = readString(data);
+    final String dateCreated = readString(data);
+    if (!flist.getName().equals(name) || !flist.getDateCreated().equals(dateCreated)) {
+      throw new IllegalArgumentException(
+          "Feature list names do not match. " + flist.getName() + " != " + name);
+    }
+
+    final RawDataFile[] files = new RawDataFile[data.readInt()];
+    for (int i = 0; i < files.length; i++) {
+      final String fileName = readString(data);
+      files[i] = project.getCurrentRawDataFiles().stream()
+          .filter(f -> f.getName().equals(fileName)).findFirst().orElse(null);
+      if (files[i] == null) {
+        logger.warning(() -> "Cannot load features for file " + fileName
+                             + ". File does not exist in project.");
+      }
+    }
+
+    // rows are created first so that types may reference other rows by id
+    final int[] ids = readInts(data, data.readInt());
+    rows = new ModularFeatureListRow[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      rows[i] = new ModularFeatureListRow(flist, ids[i]);
+      flist.addRow(rows[i]);
+    }
+
+    final int numFeatures = data.readInt();
+    featureRowIndices = readInts(data, numFeatures);
+    final int[] featureFileIndices = readInts(data, numFeatures);
+    features = new ModularFeature[numFeatures];
+    featureFiles = new RawDataFile[numFeatures];
+    for (int i = 0; i < numFeatures; i++) {
+      final RawDataFile file = files[featureFileIndices[i]];
+      if (file == null) {
+        continue;
+      }
+      // create feature with original file, but use buffered file for data type loading.
+      final RawDataFile originalFile =
+          file instanceof CachedIMSRawDataFile c ? c.getOriginalFile() : file;
+      features[i] = new ModularFeature(flist, originalFile, null, null);
+      featureFiles[i] = file;
+    }
+
+    if (!readColumns(data, series, false)) {
+      return false;
+    }
+    if (!readColumns(data, series, true)) {
+      return false;
+    }
+
+    for (int i = 0; i < numFeatures; i++) {
+      final ModularFeature feature = features[i];
+      if (feature != null) {
+        rows[featureRowIndices[i]].addFeature(feature.getRawDataFile(), feature);
+      }
+    }
+    return true;
+  }
+
+  private boolean readColumns(DataInputStream data, DataInputStream series,
+      boolean featureColumns) throws IOException, XMLStreamException {
+    final int numColumns = data.readInt();
+    for (int c = 0; c < numColumns; c++) {
+      if (isCanceled.getAsBoolean()) {
+        return false;
+      }
+      readColumn(data, series, featureColumns);
+      // row columns are the first half, feature columns the second
+      progress = (featureColumns ? 0.5 : 0d) + 0.5 * (c + 1) / numColumns;
+    }
+    return true;
+  }
+
+  private void readColumn(DataInputStream data, DataInputStream series, boolean featureColumn)
+      throws IOException, XMLStreamException {
+    final String typeId = readString(data);
+    final DataType type = DataTypes.getTypeForId(typeId);
+    final Codec codec = Codec.forId(data.readByte());
+    final int size = data.readInt();
+    final int[] indices = readInts(data, size);
+    if (type == null) {
+      logger.info(() -> "No data type for id " + typeId);
+    }
+
+    switch (codec) {
+      case INT -> {
+        final int[] values = readInts(data, size);
+        for (int i = 0; i < size; i++) {
+          set(type, indices[i], values[i], featureColumn);
+        }
+      }
+      case LONG -> {
+        final long[] values = readLongs(data, size);
+        for (int i = 0; i < size; i++) {
+          set(type, indices[i], values[i], featureColumn);
+        }
+      }
+      case FLOAT -> {
+        final float[] values = readFloats(data, size);
+        for (int i = 0; i < size; i++) {
+          set(type, indices[i], values[i], featureColumn);
+        }
+      }
+      case DOUBLE -> {
+        final double[] values = readDoubles(data, size);
+        for (int i = 0; i < size; i++) {
+          set(type, indices[i], values[i], featureColumn);
+        }
+      }
+      case STRING -> {
+        for (int i = 0; i < size; i++) {
+          set(type, indices[i], readString(data), featureColumn);
+        }
+      }
+      case ION_TIME_SERIES -> {
+        for (int i = 0; i < size; i++) {
+          final SimpleIonTimeSeries value = readSeries(series, featureFiles[indices[i]]);
+          set(type, indices[i], value, featureColumn);
+        }
+      }
+      case XML -> readXmlColumn(data, type, indices, featureColumn);
+    }
+  }
+
+  /**
+   * Always reads the series to keep the position in the stream, even if the file is missing
+   */
+  @Nullable
+  private SimpleIonTimeSeries readSeries(DataInputStream series, @Nullable RawDataFile file)
+      throws IOException {
+    final int n = series.readInt();
+    final int[] scanIndices = readInts(series, n);
+    final double[] mzs = readDoubles(series, n);
+    final double[] intensities = readDoubles(series, n);
+    if (file == null) {
+      return null;
+    }
+
+    // use all scans
+    List<Scan> scans = ParsingUtils.getSublistFromIndices(file.getScans(), scanIndices);
+    // if the scans were CachedFrames, we have to replace them when storing them to the series,
+    // otherwise, we would keep the refences to cached mobility scans alive.
+    if (!scans.isEmpty() && scans.getFirst() instanceof CachedIMSFrame) {
+      scans = scans.stream().map(scan -> ((CachedIMSFrame) scan).getOriginalFrame())
+          .map(f -> (Scan) f).toList();
+    }
+    return new SimpleIonTimeSeries(flist.getMemoryMapStorage(), mzs, intensities, scans);
+  }
+
+  /**
+   * Each value is a separate xml document with the data type element as root
+   */
+  private void readXmlColumn(DataInputStream data, @Nullable DataType type, int[] indices,
+      boolean featureColumn) throws IOException, XMLStreamException {
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    for (final int index : indices) {
+      final byte[] xml = new byte[data.readInt()];
+      data.readFully(xml);
+      if (type == null || (featureColumn && features[index] == null)) {
+        continue;
+      }
+
+      final XMLStreamReader reader = factory.createXMLStreamReader(new ByteArrayInputStream(xml));
+      // move to the data type element
+      while (reader.hasNext()) {
+        if (reader.next() == XMLEvent.START_ELEMENT) {
+          break;
+        }
+      }
+      final Object value = featureColumn ? FeatureListLoadTask.parseDataType(reader, type,
+          project, flist, rows[featureRowIndices[index]], features[index], featureFiles[index])
+          : FeatureListLoadTask.parseDataType(reader, type, project, flist, rows[index], null,
+              null);
+      set(type, index, value, featureColumn);
+    }
+  }
+
+  private void set(@Nullable DataType type, int index, @Nullable Object value,
+      boolean featureColumn) {
+    if (type == null || value == null) {
+      return;
+    }
+    final ModularDataModel model = featureColumn ? features[index] : rows[index];
+    if (model == null) {
+      return;
+    }
+    try {
+      model.set(type, value);
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, () -> String.format(
+          "DataType %s and value %s were not set to %s. Maybe incompatible during loading?", type,
+          value, featureColumn ? "feature" : "row"));
+    }
+  }
+
+  /**
+   * @return progress of reading the columns
+   */
+  double getProgress() {
+    return progress;
+  }
+}
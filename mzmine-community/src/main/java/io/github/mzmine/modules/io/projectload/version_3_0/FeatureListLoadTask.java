@@ -45,6 +45,8 @@ import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.ParsingUtils;
 import io.github.mzmine.util.ZipUtils;
 import io.github.mzmine.util.files.FileAndPathUtil;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -59,8 +61,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipFile;
 import javax.xml.parsers.DocumentBuilder;
@@ -87,17 +91,18 @@ public class FeatureListLoadTask extends AbstractTask {
   public static final String TEMP_FLIST_DATA_FOLDER = "mzmine_featurelists_temp";
   public static final Pattern fileNamePattern = Pattern
       .compile("([^\\n]+)(" + FeatureListSaveTask.DATA_FILE_SUFFIX + ")");
+  public static final Pattern binaryFileNamePattern = Pattern.compile(
+      "([^\\n]+)(" + FeatureListBinaryFormat.DATA_FILE_SUFFIX + ")");
 
   private static final Logger logger = Logger.getLogger(FeatureListLoadTask.class.getName());
   final String idTypeUniqueID = new IDType().getUniqueID();
   private final ZipFile zip;
   private final MZmineProject project;
-  private final AtomicInteger rowCounter = new AtomicInteger(0);
-  private int totalRows = 1;
-  private int processedRows = 0;
-  private String currentFlist = "";
+  // feature lists are loaded in parallel
+  private final AtomicInteger totalRows = new AtomicInteger(0);
+  private final AtomicInteger processedRows = new AtomicInteger(0);
+  private final AtomicInteger processedFlists = new AtomicInteger(0);
   private int numFlists = 1;
-  private int processedFlists;
 
   public FeatureListLoadTask(@Nullable MemoryMapStorage storage, @NotNull MZmineProject project,
       ZipFile zip) {
@@ -135,14 +140,14 @@ public class FeatureListLoadTask extends AbstractTask {
 
   @Override
   public String getTaskDescription() {
-    return "Importing feature list " + currentFlist + (processedFlists + 1) + "/" + numFlists
-           + ". Parsing row " + processedRows + "/" + totalRows;
+    return "Importing feature lists " + processedFlists.get() + "/" + numFlists + ". Parsed rows "
+           + processedRows.get() + "/" + totalRows.get();
   }
 
   @Override
   public double getFinishedPercentage() {
-    return (double) processedFlists / numFlists // overall progress finished flists
-           + (double) processedRows / totalRows / numFlists; // current flist progress
+    return 0.5 * processedFlists.get() / numFlists // overall progress finished flists
+           + 0.5 * processedRows.get() / Math.max(1, totalRows.get()); // rows of started flists
   }
 
   @Override
@@ -156,45 +161,46 @@ public class FeatureListLoadTask extends AbstractTask {
       logger.info(() -> "Unzipping feature lists done.");
 
       File[] files = new File(tempDirectory.toFile(), FeatureListSaveTask.FLIST_FOLDER)
-          .listFiles((dir, name) -> fileNamePattern.matcher(name).matches());
+          .listFiles((dir, name) -> fileNamePattern.matcher(name).matches()
+                                    || binaryFileNamePattern.matcher(name).matches());
       if (files == null) {
         logger.info("Did not find feature lists to load.");
         setStatus(TaskStatus.FINISHED);
         return;
       }
 
-      numFlists = files.length;
+      // one data file per feature list, binary data replaces xml data
+      final Map<String, File> dataFiles = new LinkedHashMap<>();
+      for (File file : files) {
+        final Matcher binary = binaryFileNamePattern.matcher(file.getName());
+        if (binary.matches()) {
+          dataFiles.put(binary.group(1), file);
+          continue;
+        }
+        final Matcher xml = fileNamePattern.matcher(file.getName());
+        if (xml.matches()) {
+          dataFiles.putIfAbsent(xml.group(1), file);
+        }
+      }
+
+      numFlists = Math.max(1, dataFiles.size());
 
       final MemoryMapStorage storage = MemoryMapStorage.forFeatureList();
 
       // enable caching of mobility scans during project import.
       project.setProjectLoadImsImportCaching(true);
 
-      for (File flistFile : files) {
-        if (isCanceled()) {
-          return;
-        }
-        rowCounter.set(0);
-
-        final File metadataFile = new File(flistFile.toString()
-            .replace(FeatureListSaveTask.DATA_FILE_SUFFIX,
-                FeatureListSaveTask.METADATA_FILE_SUFFIX));
-        ModularFeatureList flist = createRows(storage, flistFile, metadataFile);
-
-        if (flist == null) {
-          logger.severe(
-              () -> "Cannot load feature list from files " + flistFile.getAbsolutePath() + " and "
-                    + metadataFile.getAbsolutePath());
-          continue;
+      // load in parallel and add to the project in the original order
+      final List<ModularFeatureList> flists = dataFiles.values().parallelStream()
+          .map(flistFile -> loadFeatureList(storage, flistFile)).toList();
+      if (isCanceled()) {
+        project.setProjectLoadImsImportCaching(false);
+        return;
+      }
+      for (ModularFeatureList flist : flists) {
+        if (flist != null) {
+          project.addFeatureList(flist);
         }
-        parseFeatureList(storage, project, flist, flistFile);
-
-        // TODO maybe remove so that ModularFeatureList.getFeatureList can be unmodifiable
-        // disable buffering after the import (replace references to CachedIMSRawDataFiles with IMSRawDataFiles
-        flist.replaceCachedFilesAndScans();
-
-        project.addFeatureList(flist);
-        processedFlists++;
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -210,11 +216,107 @@ public class FeatureListLoadTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * Loads a feature list from its xml or binary data file and the metadata file.
+   *
+   * @return the feature list or null if it cannot be loaded or the task was canceled
+   */
+  @Nullable
+  private ModularFeatureList loadFeatureList(MemoryMapStorage storage, File flistFile) {
+    if (isCanceled()) {
+      return null;
+    }
+    final boolean binary = binaryFileNamePattern.matcher(flistFile.getName()).matches();
+    final File metadataFile = replaceSuffix(flistFile,
+        binary ? FeatureListBinaryFormat.DATA_FILE_SUFFIX : FeatureListSaveTask.DATA_FILE_SUFFIX,
+        FeatureListSaveTask.METADATA_FILE_SUFFIX);
+
+    final ModularFeatureList flist;
+    if (binary) {
+      flist = readMetadataCreateFeatureList(project, metadataFile, storage);
+      if (flist != null && !parseBinaryFeatureList(flist, flistFile)) {
+        return null;
+      }
+    } else {
+      flist = createRows(storage, flistFile, metadataFile);
+      if (flist != null) {
+        parseFeatureList(storage, project, flist, flistFile);
+      }
+    }
+
+    if (flist == null) {
+      logger.severe(
+          () -> "Cannot load feature list from files " + flistFile.getAbsolutePath() + " and "
+                + metadataFile.getAbsolutePath());
+      return null;
+    }
+
+    // TODO maybe remove so that ModularFeatureList.getFeatureList can be unmodifiable
+    // disable buffering after the import (replace references to CachedIMSRawDataFiles with IMSRawDataFiles
+    flist.replaceCachedFilesAndScans();
+    processedFlists.incrementAndGet();
+    return flist;
+  }
+
+  private static File replaceSuffix(File file, String oldSuffix, String newSuffix) {
+    final String path = file.toString();
+    return new File(path.substring(0, path.length() - oldSuffix.length()) + newSuffix);
+  }
+
+  /**
+   * Reads the rows and features from the {@link FeatureListBinaryFormat}.
+   *
+   * @return false if canceled or on error
+   */
+  private boolean parseBinaryFeatureList(ModularFeatureList flist, File dataFile) {
+    final File seriesFile = replaceSuffix(dataFile, FeatureListBinaryFormat.DATA_FILE_SUFFIX,
+        FeatureListBinaryFormat.SERIES_FILE_SUFFIX);
+
+    final FeatureListBinaryReader reader = new FeatureListBinaryReader(project, flist,
+        this::isCanceled);
+    try (var data = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
+        var series = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(seriesFile)))) {
+      final boolean finished = reader.read(data, series);
+      totalRows.addAndGet(flist.getNumberOfRows());
+      processedRows.addAndGet(flist.getNumberOfRows());
+      return finished;
+    } catch (IOException | XMLStreamException e) {
+      logger.log(Level.WARNING, "Error reading binary feature list " + dataFile.getAbsolutePath(),
+          e);
+      return false;
+    }
+  }
+
+  /**
+   * Reads a feature list that was written outside of a project by
+   * {@link FeatureListSaveTask#writeBinaryFeatureList}. The feature list is not added to the
+   * project.
+   *
+   * @param project the project with the raw data files of the feature list
+   * @return the feature list or null if canceled or the metadata cannot be read
+   */
+  @Nullable
+  public static ModularFeatureList readBinaryFeatureList(@NotNull MZmineProject project,
+      @Nullable MemoryMapStorage storage, @NotNull File metadataFile, @NotNull File dataFile,
+      @NotNull File seriesFile, @NotNull BooleanSupplier isCanceled)
+      throws IOException, XMLStreamException {
+    final ModularFeatureList flist = readMetadataCreateFeatureList(project, metadataFile, storage);
+    if (flist == null) {
+      return null;
+    }
+    final FeatureListBinaryReader reader = new FeatureListBinaryReader(project, flist, isCanceled);
+    try (var data = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
+        var series = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(seriesFile)))) {
+      return reader.read(data, series) ? flist : null;
+    }
+  }
+
   private void parseFeatureList(MemoryMapStorage storage, MZmineProject project,
       ModularFeatureList flist, File flistFile) {
-    currentFlist = flist.getName();
-    processedRows = 0;
-    totalRows = flist.getNumberOfRows();
+    totalRows.addAndGet(flist.getNumberOfRows());
+    int rowIndex = 0;
 
     try (InputStream fis = new FileInputStream(flistFile)) {
       final XMLInputFactory xif = XMLInputFactory.newInstance();
@@ -237,8 +339,9 @@ public class FeatureListLoadTask extends AbstractTask {
                       .getAttributeValue(null, CONST.XML_FLIST_NAME_ATTR));
             }
           } else if (CONST.XML_ROW_ELEMENT.equals(localName)) {
-            parseRow(reader, storage, project, flist);
-            processedRows++;
+            parseRow(reader, storage, project, flist, rowIndex);
+            rowIndex++;
+            processedRows.incrementAndGet();
           }
         }
       }
@@ -250,7 +353,7 @@ public class FeatureListLoadTask extends AbstractTask {
 
   /**
    * Creates the modular feature list from the metadata file using {@link
-   * this#readMetadataCreateFeatureList(File, MemoryMapStorage)}.
+   * this#readMetadataCreateFeatureList(MZmineProject, File, MemoryMapStorage)}.
    * <p></p>
    * Then passes the feature list data file once and creates the rows with the associated ids. No
    * other data will be put into the rows. This is done so rows can reference each other by their id
@@ -264,7 +367,7 @@ public class FeatureListLoadTask extends AbstractTask {
   private ModularFeatureList createRows(MemoryMapStorage storage, File dataFile,
       File metadataFile) {
 
-    ModularFeatureList flist = readMetadataCreateFeatureList(metadataFile, storage);
+    ModularFeatureList flist = readMetadataCreateFeatureList(project, metadataFile, storage);
     if (flist == null) {
       throw new IllegalStateException("Cannot create feature list.");
     }
@@ -297,11 +400,13 @@ public class FeatureListLoadTask extends AbstractTask {
    * Creates a feature list from the metadata xml file. Adds the selected raw data files (must be in
    * the loaded project) and sets the selected scans.
    *
+   * @param project The project with the raw data files.
    * @param file    The Metadata file.
    * @param storage The storage to use for the feature list.
    * @return The created feature list.
    */
-  private ModularFeatureList readMetadataCreateFeatureList(File file, MemoryMapStorage storage) {
+  private static ModularFeatureList readMetadataCreateFeatureList(MZmineProject project, File file,
+      MemoryMapStorage storage) {
     try {
       DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
 
@@ -388,13 +493,13 @@ public class FeatureListLoadTask extends AbstractTask {
   }
 
   private void parseRow(XMLStreamReader reader, MemoryMapStorage storage, MZmineProject project,
-      ModularFeatureList flist) throws XMLStreamException {
+      ModularFeatureList flist, int rowIndex) throws XMLStreamException {
     if (!reader.getLocalName().equals(CONST.XML_ROW_ELEMENT)) {
       throw new IllegalStateException("Cannot parse row if current element is not a row element");
     }
 
     int id = Integer.parseInt(reader.getAttributeValue(null, idTypeUniqueID));
-    final ModularFeatureListRow row = (ModularFeatureListRow) flist.getRow(rowCounter.get());
+    final ModularFeatureListRow row = (ModularFeatureListRow) flist.getRow(rowIndex);
     if (id != row.getID()) {
       throw new IllegalStateException("Row ids do not match.");
     }
@@ -430,7 +535,6 @@ public class FeatureListLoadTask extends AbstractTask {
         }
       }
     }
-    rowCounter.getAndIncrement();
   }
 
   private void parseFeature(@NotNull XMLStreamReader reader, @Nullable MemoryMapStorage storage,
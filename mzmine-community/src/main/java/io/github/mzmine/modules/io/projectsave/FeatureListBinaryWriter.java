@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.io.projectsave;
+
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.writeDoubles;
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.writeFloats;
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.writeInts;
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.writeLongs;
+import static io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.writeString;
+
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.DataTypes;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
+import io.github.mzmine.datamodel.features.types.FeaturesType;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.Codec;
+import io.github.mzmine.util.ParsingUtils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BooleanSupplier;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Writes the rows and features of a feature list in the {@link FeatureListBinaryFormat}. Values
+ * are collected per {@link DataType} into columns first and are then written column by column.
+ */
+class FeatureListBinaryWriter {
+
+  private final ModularFeatureList flist;
+  private final List<RawDataFile> files;
+  private final List<ModularFeatureListRow> rows = new ArrayList<>();
+  private final List<ModularFeature> features = new ArrayList<>();
+  private final IntArrayList featureRowIndices = new IntArrayList();
+  private final IntArrayList featureFileIndices = new IntArrayList();
+  private final BooleanSupplier isCanceled;
+  private double progress = 0;
+
+  FeatureListBinaryWriter(@NotNull ModularFeatureList flist, @NotNull BooleanSupplier isCanceled) {
+    this.flist = flist;
+    this.isCanceled = isCanceled;
+    // features may belong to files that are not part of the feature list
+    files = new ArrayList<>(flist.getRawDataFiles());
+
+    for (FeatureListRow r : flist.getRows()) {
+      final ModularFeatureListRow row = (ModularFeatureListRow) r;
+      for (ModularFeature feature : row.getFeatures()) {
+        final RawDataFile file = feature.getRawDataFile();
+        if (file == null || feature.getFeatureStatus() == FeatureStatus.UNKNOWN) {
+          continue;
+        }
+        features.add(feature);
+        featureRowIndices.add(rows.size());
+        int fileIndex = files.indexOf(file);
+        if (fileIndex < 0) {
+          fileIndex = files.size();
+          files.add(file);
+        }
+        featureFileIndices.add(fileIndex);
+      }
+      rows.add(row);
+    }
+  }
+
+  /**
+   * @param data   the columnar data
+   * @param series the raw arrays of all {@link Codec#ION_TIME_SERIES} columns
+   * @return false if canceled
+   */
+  boolean write(@NotNull DataOutputStream data, @NotNull DataOutputStream series)
+      throws IOException, XMLStreamException {
+    data.writeInt(FeatureListBinaryFormat.MAGIC);
+    data.writeInt(FeatureListBinaryFormat.VERSION);
+    writeString(data, flist.getName());
+    writeString(data, flist.getDateCreated());
+
+    data.writeInt(files.size());
+    for (RawDataFile file : files) {
+      writeString(data, file.getName());
+    }
+
+    data.writeInt(rows.size());
+    final int[] ids = rows.stream().mapToInt(FeatureListRow::getID).toArray();
+    writeInts(data, ids, ids.length);
+
+    data.writeInt(features.size());
+    writeInts(data, featureRowIndices.elements(), featureRowIndices.size());
+    writeInts(data, featureFileIndices.elements(), featureFileIndices.size());
+
+    // rows
+    final Map<DataType, Column> rowColumns = new LinkedHashMap<>();
+    for (int i = 0; i < rows.size(); i++) {
+      for (Entry<DataType, Object> entry : rows.get(i).getMap().entrySet()) {
+        if (!(entry.getKey() instanceof FeaturesType)) {
+          addValue(rowColumns, entry.getKey(), i, entry.getValue());
+        }
+      }
+    }
+    if (!writeColumns(data, series, rowColumns, false)) {
+      return false;
+    }
+
+    // features, the feature data is loaded first as it updates other types on change
+    final Map<DataType, Column> featureColumns = new LinkedHashMap<>();
+    featureColumns.put(DataTypes.get(FeatureDataType.class), new Column());
+    for (int i = 0; i < features.size(); i++) {
+      for (Entry<DataType, Object> entry : features.get(i).getMap().entrySet()) {
+        addValue(featureColumns, entry.getKey(), i, entry.getValue());
+      }
+    }
+    featureColumns.values().removeIf(column -> column.indices.isEmpty());
+    return writeColumns(data, series, featureColumns, true);
+  }
+
+  private static void addValue(Map<DataType, Column> columns, DataType type, int index,
+      @Nullable Object value) {
+    if (value == null) {
+      return;
+    }
+    final Column column = columns.computeIfAbsent(type, _ -> new Column());
+    column.indices.add(index);
+    column.values.add(value);
+  }
+
+  private boolean writeColumns(DataOutputStream data, DataOutputStream series,
+      Map<DataType, Column> columns, boolean featureColumns)
+      throws IOException, XMLStreamException {
+    data.writeInt(columns.size());
+    int written = 0;
+    for (Entry<DataType, Column> entry : columns.entrySet()) {
+      if (isCanceled.getAsBoolean()) {
+        return false;
+      }
+      writeColumn(data, series, entry.getKey(), entry.getValue(), featureColumns);
+      written++;
+      // row columns are the first half, feature columns the second
+      progress = (featureColumns ? 0.5 : 0d) + 0.5 * written / columns.size();
+    }
+    return true;
+  }
+
+  private void writeColumn(DataOutputStream data, DataOutputStream series, DataType<?> type,
+      Column column, boolean featureColumn) throws IOException, XMLStreamException {
+    final Codec codec = FeatureListBinaryFormat.codecOf(type, column.values);
+    final int size = column.indices.size();
+    writeString(data, type.getUniqueID());
+    data.writeByte(codec.getId());
+    data.writeInt(size);
+    writeInts(data, column.indices.elements(), size);
+
+    final List<Object> values = column.values;
+    switch (codec) {
+      case INT -> {
+        final int[] array = values.stream().mapToInt(v -> (Integer) v).toArray();
+        writeInts(data, array, size);
+      }
+      case LONG -> {
+        final long[] array = values.stream().mapToLong(v -> (Long) v).toArray();
+        writeLongs(data, array, size);
+      }
+      case FLOAT -> {
+        final float[] array = new float[size];
+        for (int i = 0; i < size; i++) {
+          array[i] = (Float) values.get(i);
+        }
+        writeFloats(data, array, size);
+      }
+      case DOUBLE -> {
+        final double[] array = values.stream().mapToDouble(v -> (Double) v).toArray();
+        writeDoubles(data, array, size);
+      }
+      case STRING -> {
+        for (Object value : values) {
+          writeString(data, (String) value);
+        }
+      }
+      case ION_TIME_SERIES -> {
+        for (int i = 0; i < size; i++) {
+          final RawDataFile file = files.get(featureFileIndices.getInt(column.indices.getInt(i)));
+          writeSeries(series, (SimpleIonTimeSeries) values.get(i), file);
+        }
+      }
+      case XML -> writeXmlColumn(data, type, column, featureColumn);
+    }
+  }
+
+  private static void writeSeries(DataOutputStream series, SimpleIonTimeSeries value,
+      RawDataFile file) throws IOException {
+    final int n = value.getNumberOfValues();
+    // use ALL scans of the raw data file like the xml format
+    final int[] indices = ParsingUtils.getIndicesOfSubListElements(value.getSpectra(),
+        file.getScans());
+    series.writeInt(n);
+    writeInts(series, indices, n);
+    writeDoubles(series, value.getMzValues(new double[n]), n);
+    writeDoubles(series, value.getIntensityValues(new double[n]), n);
+  }
+
+  /**
+   * Writes each value of a column as a separate xml document with the data type element as root
+   */
+  private void writeXmlColumn(DataOutputStream data, DataType<?> type, Column column,
+      boolean featureColumn) throws IOException, XMLStreamException {
+    final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (int i = 0; i < column.indices.size(); i++) {
+      bytes.reset();
+      final XMLStreamWriter writer = factory.createXMLStreamWriter(bytes, "UTF-8");
+      writer.writeStartDocument("UTF-8", "1.0");
+      final int index = column.indices.getInt(i);
+      if (featureColumn) {
+        final ModularFeature feature = features.get(index);
+        FeatureListSaveTask.writeDataType(writer, type, column.values.get(i), flist,
+            rows.get(featureRowIndices.getInt(index)), feature, feature.getRawDataFile());
+      } else {
+        FeatureListSaveTask.writeDataType(writer, type, column.values.get(i), flist,
+            rows.get(index), null, null);
+      }
+      writer.writeEndDocument();
+      writer.close();
+      data.writeInt(bytes.size());
+      bytes.writeTo(data);
+    }
+  }
+
+  /**
+   * @return progress of writing the columns
+   */
+  double getProgress() {
+    return progress;
+  }
+
+  private static class Column {
+
+    private final IntArrayList indices = new IntArrayList();
+    private final List<Object> values = new ArrayList<>();
+  }
+}
@@ -25,6 +25,8 @@
 
 package io.github.mzmine.modules.io.projectsave;
 
+import static java.util.Objects.requireNonNullElse;
+
 import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
 import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -37,13 +39,19 @@ import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.FeaturesType;
 import io.github.mzmine.datamodel.features.types.numbers.IDType;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.ConfigService;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListLoadTask;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ParsingUtils;
 import io.github.mzmine.util.StreamCopy;
 import io.github.mzmine.util.XMLUtils;
 import io.github.mzmine.util.files.FileAndPathUtil;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -53,6 +61,7 @@ import java.io.OutputStream;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -79,10 +88,13 @@ public class FeatureListSaveTask extends AbstractTask {
   private static final IDType idType = new IDType();
 
   private final ModularFeatureList flist;
+  // save the feature data in the FeatureListBinaryFormat instead of xml
+  private final boolean useBinaryFormat;
   private final ZipOutputStream zos;
   private final int rows;
   private final StreamCopy copy;
   private int processedRows = 0;
+  private @Nullable FeatureListBinaryWriter binaryWriter;
 
   public FeatureListSaveTask(ModularFeatureList flist, ZipOutputStream zos) {
     super(null, Instant.now());
@@ -90,6 +102,8 @@ public class FeatureListSaveTask extends AbstractTask {
     this.zos = zos;
     rows = flist.getNumberOfRows();
     copy = new StreamCopy();
+    useBinaryFormat = requireNonNullElse(
+        ConfigService.getPreference(MZminePreferences.binaryFeatureListProjectFormat), false);
   }
 
   public static String getDataFileName(String flistname) {
@@ -100,6 +114,16 @@ public class FeatureListSaveTask extends AbstractTask {
     return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + METADATA_FILE_SUFFIX;
   }
 
+  public static String getBinaryDataFileName(String flistname) {
+    return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname
+           + FeatureListBinaryFormat.DATA_FILE_SUFFIX;
+  }
+
+  public static String getBinarySeriesFileName(String flistname) {
+    return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname
+           + FeatureListBinaryFormat.SERIES_FILE_SUFFIX;
+  }
+
   @Override
   public String getTaskDescription() {
     return "Saving feature list " + flist.getName();
@@ -107,14 +131,17 @@ public class FeatureListSaveTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    return (((double) processedRows / rows) + copy.getProgress()) / 2;
+    final FeatureListBinaryWriter writer = binaryWriter;
+    final double writeProgress =
+        writer != null ? writer.getProgress() : rows == 0 ? 1d : (double) processedRows / rows;
+    return (writeProgress + copy.getProgress()) / 2;
   }
 
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
 
-    if (!saveFeatureData()) {
+    if (!(useBinaryFormat ? saveFeatureDataBinary() : saveFeatureData())) {
       return;
     }
 
@@ -135,20 +162,8 @@ public class FeatureListSaveTask extends AbstractTask {
     }
 
     try {
-      final DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      final DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      final Document document = dBuilder.newDocument();
-      final Element root = document.createElement(CONST.XML_ROOT_ELEMENT);
-      document.appendChild(root);
-
-      appendMetadata(document, root, flist);
-
-      XMLUtils.saveToFile(tempFile, document);
-      zos.putNextEntry(new ZipEntry(getMetadataFileName(flist.getName())));
-
-      try (InputStream is = new FileInputStream(tempFile)) {
-        copy.copy(is, zos);
-      }
+      writeMetadata(flist, tempFile);
+      copyToZip(tempFile, getMetadataFileName(flist.getName()));
 
       tempFile.delete();
     } catch (ParserConfigurationException | TransformerException | IOException e) {
@@ -160,7 +175,46 @@ public class FeatureListSaveTask extends AbstractTask {
     return true;
   }
 
-  private void appendMetadata(Document document, Element root, ModularFeatureList flist) {
+  /**
+   * Writes the applied methods, raw data files and selected scans of a feature list to an xml file
+   */
+  private static void writeMetadata(@NotNull ModularFeatureList flist, @NotNull File file)
+      throws ParserConfigurationException, TransformerException {
+    final DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+    final DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+    final Document document = dBuilder.newDocument();
+    final Element root = document.createElement(CONST.XML_ROOT_ELEMENT);
+    document.appendChild(root);
+
+    appendMetadata(document, root, flist);
+
+    XMLUtils.saveToFile(file, document);
+  }
+
+  /**
+   * Writes a feature list outside of a project to a metadata file and the binary data and series
+   * files of the {@link FeatureListBinaryFormat}. Read with
+   * {@link FeatureListLoadTask#readBinaryFeatureList}.
+   *
+   * @return false if canceled
+   */
+  public static boolean writeBinaryFeatureList(@NotNull ModularFeatureList flist,
+      @NotNull File metadataFile, @NotNull File dataFile, @NotNull File seriesFile,
+      @NotNull BooleanSupplier isCanceled)
+      throws IOException, XMLStreamException, ParserConfigurationException, TransformerException {
+    final FeatureListBinaryWriter writer = new FeatureListBinaryWriter(flist, isCanceled);
+    try (var data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+        var series = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(seriesFile)))) {
+      if (!writer.write(data, series)) {
+        return false;
+      }
+    }
+    writeMetadata(flist, metadataFile);
+    return true;
+  }
+
+  private static void appendMetadata(Document document, Element root, ModularFeatureList flist) {
     final Element appliedMethodsList = document.createElement(
         CONST.XML_FLIST_APPLIED_METHODS_LIST_ELEMENT);
     root.appendChild(appliedMethodsList);
@@ -263,9 +317,8 @@ public class FeatureListSaveTask extends AbstractTask {
       return false;
     }
 
-    try (FileInputStream is = new FileInputStream(tempFile)) {
-      zos.putNextEntry(new ZipEntry(getDataFileName(flist.getName())));
-      copy.copy(is, zos);
+    try {
+      copyToZip(tempFile, getDataFileName(flist.getName()));
     } catch (IOException e) {
       logger.log(Level.SEVERE, e.getMessage(), e);
       setStatus(TaskStatus.ERROR);
@@ -276,6 +329,59 @@ public class FeatureListSaveTask extends AbstractTask {
     return true;
   }
 
+  /**
+   * Writes the rows and features in the {@link FeatureListBinaryFormat} to a data and a series
+   * file
+   */
+  private boolean saveFeatureDataBinary() {
+    logger.finest(() -> "Creating temporary files for feature list " + flist.getName() + ".");
+    final File dataFile;
+    final File seriesFile;
+    try {
+      dataFile = FileAndPathUtil.createTempFile("mzmine_featurelist_data", ".tmp");
+      seriesFile = FileAndPathUtil.createTempFile("mzmine_featurelist_series", ".tmp");
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, "Cannot create temporary file.", e);
+      setStatus(TaskStatus.ERROR);
+      return false;
+    }
+
+    try {
+      binaryWriter = new FeatureListBinaryWriter(flist, this::isCanceled);
+      try (var data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+          var series = new DataOutputStream(
+              new BufferedOutputStream(new FileOutputStream(seriesFile)))) {
+        if (!binaryWriter.write(data, series)) {
+          return false;
+        }
+      }
+      processedRows = rows;
+
+      copyToZip(dataFile, getBinaryDataFileName(flist.getName()));
+      copyToZip(seriesFile, getBinarySeriesFileName(flist.getName()));
+    } catch (IOException | XMLStreamException e) {
+      logger.log(Level.SEVERE, e.getMessage(), e);
+      setStatus(TaskStatus.ERROR);
+      return false;
+    } finally {
+      dataFile.delete();
+      seriesFile.delete();
+    }
+    return true;
+  }
+
+  /**
+   * Feature lists are saved in parallel, only one entry may be written to the zip at a time
+   */
+  private void copyToZip(File file, String entryName) throws IOException {
+    try (InputStream is = new FileInputStream(file)) {
+      synchronized (zos) {
+        zos.putNextEntry(new ZipEntry(entryName));
+        copy.copy(is, zos);
+      }
+    }
+  }
+
   private void writeRow(XMLStreamWriter writer, ModularFeatureListRow row)
       throws XMLStreamException {
 
@@ -34,6 +34,7 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.impl.MZmineProjectImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.StreamCopy;
 import io.github.mzmine.util.exceptions.ExceptionUtils;
@@ -44,9 +45,12 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -361,33 +365,36 @@ public class ProjectSavingTask extends AbstractTask {
   private void savePeakLists(ZipOutputStream zipStream)
       throws IOException, TransformerConfigurationException, SAXException {
 
+    // feature lists are written to temporary files in parallel and then copied to the zip
     final List<FeatureList> currentFeatureLists = savedProject.getCurrentFeatureLists();
+    final List<FeatureListSaveTask> saveTasks = new ArrayList<>();
+    final Set<Task> finished = ConcurrentHashMap.newKeySet();
     for (FeatureList featureList : currentFeatureLists) {
       FeatureListSaveTask saveTask = new FeatureListSaveTask((ModularFeatureList) featureList,
           zipStream);
 
-      AtomicBoolean finished = new AtomicBoolean(false);
       saveTask.addTaskStatusListener((task, newStatus, oldStatus) -> {
         switch (newStatus) {
           case WAITING, PROCESSING -> {
           }
           case FINISHED, ERROR, CANCELED -> {
-            finished.set(true);
+            finished.add(task);
           }
         }
       });
+      saveTasks.add(saveTask);
       MZmineCore.getTaskController().addTask(saveTask);
+    }
 
-      while (!finished.get()) {
-        try {
-          Thread.sleep(50);
-        } catch (InterruptedException e) {
-          logger.log(Level.SEVERE, e.getMessage(), e);
-        }
-      }
-
+    // wait for all tasks, even when canceled, as they still write to the zip stream
+    while (finished.size() < saveTasks.size()) {
       if (isCanceled()) {
-        break;
+        saveTasks.forEach(Task::cancel);
+      }
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        logger.log(Level.SEVERE, e.getMessage(), e);
       }
     }
   }
@@ -415,6 +415,7 @@ public abstract class BaseWizardBatchBuilder extends WizardBatchBuilder {
     param.setParameter(CSVExportModularParameters.idSeparator, ";");
     param.setParameter(CSVExportModularParameters.omitEmptyColumns, true);
     param.setParameter(CSVExportModularParameters.filter, FeatureListRowsFilter.ALL);
+    param.setParameter(CSVExportModularParameters.numpyColumns, false);
 
     File fileName = FileAndPathUtil.eraseFormat(exportPath);
     fileName = new File(fileName.getParentFile(), fileName.getName() + "_full_feature_table.csv");
@@ -1320,6 +1321,7 @@ public abstract class BaseWizardBatchBuilder extends WizardBatchBuilder {
     advanced.setParameter(AdvancedSpectralLibrarySearchParameters.needsIsotopePattern, false);
     advanced.setParameter(AdvancedSpectralLibrarySearchParameters.rtTolerance, false);
     advanced.setParameter(AdvancedSpectralLibrarySearchParameters.ccsTolerance, false, 0.05);
+    advanced.setParameter(AdvancedSpectralLibrarySearchParameters.fragmentIndexPrefilter, false, 500);
 
     MZmineProcessingStep<MZmineProcessingModule> step = new MZmineProcessingStepImpl<>(
         MZmineCore.getModuleInstance(SpectralLibrarySearchModule.class), param);
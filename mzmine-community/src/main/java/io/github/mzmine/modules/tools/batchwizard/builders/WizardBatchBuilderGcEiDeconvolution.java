@@ -285,6 +285,7 @@ public class WizardBatchBuilderGcEiDeconvolution extends BaseWizardBatchBuilder
     advanced.setParameter(AdvancedSpectralLibrarySearchParameters.needsIsotopePattern, false);
     advanced.setParameter(AdvancedSpectralLibrarySearchParameters.rtTolerance, false);
     advanced.setParameter(AdvancedSpectralLibrarySearchParameters.ccsTolerance, false, 0.05);
+    advanced.setParameter(AdvancedSpectralLibrarySearchParameters.fragmentIndexPrefilter, false, 500);
 
     MZmineProcessingStep<MZmineProcessingModule> step = new MZmineProcessingStepImpl<>(
         MZmineCore.getModuleInstance(SpectralLibrarySearchModule.class), param);
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.tools.isotopeprediction;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.IsotopePattern;
+import io.github.mzmine.datamodel.IsotopePattern.IsotopePatternStatus;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.impl.SimpleIsotopePattern;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+/**
+ * Process-wide, size-bounded cache of predicted isotope patterns. Patterns are keyed by the
+ * formula (including mass numbers and formula charge), the minimum abundance, merge width, charge,
+ * polarity and whether isotope compositions are stored. Entries are kept as primitive arrays and
+ * every lookup returns a new {@link IsotopePattern} with copies of these arrays, so callers may
+ * not modify the cached values.
+ * <p>
+ * The minimum abundance often depends on the intensity of each feature. To share patterns between
+ * callers, patterns are predicted with the minimum abundance rounded down to a power of two and
+ * signals below the requested abundance are removed from the returned copy.
+ * <p>
+ * The cache is split into segments with their own LRU order to limit lock contention of parallel
+ * tasks. Patterns are predicted outside the lock, concurrent misses of the same key may predict
+ * the same pattern twice.
+ */
+public final class IsotopePatternCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 50_000;
+  private static final int SEGMENTS = 16;
+  private static final IsotopePatternCache INSTANCE = new IsotopePatternCache(DEFAULT_MAX_ENTRIES);
+
+  private final List<Map<Key, CachedPattern>> segments;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  IsotopePatternCache(int maxEntries) {
+    final int maxPerSegment = Math.max(1, maxEntries / SEGMENTS);
+    segments = new ArrayList<>(SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments.add(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CachedPattern> eldest) {
+          if (size() > maxPerSegment) {
+            evictions.increment();
+            return true;
+          }
+          return false;
+        }
+      });
+    }
+  }
+
+  public static IsotopePatternCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the cached pattern or predicts and caches a new one. The result is never shared with
+   * other callers.
+   */
+  public @NotNull IsotopePattern get(@NotNull IMolecularFormula formula, double minAbundance,
+      double mergeWidth, int charge, @NotNull PolarityType polarity, boolean storeFormula) {
+    final double predictedAbundance = roundAbundance(minAbundance);
+    final Key key = new Key(MolecularFormulaManipulator.getString(formula, false, true),
+        formula.getCharge(), predictedAbundance, mergeWidth, charge, polarity, storeFormula);
+    return get(key,
+        () -> IsotopePatternCalculator.predictIsotopePattern(formula, predictedAbundance,
+            mergeWidth, charge, polarity, storeFormula)).toIsotopePattern(minAbundance);
+  }
+
+  /**
+   * @return the minimum abundance rounded down to a power of two. Values outside of (0, 1] are
+   * returned unchanged.
+   */
+  static double roundAbundance(double minAbundance) {
+    if (!(minAbundance > 0 && minAbundance <= 1)) {
+      return minAbundance;
+    }
+    return Math.scalb(1d, Math.getExponent(minAbundance));
+  }
+
+  @NotNull CachedPattern get(@NotNull Key key, @NotNull Supplier<CachedPattern> prediction) {
+    final Map<Key, CachedPattern> segment = segments.get(
+        Math.floorMod(key.hashCode(), SEGMENTS));
+    CachedPattern pattern;
+    synchronized (segment) {
+      pattern = segment.get(key);
+    }
+    if (pattern != null) {
+      hits.increment();
+      return pattern;
+    }
+    misses.increment();
+    pattern = prediction.get();
+    synchronized (segment) {
+      segment.put(key, pattern);
+    }
+    return pattern;
+  }
+
+  public int size() {
+    int size = 0;
+    for (Map<Key, CachedPattern> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Removes all patterns and resets the statistics
+   */
+  public void clear() {
+    for (Map<Key, CachedPattern> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  public @NotNull Statistics getStatistics() {
+    return new Statistics(hits.sum(), misses.sum(), evictions.sum(), size());
+  }
+
+  record Key(@NotNull String formula, @Nullable Integer formulaCharge, double minAbundance,
+             double mergeWidth, int charge, @NotNull PolarityType polarity,
+             boolean storeFormula) {
+
+  }
+
+  /**
+   * A predicted pattern as primitive arrays. The arrays are never modified.
+   *
+   * @param charge       the absolute charge
+   * @param compositions the isotope compositions or null if they were not stored
+   */
+  record CachedPattern(double[] mzs, double[] intensities, int charge,
+                       @NotNull String description, String @Nullable [] compositions) {
+
+    @NotNull IsotopePattern toIsotopePattern() {
+      return toIsotopePattern(Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * @param minIntensity signals below this relative intensity are removed from the copy
+     */
+    @NotNull IsotopePattern toIsotopePattern(double minIntensity) {
+      int kept = 0;
+      for (double intensity : intensities) {
+        if (intensity >= minIntensity) {
+          kept++;
+        }
+      }
+      if (kept == 0) {
+        // the primitive constructor asserts at least one data point
+        return new SimpleIsotopePattern(new DataPoint[0], charge, IsotopePatternStatus.PREDICTED,
+            description, compositions == null ? null : new String[0]);
+      }
+      if (kept == mzs.length) {
+        return new SimpleIsotopePattern(mzs.clone(), intensities.clone(), charge,
+            IsotopePatternStatus.PREDICTED, description,
+            compositions == null ? null : compositions.clone());
+      }
+      final double[] keptMzs = new double[kept];
+      final double[] keptIntensities = new double[kept];
+      final String[] keptCompositions = compositions == null ? null : new String[kept];
+      for (int i = 0, k = 0; i < mzs.length; i++) {
+        if (intensities[i] >= minIntensity) {
+          keptMzs[k] = mzs[i];
+          keptIntensities[k] = intensities[i];
+          if (keptCompositions != null) {
+            keptCompositions[k] = compositions[i];
+          }
+          k++;
+        }
+      }
+      return new SimpleIsotopePattern(keptMzs, keptIntensities, charge,
+          IsotopePatternStatus.PREDICTED, description, keptCompositions);
+    }
+  }
+
+  /**
+   * @param size the number of cached patterns
+   */
+  public record Statistics(long hits, long misses, long evictions, int size) {
+
+    public double hitRate() {
+      final long requests = hits + misses;
+      return requests == 0 ? 0d : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+      return "%d hits, %d misses (hit rate %.1f%%), %d evictions, %d cached patterns".formatted(
+          hits, misses, hitRate() * 100d, evictions, size);
+    }
+  }
+}
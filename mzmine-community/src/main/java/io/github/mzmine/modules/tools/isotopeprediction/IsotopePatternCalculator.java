@@ -31,10 +31,10 @@ import io.github.mzmine.datamodel.IsotopePattern.IsotopePatternStatus;
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.impl.MultiChargeStateIsotopePattern;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.datamodel.impl.SimpleIsotopePattern;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCache.CachedPattern;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.util.ExitCode;
@@ -95,9 +95,22 @@ public class IsotopePatternCalculator implements MZmineModule {
     return calculateIsotopePattern(cdkFormula, minAbundance, 0.00005f, charge, polarity, false);
   }
 
+  /**
+   * Predicted patterns are shared through the {@link IsotopePatternCache}. The returned pattern is
+   * a copy and may be kept by the caller.
+   */
   public static IsotopePattern calculateIsotopePattern(IMolecularFormula cdkFormula,
       double minAbundance, double mergeWidth, int charge, PolarityType polarity,
       boolean storeFormula) {
+    return IsotopePatternCache.getInstance()
+        .get(cdkFormula, minAbundance, mergeWidth, charge, polarity, storeFormula);
+  }
+
+  /**
+   * Predicts the isotope pattern without the cache
+   */
+  static CachedPattern predictIsotopePattern(IMolecularFormula cdkFormula, double minAbundance,
+      double mergeWidth, int charge, PolarityType polarity, boolean storeFormula) {
     // TODO: check if the formula is not too big (>100 of a single atom?).
     // if so, just cancel the prediction
 
@@ -113,8 +126,9 @@ public class IsotopePatternCalculator implements MZmineModule {
 
     int numOfIsotopes = pattern.getNumberOfIsotopes();
 
-    DataPoint dataPoints[] = new DataPoint[numOfIsotopes];
-    String isotopeComposition[] = new String[numOfIsotopes];
+    double[] mzs = new double[numOfIsotopes];
+    double[] intensities = new double[numOfIsotopes];
+    String[] isotopeComposition = storeFormula ? new String[numOfIsotopes] : null;
     // For each unit of charge, we have to add or remove a mass of a
     // single electron. If the charge is positive, we remove electron
     // mass. If the charge is negative, we add it.
@@ -130,9 +144,8 @@ public class IsotopePatternCalculator implements MZmineModule {
         mass /= charge;
       }
 
-      double intensity = isotope.getIntensity();
-
-      dataPoints[i] = new SimpleDataPoint(mass, intensity);
+      mzs[i] = mass;
+      intensities[i] = isotope.getIntensity();
 
       if (storeFormula) {
         isotopeComposition[i] = formatCDKString(isotope.toString());
@@ -141,13 +154,7 @@ public class IsotopePatternCalculator implements MZmineModule {
 
     String formulaString = MolecularFormulaManipulator.getString(cdkFormula);
 
-    if (storeFormula) {
-      return new SimpleIsotopePattern(dataPoints, charge, IsotopePatternStatus.PREDICTED,
-          formulaString, isotopeComposition);
-    } else {
-      return new SimpleIsotopePattern(dataPoints, charge, IsotopePatternStatus.PREDICTED,
-          formulaString);
-    }
+    return new CachedPattern(mzs, intensities, charge, formulaString, isotopeComposition);
   }
 
   public static HashMap<Double, IsotopePattern> calculateIsotopePatternForResolutions(
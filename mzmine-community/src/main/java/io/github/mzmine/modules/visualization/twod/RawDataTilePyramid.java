@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.visualization.twod;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.project.ProjectService;
+import io.github.mzmine.project.impl.ProjectChangeEvent;
+import io.github.mzmine.project.impl.ProjectChangeEvent.Type;
+import io.github.mzmine.project.impl.ProjectChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.BooleanSupplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Level of detail pyramid of the maximum and summed intensities of scans over retention time and
+ * m/z tiles. The finest level groups consecutive scans into at most {@link #MAX_COLUMNS} columns
+ * and splits the m/z range into {@link #MAX_MZ_BINS} bins. Each coarser level merges two columns
+ * and two m/z bins. All levels are kept on the heap, the memory map storage of the raw data file
+ * only grows and would never free evicted levels.
+ * <p>
+ * The pyramid is built in a single pass over all data points and cached per raw data file and
+ * scan selection, so that opening, zooming and panning a plot only reads the coarsest level that
+ * still meets the resolution of the screen. The last used pyramids are cached up to
+ * {@link #MAX_CACHED_BYTES}.
+ */
+final class RawDataTilePyramid {
+
+  static final int MAX_COLUMNS = 2048;
+  static final int MAX_MZ_BINS = 2048;
+  // coarsest level
+  private static final int MIN_BINS = 32;
+
+  // the largest pyramids use about 45 MB, the newest pyramid is always kept
+  static final long MAX_CACHED_BYTES = Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 8);
+  /**
+   * Least recently used pyramids in access order. Files are evicted when they are removed from the
+   * project.
+   */
+  private static final Map<CacheKey, RawDataTilePyramid> CACHE = new LinkedHashMap<>(16, 0.75f,
+      true);
+  private static final Set<MZmineProject> LISTENED_PROJECTS = Collections.newSetFromMap(
+      new WeakHashMap<>());
+  private static long cachedBytes = 0;
+
+  private final int numScans;
+  private final double mzMin;
+  // finest level first
+  private final List<Level> levels;
+  private final long byteSize;
+
+  private RawDataTilePyramid(int numScans, double mzMin, List<Level> levels) {
+    this.numScans = numScans;
+    this.mzMin = mzMin;
+    this.levels = levels;
+    byteSize = levels.stream().mapToLong(Level::byteSize).sum();
+  }
+
+  /**
+   * @param scans scans sorted by retention time
+   * @return the cached pyramid of these scans or a new pyramid. Null if canceled.
+   */
+  @Nullable
+  static RawDataTilePyramid getOrBuild(@NotNull RawDataFile dataFile, @NotNull Scan[] scans,
+      @NotNull BooleanSupplier isCanceled) {
+    final CacheKey key = CacheKey.of(dataFile, scans);
+    synchronized (CACHE) {
+      final RawDataTilePyramid cached = CACHE.get(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    // build outside the lock, other files stay available
+    final RawDataTilePyramid pyramid = build(scans, isCanceled);
+    if (pyramid == null) {
+      return null;
+    }
+    final MZmineProject project = ProjectService.getProject();
+    synchronized (CACHE) {
+      if (LISTENED_PROJECTS.add(project)) {
+        project.addProjectListener(new ProjectChangeListener() {
+          @Override
+          public void dataFilesChanged(ProjectChangeEvent<RawDataFile> event) {
+            if (event.change() == Type.REMOVED) {
+              evict(event.changedLists());
+            }
+          }
+        });
+      }
+      final RawDataTilePyramid previous = CACHE.put(key, pyramid);
+      cachedBytes += pyramid.byteSize - (previous == null ? 0 : previous.byteSize);
+      // evict the least recently used pyramids
+      final Iterator<RawDataTilePyramid> eldest = CACHE.values().iterator();
+      while (cachedBytes > MAX_CACHED_BYTES && CACHE.size() > 1) {
+        cachedBytes -= eldest.next().byteSize;
+        eldest.remove();
+      }
+    }
+    return pyramid;
+  }
+
+  /**
+   * Removes the pyramids of these files from the cache
+   */
+  static void evict(@NotNull Collection<RawDataFile> dataFiles) {
+    synchronized (CACHE) {
+      final Iterator<Entry<CacheKey, RawDataTilePyramid>> entries = CACHE.entrySet().iterator();
+      while (entries.hasNext()) {
+        final Entry<CacheKey, RawDataTilePyramid> entry = entries.next();
+        if (dataFiles.contains(entry.getKey().dataFile())) {
+          cachedBytes -= entry.getValue().byteSize;
+          entries.remove();
+        }
+      }
+    }
+  }
+
+  static int numCached() {
+    synchronized (CACHE) {
+      return CACHE.size();
+    }
+  }
+
+  static long cachedBytes() {
+    synchronized (CACHE) {
+      return cachedBytes;
+    }
+  }
+
+  /**
+   * @return the memory used by all levels
+   */
+  long byteSize() {
+    return byteSize;
+  }
+
+  /**
+   * @return the pyramid or null if canceled
+   */
+  @Nullable
+  static RawDataTilePyramid build(@NotNull Scan[] scans, @NotNull BooleanSupplier isCanceled) {
+    double mzMin = Double.POSITIVE_INFINITY;
+    double mzMax = Double.NEGATIVE_INFINITY;
+    for (Scan scan : scans) {
+      final Range<Double> mzRange = scan.getDataPointMZRange();
+      if (mzRange != null) {
+        mzMin = Math.min(mzMin, mzRange.lowerEndpoint());
+        mzMax = Math.max(mzMax, mzRange.upperEndpoint());
+      }
+    }
+    if (scans.length == 0 || mzMin > mzMax) {
+      return new RawDataTilePyramid(scans.length, 0, List.of());
+    }
+
+    // finest level, consecutive scans are grouped into columns
+    int columns = Math.min(scans.length, MAX_COLUMNS);
+    int mzBins = MAX_MZ_BINS;
+    double mzBinWidth = Math.max((mzMax - mzMin) / mzBins, Double.MIN_NORMAL);
+    float[] rtStart = new float[columns];
+    float[] rtEnd = new float[columns];
+    float[] max = new float[columns * mzBins];
+    float[] sum = new float[columns * mzBins];
+    Arrays.fill(rtStart, Float.NaN);
+
+    for (int s = 0; s < scans.length; s++) {
+      if (isCanceled.getAsBoolean()) {
+        return null;
+      }
+      final Scan scan = scans[s];
+      final int column = (int) ((long) s * columns / scans.length);
+      final float rt = scan.getRetentionTime();
+      if (Float.isNaN(rtStart[column])) {
+        rtStart[column] = rt;
+      }
+      rtEnd[column] = rt;
+
+      final int offset = column * mzBins;
+      final int n = scan.getNumberOfDataPoints();
+      for (int i = 0; i < n; i++) {
+        final int bin = Math.min((int) ((scan.getMzValue(i) - mzMin) / mzBinWidth), mzBins - 1);
+        final float intensity = (float) scan.getIntensityValue(i);
+        if (intensity > max[offset + bin]) {
+          max[offset + bin] = intensity;
+        }
+        sum[offset + bin] += intensity;
+      }
+    }
+
+    final List<Level> levels = new ArrayList<>();
+    levels.add(new Level(columns, mzBins, mzBinWidth, rtStart, rtEnd, max, sum));
+    while (columns > MIN_BINS || mzBins > MIN_BINS) {
+      final int mergeColumns = columns > MIN_BINS ? 2 : 1;
+      final int mergeBins = mzBins > MIN_BINS ? 2 : 1;
+      final int nextColumns = (columns + mergeColumns - 1) / mergeColumns;
+      final int nextBins = (mzBins + mergeBins - 1) / mergeBins;
+
+      final float[] nextStart = new float[nextColumns];
+      final float[] nextEnd = new float[nextColumns];
+      final float[] nextMax = new float[nextColumns * nextBins];
+      final float[] nextSum = new float[nextColumns * nextBins];
+      for (int c = 0; c < columns; c++) {
+        final int nc = c / mergeColumns;
+        if (c % mergeColumns == 0) {
+          nextStart[nc] = rtStart[c];
+        }
+        nextEnd[nc] = rtEnd[c];
+        for (int b = 0; b < mzBins; b++) {
+          final int from = c * mzBins + b;
+          final int to = nc * nextBins + b / mergeBins;
+          nextMax[to] = Math.max(nextMax[to], max[from]);
+          nextSum[to] += sum[from];
+        }
+      }
+
+      columns = nextColumns;
+      mzBins = nextBins;
+      mzBinWidth *= mergeBins;
+      rtStart = nextStart;
+      rtEnd = nextEnd;
+      max = nextMax;
+      sum = nextSum;
+      levels.add(new Level(columns, mzBins, mzBinWidth, rtStart, rtEnd, max, sum));
+    }
+    return new RawDataTilePyramid(scans.length, mzMin, List.copyOf(levels));
+  }
+
+  /**
+   * Renders the maximum or summed intensity of each pixel from the coarsest level that has at
+   * least one column and m/z bin per pixel. If no scans fall into the retention time range of a
+   * pixel, the closest column is used, like in the scan based rendering. For the maximum in all
+   * modes but {@link PlotMode#CENTROID}, empty m/z bins use the closest bin with data in the same
+   * column.
+   *
+   * @param sum sum intensities instead of using the maximum
+   * @return intensities [width][height] with m/z ascending or null if the finest level is too
+   * coarse and the scans need to be used directly
+   */
+  double @Nullable [][] render(double rtMin, double rtMax, double mzMin, double mzMax, int width,
+      int height, boolean sum, @NotNull PlotMode plotMode) {
+    final double rtStep = (rtMax - rtMin) / width;
+    final double mzStep = (mzMax - mzMin) / height;
+    final Level level = findLevel(rtMin, rtMax, mzStep, width);
+    if (level == null) {
+      return null;
+    }
+    final float[] values = sum ? level.sum() : level.max();
+
+    // columns and bins of each pixel
+    final int[] firstColumn = new int[width];
+    final int[] lastColumn = new int[width];
+    for (int i = 0; i < width; i++) {
+      final double lower = rtMin + i * rtStep;
+      final double upper = lower + rtStep;
+      int first = level.firstColumnEndingAfter(lower);
+      int last = level.lastColumnStartingBefore(upper);
+      if (first > last) {
+        // no column in range, use the closest or nothing outside the data
+        if (first == 0 || first == level.columns()) {
+          first = -1;
+          last = -2;
+        } else {
+          final double diffNext = level.rtStart()[first] - upper;
+          final double diffPrev = lower - level.rtEnd()[first - 1];
+          first = diffPrev < diffNext ? first - 1 : first;
+          last = first;
+        }
+      }
+      firstColumn[i] = first;
+      lastColumn[i] = last;
+    }
+
+    final int[] firstBin = new int[height];
+    final int[] lastBin = new int[height];
+    for (int j = 0; j < height; j++) {
+      final double lower = mzMin + j * mzStep;
+      firstBin[j] = Math.max((int) Math.floor((lower - this.mzMin) / level.mzBinWidth()), 0);
+      lastBin[j] = Math.min((int) Math.floor((lower + mzStep - this.mzMin) / level.mzBinWidth()),
+          level.mzBins() - 1);
+    }
+
+    final boolean closestBin = !sum && plotMode != PlotMode.CENTROID;
+    final int[] previousWithData = closestBin ? new int[level.mzBins()] : null;
+    final int[] nextWithData = closestBin ? new int[level.mzBins()] : null;
+
+    final double[][] result = new double[width][height];
+    for (int i = 0; i < width; i++) {
+      for (int c = firstColumn[i]; c <= lastColumn[i]; c++) {
+        final int offset = c * level.mzBins();
+        if (closestBin) {
+          findBinsWithData(values, offset, previousWithData, nextWithData);
+        }
+        for (int j = 0; j < height; j++) {
+          double value = result[i][j];
+          boolean hasData = false;
+          for (int b = firstBin[j]; b <= lastBin[j]; b++) {
+            final float v = values[offset + b];
+            hasData |= v > 0;
+            value = sum ? value + v : Math.max(value, v);
+          }
+          if (closestBin && !hasData) {
+            final int bin = closestBinWithData(level, previousWithData, nextWithData, firstBin[j],
+                lastBin[j], mzMin + j * mzStep, mzStep);
+            if (bin >= 0) {
+              value = Math.max(value, values[offset + bin]);
+            }
+          }
+          result[i][j] = value;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param previous the last bin <= index with data or -1
+   * @param next     the first bin >= index with data or -1
+   */
+  private static void findBinsWithData(float[] values, int offset, int[] previous, int[] next) {
+    int last = -1;
+    for (int b = 0; b < previous.length; b++) {
+      if (values[offset + b] > 0) {
+        last = b;
+      }
+      previous[b] = last;
+    }
+    last = -1;
+    for (int b = next.length - 1; b >= 0; b--) {
+      if (values[offset + b] > 0) {
+        last = b;
+      }
+      next[b] = last;
+    }
+  }
+
+  /**
+   * Like the scan based rendering, only pixels between data points use the closest data point.
+   *
+   * @return the bin with data closest to the pixel or -1 if the pixel is outside the data
+   */
+  private int closestBinWithData(Level level, int[] previousWithData, int[] nextWithData,
+      int firstBin, int lastBin, double pixelMzMin, double mzStep) {
+    if (firstBin < 1 || lastBin + 1 >= level.mzBins()) {
+      return -1;
+    }
+    final int previous = previousWithData[firstBin - 1];
+    final int next = nextWithData[lastBin + 1];
+    if (previous < 0 || next < 0) {
+      return -1;
+    }
+    // distance of the bin centers to the pixel borders
+    final double diffPrevious = pixelMzMin - (mzMin + (previous + 0.5) * level.mzBinWidth());
+    final double diffNext = mzMin + (next + 0.5) * level.mzBinWidth() - (pixelMzMin + mzStep);
+    return diffPrevious < diffNext ? previous : next;
+  }
+
+  /**
+   * @return the coarsest level with at least one column per pixel (or all scans) and an m/z bin
+   * width below the pixel height. Null if even the finest level is too coarse.
+   */
+  @Nullable
+  private Level findLevel(double rtMin, double rtMax, double mzStep, int width) {
+    for (int l = levels.size() - 1; l >= 0; l--) {
+      final Level level = levels.get(l);
+      if (level.mzBinWidth() > mzStep) {
+        continue;
+      }
+      final int visibleColumns =
+          level.lastColumnStartingBefore(rtMax) - level.firstColumnEndingAfter(rtMin) + 1;
+      final boolean allScans = l == 0 && level.columns() == numScans;
+      if (visibleColumns >= width || allScans) {
+        return level;
+      }
+    }
+    return null;
+  }
+
+  int numLevels() {
+    return levels.size();
+  }
+
+  /**
+   * Scan selection of a raw data file, identified by the scan numbers
+   */
+  private record CacheKey(@NotNull RawDataFile dataFile, int @NotNull [] scanNumbers) {
+
+    private static CacheKey of(RawDataFile dataFile, Scan[] scans) {
+      final int[] scanNumbers = new int[scans.length];
+      for (int i = 0; i < scans.length; i++) {
+        scanNumbers[i] = scans[i].getScanNumber();
+      }
+      return new CacheKey(dataFile, scanNumbers);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof CacheKey other && dataFile == other.dataFile && Arrays.equals(
+          scanNumbers, other.scanNumbers);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(dataFile) + Arrays.hashCode(scanNumbers);
+    }
+  }
+
+  /**
+   * @param rtStart first retention time of the scans in each column
+   * @param rtEnd   last retention time of the scans in each column
+   * @param max     maximum intensity of each tile, column major
+   * @param sum     summed intensity of each tile, column major
+   */
+  private record Level(int columns, int mzBins, double mzBinWidth, float[] rtStart, float[] rtEnd,
+                       float[] max, float[] sum) {
+
+    private long byteSize() {
+      return Float.BYTES * ((long) rtStart.length + rtEnd.length + max.length + sum.length);
+    }
+
+    /**
+     * @return first column with an end >= rt or columns if none
+     */
+    private int firstColumnEndingAfter(double rt) {
+      int low = 0;
+      int high = columns;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (rtEnd[mid] < rt) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return last column with a start <= rt or -1 if none
+     */
+    private int lastColumnStartingBefore(double rt) {
+      int low = 0;
+      int high = columns;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (rtStart[mid] <= rt) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low - 1;
+    }
+  }
+}
@@ -32,9 +32,12 @@ import io.github.mzmine.gui.chartbasics.simplechart.datasets.AbstractTaskXYDatas
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.RangeUtils;
+import io.github.mzmine.util.collections.BinarySearch.DefaultTo;
 import java.util.ArrayList;
 import java.util.Arrays;
 import javafx.application.Platform;
+import org.jetbrains.annotations.Nullable;
 
 class TwoDDataSet extends AbstractTaskXYDataset {
 
@@ -42,14 +45,13 @@ class TwoDDataSet extends AbstractTaskXYDataset {
 
   private final float[] retentionTimes;
   private final double[] basePeaks;
-  private final double[][] mzValues;
-  private final double[][] intensityValues;
 
   private final Range<Double> totalMZRange;
   private final Range<Float> totalRTRange;
   private final int totalScans;
   private final Scan[] scans;
   private int processedScans;
+  private volatile @Nullable RawDataTilePyramid pyramid;
 
   public double curMaxIntensity;
   private ArrayList<Float> rtValuesInUserRange;
@@ -66,8 +68,6 @@ class TwoDDataSet extends AbstractTaskXYDataset {
 
     totalScans = scans.length;
 
-    mzValues = new double[totalScans][];
-    intensityValues = new double[totalScans][];
     retentionTimes = new float[totalScans];
     basePeaks = new double[totalScans];
 
@@ -91,13 +91,15 @@ class TwoDDataSet extends AbstractTaskXYDataset {
       Double scanBasePeakInt = scan.getBasePeakIntensity();
       retentionTimes[index] = scan.getRetentionTime();
       basePeaks[index] = (scanBasePeakInt == null ? 0 : scanBasePeakInt);
-      mzValues[index] = new double[scan.getNumberOfDataPoints()];
-      scan.getMzValues(mzValues[index]);
-      intensityValues[index] = new double[scan.getNumberOfDataPoints()];
-      scan.getIntensityValues(intensityValues[index]);
       processedScans++;
     }
 
+    // tiles are only built once per raw data file and scan selection
+    pyramid = RawDataTilePyramid.getOrBuild(rawDataFile, scans, this::isCanceled);
+    if (pyramid == null) {
+      return;
+    }
+
     Platform.runLater(() -> fireDatasetChanged());
 
     setStatus(TaskStatus.FINISHED);
@@ -151,6 +153,39 @@ class TwoDDataSet extends AbstractTaskXYDataset {
     }
   }
 
+  /**
+   * @return the highest intensity of each pixel [width][height] with m/z ascending. Uses the tile
+   * pyramid if it has enough resolution and the scans otherwise.
+   */
+  double[][] upperEndpointIntensities(double rtMin, double rtMax, double mzMin, double mzMax,
+      int width, int height, PlotMode plotMode) {
+    final RawDataTilePyramid tiles = pyramid;
+    if (tiles != null) {
+      final double[][] values = tiles.render(rtMin, rtMax, mzMin, mzMax, width, height, false,
+          plotMode);
+      if (values != null) {
+        return values;
+      }
+    }
+
+    final double rtStep = (rtMax - rtMin) / width;
+    final double mzStep = (mzMax - mzMin) / height;
+    final double[][] values = new double[width][height];
+    for (int i = 0; i < width; i++) {
+      for (int j = 0; j < height; j++) {
+        double pointRTMin = rtMin + (i * rtStep);
+        double pointRTMax = pointRTMin + rtStep;
+        double pointMZMin = mzMin + (j * mzStep);
+        double pointMZMax = pointMZMin + mzStep;
+
+        values[i][j] = upperEndpointIntensity(
+            RangeUtils.toFloatRange(Range.closed(pointRTMin, pointRTMax)),
+            Range.closed(pointMZMin, pointMZMax), plotMode);
+      }
+    }
+    return values;
+  }
+
   double upperEndpointIntensity(Range<Float> rtRange, Range<Double> mzRange, PlotMode plotMode) {
 
     double maxIntensity = 0;
@@ -220,32 +255,34 @@ class TwoDDataSet extends AbstractTaskXYDataset {
 
     double maxIntensity = 0;
 
-    int startMZIndex = Arrays.binarySearch(mzValues[index], mzRange.lowerEndpoint());
+    final Scan scan = scans[index];
+    final int numDataPoints = scan.getNumberOfDataPoints();
+    int startMZIndex = scan.binarySearch(mzRange.lowerEndpoint(), DefaultTo.MINUS_INSERTION_POINT);
     if (startMZIndex < 0) {
       startMZIndex = (startMZIndex * -1) - 1;
     }
 
-    if (startMZIndex >= mzValues[index].length) {
+    if (startMZIndex >= numDataPoints) {
       return 0;
     }
 
-    if (mzValues[index][startMZIndex] > mzRange.upperEndpoint()) {
+    if (scan.getMzValue(startMZIndex) > mzRange.upperEndpoint()) {
       if (plotMode != PlotMode.CENTROID) {
         if (startMZIndex == 0) {
           return 0;
         }
-        if (startMZIndex == mzValues[index].length - 1) {
-          return intensityValues[index][startMZIndex - 1];
+        if (startMZIndex == numDataPoints - 1) {
+          return scan.getIntensityValue(startMZIndex - 1);
         }
 
         // find which data point is closer
-        double diffNext = mzValues[index][startMZIndex] - mzRange.upperEndpoint();
-        double diffPrev = mzRange.lowerEndpoint() - mzValues[index][startMZIndex - 1];
+        double diffNext = scan.getMzValue(startMZIndex) - mzRange.upperEndpoint();
+        double diffPrev = mzRange.lowerEndpoint() - scan.getMzValue(startMZIndex - 1);
 
         if (diffPrev < diffNext) {
-          return intensityValues[index][startMZIndex - 1];
+          return scan.getIntensityValue(startMZIndex - 1);
         } else {
-          return intensityValues[index][startMZIndex];
+          return scan.getIntensityValue(startMZIndex);
         }
       } else {
         return 0;
@@ -254,10 +291,10 @@ class TwoDDataSet extends AbstractTaskXYDataset {
     }
 
     for (int mzIndex = startMZIndex;
-        ((mzIndex < mzValues[index].length) && (mzValues[index][mzIndex]
-            <= mzRange.upperEndpoint())); mzIndex++) {
-      if (intensityValues[index][mzIndex] > maxIntensity) {
-        maxIntensity = intensityValues[index][mzIndex];
+        ((mzIndex < numDataPoints) && (scan.getMzValue(mzIndex) <= mzRange.upperEndpoint()));
+        mzIndex++) {
+      if (scan.getIntensityValue(mzIndex) > maxIntensity) {
+        maxIntensity = scan.getIntensityValue(mzIndex);
       }
     }
 
@@ -270,7 +307,8 @@ class TwoDDataSet extends AbstractTaskXYDataset {
     if (totalScans == 0) {
       return 0;
     }
-    return (double) processedScans / totalScans;
+    // building the tiles takes most of the time
+    return pyramid != null ? 1 : (double) processedScans / totalScans * 0.1;
   }
 
   @Override
@@ -38,10 +38,13 @@ import io.github.mzmine.taskcontrol.threadpools.FixedThreadPoolTask;
 import io.github.mzmine.util.StringUtils;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntryList;
 import java.io.File;
 import java.time.Instant;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
@@ -167,10 +170,10 @@ public class SpectralLibrarySelection {
       throw SpectralLibrarySelectionException.forNoLibraries();
     }
 
-    List<SpectralLibraryEntry> entries = new ArrayList<>();
-    for (var lib : libraries) {
-      entries.addAll(lib.getEntries());
-    }
+    // view on the entries, compiled libraries only create the entries that are accessed
+    final List<SpectralLibraryEntry> entries = libraries.size() == 1 ? libraries.getFirst()
+        .getEntries()
+        : new CombinedEntries(libraries.stream().map(SpectralLibrary::getEntries).toList());
 
     if (entries.isEmpty()) {
       throw SpectralLibrarySelectionException.forEmptyLibraries(libraries);
@@ -182,4 +185,67 @@ public class SpectralLibrarySelection {
   public List<File> getSpecificLibraryNames() {
     return specificLibraryNames;
   }
+
+  /**
+   * Unmodifiable view on the entries of multiple libraries
+   */
+  private static final class CombinedEntries extends AbstractList<SpectralLibraryEntry> implements
+      SpectralLibraryEntryList, RandomAccess {
+
+    private final List<List<SpectralLibraryEntry>> libraries;
+    // first index of each library
+    private final int[] starts;
+    private final int size;
+
+    private CombinedEntries(List<List<SpectralLibraryEntry>> libraries) {
+      this.libraries = libraries;
+      starts = new int[libraries.size()];
+      int size = 0;
+      for (int i = 0; i < libraries.size(); i++) {
+        starts[i] = size;
+        size += libraries.get(i).size();
+      }
+      this.size = size;
+    }
+
+    @Override
+    public SpectralLibraryEntry get(int index) {
+      final int library = libraryIndex(index);
+      return libraries.get(library).get(index - starts[library]);
+    }
+
+    @Override
+    public double getPrecursorMz(int index) {
+      final int library = libraryIndex(index);
+      return SpectralLibraryEntryList.getPrecursorMz(libraries.get(library),
+          index - starts[library]);
+    }
+
+    @Override
+    public int getNumberOfDataPoints(int index) {
+      final int library = libraryIndex(index);
+      return SpectralLibraryEntryList.getNumberOfDataPoints(libraries.get(library),
+          index - starts[library]);
+    }
+
+    private int libraryIndex(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      int library = Arrays.binarySearch(starts, index);
+      if (library < 0) {
+        library = -library - 2;
+      }
+      // skip empty libraries with the same start
+      while (index - starts[library] >= libraries.get(library).size()) {
+        library++;
+      }
+      return library;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
 }
@@ -103,6 +103,18 @@ public class FeatureConvertors {
 
     SimpleIonTimeSeries timeSeries = createSimpleTimeSeries(featureList.getMemoryMapStorage(),
         new ArrayList<>(dataPoints), new ArrayList<>(scans));
+    return chromatogramSeriesToModularFeature(featureList, dataFile, timeSeries, mzTolerance);
+  }
+
+  /**
+   * Creates a detected feature from a chromatogram and groups all MS2 scans in its m/z and RT
+   * range.
+   *
+   * @param mzTolerance the tolerance is used to widen the m/z range for MS2 grouping
+   */
+  public static ModularFeature chromatogramSeriesToModularFeature(ModularFeatureList featureList,
+      RawDataFile dataFile, @NotNull IonTimeSeries<? extends Scan> timeSeries,
+      final MZTolerance mzTolerance) {
     ModularFeature modularFeature = new ModularFeature(featureList, dataFile, timeSeries,
         FeatureStatus.DETECTED);
 
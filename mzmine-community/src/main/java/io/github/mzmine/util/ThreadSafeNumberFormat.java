@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util;
+
+import java.math.RoundingMode;
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.util.Currency;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link NumberFormat}s like {@link java.text.DecimalFormat} are not thread safe but are shared
+ * by data types and preferences. This format formats and parses with a copy of the original format
+ * per thread, so that values can be formatted in parallel, e.g., during export. The wrapped format
+ * is immutable, setters are not supported. {@link #clone()} returns a mutable copy of the
+ * original format.
+ */
+public final class ThreadSafeNumberFormat extends NumberFormat {
+
+  private final NumberFormat prototype;
+  private final transient ThreadLocal<NumberFormat> local;
+
+  private ThreadSafeNumberFormat(@NotNull NumberFormat prototype) {
+    this.prototype = (NumberFormat) prototype.clone();
+    local = ThreadLocal.withInitial(() -> (NumberFormat) this.prototype.clone());
+  }
+
+  /**
+   * @return a thread safe format with the same pattern
+   */
+  @NotNull
+  public static NumberFormat of(@NotNull NumberFormat format) {
+    return format instanceof ThreadSafeNumberFormat ? format : new ThreadSafeNumberFormat(format);
+  }
+
+  @Override
+  public StringBuffer format(Object number, StringBuffer toAppendTo, FieldPosition pos) {
+    return local.get().format(number, toAppendTo, pos);
+  }
+
+  @Override
+  public StringBuffer format(double number, StringBuffer toAppendTo, FieldPosition pos) {
+    return local.get().format(number, toAppendTo, pos);
+  }
+
+  @Override
+  public StringBuffer format(long number, StringBuffer toAppendTo, FieldPosition pos) {
+    return local.get().format(number, toAppendTo, pos);
+  }
+
+  @Override
+  public Number parse(String source, ParsePosition parsePosition) {
+    return local.get().parse(source, parsePosition);
+  }
+
+  @Override
+  public boolean isParseIntegerOnly() {
+    return prototype.isParseIntegerOnly();
+  }
+
+  @Override
+  public boolean isGroupingUsed() {
+    return prototype.isGroupingUsed();
+  }
+
+  @Override
+  public int getMaximumIntegerDigits() {
+    return prototype.getMaximumIntegerDigits();
+  }
+
+  @Override
+  public int getMinimumIntegerDigits() {
+    return prototype.getMinimumIntegerDigits();
+  }
+
+  @Override
+  public int getMaximumFractionDigits() {
+    return prototype.getMaximumFractionDigits();
+  }
+
+  @Override
+  public int getMinimumFractionDigits() {
+    return prototype.getMinimumFractionDigits();
+  }
+
+  @Override
+  public Currency getCurrency() {
+    return prototype.getCurrency();
+  }
+
+  @Override
+  public RoundingMode getRoundingMode() {
+    return prototype.getRoundingMode();
+  }
+
+  @Override
+  public void setParseIntegerOnly(boolean value) {
+    throw new UnsupportedOperationException("Thread safe number formats are immutable");
+  }
+
+  @Override
+  public void setGroupingUsed(boolean newValue) {
+    throw new UnsupportedOperationException("Thread safe number formats are immutable");
+  }
+
+  @Override
+  public void setMaximumIntegerDigits(int newValue) {
+    throw new UnsupportedOperationException("Thread safe number formats are immutable");
+  }
+
+  @Override
+  public void setMinimumIntegerDigits(int newValue) {
+    throw new UnsupportedOperationException("Thread safe number formats are immutable");
+  }
+
+  @Override
+  public void setMaximumFractionDigits(int newValue) {
+    throw new UnsupportedOperationException("Thread safe number formats are immutable");
+  }
+
+  @Override
+  public void setMinimumFractionDigits(int newValue) {
+    throw new UnsupportedOperationException("Thread safe number formats are immutable");
+  }
+
+  @Override
+  public void setCurrency(Currency currency) {
+    throw new UnsupportedOperationException("Thread safe number formats are immutable");
+  }
+
+  @Override
+  public void setRoundingMode(RoundingMode roundingMode) {
+    throw new UnsupportedOperationException("Thread safe number formats are immutable");
+  }
+
+  /**
+   * @return a mutable copy of the original format, e.g., to change the rounding mode
+   */
+  @Override
+  public Object clone() {
+    return prototype.clone();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof ThreadSafeNumberFormat other && prototype.equals(other.prototype);
+  }
+
+  @Override
+  public int hashCode() {
+    return prototype.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return prototype.toString();
+  }
+}
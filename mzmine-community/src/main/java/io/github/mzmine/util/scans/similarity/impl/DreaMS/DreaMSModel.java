@@ -81,11 +81,16 @@ public class DreaMSModel extends EmbeddingBasedSimilarity implements AutoCloseab
      * Predicts a DreaMS embedding from a tensorized spectrum.
      */
     public NDArray predictEmbeddingFromTensors(float[][][] tensorizedSpectra) throws TranslateException {
+        return predictEmbeddingFromTensors(tensorizedSpectra, ndManager);
+    }
+
+    private NDArray predictEmbeddingFromTensors(float[][][] tensorizedSpectra, NDManager manager)
+            throws TranslateException {
 
         // Convert 3D float[][][] to 3D NDList
         NDList tensorizedList = new NDList();
         for (float[][] spectrum : tensorizedSpectra) {
-            NDArray slice = ndManager.create(spectrum);
+            NDArray slice = manager.create(spectrum);
             tensorizedList.add(slice);
         }
         NDArray tensorizedArray = NDArrays.stack(tensorizedList);
@@ -106,6 +111,17 @@ public class DreaMSModel extends EmbeddingBasedSimilarity implements AutoCloseab
         return predictEmbeddingFromTensors(tensorizedSpectra);
     }
 
+    @Override
+    protected NDArray predictEmbedding(List<? extends MassSpectrum> scans, NDManager manager)
+            throws TranslateException {
+        return predictEmbeddingFromTensors(spectrumTensorizer.tensorizeSpectra(scans), manager);
+    }
+
+    @Override
+    protected NDManager getManager() {
+        return ndManager;
+    }
+
     @Override
     public void close() {
         try {
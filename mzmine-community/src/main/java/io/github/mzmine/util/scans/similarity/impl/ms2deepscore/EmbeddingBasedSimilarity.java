@@ -28,9 +28,16 @@ package io.github.mzmine.util.scans.similarity.impl.ms2deepscore;
 import static ai.djl.ndarray.types.DataType.FLOAT32;
 
 import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
 import ai.djl.translate.TranslateException;
 import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.util.scans.similarity.impl.ms2deepscore.EmbeddingCache.EmbeddingKey;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntConsumer;
+import org.jetbrains.annotations.Nullable;
 
 public abstract class EmbeddingBasedSimilarity {
 
@@ -42,6 +49,112 @@ public abstract class EmbeddingBasedSimilarity {
   public abstract NDArray predictEmbedding(List<? extends MassSpectrum> scans)
       throws TranslateException;
 
+  /**
+   * Predict embeddings for a list of scans
+   *
+   * @param manager all inputs are created in this manager
+   * @return NDArray of embeddings for each spectrum
+   */
+  protected abstract NDArray predictEmbedding(List<? extends MassSpectrum> scans,
+      NDManager manager) throws TranslateException;
+
+  /**
+   * @return the manager of the model, used to create sub managers for each batch
+   */
+  protected abstract NDManager getManager();
+
+  /**
+   * Predict embeddings in batches of scans. All NDArrays of a batch are closed after copying the
+   * embeddings, so that only the resulting matrix grows with the number of scans.
+   *
+   * @param batchSize      number of scans per prediction
+   * @param processedScans called with the number of scans after each batch
+   * @return normalized embeddings in the order of the scans
+   */
+  public EmbeddingMatrix predictEmbeddingMatrix(List<? extends MassSpectrum> scans,
+      int batchSize, @Nullable IntConsumer processedScans) throws TranslateException {
+    return predictEmbeddingMatrix(scans, batchSize, null, processedScans);
+  }
+
+  /**
+   * Predict embeddings in batches of scans. Embeddings found in the cache are reused and only the
+   * remaining scans are predicted and added to the cache.
+   *
+   * @param cache          cache of this model or null to predict all scans
+   * @param batchSize      number of scans per prediction
+   * @param processedScans called with the number of scans after each batch
+   * @return normalized embeddings in the order of the scans
+   */
+  public EmbeddingMatrix predictEmbeddingMatrix(List<? extends MassSpectrum> scans,
+      int batchSize, @Nullable EmbeddingCache cache, @Nullable IntConsumer processedScans)
+      throws TranslateException {
+    // rows of scans that need to be predicted
+    final IntList missing = new IntArrayList(scans.size());
+    final EmbeddingKey[] keys = new EmbeddingKey[scans.size()];
+    final float[][] cached;
+    if (cache != null) {
+      for (int i = 0; i < scans.size(); i++) {
+        keys[i] = EmbeddingCache.key(scans.get(i));
+      }
+      cached = cache.getAll(keys);
+    } else {
+      cached = new float[scans.size()][];
+    }
+    for (int i = 0; i < scans.size(); i++) {
+      if (cached[i] == null) {
+        missing.add(i);
+      }
+    }
+    // predicted embeddings are added to the cache at once
+    final EmbeddingKey[] predictedKeys = new EmbeddingKey[missing.size()];
+    final float[][] predicted = new float[missing.size()][];
+    if (processedScans != null && missing.size() < scans.size()) {
+      processedScans.accept(scans.size() - missing.size());
+    }
+
+    EmbeddingMatrix matrix = null;
+    for (int start = 0; start < missing.size(); start += batchSize) {
+      final int end = Math.min(start + batchSize, missing.size());
+      final List<? extends MassSpectrum> batch = missing.subList(start, end).intStream()
+          .mapToObj(scans::get).toList();
+      try (NDManager batchManager = getManager().newSubManager()) {
+        NDArray embeddings = predictEmbedding(batch, batchManager);
+        embeddings.attach(batchManager);
+        final int dimensions = (int) embeddings.getShape().get(1);
+        if (matrix == null) {
+          matrix = new EmbeddingMatrix(scans.size(), dimensions);
+        }
+        final float[] values = embeddings.toType(FLOAT32, false).toFloatArray();
+        for (int i = start; i < end; i++) {
+          final int row = missing.getInt(i);
+          final float[] embedding = Arrays.copyOfRange(values, (i - start) * dimensions,
+              (i - start + 1) * dimensions);
+          matrix.setRows(row, embedding);
+          predictedKeys[i] = keys[row];
+          predicted[i] = embedding;
+        }
+      }
+      if (processedScans != null) {
+        processedScans.accept(end - start);
+      }
+    }
+    if (cache != null) {
+      // also writes the last use of the cached embeddings
+      cache.putAll(predictedKeys, predicted);
+    }
+
+    for (int row = 0; row < cached.length; row++) {
+      if (cached[row] == null) {
+        continue;
+      }
+      if (matrix == null) {
+        matrix = new EmbeddingMatrix(scans.size(), cached[row].length);
+      }
+      matrix.setRows(row, cached[row]);
+    }
+    return matrix != null ? matrix : new EmbeddingMatrix(0, 1);
+  }
+
   /**
    * Predict similarity matrix from list of scans. The scans are converted into embeddings and then
    * compared by similarity, usually cosine similarity but depending on the implementation
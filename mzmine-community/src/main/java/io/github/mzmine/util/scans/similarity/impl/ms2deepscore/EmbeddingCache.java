@@ -0,0 +1,638 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity.impl.ms2deepscore;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.ConfigService;
+import io.github.mzmine.util.exceptions.MissingMassListException;
+import io.github.mzmine.util.files.FileAndPathUtil;
+import io.github.mzmine.util.scans.ScanUtils;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Persistent store of spectrum embeddings of one model. Embeddings are keyed by a hash of the
+ * spectrum content that is used by the tensorizers (fragment signals, precursor m/z, polarity) so
+ * that identical spectra of libraries and feature lists are only predicted once, also across
+ * sessions. The store is a data file of fixed size records in the mzmine user directory that is
+ * memory mapped for reading. Each record stores the time of its last use, if the file exceeds the
+ * maximum size, the least recently used embeddings are evicted until half of the maximum size is
+ * used. Reads only update the last use in memory, it is written with the next
+ * {@link #putAll(EmbeddingKey[], float[][])}.
+ * <p>
+ * Multiple mzmine processes may use the same files. All changes are done while holding a
+ * {@link FileLock} on a separate lock file: records are only appended, evictions write a data file
+ * of a new random generation. The small main file only holds the header with the current
+ * generation, so that other processes reload the data file and index records that were appended by
+ * others. Data files are never replaced as mapped files cannot be replaced on Windows, old
+ * generations are deleted once they are not mapped anymore.
+ * <p>
+ * One instance is shared per model, see {@link #getOrOpen(Path, Path, long)}. All methods are
+ * thread safe, use {@link #getAll(EmbeddingKey[])} and {@link #putAll(EmbeddingKey[], float[][])}
+ * to lock the files once for many spectra.
+ */
+public final class EmbeddingCache {
+
+  private static final Logger logger = Logger.getLogger(EmbeddingCache.class.getName());
+  private static final Map<String, EmbeddingCache> OPEN_CACHES = new HashMap<>();
+
+  /**
+   * Change if the spectrum key or file format changes
+   */
+  static final int VERSION = 3;
+  static final int MAGIC = 0x4d5a4543; // MZEC
+  static final int HEADER_BYTES = 16;
+  static final int KEY_BYTES = 16;
+  static final int LAST_USED_BYTES = 8;
+  static final String DATA_FILE_SUFFIX = ".data";
+
+  private final Path file;
+  private final Path lockFile;
+  private final Object2IntMap<EmbeddingKey> index = new Object2IntOpenHashMap<>();
+  // last use of each record for eviction
+  private final LongArrayList lastUsed = new LongArrayList();
+  // last use of read records that is not written to the file yet
+  private final Object2LongMap<EmbeddingKey> unwrittenUses = new Object2LongOpenHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evicted = new AtomicLong();
+
+  private long maxBytes;
+  private FileChannel lockChannel;
+  private FileChannel channel;
+  private int dimensions;
+  private int generation;
+  private int records;
+  private long clock;
+  private @Nullable Arena arena;
+  private @Nullable MemorySegment mapped;
+
+  EmbeddingCache(Path file, long maxBytes) throws IOException {
+    this.file = file;
+    this.maxBytes = maxBytes;
+    lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    index.defaultReturnValue(-1);
+    Files.createDirectories(file.getParent());
+    try (var _ = lock()) {
+      openFile();
+    }
+  }
+
+  /**
+   * @return the cache of the model if enabled in the preferences or null
+   */
+  @Nullable
+  public static EmbeddingCache fromPreferences(@NotNull File modelFile,
+      @NotNull File settingsFile) {
+    final Integer maxMB = ConfigService.getPreferences()
+        .getEmbeddedParameterValueIfSelectedOrElse(MZminePreferences.spectrumEmbeddingCache, null);
+    if (maxMB == null) {
+      return null;
+    }
+    try {
+      return getOrOpen(modelFile.toPath(), settingsFile.toPath(), maxMB * 1024L * 1024L);
+    } catch (IOException e) {
+      logger.log(Level.WARNING,
+          "Cannot open embedding cache, embeddings are predicted without: " + e.getMessage(), e);
+      return null;
+    }
+  }
+
+  /**
+   * @param maxBytes maximum file size, the file is memory mapped for reads and limited to 2 GB
+   * @return the shared cache of this model
+   */
+  @NotNull
+  public static EmbeddingCache getOrOpen(@NotNull Path modelFile, @NotNull Path settingsFile,
+      long maxBytes) throws IOException {
+    final String modelId = modelId(modelFile, settingsFile);
+    final long limitedBytes = Math.min(maxBytes, Integer.MAX_VALUE);
+    synchronized (OPEN_CACHES) {
+      // only one instance per file, file locks are held by the whole JVM
+      EmbeddingCache cache = OPEN_CACHES.get(modelId);
+      if (cache == null) {
+        final File dir = FileAndPathUtil.resolveInMzmineDir("embedding_cache");
+        final Path file = new File(dir, modelId + ".bin").toPath();
+        cache = new EmbeddingCache(file, limitedBytes);
+        OPEN_CACHES.put(modelId, cache);
+      } else {
+        cache.setMaxBytes(limitedBytes);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Identifies a model by its file name, size and modification date and the content of the
+   * settings
+   */
+  private static String modelId(Path modelFile, Path settingsFile) throws IOException {
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putInt(VERSION);
+    hasher.putUnencodedChars(modelFile.getFileName().toString());
+    hasher.putLong(Files.size(modelFile));
+    hasher.putLong(Files.getLastModifiedTime(modelFile).toMillis());
+    hasher.putBytes(Files.readAllBytes(settingsFile));
+    final String name = FileAndPathUtil.eraseFormat(modelFile.getFileName().toString())
+        .replaceAll("[^A-Za-z0-9_-]", "_");
+    return name + "_" + hasher.hash().toString().substring(0, 16);
+  }
+
+  /**
+   * @return key of the spectrum content used by the tensorizers
+   */
+  @NotNull
+  public static EmbeddingKey key(@NotNull MassSpectrum spectrum) {
+    MassSpectrum fragments = spectrum;
+    if (spectrum instanceof Scan scan) {
+      fragments = scan.getMassList();
+      if (fragments == null) {
+        throw new MissingMassListException(scan);
+      }
+    }
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    final Double precursorMz = ScanUtils.getPrecursorMz(spectrum);
+    hasher.putDouble(precursorMz == null ? -1 : precursorMz);
+    final PolarityType polarity = ScanUtils.getPolarity(spectrum);
+    hasher.putInt(polarity == null ? -1 : polarity.ordinal());
+    final int n = fragments.getNumberOfDataPoints();
+    hasher.putInt(n);
+    for (int i = 0; i < n; i++) {
+      hasher.putDouble(fragments.getMzValue(i));
+      hasher.putDouble(fragments.getIntensityValue(i));
+    }
+    final ByteBuffer hash = ByteBuffer.wrap(hasher.hash().asBytes());
+    return new EmbeddingKey(hash.getLong(), hash.getLong());
+  }
+
+  /**
+   * @return the embedding or null if not cached
+   */
+  @Nullable
+  public float[] get(@NotNull EmbeddingKey key) {
+    return getAll(new EmbeddingKey[]{key})[0];
+  }
+
+  /**
+   * Looks up all keys and only locks the files once if any key is missing, as other processes may
+   * have added the embeddings. Does not write to the files.
+   *
+   * @return the embeddings in the order of the keys, null if not cached
+   */
+  @NotNull
+  public synchronized float[][] getAll(@NotNull EmbeddingKey[] keys) {
+    final float[][] embeddings = new float[keys.length][];
+    boolean synced = false;
+    for (int i = 0; i < keys.length; i++) {
+      int record = index.getInt(keys[i]);
+      if (record < 0 && !synced) {
+        synced = true;
+        try (var _ = lock()) {
+          syncWithFile();
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Cannot read embedding cache " + e.getMessage(), e);
+        }
+        record = index.getInt(keys[i]);
+      }
+      if (record < 0 || mapped == null) {
+        misses.incrementAndGet();
+        continue;
+      }
+      hits.incrementAndGet();
+
+      final long time = nextTime();
+      lastUsed.set(record, time);
+      unwrittenUses.put(keys[i], time);
+      embeddings[i] = new float[dimensions];
+      MemorySegment.copy(mapped, ValueLayout.JAVA_FLOAT_UNALIGNED,
+          recordOffset(record) + KEY_BYTES + LAST_USED_BYTES, embeddings[i], 0, dimensions);
+    }
+    return embeddings;
+  }
+
+  public void put(@NotNull EmbeddingKey key, float[] embedding) {
+    putAll(new EmbeddingKey[]{key}, new float[][]{embedding});
+  }
+
+  /**
+   * Appends all embeddings and writes the last use of all embeddings read since the last write,
+   * while locking the files once. Embeddings already in the cache are skipped.
+   *
+   * @param embeddings the embeddings in the order of the keys, all with the same dimensions
+   */
+  public synchronized void putAll(@NotNull EmbeddingKey[] keys, float[][] embeddings) {
+    if (keys.length == 0 && unwrittenUses.isEmpty()) {
+      return;
+    }
+    try (var _ = lock()) {
+      syncWithFile();
+      writeUses();
+      if (keys.length == 0) {
+        return;
+      }
+
+      final int newDimensions = embeddings[0].length;
+      if (dimensions != newDimensions) {
+        if (records > 0) {
+          logger.warning(
+              "Embedding cache %s has %d dimensions but got %d. Cache is cleared.".formatted(file,
+                  dimensions, newDimensions));
+        }
+        rewrite(newDimensions, new int[0]);
+      }
+
+      boolean appended = false;
+      final ByteBuffer buffer = ByteBuffer.allocate(recordBytes()).order(ByteOrder.nativeOrder());
+      for (int i = 0; i < keys.length; i++) {
+        if (index.containsKey(keys[i])) {
+          continue;
+        }
+        if (recordOffset(records + 1) > maxBytes) {
+          evict();
+        }
+        final long time = nextTime();
+        buffer.clear();
+        buffer.putLong(keys[i].high()).putLong(keys[i].low()).putLong(time);
+        buffer.asFloatBuffer().put(embeddings[i]);
+        writeFully(channel, buffer.rewind(), recordOffset(records));
+        index.put(keys[i], records);
+        lastUsed.add(time);
+        records++;
+        appended = true;
+      }
+      if (appended) {
+        // map the appended records for reading
+        remap();
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot write to embedding cache " + e.getMessage(), e);
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public double getHitRate() {
+    final long total = hits.get() + misses.get();
+    return total == 0 ? 0 : hits.get() / (double) total;
+  }
+
+  public synchronized int size() {
+    return records;
+  }
+
+  @Override
+  public String toString() {
+    return "Embedding cache %s: %d embeddings, %.1f MB, hits=%d, misses=%d, hit rate=%.1f %%, evicted=%d".formatted(
+        file.getFileName(), size(), recordOffset(size()) / 1024d / 1024d, hits.get(),
+        misses.get(), getHitRate() * 100, evicted.get());
+  }
+
+  private int recordBytes() {
+    return KEY_BYTES + LAST_USED_BYTES + 4 * dimensions;
+  }
+
+  private long recordOffset(int record) {
+    return HEADER_BYTES + (long) record * recordBytes();
+  }
+
+  /**
+   * @return the data file of the current generation
+   */
+  synchronized Path dataFile() {
+    return dataFile(generation);
+  }
+
+  private Path dataFile(int generation) {
+    return file.resolveSibling(
+        "%s.%08x%s".formatted(file.getFileName(), generation, DATA_FILE_SUFFIX));
+  }
+
+  private synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return strictly increasing time of the last use. Based on the system time to compare the
+   * records of multiple processes.
+   */
+  private long nextTime() {
+    clock = Math.max(clock + 1, System.currentTimeMillis());
+    return clock;
+  }
+
+  /**
+   * Locks the file against changes by other processes. Call from synchronized methods only.
+   */
+  private FileLock lock() throws IOException {
+    if (lockChannel == null) {
+      lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE);
+    }
+    return lockChannel.lock();
+  }
+
+  /**
+   * Opens the data file of the current generation and indexes all records. Call with lock.
+   */
+  private void openFile() throws IOException {
+    final Header header = readMainHeader();
+    final Path data = header == null ? null : dataFile(header.generation());
+    if (data == null || !header.equals(readHeader(data))) {
+      rewrite(0, new int[0]);
+      return;
+    }
+    channel = FileChannel.open(data, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    dimensions = header.dimensions();
+    generation = header.generation();
+    // partially written records at the end are ignored and overwritten
+    records = (int) ((channel.size() - HEADER_BYTES) / recordBytes());
+    remap();
+    indexRecords(0);
+  }
+
+  /**
+   * Opens the data file if another process wrote a new generation or indexes the records that
+   * were appended by other processes. Call with lock.
+   */
+  private void syncWithFile() throws IOException {
+    final Header header = readMainHeader();
+    if (channel == null || header == null || header.generation() != generation
+        || header.dimensions() != dimensions) {
+      closeDataFile();
+      index.clear();
+      lastUsed.clear();
+      records = 0;
+      openFile();
+      return;
+    }
+    final int fileRecords = (int) ((channel.size() - HEADER_BYTES) / recordBytes());
+    if (fileRecords > records) {
+      final int first = records;
+      records = fileRecords;
+      remap();
+      indexRecords(first);
+    }
+  }
+
+  /**
+   * Writes the last use of the records that were read since the last write. Call with lock after
+   * {@link #syncWithFile()}, as the records may have moved to a new generation.
+   */
+  private void writeUses() throws IOException {
+    final ByteBuffer time = ByteBuffer.allocate(LAST_USED_BYTES).order(ByteOrder.nativeOrder());
+    for (Object2LongMap.Entry<EmbeddingKey> use : unwrittenUses.object2LongEntrySet()) {
+      final int record = index.getInt(use.getKey());
+      if (record < 0 || use.getLongValue() <= lastUsedInFile(record)) {
+        continue;
+      }
+      lastUsed.set(record, use.getLongValue());
+      time.clear();
+      time.putLong(0, use.getLongValue());
+      writeFully(channel, time, recordOffset(record) + KEY_BYTES);
+    }
+    unwrittenUses.clear();
+  }
+
+  private long lastUsedInFile(int record) {
+    return mapped.get(ValueLayout.JAVA_LONG_UNALIGNED, recordOffset(record) + KEY_BYTES);
+  }
+
+  private void closeDataFile() throws IOException {
+    unmap();
+    if (channel != null) {
+      channel.close();
+    }
+    channel = null;
+  }
+
+  private void indexRecords(int first) {
+    for (int i = first; i < records; i++) {
+      final long offset = recordOffset(i);
+      final EmbeddingKey key = new EmbeddingKey(
+          mapped.get(ValueLayout.JAVA_LONG_UNALIGNED, offset),
+          mapped.get(ValueLayout.JAVA_LONG_UNALIGNED, offset + 8));
+      final long time = mapped.get(ValueLayout.JAVA_LONG_UNALIGNED, offset + KEY_BYTES);
+      index.put(key, i);
+      lastUsed.add(time);
+      clock = Math.max(clock, time);
+    }
+  }
+
+  @Nullable
+  private Header readMainHeader() throws IOException {
+    return readHeader(file);
+  }
+
+  /**
+   * @return the header or null if the file is missing, empty or not a valid cache file
+   */
+  @Nullable
+  private static Header readHeader(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_BYTES || channel.read(header, 0) != HEADER_BYTES) {
+        return null;
+      }
+    }
+    header.flip();
+    if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+      return null;
+    }
+    final int dimensions = header.getInt();
+    final int generation = header.getInt();
+    return dimensions < 0 ? null : new Header(dimensions, generation);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private void remap() throws IOException {
+    unmap();
+    arena = Arena.ofShared();
+    mapped = channel.map(MapMode.READ_ONLY, 0, recordOffset(records), arena);
+  }
+
+  private void unmap() {
+    if (arena != null) {
+      arena.close();
+    }
+    arena = null;
+    mapped = null;
+  }
+
+  /**
+   * Keeps the most recently used records that fit into half of the maximum size. Call with lock.
+   */
+  private void evict() throws IOException {
+    // map the records appended since the last mapping
+    remap();
+    final int keep = (int) Math.max(0, (maxBytes / 2 - HEADER_BYTES) / recordBytes());
+    final int[] order = new int[records];
+    for (int i = 0; i < records; i++) {
+      order[i] = i;
+      // other processes write the last use of the records they read
+      lastUsed.set(i, Math.max(lastUsed.getLong(i), lastUsedInFile(i)));
+    }
+    // most recent first
+    IntArrays.quickSort(order, (a, b) -> Long.compare(lastUsed.getLong(b), lastUsed.getLong(a)));
+    final int[] kept = Arrays.copyOf(order, Math.min(keep, records));
+    // keep the original order of the file
+    Arrays.sort(kept);
+
+    final int before = records;
+    rewrite(dimensions, kept);
+    evicted.addAndGet(before - kept.length);
+    logger.fine(this::toString);
+  }
+
+  /**
+   * Writes a data file of a new generation with the kept records and points the main file to it.
+   * Data files are never replaced or truncated as other processes may have mapped them. Call with
+   * lock.
+   *
+   * @param keptRecords sorted records to keep that are mapped, only if the dimensions do not
+   *                    change
+   */
+  private void rewrite(int newDimensions, int[] keptRecords) throws IOException {
+    final int newGeneration = ThreadLocalRandom.current().nextInt();
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+    header.putInt(MAGIC).putInt(VERSION).putInt(newDimensions).putInt(newGeneration);
+    final FileChannel out = FileChannel.open(dataFile(newGeneration), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      writeFully(out, header.flip(), 0);
+      long position = HEADER_BYTES;
+      final ByteBuffer data = ByteBuffer.allocate(recordBytes()).order(ByteOrder.nativeOrder());
+      for (int record : keptRecords) {
+        data.clear();
+        MemorySegment.ofBuffer(data).copyFrom(mapped.asSlice(recordOffset(record), recordBytes()));
+        // the last use may only be known in memory
+        data.putLong(KEY_BYTES, lastUsed.getLong(record));
+        writeFully(out, data, position);
+        position += recordBytes();
+      }
+      // the new generation is complete, point other processes to it
+      try (var main = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        writeFully(main, header.flip(), 0);
+      }
+    } catch (IOException e) {
+      out.close();
+      throw e;
+    }
+
+    final Path previous = channel == null ? null : dataFile(generation);
+    closeDataFile();
+    channel = out;
+    dimensions = newDimensions;
+    generation = newGeneration;
+    records = keptRecords.length;
+    index.clear();
+    lastUsed.clear();
+    remap();
+    indexRecords(0);
+    deleteOldGenerations(previous);
+  }
+
+  /**
+   * Deletes the data files of old generations. Files that are still mapped by other processes
+   * cannot be deleted on Windows and are retried with the next generation.
+   */
+  private void deleteOldGenerations(@Nullable Path previous) {
+    final String prefix = file.getFileName() + ".";
+    try (var files = Files.list(file.getParent())) {
+      files.filter(path -> {
+        final String name = path.getFileName().toString();
+        return name.startsWith(prefix) && name.endsWith(DATA_FILE_SUFFIX);
+      }).filter(path -> !path.equals(dataFile())).forEach(path -> {
+        try {
+          Files.deleteIfExists(path);
+        } catch (IOException e) {
+          if (path.equals(previous)) {
+            logger.fine(() -> "Cannot delete old embedding cache " + path + ", still in use.");
+          }
+        }
+      });
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Cannot list embedding cache files " + e.getMessage(), e);
+    }
+  }
+
+  private record Header(int dimensions, int generation) {
+
+  }
+
+  /**
+   * 128 bit hash of a spectrum
+   */
+  public record EmbeddingKey(long high, long low) {
+
+  }
+}
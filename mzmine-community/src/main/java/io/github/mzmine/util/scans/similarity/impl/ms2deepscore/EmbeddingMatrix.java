@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity.impl.ms2deepscore;
+
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Embeddings of spectra normalized to unit length in one contiguous row-major float array. The
+ * similarity of two rows is their dot product, same as the cosine similarity of
+ * {@link EmbeddingBasedSimilarity#dotProduct}. Pairs are compared in blocks of rows, so that
+ * neighbors are found without a full similarity matrix and memory scales with the number of
+ * spectra times the embedding size.
+ */
+public final class EmbeddingMatrix {
+
+  private static final int BLOCK = 64;
+
+  private final int size;
+  private final int dimensions;
+  private final float[] values;
+
+  public EmbeddingMatrix(int size, int dimensions) {
+    if ((long) size * dimensions > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException(
+          "Too many embeddings %d of size %d".formatted(size, dimensions));
+    }
+    this.size = size;
+    this.dimensions = dimensions;
+    this.values = new float[size * dimensions];
+  }
+
+  /**
+   * Copies and normalizes rows to unit length
+   *
+   * @param firstRow the index of the first row
+   * @param rows     row-major embeddings, length is a multiple of the dimensions
+   */
+  public void setRows(int firstRow, float[] rows) {
+    if (rows.length % dimensions != 0) {
+      throw new IllegalArgumentException(
+          "Embeddings need %d dimensions but got %d values".formatted(dimensions, rows.length));
+    }
+    final int n = rows.length / dimensions;
+    for (int r = 0; r < n; r++) {
+      final int from = r * dimensions;
+      double norm = 0;
+      for (int d = 0; d < dimensions; d++) {
+        norm += rows[from + d] * rows[from + d];
+      }
+      // zero vectors result in NaN similarity like in the matrix calculation
+      final float length = (float) Math.sqrt(norm);
+      final int to = (firstRow + r) * dimensions;
+      for (int d = 0; d < dimensions; d++) {
+        values[to + d] = rows[from + d] / length;
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int dimensions() {
+    return dimensions;
+  }
+
+  /**
+   * @return the cosine similarity of two embeddings
+   */
+  public float similarity(int a, int b) {
+    final int offsetA = a * dimensions;
+    final int offsetB = b * dimensions;
+    // independent sums so that the loop is not bound by the add latency
+    float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+    int d = 0;
+    for (; d + 3 < dimensions; d += 4) {
+      s0 += values[offsetA + d] * values[offsetB + d];
+      s1 += values[offsetA + d + 1] * values[offsetB + d + 1];
+      s2 += values[offsetA + d + 2] * values[offsetB + d + 2];
+      s3 += values[offsetA + d + 3] * values[offsetB + d + 3];
+    }
+    for (; d < dimensions; d++) {
+      s0 += values[offsetA + d] * values[offsetB + d];
+    }
+    return (s0 + s1) + (s2 + s3);
+  }
+
+  /**
+   * Calls the consumer for all pairs a < b with a similarity > minScore. Blocks of rows are
+   * processed in parallel so the consumer needs to be thread safe.
+   *
+   * @return false if canceled
+   */
+  public boolean forEachPairAbove(double minScore, BooleanSupplier isCanceled,
+      PairConsumer consumer) {
+    final int blocks = (size + BLOCK - 1) / BLOCK;
+    IntStream.range(0, blocks).parallel().forEach(block -> {
+      if (isCanceled.getAsBoolean()) {
+        return;
+      }
+      final int fromA = block * BLOCK;
+      final int toA = Math.min(fromA + BLOCK, size);
+      for (int fromB = fromA; fromB < size; fromB += BLOCK) {
+        final int toB = Math.min(fromB + BLOCK, size);
+        for (int a = fromA; a < toA; a++) {
+          for (int b = Math.max(fromB, a + 1); b < toB; b++) {
+            final float similarity = similarity(a, b);
+            if (similarity > minScore) {
+              consumer.accept(a, b, similarity);
+            }
+          }
+        }
+      }
+    });
+    return !isCanceled.getAsBoolean();
+  }
+
+  /**
+   * Calls the consumer for the k most similar other rows of each row and for all rows with a
+   * similarity > retainAbove, same as selected by the k nearest neighbor matrix. A pair may be
+   * reported by both rows. Blocks of rows are processed in parallel so the consumer needs to be
+   * thread safe.
+   *
+   * @return false if canceled
+   */
+  public boolean forEachNearestNeighbor(int k, double retainAbove, BooleanSupplier isCanceled,
+      PairConsumer consumer) {
+    final int neighbors = Math.max(0, Math.min(k, size - 1));
+    final int blocks = (size + BLOCK - 1) / BLOCK;
+    IntStream.range(0, blocks).parallel().forEach(block -> {
+      if (isCanceled.getAsBoolean()) {
+        return;
+      }
+      final int fromA = block * BLOCK;
+      final int toA = Math.min(fromA + BLOCK, size);
+      final TopNeighbors[] tops = new TopNeighbors[toA - fromA];
+      for (int a = fromA; a < toA; a++) {
+        tops[a - fromA] = new TopNeighbors(neighbors);
+      }
+
+      for (int fromB = 0; fromB < size; fromB += BLOCK) {
+        final int toB = Math.min(fromB + BLOCK, size);
+        for (int a = fromA; a < toA; a++) {
+          final TopNeighbors top = tops[a - fromA];
+          for (int b = fromB; b < toB; b++) {
+            if (a == b) {
+              continue;
+            }
+            final float similarity = similarity(a, b);
+            if (similarity > retainAbove) {
+              consumer.accept(a, b, similarity);
+            }
+            top.offer(b, similarity);
+          }
+        }
+      }
+
+      for (int a = fromA; a < toA; a++) {
+        final TopNeighbors top = tops[a - fromA];
+        for (int i = 0; i < top.size; i++) {
+          // others were already reported
+          if (!(top.scores[i] > retainAbove)) {
+            consumer.accept(a, top.rows[i], top.scores[i]);
+          }
+        }
+      }
+    });
+    return !isCanceled.getAsBoolean();
+  }
+
+  @FunctionalInterface
+  public interface PairConsumer {
+
+    void accept(int a, int b, float similarity);
+  }
+
+  /**
+   * Min heap of the k highest scores
+   */
+  private static final class TopNeighbors {
+
+    private final int[] rows;
+    private final float[] scores;
+    private int size;
+
+    private TopNeighbors(int k) {
+      rows = new int[k];
+      scores = new float[k];
+    }
+
+    private void offer(int row, float score) {
+      final int k = rows.length;
+      if (k == 0 || Float.isNaN(score)) {
+        return;
+      }
+      if (size < k) {
+        // sift up
+        int i = size++;
+        while (i > 0) {
+          final int parent = (i - 1) >>> 1;
+          if (scores[parent] <= score) {
+            break;
+          }
+          rows[i] = rows[parent];
+          scores[i] = scores[parent];
+          i = parent;
+        }
+        rows[i] = row;
+        scores[i] = score;
+      } else if (score > scores[0]) {
+        // replace min and sift down
+        int i = 0;
+        while (true) {
+          int child = 2 * i + 1;
+          if (child >= k) {
+            break;
+          }
+          if (child + 1 < k && scores[child + 1] < scores[child]) {
+            child++;
+          }
+          if (scores[child] >= score) {
+            break;
+          }
+          rows[i] = rows[child];
+          scores[i] = scores[child];
+          i = child;
+        }
+        rows[i] = row;
+        scores[i] = score;
+      }
+    }
+  }
+}
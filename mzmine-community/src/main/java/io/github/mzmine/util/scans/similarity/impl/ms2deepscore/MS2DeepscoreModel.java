@@ -87,9 +87,14 @@ public class MS2DeepscoreModel extends EmbeddingBasedSimilarity implements AutoC
    */
   public NDArray predictEmbeddingFromTensors(TensorizedSpectra tensorizedSpectra)
       throws TranslateException {
+    return predictEmbeddingFromTensors(tensorizedSpectra, ndManager);
+  }
+
+  private NDArray predictEmbeddingFromTensors(TensorizedSpectra tensorizedSpectra,
+      NDManager manager) throws TranslateException {
     NDList predictions = predictor.predict(
-        new NDList(ndManager.create(tensorizedSpectra.tensorizedFragments()),
-            ndManager.create(tensorizedSpectra.tensorizedMetadata())));
+        new NDList(manager.create(tensorizedSpectra.tensorizedFragments()),
+            manager.create(tensorizedSpectra.tensorizedMetadata())));
     return predictions.getFirst();
   }
 
@@ -102,6 +107,17 @@ public class MS2DeepscoreModel extends EmbeddingBasedSimilarity implements AutoC
     return predictEmbeddingFromTensors(tensorizedSepctra);
   }
 
+  @Override
+  protected NDArray predictEmbedding(List<? extends MassSpectrum> scans, NDManager manager)
+      throws TranslateException {
+    return predictEmbeddingFromTensors(spectrumTensorizer.tensorizeSpectra(scans), manager);
+  }
+
+  @Override
+  protected NDManager getManager() {
+    return ndManager;
+  }
+
   @Override
   public void close() {
     try {
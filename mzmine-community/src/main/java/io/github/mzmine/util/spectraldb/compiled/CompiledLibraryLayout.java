@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.compiled;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Section layout of a compiled spectral library file. All values are written in native byte
+ * order and every section starts 8 byte aligned so that double and long values can be read
+ * directly from the memory mapped file.
+ * <pre>
+ * header          fixed size, see offsets below
+ * field names     UTF-8 names of the {@link io.github.mzmine.util.spectraldb.entry.DBEntryField}
+ *                 columns, separated by new lines
+ * data offsets    long[numEntries + 1] start of each spectrum in the m/z and intensity blocks
+ * precursor m/z   double[numEntries], NaN if missing
+ * value offsets   long[numFields][numEntries + 1] start of each value in the value block
+ * m/z block       double[totalDataPoints]
+ * intensity block double[totalDataPoints]
+ * value block     typed values of all metadata columns, see {@link CompiledValueCodec}
+ * </pre>
+ *
+ * @param numEntries      number of spectra
+ * @param numFields       number of metadata columns
+ * @param totalDataPoints number of data points of all spectra
+ * @param fieldNameBytes  length of the field names section
+ * @param stringBytes     length of the value block
+ */
+record CompiledLibraryLayout(int numEntries, int numFields, long totalDataPoints,
+                             long fieldNameBytes, long stringBytes) {
+
+  static final long MAGIC = 0x4d5a4c4942433031L; // MZLIBC01
+  static final int VERSION = 2;
+  static final int BYTE_ORDER_LITTLE = 1;
+  static final int BYTE_ORDER_BIG = 2;
+
+  // header offsets
+  static final long MAGIC_OFFSET = 0;
+  static final long VERSION_OFFSET = 8;
+  static final long BYTE_ORDER_OFFSET = 12;
+  static final long SOURCE_SIZE_OFFSET = 16;
+  static final long SOURCE_LAST_MODIFIED_OFFSET = 24;
+  static final long NUM_ENTRIES_OFFSET = 32;
+  static final long NUM_FIELDS_OFFSET = 36;
+  static final long TOTAL_DATA_POINTS_OFFSET = 40;
+  static final long FIELD_NAME_BYTES_OFFSET = 48;
+  static final long STRING_BYTES_OFFSET = 56;
+  static final long HEADER_BYTES = 64;
+
+  static int nativeByteOrder() {
+    return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? BYTE_ORDER_LITTLE
+        : BYTE_ORDER_BIG;
+  }
+
+  /**
+   * Reads the layout from the header. Magic number, version and byte order need to be checked
+   * before.
+   */
+  static CompiledLibraryLayout readHeader(MemorySegment file) {
+    return new CompiledLibraryLayout(file.get(ValueLayout.JAVA_INT, NUM_ENTRIES_OFFSET),
+        file.get(ValueLayout.JAVA_INT, NUM_FIELDS_OFFSET),
+        file.get(ValueLayout.JAVA_LONG, TOTAL_DATA_POINTS_OFFSET),
+        file.get(ValueLayout.JAVA_LONG, FIELD_NAME_BYTES_OFFSET),
+        file.get(ValueLayout.JAVA_LONG, STRING_BYTES_OFFSET));
+  }
+
+  void writeHeader(MemorySegment file, long sourceSize, long sourceLastModified) {
+    file.set(ValueLayout.JAVA_LONG, MAGIC_OFFSET, MAGIC);
+    file.set(ValueLayout.JAVA_INT, VERSION_OFFSET, VERSION);
+    file.set(ValueLayout.JAVA_INT, BYTE_ORDER_OFFSET, nativeByteOrder());
+    file.set(ValueLayout.JAVA_LONG, SOURCE_SIZE_OFFSET, sourceSize);
+    file.set(ValueLayout.JAVA_LONG, SOURCE_LAST_MODIFIED_OFFSET, sourceLastModified);
+    file.set(ValueLayout.JAVA_INT, NUM_ENTRIES_OFFSET, numEntries);
+    file.set(ValueLayout.JAVA_INT, NUM_FIELDS_OFFSET, numFields);
+    file.set(ValueLayout.JAVA_LONG, TOTAL_DATA_POINTS_OFFSET, totalDataPoints);
+    file.set(ValueLayout.JAVA_LONG, FIELD_NAME_BYTES_OFFSET, fieldNameBytes);
+    file.set(ValueLayout.JAVA_LONG, STRING_BYTES_OFFSET, stringBytes);
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  long fieldNamesOffset() {
+    return HEADER_BYTES;
+  }
+
+  long dataOffsetsOffset() {
+    return fieldNamesOffset() + align(fieldNameBytes);
+  }
+
+  long precursorMzOffset() {
+    return dataOffsetsOffset() + (numEntries + 1L) * Long.BYTES;
+  }
+
+  long valueOffsetsOffset() {
+    return precursorMzOffset() + (long) numEntries * Double.BYTES;
+  }
+
+  long mzOffset() {
+    return valueOffsetsOffset() + (long) numFields * (numEntries + 1L) * Long.BYTES;
+  }
+
+  long intensityOffset() {
+    return mzOffset() + totalDataPoints * Double.BYTES;
+  }
+
+  long stringOffset() {
+    return intensityOffset() + totalDataPoints * Double.BYTES;
+  }
+
+  long fileBytes() {
+    return stringOffset() + stringBytes;
+  }
+
+  /**
+   * @return byte offset of the value offset of an entry in a metadata column
+   */
+  long valueOffsetIndex(int field, int entry) {
+    return valueOffsetsOffset() + ((long) field * (numEntries + 1L) + entry) * Long.BYTES;
+  }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.compiled;
+
+import io.github.mzmine.util.files.FileAndPathUtil;
+import io.github.mzmine.util.io.SemverVersionReader;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntryList;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A spectral library that was compiled into a binary file by
+ * {@link CompiledSpectralLibraryWriter}. The file is memory mapped and entries are only created
+ * when accessed. Their m/z and intensity values are slices of the mapped file, metadata is decoded
+ * from the typed value block. The entry list only keeps weak references to created entries, so an
+ * index returns the same entry as long as it is used elsewhere (e.g., by an annotation). The file
+ * is unmapped once the library and all created entries are garbage collected.
+ * <p>
+ * Compiled files are keyed by the source path and the mzmine version. The least recently used
+ * files are removed when the cache exceeds its maximum size.
+ */
+public final class CompiledSpectralLibrary {
+
+  public static final String CACHE_DIR = "library_cache";
+  public static final String FILE_SUFFIX = ".mzlib";
+  private static final Logger logger = Logger.getLogger(CompiledSpectralLibrary.class.getName());
+  // temporary files of crashed writes
+  private static final long STALE_TEMP_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private final @NotNull MemorySegment file;
+  private final @NotNull CompiledLibraryLayout layout;
+  private final @NotNull DBEntryField[] fields;
+
+  private CompiledSpectralLibrary(@NotNull MemorySegment file,
+      @NotNull CompiledLibraryLayout layout, @NotNull DBEntryField[] fields) {
+    this.file = file;
+    this.layout = layout;
+    this.fields = fields;
+  }
+
+  /**
+   * @param source the original library file
+   * @return the location of the compiled library in the mzmine user directory
+   */
+  @NotNull
+  public static File getCacheFile(@NotNull File source) {
+    // hash of the full path to differentiate libraries with the same file name
+    // and of the version as parsing may change between versions
+    final String hash = Integer.toHexString(
+        (source.getAbsolutePath() + "\n" + SemverVersionReader.getMZmineVersion()).hashCode());
+    final String name = FileAndPathUtil.eraseFormat(source.getName()) + "_" + hash + FILE_SUFFIX;
+    return new File(FileAndPathUtil.resolveInMzmineDir(CACHE_DIR), name);
+  }
+
+  /**
+   * Opens the compiled library from the cache directory
+   *
+   * @return a library backed by the compiled file or null if there is no valid compiled file for
+   * the current version of the source file
+   */
+  @Nullable
+  public static SpectralLibrary loadCached(@NotNull File source) {
+    final File cacheFile = getCacheFile(source);
+    final CompiledSpectralLibrary compiled = open(source, cacheFile);
+    if (compiled == null) {
+      return null;
+    }
+    // least recently used files are pruned first
+    cacheFile.setLastModified(System.currentTimeMillis());
+    return new SpectralLibrary(compiled, source);
+  }
+
+  /**
+   * Compiles the library into the cache directory and removes the least recently used compiled
+   * libraries above the maximum size
+   *
+   * @param maxCacheBytes maximum size of the cache directory
+   * @return true on success. Failures are logged as this is only an optimization
+   */
+  public static boolean writeCache(@NotNull SpectralLibrary library, @NotNull File source,
+      long maxCacheBytes) {
+    final File target = getCacheFile(source);
+    try {
+      CompiledSpectralLibraryWriter.write(library, source, target);
+      logger.fine(() -> "Compiled spectral library %s to %s".formatted(source, target));
+      prune(target.getParentFile(), target, maxCacheBytes);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING,
+          "Cannot write compiled spectral library %s. Will parse the library again next time. %s".formatted(
+              target, e.getMessage()), e);
+      return false;
+    }
+  }
+
+  /**
+   * @param source   the original library file
+   * @param compiled the compiled library file
+   * @return the compiled library or null if the file does not exist, is invalid or was compiled
+   * from a different version of the source file
+   */
+  @Nullable
+  public static CompiledSpectralLibrary open(@NotNull File source, @NotNull File compiled) {
+    if (!compiled.isFile() || !source.isFile()
+        || compiled.length() < CompiledLibraryLayout.HEADER_BYTES) {
+      return null;
+    }
+
+    try (var channel = FileChannel.open(compiled.toPath(), StandardOpenOption.READ)) {
+      // auto arena: the mapping is released after all slices (entries) were garbage collected
+      final MemorySegment file = channel.map(MapMode.READ_ONLY, 0, channel.size(),
+          Arena.ofAuto());
+      if (!isValidHeader(file, source)) {
+        return null;
+      }
+      final CompiledLibraryLayout layout = CompiledLibraryLayout.readHeader(file);
+      if (layout.fileBytes() != file.byteSize()) {
+        return null;
+      }
+      final DBEntryField[] fields = readFieldNames(file, layout);
+      if (fields == null) {
+        return null;
+      }
+      return new CompiledSpectralLibrary(file, layout, fields);
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING,
+          "Cannot open compiled spectral library %s. Will parse the original file. %s".formatted(
+              compiled, e.getMessage()), e);
+      return null;
+    }
+  }
+
+  /**
+   * Removes stale temporary files and the least recently used compiled libraries until the
+   * directory fits into the maximum size. Open libraries stay readable on systems that allow to
+   * delete mapped files, otherwise the deletion fails and is tried again next time.
+   *
+   * @param keep the file that was just written, is never removed
+   */
+  static void prune(@Nullable File cacheDir, @Nullable File keep, long maxBytes) {
+    final File[] files = cacheDir == null ? null : cacheDir.listFiles(File::isFile);
+    if (files == null) {
+      return;
+    }
+    final long now = System.currentTimeMillis();
+    // most recently used first
+    final List<File> sorted = Arrays.stream(files)
+        .sorted(Comparator.comparingLong(File::lastModified).reversed()).toList();
+    long bytes = 0;
+    for (File file : sorted) {
+      final boolean remove;
+      if (file.equals(keep)) {
+        remove = false;
+      } else if (file.getName().endsWith(".tmp")) {
+        remove = now - file.lastModified() > STALE_TEMP_MILLIS;
+      } else if (file.getName().endsWith(FILE_SUFFIX)) {
+        remove = bytes + file.length() > maxBytes;
+      } else {
+        continue;
+      }
+      if (remove) {
+        try {
+          Files.deleteIfExists(file.toPath());
+          logger.fine(() -> "Removed compiled spectral library " + file.getName());
+        } catch (IOException e) {
+          logger.log(Level.FINE, "Cannot delete compiled spectral library " + file, e);
+        }
+      } else if (file.getName().endsWith(FILE_SUFFIX)) {
+        bytes += file.length();
+      }
+    }
+  }
+
+  private static boolean isValidHeader(MemorySegment file, File source) {
+    return file.get(ValueLayout.JAVA_LONG, CompiledLibraryLayout.MAGIC_OFFSET)
+           == CompiledLibraryLayout.MAGIC
+           && file.get(ValueLayout.JAVA_INT, CompiledLibraryLayout.VERSION_OFFSET)
+              == CompiledLibraryLayout.VERSION
+           && file.get(ValueLayout.JAVA_INT, CompiledLibraryLayout.BYTE_ORDER_OFFSET)
+              == CompiledLibraryLayout.nativeByteOrder()
+           && file.get(ValueLayout.JAVA_LONG, CompiledLibraryLayout.SOURCE_SIZE_OFFSET)
+              == source.length()
+           && file.get(ValueLayout.JAVA_LONG, CompiledLibraryLayout.SOURCE_LAST_MODIFIED_OFFSET)
+              == source.lastModified();
+  }
+
+  /**
+   * @return the fields or null if a field is unknown to this version
+   */
+  @Nullable
+  private static DBEntryField[] readFieldNames(MemorySegment file,
+      CompiledLibraryLayout layout) {
+    final DBEntryField[] fields = new DBEntryField[layout.numFields()];
+    if (fields.length == 0) {
+      return fields;
+    }
+    final String names = readString(file, layout.fieldNamesOffset(), layout.fieldNameBytes());
+    final String[] split = names.split("\n");
+    if (split.length != fields.length) {
+      return null;
+    }
+    for (int i = 0; i < split.length; i++) {
+      try {
+        fields[i] = DBEntryField.valueOf(split[i]);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+    return fields;
+  }
+
+  private static String readString(MemorySegment file, long offset, long length) {
+    return new String(file.asSlice(offset, length).toArray(ValueLayout.JAVA_BYTE),
+        StandardCharsets.UTF_8);
+  }
+
+  public int size() {
+    return layout.numEntries();
+  }
+
+  public long getTotalDataPoints() {
+    return layout.totalDataPoints();
+  }
+
+  /**
+   * Fast access without creating the entry
+   *
+   * @return the precursor m/z or NaN if not available
+   */
+  public double getPrecursorMz(int index) {
+    return file.get(ValueLayout.JAVA_DOUBLE,
+        layout.precursorMzOffset() + (long) index * Double.BYTES);
+  }
+
+  /**
+   * Fast access without creating the entry
+   */
+  public int getNumberOfDataPoints(int index) {
+    return (int) (dataOffset(index + 1) - dataOffset(index));
+  }
+
+  private long dataOffset(int index) {
+    return file.get(ValueLayout.JAVA_LONG,
+        layout.dataOffsetsOffset() + (long) index * Long.BYTES);
+  }
+
+  /**
+   * @return a new entry with data points backed by the mapped file
+   */
+  @NotNull
+  public SpectralDBEntry createEntry(int index, @Nullable SpectralLibrary library) {
+    final long start = dataOffset(index);
+    final long bytes = (dataOffset(index + 1) - start) * Double.BYTES;
+    final MemorySegment mzs = file.asSlice(layout.mzOffset() + start * Double.BYTES, bytes);
+    final MemorySegment intensities = file.asSlice(
+        layout.intensityOffset() + start * Double.BYTES, bytes);
+    return new SpectralDBEntry(mzs, intensities, readFields(index), library);
+  }
+
+  private Map<DBEntryField, Object> readFields(int index) {
+    final Map<DBEntryField, Object> values = new EnumMap<>(DBEntryField.class);
+    final long stringOffset = layout.stringOffset();
+    for (int f = 0; f < fields.length; f++) {
+      final long start = file.get(ValueLayout.JAVA_LONG, layout.valueOffsetIndex(f, index));
+      final long end = file.get(ValueLayout.JAVA_LONG, layout.valueOffsetIndex(f, index + 1));
+      if (end <= start) {
+        continue;
+      }
+      final Object value = CompiledValueCodec.decode(fields[f],
+          file.asSlice(stringOffset + start, end - start));
+      if (value != null) {
+        values.put(fields[f], value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @param library the library that is set to all entries
+   * @return an unmodifiable list that creates entries on access
+   */
+  @NotNull
+  public SpectralLibraryEntryList createEntryList(@NotNull SpectralLibrary library) {
+    return new EntryList(library);
+  }
+
+  private final class EntryList extends AbstractList<SpectralLibraryEntry> implements
+      SpectralLibraryEntryList, RandomAccess {
+
+    private final SpectralLibrary library;
+    // data points stay in the mapped file, entries that are no longer used are garbage collected
+    private final AtomicReferenceArray<WeakReference<SpectralDBEntry>> created;
+
+    private EntryList(SpectralLibrary library) {
+      this.library = library;
+      created = new AtomicReferenceArray<>(layout.numEntries());
+    }
+
+    @Override
+    public SpectralLibraryEntry get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      while (true) {
+        final WeakReference<SpectralDBEntry> ref = created.get(index);
+        final SpectralDBEntry entry = ref == null ? null : ref.get();
+        if (entry != null) {
+          return entry;
+        }
+        // concurrent readers keep the first entry
+        final SpectralDBEntry newEntry = createEntry(index, library);
+        if (created.compareAndSet(index, ref, new WeakReference<>(newEntry))) {
+          return newEntry;
+        }
+      }
+    }
+
+    @Override
+    public int size() {
+      return layout.numEntries();
+    }
+
+    @Override
+    public double getPrecursorMz(int index) {
+      return CompiledSpectralLibrary.this.getPrecursorMz(index);
+    }
+
+    @Override
+    public int getNumberOfDataPoints(int index) {
+      return CompiledSpectralLibrary.this.getNumberOfDataPoints(index);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.compiled;
+
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntry;
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes a {@link SpectralLibrary} into the compiled binary format that is opened by
+ * {@link CompiledSpectralLibrary}. The file is first written to a temporary file next to the
+ * target and then moved so that concurrent readers never see a partially written library.
+ */
+public class CompiledSpectralLibraryWriter {
+
+  private CompiledSpectralLibraryWriter() {
+  }
+
+  /**
+   * @param library the parsed library
+   * @param source  the original library file, size and last modified are used for validation
+   * @param target  the compiled library file
+   */
+  public static void write(@NotNull SpectralLibrary library, @NotNull File source,
+      @NotNull File target) throws IOException {
+    final List<SpectralLibraryEntry> entries = library.getEntries();
+    final int numEntries = entries.size();
+
+    // first pass: columns and sizes
+    final EnumSet<DBEntryField> usedFields = EnumSet.noneOf(DBEntryField.class);
+    long totalDataPoints = 0;
+    long stringBytes = 0;
+    for (SpectralLibraryEntry entry : entries) {
+      totalDataPoints += entry.getNumberOfDataPoints();
+      for (Map.Entry<DBEntryField, Object> field : entry.getFields().entrySet()) {
+        final byte[] bytes = CompiledValueCodec.encode(field.getValue());
+        if (bytes != null) {
+          usedFields.add(field.getKey());
+          stringBytes += bytes.length;
+        }
+      }
+    }
+    final DBEntryField[] fields = usedFields.toArray(DBEntryField[]::new);
+    final byte[] fieldNames = usedFields.stream().map(DBEntryField::name)
+        .collect(Collectors.joining("\n")).getBytes(StandardCharsets.UTF_8);
+
+    final CompiledLibraryLayout layout = new CompiledLibraryLayout(numEntries, fields.length,
+        totalDataPoints, fieldNames.length, stringBytes);
+
+    final Path targetPath = target.toPath();
+    Files.createDirectories(targetPath.getParent());
+    final Path tmp = Files.createTempFile(targetPath.getParent(), target.getName(), ".tmp");
+    try {
+      try (var channel = FileChannel.open(tmp, StandardOpenOption.READ,
+          StandardOpenOption.WRITE); var arena = Arena.ofConfined()) {
+        final MemorySegment file = channel.map(MapMode.READ_WRITE, 0, layout.fileBytes(), arena);
+        writeContent(file, layout, entries, fields, fieldNames);
+        // header last, an interrupted write never results in a valid file
+        layout.writeHeader(file, source.length(), source.lastModified());
+        file.force();
+      }
+      Files.move(tmp, targetPath, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static void writeContent(MemorySegment file, CompiledLibraryLayout layout,
+      List<SpectralLibraryEntry> entries, DBEntryField[] fields, byte[] fieldNames) {
+    MemorySegment.copy(fieldNames, 0, file, ValueLayout.JAVA_BYTE, layout.fieldNamesOffset(),
+        fieldNames.length);
+
+    final long dataOffsets = layout.dataOffsetsOffset();
+    final long precursorOffsets = layout.precursorMzOffset();
+    final long mzOffset = layout.mzOffset();
+    final long intensityOffset = layout.intensityOffset();
+    final long stringOffset = layout.stringOffset();
+
+    double[] buffer = new double[1024];
+    long dp = 0;
+    long stringPos = 0;
+    for (int i = 0; i < entries.size(); i++) {
+      final SpectralLibraryEntry entry = entries.get(i);
+      file.setAtIndex(ValueLayout.JAVA_LONG, dataOffsets / Long.BYTES + i, dp);
+
+      final Double precursorMz = entry.getPrecursorMz();
+      file.set(ValueLayout.JAVA_DOUBLE, precursorOffsets + (long) i * Double.BYTES,
+          precursorMz == null ? Double.NaN : precursorMz);
+
+      final int n = entry.getNumberOfDataPoints();
+      if (buffer.length < n) {
+        buffer = new double[n];
+      }
+      entry.getMzValues(buffer);
+      MemorySegment.copy(buffer, 0, file, ValueLayout.JAVA_DOUBLE, mzOffset + dp * Double.BYTES,
+          n);
+      entry.getIntensityValues(buffer);
+      MemorySegment.copy(buffer, 0, file, ValueLayout.JAVA_DOUBLE,
+          intensityOffset + dp * Double.BYTES, n);
+      dp += n;
+
+      final Map<DBEntryField, Object> values = entry.getFields();
+      for (int f = 0; f < fields.length; f++) {
+        file.set(ValueLayout.JAVA_LONG, layout.valueOffsetIndex(f, i), stringPos);
+        final byte[] bytes = CompiledValueCodec.encode(values.get(fields[f]));
+        if (bytes != null) {
+          MemorySegment.copy(bytes, 0, file, ValueLayout.JAVA_BYTE, stringOffset + stringPos,
+              bytes.length);
+          stringPos += bytes.length;
+        }
+      }
+    }
+
+    // closing offsets
+    final int numEntries = entries.size();
+    file.setAtIndex(ValueLayout.JAVA_LONG, dataOffsets / Long.BYTES + numEntries, dp);
+    for (int f = 0; f < fields.length; f++) {
+      file.set(ValueLayout.JAVA_LONG, layout.valueOffsetIndex(f, numEntries), stringPos);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.compiled;
+
+import io.github.mzmine.util.io.JsonUtils;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Typed encoding of the metadata values of a compiled spectral library. Each value starts with a
+ * type byte followed by the value in native byte order, so that numbers, number lists and string
+ * lists are restored with their original type. Other types are stored as string and converted by
+ * {@link DBEntryField#tryConvertValue(String)}.
+ */
+final class CompiledValueCodec {
+
+  static final byte STRING = 0;
+  static final byte DOUBLE = 1;
+  static final byte FLOAT = 2;
+  static final byte INTEGER = 3;
+  static final byte LONG = 4;
+  static final byte FLOAT_LIST = 5;
+  static final byte INTEGER_LIST = 6;
+  static final byte STRING_LIST = 7;
+  static final byte CONVERTED_STRING = 8;
+
+  private CompiledValueCodec() {
+  }
+
+  /**
+   * @return the type byte and value or null if the value is null or empty
+   */
+  static byte @Nullable [] encode(@Nullable Object value) {
+    return switch (value) {
+      case null -> null;
+      case String str -> str.isEmpty() ? null : withType(STRING, utf8(str));
+      case Double d -> allocate(DOUBLE, Double.BYTES).putDouble(d).array();
+      case Float f -> allocate(FLOAT, Float.BYTES).putFloat(f).array();
+      case Integer i -> allocate(INTEGER, Integer.BYTES).putInt(i).array();
+      case Long l -> allocate(LONG, Long.BYTES).putLong(l).array();
+      case FloatArrayList floats -> {
+        final ByteBuffer buffer = allocate(FLOAT_LIST, floats.size() * Float.BYTES);
+        for (int i = 0; i < floats.size(); i++) {
+          buffer.putFloat(floats.getFloat(i));
+        }
+        yield buffer.array();
+      }
+      case List<?> list when !list.isEmpty() && list.stream()
+          .allMatch(Integer.class::isInstance) -> {
+        final ByteBuffer buffer = allocate(INTEGER_LIST, list.size() * Integer.BYTES);
+        for (Object i : list) {
+          buffer.putInt((Integer) i);
+        }
+        yield buffer.array();
+      }
+      case List<?> list when list.stream().allMatch(String.class::isInstance) ->
+          list.isEmpty() ? null : withType(STRING_LIST, utf8(JsonUtils.writeStringOrEmpty(list)));
+      default -> {
+        final String str = String.valueOf(value);
+        yield str.isEmpty() ? null : withType(CONVERTED_STRING, utf8(str));
+      }
+    };
+  }
+
+  /**
+   * @param value the type byte and value
+   * @return the value or null if it cannot be converted
+   */
+  @Nullable
+  static Object decode(@NotNull DBEntryField field, @NotNull MemorySegment value) {
+    final byte type = value.get(ValueLayout.JAVA_BYTE, 0);
+    final MemorySegment content = value.asSlice(1);
+    return switch (type) {
+      case STRING -> string(content);
+      case DOUBLE -> content.get(ValueLayout.JAVA_DOUBLE_UNALIGNED, 0);
+      case FLOAT -> content.get(ValueLayout.JAVA_FLOAT_UNALIGNED, 0);
+      case INTEGER -> content.get(ValueLayout.JAVA_INT_UNALIGNED, 0);
+      case LONG -> content.get(ValueLayout.JAVA_LONG_UNALIGNED, 0);
+      case FLOAT_LIST -> new FloatArrayList(content.toArray(ValueLayout.JAVA_FLOAT_UNALIGNED));
+      case INTEGER_LIST -> new IntArrayList(content.toArray(ValueLayout.JAVA_INT_UNALIGNED));
+      case STRING_LIST -> JsonUtils.readValueOrThrow(string(content));
+      default -> field.tryConvertValue(string(content));
+    };
+  }
+
+  private static String string(MemorySegment content) {
+    return new String(content.toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+  }
+
+  private static byte[] utf8(String str) {
+    return str.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] withType(byte type, byte[] content) {
+    final byte[] bytes = new byte[content.length + 1];
+    bytes[0] = type;
+    System.arraycopy(content, 0, bytes, 1, content.length);
+    return bytes;
+  }
+
+  private static ByteBuffer allocate(byte type, int bytes) {
+    return ByteBuffer.allocate(bytes + 1).order(ByteOrder.nativeOrder()).put(type);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.entry;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Unmodifiable view on selected entries of a list. Filtering and sorting only use the indices, so
+ * entries of compiled libraries are only created when accessed.
+ */
+public final class FilteredLibraryEntries extends AbstractList<SpectralLibraryEntry> implements
+    SpectralLibraryEntryList, RandomAccess {
+
+  private final @NotNull List<SpectralLibraryEntry> entries;
+  private final int[] indices;
+  // precursor m/z of the selected entries, NaN if missing
+  private final double[] precursorMzs;
+
+  private FilteredLibraryEntries(@NotNull List<SpectralLibraryEntry> entries, int[] indices,
+      double[] precursorMzs) {
+    this.entries = entries;
+    this.indices = indices;
+    this.precursorMzs = precursorMzs;
+  }
+
+  /**
+   * @param entries           the original entries, will not be changed
+   * @param minDataPoints     minimum number of data points of an entry
+   * @param sortByPrecursorMz only keep entries with a precursor m/z and sort them by it
+   * @return a view on the selected entries
+   */
+  @NotNull
+  public static FilteredLibraryEntries filter(@NotNull List<SpectralLibraryEntry> entries,
+      int minDataPoints, boolean sortByPrecursorMz) {
+    final double[] allMzs = IntStream.range(0, entries.size())
+        .mapToDouble(i -> SpectralLibraryEntryList.getPrecursorMz(entries, i)).toArray();
+    final int[] indices = IntStream.range(0, entries.size()).filter(
+        i -> SpectralLibraryEntryList.getNumberOfDataPoints(entries, i) >= minDataPoints && (
+            !sortByPrecursorMz || !Double.isNaN(allMzs[i]))).toArray();
+    if (sortByPrecursorMz) {
+      // stable sort keeps the library order for equal m/z
+      IntArrays.mergeSort(indices, (a, b) -> Double.compare(allMzs[a], allMzs[b]));
+    }
+    final double[] precursorMzs = new double[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      precursorMzs[i] = allMzs[indices[i]];
+    }
+    return new FilteredLibraryEntries(entries, indices, precursorMzs);
+  }
+
+  @Override
+  public SpectralLibraryEntry get(int index) {
+    return entries.get(indices[index]);
+  }
+
+  @Override
+  public int size() {
+    return indices.length;
+  }
+
+  @Override
+  public double getPrecursorMz(int index) {
+    return precursorMzs[index];
+  }
+
+  @Override
+  public int getNumberOfDataPoints(int index) {
+    return SpectralLibraryEntryList.getNumberOfDataPoints(entries, indices[index]);
+  }
+}
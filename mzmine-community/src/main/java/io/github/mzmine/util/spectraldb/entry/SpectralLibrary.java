@@ -27,6 +27,7 @@ package io.github.mzmine.util.spectraldb.entry;
 
 import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.spectraldb.compiled.CompiledSpectralLibrary;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -48,8 +49,8 @@ public class SpectralLibrary {
 
   private final @NotNull String name;
   private final @NotNull File path;
-  // spectra
-  private final @NotNull ArrayList<SpectralLibraryEntry> entries = new ArrayList<>(1024);
+  // spectra, either parsed or created on demand from a compiled library
+  private @NotNull List<SpectralLibraryEntry> entries = new ArrayList<>(1024);
 
   // internals
   @Nullable
@@ -67,14 +68,31 @@ public class SpectralLibrary {
     this.name = name;
   }
 
+  /**
+   * Library with entries that are created on demand from the memory mapped compiled library. Any
+   * modification will load all entries into memory.
+   *
+   * @param path the original library file
+   */
+  public SpectralLibrary(@NotNull CompiledSpectralLibrary compiled, @NotNull File path) {
+    this(null, path.getName(), path);
+    entries = compiled.createEntryList(this);
+  }
+
+  /**
+   * @return unmodifiable entries. Entries of a compiled library are a
+   * {@link SpectralLibraryEntryList} that creates entries on access
+   */
   @NotNull
   public List<SpectralLibraryEntry> getEntries() {
-    return Collections.unmodifiableList(entries);
+    // compiled entries are already unmodifiable
+    return entries instanceof SpectralLibraryEntryList compiled ? compiled
+        : Collections.unmodifiableList(entries);
   }
 
   public void addEntry(SpectralLibraryEntry entry) {
     entry.setLibrary(this);
-    entries.add(entry);
+    modifiableEntries().add(entry);
   }
 
   public void addEntries(Collection<SpectralLibraryEntry> entries) {
@@ -82,11 +100,23 @@ public class SpectralLibrary {
   }
 
   public void trim() {
-    entries.trimToSize();
+    if (entries instanceof ArrayList<SpectralLibraryEntry> list) {
+      list.trimToSize();
+    }
   }
 
   public void removeif(Predicate<SpectralLibraryEntry> filter) {
-    entries.removeIf(filter);
+    modifiableEntries().removeIf(filter);
+  }
+
+  /**
+   * @return the entries as a modifiable list. Entries of a compiled library are copied into memory
+   */
+  private List<SpectralLibraryEntry> modifiableEntries() {
+    if (!(entries instanceof ArrayList<SpectralLibraryEntry>)) {
+      entries = new ArrayList<>(entries);
+    }
+    return entries;
   }
 
   @NotNull
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.entry;
+
+import java.util.List;
+
+/**
+ * Entries of spectral libraries that provide the precursor m/z and number of data points by
+ * index. Compiled libraries create their entries on access, these methods read the values without
+ * creating the entry.
+ */
+public interface SpectralLibraryEntryList extends List<SpectralLibraryEntry> {
+
+  /**
+   * @return the precursor m/z or NaN if not available
+   */
+  double getPrecursorMz(int index);
+
+  int getNumberOfDataPoints(int index);
+
+  /**
+   * @return the precursor m/z or NaN if not available. Only creates the entry if the list is no
+   * {@link SpectralLibraryEntryList}
+   */
+  static double getPrecursorMz(List<SpectralLibraryEntry> entries, int index) {
+    if (entries instanceof SpectralLibraryEntryList list) {
+      return list.getPrecursorMz(index);
+    }
+    final Double mz = entries.get(index).getPrecursorMZ();
+    return mz == null ? Double.NaN : mz;
+  }
+
+  /**
+   * Only creates the entry if the list is no {@link SpectralLibraryEntryList}
+   */
+  static int getNumberOfDataPoints(List<SpectralLibraryEntry> entries, int index) {
+    if (entries instanceof SpectralLibraryEntryList list) {
+      return list.getNumberOfDataPoints(index);
+    }
+    return entries.get(index).getNumberOfDataPoints();
+  }
+}
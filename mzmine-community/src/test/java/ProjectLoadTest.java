@@ -24,17 +24,63 @@
  */
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
 import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.DataTypes;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
+import io.github.mzmine.datamodel.features.types.FeaturesType;
+import io.github.mzmine.datamodel.features.types.annotations.CommentType;
+import io.github.mzmine.datamodel.features.types.annotations.SpectralLibraryMatchesType;
+import io.github.mzmine.datamodel.features.types.numbers.ChargeType;
+import io.github.mzmine.datamodel.features.types.numbers.HeightType;
+import io.github.mzmine.datamodel.features.types.numbers.LongTestType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.ConfigService;
 import io.github.mzmine.modules.io.projectload.ProjectLoaderParameters;
 import io.github.mzmine.modules.io.projectload.ProjectOpeningTask;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListBinaryFormat.Codec;
+import io.github.mzmine.modules.io.projectsave.FeatureListSaveTask;
+import io.github.mzmine.modules.io.projectsave.ProjectSaveAsParameters;
+import io.github.mzmine.modules.io.projectsave.ProjectSaveOption;
+import io.github.mzmine.modules.io.projectsave.ProjectSavingTask;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.ProjectService;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
 import java.io.File;
+import java.io.StringWriter;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.TreeMap;
+import javafx.scene.paint.Color;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
@@ -46,6 +92,7 @@ import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.junit.jupiter.api.TestMethodOrder;
 import org.junit.jupiter.api.condition.DisabledOnOs;
 import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
 import testutils.MZmineTestUtil;
 
 @DisplayName("Test Project Load Finding")
@@ -54,6 +101,10 @@ import testutils.MZmineTestUtil;
 @DisabledOnOs(OS.MAC)
 public class ProjectLoadTest {
 
+  private static final String ALIGNED_FLIST =
+      "Aligned feature list corr PEARSON r greq 0.85 dp greq 5";
+  private static final String MISSING_FILE = "missing.mzML";
+
   private MZmineProject currentProject;
 
   @BeforeAll
@@ -101,4 +152,172 @@ public class ProjectLoadTest {
     ProjectService.getProjectManager().clearProject();
     ProjectService.getProject().clearSpectralLibrary();
   }
+
+  /**
+   * Saves the same project once with xml and once with binary feature lists. Both projects have to
+   * load the same rows, features and values.
+   */
+  @Test
+  @Order(2)
+  void testBinaryFeatureListRoundTrip(@TempDir File tempDir) throws XMLStreamException {
+    openProject(new File(
+        ProjectLoaderParameters.class.getClassLoader().getResource("rawdatafiles/dom_test.mzmine")
+            .getFile()));
+    final MZmineProject project = ProjectService.getProject();
+    final var flist = (ModularFeatureList) project.getFeatureList(ALIGNED_FLIST);
+    assertNotNull(flist);
+
+    // one column for each codec
+    final LongTestType longType = DataTypes.get(LongTestType.class);
+    for (FeatureListRow row : flist.getRows()) {
+      row.set(ChargeType.class, row.getID() % 3 + 1);
+      row.set(longType, row.getID() * 10_000_000_000L);
+      if (row.getID() % 2 == 0) {
+        row.set(CommentType.class, "comment " + row.getID());
+      }
+    }
+    assertEquals(Codec.INT, codecOf(flist, DataTypes.get(ChargeType.class), false));
+    assertEquals(Codec.LONG, codecOf(flist, longType, false));
+    assertEquals(Codec.FLOAT, codecOf(flist, DataTypes.get(HeightType.class), false));
+    assertEquals(Codec.DOUBLE, codecOf(flist, DataTypes.get(MZType.class), false));
+    assertEquals(Codec.STRING, codecOf(flist, DataTypes.get(CommentType.class), false));
+    assertEquals(Codec.XML, codecOf(flist, DataTypes.get(SpectralLibraryMatchesType.class), false));
+
+    final int missingRowId = addFeatureOfMissingFile(flist);
+    assertEquals(Codec.ION_TIME_SERIES,
+        codecOf(flist, DataTypes.get(FeatureDataType.class), true));
+
+    final File xmlProject = saveProject(project, new File(tempDir, "xml.mzmine"), false);
+    final File binaryProject = saveProject(project, new File(tempDir, "binary.mzmine"), true);
+
+    openProject(xmlProject);
+    final var xmlFlist = (ModularFeatureList) ProjectService.getProject()
+        .getFeatureList(ALIGNED_FLIST);
+    assertNotNull(xmlFlist);
+    // values are compared as xml, the data of the first project is released when opening the next
+    final Map<String, String> xmlValues = describe(xmlFlist);
+
+    openProject(binaryProject);
+    final var binaryFlist = (ModularFeatureList) ProjectService.getProject()
+        .getFeatureList(ALIGNED_FLIST);
+    assertNotNull(binaryFlist);
+    final Map<String, String> binaryValues = describe(binaryFlist);
+
+    assertEquals(flist.getNumberOfRows(), binaryFlist.getNumberOfRows());
+    assertEquals(xmlValues.keySet(), binaryValues.keySet());
+    for (Entry<String, String> entry : xmlValues.entrySet()) {
+      assertEquals(entry.getValue(), binaryValues.get(entry.getKey()), entry.getKey());
+    }
+
+    for (FeatureListRow row : binaryFlist.getRows()) {
+      assertEquals(row.getID() * 10_000_000_000L, row.get(longType));
+    }
+    // the feature of the missing file is skipped, but the row is kept
+    assertTrue(binaryFlist.findRowByID(missingRowId).getFeatures().isEmpty());
+    assertFalse(binaryValues.keySet().stream().anyMatch(key -> key.contains(MISSING_FILE)));
+
+    ProjectService.getProjectManager().clearProject();
+    ProjectService.getProject().clearSpectralLibrary();
+  }
+
+  private static void openProject(File file) {
+    final ProjectOpeningTask task = new ProjectOpeningTask(file, Instant.now());
+    task.run();
+    assertEquals(TaskStatus.FINISHED, task.getStatus());
+  }
+
+  private static File saveProject(MZmineProject project, File file, boolean binary) {
+    final MZminePreferences preferences = ConfigService.getPreferences();
+    final Boolean previous = preferences.getValue(MZminePreferences.binaryFeatureListProjectFormat);
+    preferences.setParameter(MZminePreferences.binaryFeatureListProjectFormat, binary);
+    try {
+      final ParameterSet param = new ProjectSaveAsParameters().cloneParameterSet();
+      param.setParameter(ProjectSaveAsParameters.projectFile, file);
+      param.setParameter(ProjectSaveAsParameters.option, ProjectSaveOption.STANDALONE);
+      final ProjectSavingTask task = new ProjectSavingTask(project, param, Instant.now());
+      task.run();
+      assertEquals(TaskStatus.FINISHED, task.getStatus());
+      return file;
+    } finally {
+      preferences.setParameter(MZminePreferences.binaryFeatureListProjectFormat, previous);
+    }
+  }
+
+  /**
+   * Adds a row with a feature of a raw data file that is neither part of the feature list nor the
+   * project
+   *
+   * @return the id of the new row
+   */
+  private static int addFeatureOfMissingFile(ModularFeatureList flist) {
+    final RawDataFile missing = new RawDataFileImpl(MISSING_FILE, null, null, Color.BLACK);
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      final Scan scan = new SimpleScan(missing, i, 1, i + 1f, null, new double[]{200d},
+          new double[]{1E4}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.singleton(200d));
+      missing.addScan(scan);
+      scans.add(scan);
+    }
+    final SimpleIonTimeSeries series = new SimpleIonTimeSeries(null, new double[]{200d, 200d},
+        new double[]{1E4, 2E4}, scans);
+
+    final int id = flist.stream().mapToInt(FeatureListRow::getID).max().orElse(0) + 1;
+    final ModularFeatureListRow row = new ModularFeatureListRow(flist, id);
+    flist.addRow(row);
+    row.addFeature(missing, new ModularFeature(flist, missing, series, FeatureStatus.DETECTED));
+    return id;
+  }
+
+  private static Codec codecOf(ModularFeatureList flist, DataType<?> type, boolean featureType) {
+    final List<Object> values = new ArrayList<>();
+    for (FeatureListRow row : flist.getRows()) {
+      if (!featureType) {
+        values.add(row.get(type));
+        continue;
+      }
+      for (ModularFeature feature : row.getFeatures()) {
+        values.add(feature.get(type));
+      }
+    }
+    values.removeIf(Objects::isNull);
+    assertFalse(values.isEmpty(), () -> "No values for " + type.getUniqueID());
+    return FeatureListBinaryFormat.codecOf(type, values);
+  }
+
+  /**
+   * @return the xml of all row and feature values mapped to row id, file and type id
+   */
+  private static Map<String, String> describe(ModularFeatureList flist)
+      throws XMLStreamException {
+    final Map<String, String> values = new TreeMap<>();
+    for (FeatureListRow r : flist.getRows()) {
+      final ModularFeatureListRow row = (ModularFeatureListRow) r;
+      for (Entry<DataType, Object> entry : row.getMap().entrySet()) {
+        if (entry.getKey() instanceof FeaturesType) {
+          continue;
+        }
+        values.put("row " + row.getID() + " " + entry.getKey().getUniqueID(),
+            toXml(entry.getKey(), entry.getValue(), flist, row, null, null));
+      }
+      for (ModularFeature feature : row.getFeatures()) {
+        final RawDataFile file = feature.getRawDataFile();
+        for (Entry<DataType, Object> entry : feature.getMap().entrySet()) {
+          values.put("row " + row.getID() + " " + file.getName() + " " + entry.getKey()
+              .getUniqueID(), toXml(entry.getKey(), entry.getValue(), flist, row, feature, file));
+        }
+      }
+    }
+    return values;
+  }
+
+  private static String toXml(DataType<?> type, Object value, @NotNull ModularFeatureList flist,
+      @NotNull ModularFeatureListRow row, @Nullable ModularFeature feature,
+      @Nullable RawDataFile file) throws XMLStreamException {
+    final StringWriter out = new StringWriter();
+    final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+    FeatureListSaveTask.writeDataType(writer, type, value, flist, row, feature, file);
+    writer.flush();
+    return out.toString();
+  }
 }
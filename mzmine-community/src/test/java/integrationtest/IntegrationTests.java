@@ -24,7 +24,18 @@
 
 package integrationtest;
 
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.ConfigService;
+import io.github.mzmine.modules.batchmode.BatchModeModule;
+import io.github.mzmine.modules.batchmode.BatchQueue;
+import io.github.mzmine.modules.batchmode.BatchTask;
+import io.github.mzmine.project.ProjectService;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
 import java.io.File;
+import java.time.Instant;
+import java.util.List;
 import java.util.logging.Logger;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -75,6 +86,59 @@ public class IntegrationTests {
         "workshop_dataset_integration_test").size());
   }
 
+  /**
+   * Pipelining the samples needs to produce the same results as running the steps one after
+   * another
+   */
+  @Test
+  void testSmallLcMsBatchPipelinedSamples(@TempDir File tempDir) {
+    final File sequential = runSmallLcMsBatch(tempDir, false);
+    MZmineTestUtil.clearProjectAndLibraries();
+    final File pipelined = runSmallLcMsBatch(tempDir, true);
+
+    Assertions.assertEquals(List.of(),
+        IntegrationTestUtils.getCsvComparisonResults(sequential, pipelined,
+            "workshop_dataset_integration_test"));
+    Assertions.assertTrue(IntegrationTestUtils.getCsvComparisonResults(
+        "rawdatafiles/integration_tests/workshop_dataset/expected_results.csv", pipelined,
+        "workshop_dataset_integration_test").isEmpty());
+  }
+
+  /**
+   * @return the exported csv file
+   */
+  private static File runSmallLcMsBatch(File tempDir, boolean pipelineSamples) {
+    final IntegrationTest test = IntegrationTest.builder(
+            "rawdatafiles/integration_tests/workshop_dataset",
+            "workshop_dataset_integration_test.mzbatch").tempDir(tempDir)
+        .rawFiles("171103_PMA_TK_QC_04-4to5min.mzML", "171103_PMA_TK_QC_05-4to5min.mzML")
+        .specLibsFullPath("spectral_libraries/integration_tests/massbank_nist_for_tests.msp",
+            "spectral_libraries/integration_tests/MoNA-export-LC-MS-MS_Spectra.json").build();
+
+    final MZminePreferences preferences = ConfigService.getPreferences();
+    final Boolean previous = preferences.getValue(MZminePreferences.pipelineBatchSamples);
+    preferences.setParameter(MZminePreferences.pipelineBatchSamples, pipelineSamples);
+    try {
+      final MZmineProject project = new MZmineProjectImpl();
+      ProjectService.getProjectManager().setCurrentProject(project);
+      final BatchQueue queue = IntegrationTestUtils.loadBatchFromFile(test.batchFile());
+      final File csvExportFile = IntegrationTestUtils.addOrModifyModularCsvExportStep(
+          test.batchFile().getName() + (pipelineSamples ? "_pipelined" : "_sequential"), tempDir,
+          queue);
+
+      final BatchTask batchTask = BatchModeModule.runBatchQueue(queue, project, test.rawFiles(),
+          null, test.specLibs(), null, Instant.now());
+      Assertions.assertNotNull(batchTask);
+      Assertions.assertEquals(TaskStatus.FINISHED, batchTask.getStatus());
+      // a pipeline is recorded as one step with the names of all its modules
+      Assertions.assertEquals(pipelineSamples,
+          batchTask.getStepTimes().stream().anyMatch(step -> step.name().contains(", ")));
+      return csvExportFile;
+    } finally {
+      preferences.setParameter(MZminePreferences.pipelineBatchSamples, previous);
+    }
+  }
+
   @Test
   @DisabledOnOs({OS.LINUX, OS.MAC})
     // windows paths don't work on linux/mac
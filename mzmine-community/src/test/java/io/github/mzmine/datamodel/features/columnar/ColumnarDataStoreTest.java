@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.columnar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.DataTypes;
+import io.github.mzmine.datamodel.features.types.annotations.CompoundNameType;
+import io.github.mzmine.datamodel.features.types.numbers.HeightType;
+import io.github.mzmine.datamodel.features.types.numbers.IDType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.datamodel.impl.RawDataFileImpl;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javafx.collections.MapChangeListener;
+import javafx.collections.ObservableMap;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ColumnarDataStoreTest {
+
+  private RawDataFile file;
+  private ModularFeatureList flist;
+
+  @BeforeEach
+  void createList() {
+    file = new RawDataFileImpl("testfile", null, null, Color.BLACK);
+    flist = new ModularFeatureList("flist", null, List.of(file), true);
+  }
+
+  @Test
+  void testRowAndFeatureValues() {
+    assertTrue(flist.isColumnarStorage());
+    final ModularFeatureListRow row = new ModularFeatureListRow(flist, 5);
+    final ModularFeature feature = new ModularFeature(flist, file, null, null);
+    row.addFeature(file, feature);
+    flist.addRow(row);
+
+    feature.set(MZType.class, 200.123456789);
+    feature.set(RTType.class, 5.5f);
+    feature.set(HeightType.class, 1E5f);
+    row.set(CompoundNameType.class, "name");
+
+    assertEquals(5, row.getID());
+    assertEquals(200.123456789, feature.getMZ());
+    assertEquals(5.5f, feature.getRT());
+    assertEquals(1E5f, feature.getHeight());
+    assertEquals("name", row.get(CompoundNameType.class));
+    assertTrue(flist.getFeatureTypes().contains(DataTypes.get(MZType.class)));
+    assertTrue(flist.getRowTypes().contains(DataTypes.get(CompoundNameType.class)));
+
+    // null values are mapped
+    feature.set(HeightType.class, null);
+    assertTrue(feature.getMap().containsKey(DataTypes.get(HeightType.class)));
+    assertNull(feature.get(HeightType.class));
+
+    feature.remove(HeightType.class);
+    assertFalse(feature.getMap().containsKey(DataTypes.get(HeightType.class)));
+
+    // same content as a HashMap
+    final Map<DataType, Object> expected = new HashMap<>(feature.getMap());
+    assertEquals(expected, feature.getMap());
+    assertEquals(expected.size(), feature.getMap().size());
+  }
+
+  @Test
+  void testUnexpectedValueClass() {
+    final ModularFeatureListRow row = new ModularFeatureListRow(flist, 1);
+    // raw access may put other number classes into primitive columns
+    ((Map) row.getMap()).put(DataTypes.get(MZType.class), 5f);
+    assertEquals(5f, row.getMap().get(DataTypes.get(MZType.class)));
+    row.set(MZType.class, 5d);
+    assertEquals(5d, row.getAverageMZ());
+  }
+
+  @Test
+  void testListeners() {
+    final ModularFeatureListRow row = new ModularFeatureListRow(flist, 1);
+    final ObservableMap<DataType, Object> map = row.getMap();
+    final List<String> changes = new ArrayList<>();
+    map.addListener((MapChangeListener<DataType, Object>) change -> changes.add(
+        "%s %s %s".formatted(change.wasAdded(), change.wasRemoved(), change.getKey())));
+
+    row.set(RTType.class, 1f);
+    row.set(RTType.class, 1f); // no change
+    row.set(RTType.class, 2f);
+    row.remove(RTType.class);
+    final DataType rt = DataTypes.get(RTType.class);
+    assertEquals(List.of("true false " + rt, "true true " + rt, "false true " + rt), changes);
+  }
+
+  @Test
+  void testSlotReuse() {
+    final ColumnarDataStore store = new ColumnarDataStore(_ -> {
+    });
+    final DataType mz = DataTypes.get(MZType.class);
+    final DataType name = DataTypes.get(CompoundNameType.class);
+    final List<ObservableMap<DataType, Object>> released = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      final ObservableMap<DataType, Object> map = store.createMap();
+      map.put(mz, i * 0.5);
+      map.put(name, "name " + i);
+      released.add(map);
+    }
+    for (ObservableMap<DataType, Object> map : released) {
+      assertTrue(store.release(map));
+      // only released once
+      assertFalse(store.release(map));
+    }
+    assertEquals(100, store.getNumSlots());
+    assertEquals(100, store.getNumFreeSlots());
+
+    // new maps reuse the cleared slots
+    final List<ObservableMap<DataType, Object>> maps = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      final ObservableMap<DataType, Object> map = store.createMap();
+      assertTrue(map.isEmpty());
+      assertNull(map.get(mz));
+      map.put(mz, -1d);
+      maps.add(map);
+    }
+    assertEquals(100, store.getNumSlots());
+    assertEquals(0, store.getNumFreeSlots());
+
+    // released maps keep their values and stay functional
+    for (int i = 0; i < released.size(); i++) {
+      final ObservableMap<DataType, Object> map = released.get(i);
+      assertEquals(i * 0.5, map.get(mz));
+      assertEquals("name " + i, map.get(name));
+      assertEquals(Map.of(mz, i * 0.5, name, "name " + i), new HashMap<>(map));
+    }
+    released.getFirst().remove(name);
+    assertEquals(1, released.getFirst().size());
+    maps.forEach(map -> assertEquals(Map.of(mz, -1d), new HashMap<>(map)));
+  }
+
+  @Test
+  void testRemovedRowsKeepValues() {
+    final ModularFeatureListRow removed = new ModularFeatureListRow(flist, 1);
+    final ModularFeature feature = new ModularFeature(flist, file, null, null);
+    removed.addFeature(file, feature);
+    flist.addRow(removed);
+    removed.set(CompoundNameType.class, "removed");
+    feature.set(MZType.class, 100d);
+
+    flist.removeRow(removed);
+    final ModularFeatureListRow added = new ModularFeatureListRow(flist, 2);
+    final ModularFeature addedFeature = new ModularFeature(flist, file, null, null);
+    added.addFeature(file, addedFeature);
+    flist.addRow(added);
+    addedFeature.set(MZType.class, 200d);
+
+    assertEquals(1, removed.getID());
+    assertEquals("removed", removed.get(CompoundNameType.class));
+    assertEquals(100d, feature.getMZ());
+    assertEquals(2, added.getID());
+    assertNull(added.get(CompoundNameType.class));
+    assertEquals(200d, addedFeature.getMZ());
+  }
+
+  @Test
+  void testSlotsInManyChunks() {
+    final List<ModularFeatureListRow> rows = IntStream.range(0, 5000).parallel()
+        .mapToObj(i -> {
+          final ModularFeatureListRow row = new ModularFeatureListRow(flist, i);
+          row.set(MZType.class, i * 0.5);
+          return row;
+        }).toList();
+    for (ModularFeatureListRow row : rows) {
+      assertEquals(row.getID() * 0.5, row.getAverageMZ());
+      assertEquals(row.getID(), row.get(IDType.class));
+    }
+  }
+}
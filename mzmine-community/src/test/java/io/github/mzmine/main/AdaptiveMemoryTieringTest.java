@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.main;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.main.AdaptiveMemoryTiering.MemoryUsage;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveMemoryTieringTest {
+
+  private static final long MAX = 1000;
+  private static final MemoryUsage HIGH = new MemoryUsage(900, MAX, 0, 0);
+  private static final MemoryUsage MEDIUM = new MemoryUsage(600, MAX, 0, 0);
+  private static final MemoryUsage LOW = new MemoryUsage(100, MAX, 0, 0);
+
+  private static RawDataFile file;
+  private static List<Scan> scans;
+
+  @BeforeAll
+  static void createScans() {
+    file = new RawDataFileImpl("tiering", null, null, Color.BLACK);
+    scans = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final Scan scan = new SimpleScan(file, i, 1, i * 0.1f, null, new double[]{200d},
+          new double[]{1000d}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.singleton(200d));
+      file.addScan(scan);
+      scans.add(scan);
+    }
+  }
+
+  /**
+   * Feature list with the feature data in RAM
+   */
+  private static ModularFeatureList createFeatureList(String name) {
+    final ModularFeatureList flist = new ModularFeatureList(name, null, file);
+    for (int id = 1; id <= 5; id++) {
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, id);
+      flist.addRow(row);
+      final SimpleIonTimeSeries series = new SimpleIonTimeSeries(null,
+          new double[]{200d + id, 200d + id, 200d + id}, new double[]{id, 10d * id, id}, scans);
+      row.addFeature(file, new ModularFeature(flist, file, series, FeatureStatus.DETECTED));
+    }
+    return flist;
+  }
+
+  private static boolean isMapped(ModularFeatureList flist) {
+    return flist.getRows().stream().flatMap(row -> row.getFeatures().stream())
+        .allMatch(feature -> feature.getFeatureData().getMZValueBuffer().isMapped());
+  }
+
+  @Test
+  void testRewriteFeatureData() {
+    final ModularFeatureList flist = createFeatureList("flist");
+    final ModularFeature feature = flist.getRow(2).getFeatures().getFirst();
+    final IonTimeSeries<? extends Scan> inRam = feature.getFeatureData();
+    assertFalse(isMapped(flist));
+
+    assertEquals(5, AdaptiveMemoryTiering.rewriteFeatureData(flist, MemoryMapStorage.create()));
+    assertTrue(isMapped(flist));
+    final IonTimeSeries<? extends Scan> mapped = feature.getFeatureData();
+    assertArrayEquals(inRam.getIntensityValues(new double[3]),
+        mapped.getIntensityValues(new double[3]));
+    assertArrayEquals(inRam.getMzValues(new double[3]), mapped.getMzValues(new double[3]));
+    assertEquals(inRam.getSpectra(), mapped.getSpectra());
+    // already mapped
+    assertEquals(0, AdaptiveMemoryTiering.rewriteFeatureData(flist, MemoryMapStorage.create()));
+
+    assertEquals(5, AdaptiveMemoryTiering.rewriteFeatureData(flist, null));
+    assertFalse(isMapped(flist));
+    assertArrayEquals(inRam.getIntensityValues(new double[3]),
+        feature.getFeatureData().getIntensityValues(new double[3]));
+  }
+
+  @Test
+  void testSpillLeastRecentlyUsedAndReload() {
+    final List<ModularFeatureList> lists = List.of(createFeatureList("first"),
+        createFeatureList("second"), createFeatureList("third"));
+    final AdaptiveMemoryTiering tiering = new AdaptiveMemoryTiering();
+
+    tiering.update(HIGH, lists);
+    assertTrue(tiering.isSpilled(lists.get(0)));
+    assertTrue(isMapped(lists.get(0)));
+    assertFalse(isMapped(lists.get(1)));
+
+    tiering.update(HIGH, lists);
+    assertTrue(tiering.isSpilled(lists.get(1)));
+    assertTrue(isMapped(lists.get(1)));
+    // the most recently used feature list stays in RAM
+    tiering.update(HIGH, lists);
+    assertFalse(tiering.isSpilled(lists.get(2)));
+    assertFalse(isMapped(lists.get(2)));
+
+    // reload after the usage stayed low, most recently used first
+    tiering.update(LOW, lists);
+    tiering.update(MEDIUM, lists);
+    tiering.update(LOW, lists);
+    tiering.update(LOW, lists);
+    assertTrue(tiering.isSpilled(lists.get(1)));
+    tiering.update(LOW, lists);
+    assertFalse(tiering.isSpilled(lists.get(1)));
+    assertFalse(isMapped(lists.get(1)));
+    assertTrue(tiering.isSpilled(lists.get(0)));
+    assertTrue(isMapped(lists.get(0)));
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.MZmineModuleCategory;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.MZmineRunnableModule;
+import io.github.mzmine.modules.batchmode.BatchStepResultCache.CacheStatus;
+import io.github.mzmine.modules.impl.MZmineProcessingStepImpl;
+import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelection;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javafx.scene.paint.Color;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+class BatchStepResultCacheTest {
+
+  private static final String CHROMATOGRAMS = "sample chromatograms";
+  private static final String FILTERED = "sample filtered";
+
+  private static final MZmineRunnableModule detection = mockModule(
+      MZmineModuleCategory.EIC_DETECTION);
+  private static final MZmineRunnableModule filter = mockModule(
+      MZmineModuleCategory.FEATURELISTFILTERING);
+  private static final MZmineRunnableModule metadata = mockModule(
+      MZmineModuleCategory.PROJECTMETADATA);
+
+  @TempDir
+  File dir;
+
+  private final AtomicInteger runSteps = new AtomicInteger();
+
+  @Test
+  void testMissThenHit() {
+    final Batch first = new Batch(dir, Long.MAX_VALUE);
+    first.detect();
+    first.filterInPlace(2);
+    first.createAndRemove();
+    first.finish();
+    assertEquals(3, first.cache.getCount(CacheStatus.MISS));
+    assertEquals(0, first.cache.getCount(CacheStatus.HIT));
+    assertEquals(3, runSteps.get());
+    assertEquals(List.of(FILTERED), names(first.project));
+
+    final Batch second = new Batch(dir, Long.MAX_VALUE);
+    second.detect();
+    second.filterInPlace(2);
+    second.createAndRemove();
+    assertEquals(3, second.cache.getCount(CacheStatus.HIT));
+    assertEquals(3, runSteps.get(), "Restored steps are not run");
+
+    // restored feature lists are only loaded when needed
+    assertTrue(second.project.getCurrentFeatureLists().isEmpty());
+    second.finish();
+    // the removed chromatograms are not restored
+    assertEquals(List.of(FILTERED), names(second.project));
+    assertEquals(rowIds(first.project.getFeatureList(FILTERED)),
+        rowIds(second.project.getFeatureList(FILTERED)));
+    assertEquals(List.of(FILTERED), names(second.cache.getCreatedFeatureLists()));
+  }
+
+  @Test
+  void testInPlaceModification() {
+    final Batch first = new Batch(dir, Long.MAX_VALUE);
+    first.detect();
+    first.filterInPlace(2);
+    first.finish();
+    assertEquals(List.of(2, 3), rowIds(first.project.getFeatureList(CHROMATOGRAMS)));
+
+    final Batch second = new Batch(dir, Long.MAX_VALUE);
+    second.detect();
+    second.filterInPlace(2);
+    second.finish();
+    assertEquals(2, second.cache.getCount(CacheStatus.HIT));
+    // the modified feature list replaces the one created by the detection
+    assertEquals(List.of(CHROMATOGRAMS), names(second.project));
+    assertEquals(List.of(2, 3), rowIds(second.project.getFeatureList(CHROMATOGRAMS)));
+    assertTrue(second.cache.getCreatedFeatureLists().isEmpty());
+    assertEquals(List.of(CHROMATOGRAMS), names(second.cache.getPreviousCreatedFeatureLists()));
+  }
+
+  @Test
+  void testChangedParametersRunFollowingSteps() {
+    final Batch first = new Batch(dir, Long.MAX_VALUE);
+    first.detect();
+    first.filterInPlace(2);
+    first.createAndRemove();
+    first.finish();
+
+    final Batch second = new Batch(dir, Long.MAX_VALUE);
+    second.detect();
+    second.filterInPlace(3);
+    second.createAndRemove();
+    second.finish();
+    assertEquals(1, second.cache.getCount(CacheStatus.HIT));
+    assertEquals(2, second.cache.getCount(CacheStatus.MISS));
+    // detection was restored and loaded before the filter ran on it
+    assertEquals(List.of(FILTERED), names(second.project));
+    assertEquals(List.of(3), rowIds(second.project.getFeatureList(FILTERED)));
+  }
+
+  @Test
+  void testNoRestoreAfterUncachedFeatureListStep() {
+    final Batch first = new Batch(dir, Long.MAX_VALUE);
+    first.detect();
+    first.uncached();
+    first.filterInPlace(2);
+    first.finish();
+    assertEquals(1, first.cache.getCount(CacheStatus.MISS));
+    assertEquals(2, first.cache.getCount(CacheStatus.NOT_CACHED));
+
+    final Batch second = new Batch(dir, Long.MAX_VALUE);
+    second.detect();
+    second.uncached();
+    final int before = runSteps.get();
+    second.filterInPlace(2);
+    second.finish();
+    assertEquals(1, second.cache.getCount(CacheStatus.HIT));
+    assertEquals(before + 1, runSteps.get(), "Steps after the uncached step always run");
+    assertEquals(List.of(2, 3), rowIds(second.project.getFeatureList(CHROMATOGRAMS)));
+  }
+
+  @Test
+  void testPruneLeastRecentlyUsed() {
+    final Batch first = new Batch(dir, Long.MAX_VALUE);
+    first.detect();
+    final File detected = entryDirs().getFirst();
+    first.filterInPlace(2);
+    final File filtered = entryDirs().stream().filter(d -> !d.equals(detected)).findFirst()
+        .orElseThrow();
+    first.createAndRemove();
+    first.finish();
+    assertEquals(3, entryDirs().size());
+    final File created = entryDirs().stream()
+        .filter(d -> !d.equals(detected) && !d.equals(filtered)).findFirst().orElseThrow();
+
+    // the created entry is used least recently, the restored detection most recently
+    final long old = System.currentTimeMillis() - 3_600_000L;
+    assertTrue(detected.setLastModified(old));
+    assertTrue(filtered.setLastModified(old + 2000));
+    assertTrue(created.setLastModified(old + 1000));
+    final long maxBytes = FileUtils.sizeOfDirectory(detected) + FileUtils.sizeOfDirectory(filtered);
+
+    final Batch second = new Batch(dir, maxBytes);
+    second.detect();
+    second.cache.prune();
+    assertEquals(List.of(detected, filtered).stream().sorted().toList(), entryDirs());
+
+    second.filterInPlace(2);
+    second.createAndRemove();
+    second.finish();
+    assertEquals(2, second.cache.getCount(CacheStatus.HIT));
+    assertEquals(1, second.cache.getCount(CacheStatus.MISS));
+    assertEquals(List.of(FILTERED), names(second.project));
+  }
+
+  @Test
+  void testPruneKeepsEntriesInUse() {
+    final Batch first = new Batch(dir, 1);
+    first.detect();
+    first.filterInPlace(2);
+    first.createAndRemove();
+    first.finish();
+    // only the last entry is kept because it is in use
+    assertEquals(1, entryDirs().size());
+  }
+
+  private List<File> entryDirs() {
+    return Arrays.stream(Objects.requireNonNull(dir.listFiles(File::isDirectory))).sorted()
+        .toList();
+  }
+
+  /**
+   * Runs steps like the batch task on a new project with the same raw data file
+   */
+  private class Batch {
+
+    private final MZmineProject project = new MZmineProjectImpl();
+    private final RawDataFile file = new RawDataFileImpl("sample.mzML", null, null, Color.BLACK);
+    private final List<Scan> scans = createScans(file);
+    private final BatchStepResultCache cache;
+
+    private Batch(File cacheDir, long maxBytes) {
+      project.addFile(file);
+      cache = new BatchStepResultCache(project, () -> false, cacheDir, maxBytes);
+    }
+
+    private void detect() {
+      run(new MZmineProcessingStepImpl<>(detection, new SimpleParameterSet()), _ -> {
+        final ModularFeatureList flist = new ModularFeatureList(CHROMATOGRAMS, null, file);
+        flist.setSelectedScans(file, scans);
+        for (int i = 0; i < 3; i++) {
+          flist.addRow(createRow(flist, i + 1));
+        }
+        project.addFeatureList(flist);
+      });
+    }
+
+    /**
+     * Removes all rows below the minimum ID from the chromatograms
+     */
+    private void filterInPlace(int minId) {
+      final FeatureListsParameter flists = new FeatureListsParameter();
+      final IntegerParameter minIdParam = new IntegerParameter("Minimum ID", "", minId);
+      run(new MZmineProcessingStepImpl<>(filter, new SimpleParameterSet(flists, minIdParam)),
+          _ -> {
+            final FeatureList flist = project.getFeatureList(CHROMATOGRAMS);
+            for (FeatureListRow row : List.copyOf(flist.getRows())) {
+              if (row.getID() < minId) {
+                flist.removeRow(row);
+              }
+            }
+          }, () -> {
+            // the selection needs the current feature list instance
+            final FeatureList flist = project.getFeatureList(CHROMATOGRAMS);
+            flists.setValue(flist == null ? new FeatureListsSelection()
+                : new FeatureListsSelection((ModularFeatureList) flist));
+          });
+    }
+
+    /**
+     * Copies the chromatograms to a new feature list and removes the original
+     */
+    private void createAndRemove() {
+      run(new MZmineProcessingStepImpl<>(filter, new SimpleParameterSet()), _ -> {
+        final FeatureList original = project.getFeatureList(CHROMATOGRAMS);
+        final ModularFeatureList flist = new ModularFeatureList(FILTERED, null, file);
+        flist.setSelectedScans(file, scans);
+        for (FeatureListRow row : original.getRows()) {
+          flist.addRow(createRow(flist, row.getID()));
+        }
+        project.removeFeatureList(original);
+        project.addFeatureList(flist);
+      });
+    }
+
+    /**
+     * A step that is not cached but may change feature lists
+     */
+    private void uncached() {
+      final FeatureListsParameter flists = new FeatureListsParameter();
+      run(new MZmineProcessingStepImpl<>(metadata, new SimpleParameterSet(flists)), _ -> {
+        assertNotNull(project.getFeatureList(CHROMATOGRAMS));
+      });
+    }
+
+    private void run(MZmineProcessingStep<?> step, Consumer<MZmineProcessingStep<?>> action) {
+      run(step, action, () -> {
+      });
+    }
+
+    /**
+     * Same order of calls as the batch task
+     *
+     * @param afterLoad sets parameters that depend on the feature lists in the project
+     */
+    private void run(MZmineProcessingStep<?> step, Consumer<MZmineProcessingStep<?>> action,
+        Runnable afterLoad) {
+      cache.startStep(step);
+      if (cache.restore(step)) {
+        return;
+      }
+      if (cache.needsRestoredFeatureLists(step)) {
+        assertTrue(cache.loadRestoredFeatureLists());
+      }
+      afterLoad.run();
+      cache.beforeRun();
+      action.accept(step);
+      runSteps.incrementAndGet();
+      cache.afterRun(step);
+    }
+
+    private void finish() {
+      assertTrue(cache.loadRestoredFeatureLists());
+      assertFalse(cache.needsRestoredFeatureLists(
+          new MZmineProcessingStepImpl<>(detection, new SimpleParameterSet())));
+    }
+
+    private ModularFeatureListRow createRow(ModularFeatureList flist, int id) {
+      final IonTimeSeries<Scan> series = new SimpleIonTimeSeries(null,
+          new double[]{200d + id, 200d + id, 200d + id}, new double[]{10d * id, 50d, 5d},
+          scans.subList(id, id + 3));
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, id);
+      row.addFeature(file, new ModularFeature(flist, file, series, FeatureStatus.DETECTED));
+      return row;
+    }
+  }
+
+  private static MZmineRunnableModule mockModule(MZmineModuleCategory category) {
+    final MZmineRunnableModule module = Mockito.mock(MZmineRunnableModule.class);
+    Mockito.when(module.getModuleCategory()).thenReturn(category);
+    Mockito.when(module.getName()).thenReturn(category.toString());
+    return module;
+  }
+
+  private static List<Scan> createScans(RawDataFile file) {
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      final Scan scan = new SimpleScan(file, i + 1, 1, 0.1f * i, null, new double[]{200d},
+          new double[]{1E5}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.closed(0d, 1000d));
+      file.addScan(scan);
+      scans.add(scan);
+    }
+    return scans;
+  }
+
+  private static List<String> names(MZmineProject project) {
+    return names(project.getCurrentFeatureLists());
+  }
+
+  private static List<String> names(List<FeatureList> flists) {
+    return flists.stream().map(FeatureList::getName).toList();
+  }
+
+  private static List<Integer> rowIds(FeatureList flist) {
+    return flist.getRows().stream().map(FeatureListRow::getID).toList();
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ShardedBatchRunnerTest {
+
+  @TempDir
+  File dir;
+
+  @Test
+  void testSplitShards() {
+    final File[] files = new File[10];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = new File("sample_" + i + ".mzML");
+    }
+    final File[][] shards = ShardedBatchRunner.splitShards(files, 3);
+    assertEquals(3, shards.length);
+    assertEquals(3, shards[0].length);
+    assertEquals(3, shards[1].length);
+    assertEquals(4, shards[2].length);
+    // consecutive files in the original order
+    assertArrayEquals(files, Arrays.stream(shards).flatMap(Arrays::stream).toArray(File[]::new));
+
+    final File[][] single = ShardedBatchRunner.splitShards(files, 10);
+    for (int i = 0; i < files.length; i++) {
+      assertArrayEquals(new File[]{files[i]}, single[i]);
+    }
+  }
+
+  @Test
+  void testWorkerJvmArguments() {
+    final List<String> args = ShardedBatchRunner.workerJvmArguments(
+        List.of("-XX:MaxRAMPercentage=80", "-Xms2g", "-Xmx16g", "-enable-preview",
+            "-agentlib:jdwp=transport=dt_socket,server=y,address=5005",
+            "-D" + ShardedBatchRunner.WORKER_OUTPUT_PROPERTY + "=/tmp/shard",
+            "-Dfile.encoding=UTF-8"),
+        4096);
+    assertEquals(List.of("-enable-preview", "-Dfile.encoding=UTF-8", "-Xmx4096m"), args);
+  }
+
+  @Test
+  void testFeatureListRoundTrip() throws Exception {
+    final RawDataFile file = new RawDataFileImpl("sample.mzML", null, null, Color.BLACK);
+    final List<Scan> scans = createScans(file);
+    final MZmineProject project = new MZmineProjectImpl();
+    project.addFile(file);
+
+    final ModularFeatureList flist = new ModularFeatureList("sample.mzML chromatograms", null,
+        file);
+    flist.setSelectedScans(file, scans);
+    for (int i = 0; i < 3; i++) {
+      final IonTimeSeries<Scan> series = new SimpleIonTimeSeries(null,
+          new double[]{200d + i, 200d + i, 200d + i}, new double[]{10d * i + 1, 50d, 5d},
+          scans.subList(i, i + 3));
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, i + 1);
+      row.addFeature(file, new ModularFeature(flist, file, series, FeatureStatus.DETECTED));
+      flist.addRow(row);
+    }
+
+    assertNull(ShardedBatchRunner.readWorkerResults(dir, project, null, () -> false),
+        "Results without the finished marker are incomplete");
+    assertTrue(ShardedBatchRunner.writeFeatureLists(dir, List.<FeatureList>of(flist), () -> false));
+
+    final List<ModularFeatureList> loaded = ShardedBatchRunner.readWorkerResults(dir, project, null,
+        () -> false);
+    assertNotNull(loaded);
+    assertEquals(1, loaded.size());
+    final ModularFeatureList result = loaded.getFirst();
+    assertEquals(flist.getName(), result.getName());
+    assertEquals(flist.getNumberOfRows(), result.getNumberOfRows());
+    for (int i = 0; i < flist.getNumberOfRows(); i++) {
+      final ModularFeatureListRow expected = (ModularFeatureListRow) flist.getRow(i);
+      final ModularFeatureListRow actual = (ModularFeatureListRow) result.getRow(i);
+      assertEquals(expected.getID(), actual.getID());
+      assertEquals(expected.getAverageMZ(), actual.getAverageMZ());
+      assertEquals(expected.getFeature(file).getFeatureData(),
+          actual.getFeature(file).getFeatureData());
+      assertEquals(expected.getFeature(file).getHeight(), actual.getFeature(file).getHeight());
+    }
+  }
+
+  @Test
+  void testMassListRoundTrip() throws Exception {
+    final RawDataFile workerFile = new RawDataFileImpl("sample.mzML", null, null, Color.BLACK);
+    final List<Scan> workerScans = createScans(workerFile);
+    for (int i = 0; i < workerScans.size(); i++) {
+      // the last scan has no mass list
+      if (i < workerScans.size() - 1) {
+        workerScans.get(i).addMassList(
+            new SimpleMassList(null, new double[]{100d, 150d + i}, new double[]{1E4, 2E5}));
+      }
+    }
+    ShardedBatchRunner.writeMassLists(dir, List.of(workerFile));
+
+    // the main process imports the same file without mass detection
+    final RawDataFile file = new RawDataFileImpl("sample.mzML", null, null, Color.BLACK);
+    final List<Scan> scans = createScans(file);
+    final MZmineProject project = new MZmineProjectImpl();
+    project.addFile(file);
+    assertTrue(ShardedBatchRunner.readMassLists(dir, project, null));
+
+    for (int i = 0; i < scans.size(); i++) {
+      final MassList expected = workerScans.get(i).getMassList();
+      final MassList actual = scans.get(i).getMassList();
+      if (expected == null) {
+        assertNull(actual);
+        continue;
+      }
+      assertNotNull(actual);
+      assertArrayEquals(expected.getMzValues(new double[2]), actual.getMzValues(new double[2]));
+      assertArrayEquals(expected.getIntensityValues(new double[2]),
+          actual.getIntensityValues(new double[2]));
+    }
+
+    // different raw data is rejected
+    final MZmineProject otherProject = new MZmineProjectImpl();
+    otherProject.addFile(new RawDataFileImpl("sample.mzML", null, null, Color.BLACK));
+    assertFalse(ShardedBatchRunner.readMassLists(dir, otherProject, null));
+  }
+
+  private static List<Scan> createScans(RawDataFile file) {
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      final Scan scan = new SimpleScan(file, i + 1, 1, 0.1f * i, null, new double[]{200d},
+          new double[]{1E5}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.closed(0d, 1000d));
+      file.addScan(scan);
+      scans.add(scan);
+    }
+    return scans;
+  }
+}
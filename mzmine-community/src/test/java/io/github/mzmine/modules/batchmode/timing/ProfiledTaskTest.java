@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode.timing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.DelegatingTask;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.taskcontrol.impl.WrappedTask;
+import io.github.mzmine.taskcontrol.listeners.MasterTaskCancelListener;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ProfiledTaskTest {
+
+  @Test
+  void testRecordsTimings() {
+    final List<SubTaskProfile> profiles = new CopyOnWriteArrayList<>();
+    final WorkTask work = new WorkTask(false);
+    final ProfiledTask profiled = new ProfiledTask(work, 3, "module", profiles::add);
+    profiled.run();
+
+    assertEquals(TaskStatus.FINISHED, profiled.getStatus());
+    assertEquals(1, profiles.size());
+    final SubTaskProfile profile = profiles.getFirst();
+    assertEquals(3, profile.step());
+    assertEquals("module", profile.module());
+    assertEquals("work", profile.task());
+    assertEquals(TaskStatus.FINISHED.toString(), profile.status());
+    assertTrue(profile.wallSeconds() > 0);
+    // -1 if not supported by the jvm
+    assertTrue(profile.cpuSeconds() > 0 || profile.cpuSeconds() == -1);
+    assertTrue(profile.allocatedMB() > 0 || profile.allocatedMB() == -1);
+  }
+
+  @Test
+  void testCancel() throws InterruptedException {
+    final List<SubTaskProfile> profiles = new CopyOnWriteArrayList<>();
+    final WorkTask work = new WorkTask(true);
+    final ProfiledTask profiled = new ProfiledTask(work, 1, "module", profiles::add);
+    assertSame(work, DelegatingTask.unwrap(profiled));
+
+    final Thread thread = Thread.ofPlatform().start(profiled);
+    assertTrue(work.started.await(10, TimeUnit.SECONDS));
+    profiled.cancel();
+    thread.join(10_000);
+
+    assertFalse(thread.isAlive());
+    assertEquals(TaskStatus.CANCELED, work.getStatus());
+    assertEquals(1, profiles.size());
+    assertEquals(TaskStatus.CANCELED.toString(), profiles.getFirst().status());
+  }
+
+  @Test
+  void testMasterStatusReachesProfiledTask() {
+    final WorkTask work = new WorkTask(true);
+    final ProfiledTask profiled = new ProfiledTask(work, 1, "module", _ -> {
+    });
+    final MasterTaskCancelListener listener = new MasterTaskCancelListener(
+        new WrappedTask[]{new WrappedTask(profiled, TaskPriority.NORMAL)});
+
+    final WorkTask master = new WorkTask(false);
+    master.setStatus(TaskStatus.ERROR);
+    listener.taskStatusChanged(master, TaskStatus.ERROR, TaskStatus.PROCESSING);
+    // the status of the master task is set, not only canceled
+    assertEquals(TaskStatus.ERROR, work.getStatus());
+    assertEquals(TaskStatus.ERROR, profiled.getStatus());
+  }
+
+  private static class WorkTask extends AbstractTask {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final boolean waitForCancel;
+
+    private WorkTask(boolean waitForCancel) {
+      super(null, Instant.now());
+      this.waitForCancel = waitForCancel;
+    }
+
+    @Override
+    public String getTaskDescription() {
+      return "work";
+    }
+
+    @Override
+    public double getFinishedPercentage() {
+      return 0;
+    }
+
+    @Override
+    public void run() {
+      setStatus(TaskStatus.PROCESSING);
+      started.countDown();
+      if (waitForCancel) {
+        while (!isCanceled()) {
+          Thread.onSpinWait();
+        }
+        return;
+      }
+      double sum = 0;
+      for (int i = 0; i < 1000; i++) {
+        sum += new double[100][0].length * Math.sqrt(i);
+      }
+      assertTrue(sum > 0);
+      setStatus(TaskStatus.FINISHED);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DetectionType;
+import io.github.mzmine.datamodel.features.types.RawFileType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.MobilityType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import io.github.mzmine.util.FeatureListRowSorter;
+import io.github.mzmine.util.FeatureListUtils;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class RowGridIndexTest {
+
+  private final MZTolerance mzTol = new MZTolerance(0.005, 10);
+  private final RTTolerance rtTol = new RTTolerance(0.1f, Unit.MINUTES);
+  private RawDataFile raw;
+  private ModularFeatureList flist;
+  private List<FeatureListRow> rows;
+
+  @BeforeEach
+  void setUp() {
+    raw = Mockito.mock(RawDataFile.class);
+    flist = new ModularFeatureList("List", null, raw);
+    final Random random = new Random(42);
+    rows = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      // few distinct values to create many candidates and exact matches on range bounds
+      final double mz = 100 + random.nextInt(20000) * 0.005;
+      final Float rt = random.nextInt(20) == 0 ? null : random.nextInt(400) * 0.05f;
+      final Float mobility = random.nextBoolean() ? null : random.nextInt(100) * 0.01f;
+      rows.add(getRow(i, mz, rt, mobility));
+    }
+    rows.sort(FeatureListRowSorter.MZ_ASCENDING);
+  }
+
+  private FeatureListRow getRow(int id, double mz, Float rt, Float mobility) {
+    ModularFeature f = new ModularFeature(flist);
+    f.set(RawFileType.class, raw);
+    f.set(MZType.class, mz);
+    f.set(RTType.class, rt == null ? 1f : rt);
+    f.set(MobilityType.class, mobility == null ? 1f : mobility);
+    f.set(DetectionType.class, FeatureStatus.DETECTED);
+    final ModularFeatureListRow row = new ModularFeatureListRow(flist, id, f);
+    // missing values on row level
+    row.set(RTType.class, rt);
+    row.set(MobilityType.class, mobility);
+    return row;
+  }
+
+  @Test
+  void sameCandidatesAsLinearSearch() {
+    assertSameCandidates(RowGridIndex.create(rows, mzTol, rtTol));
+    assertSameCandidates(RowGridIndex.create(rows, null, rtTol));
+    assertSameCandidates(RowGridIndex.create(rows, mzTol, null));
+    assertSameCandidates(RowGridIndex.create(rows, null, null));
+    // more cells than rows
+    assertSameCandidates(new RowGridIndex(rows, 1e-6, 1e-6));
+  }
+
+  private void assertSameCandidates(RowGridIndex index) {
+    assertEquals(rows.size(), index.size());
+    final Random random = new Random(7);
+    for (int i = 0; i < 500; i++) {
+      final FeatureListRow query = rows.get(random.nextInt(rows.size()));
+      final Range<Double> mzRange =
+          i % 5 == 0 ? Range.all() : mzTol.getToleranceRange(query.getAverageMZ());
+      final Range<Float> rtRange = i % 7 == 0 || query.getAverageRT() == null ? Range.all()
+          : rtTol.getToleranceRange(query.getAverageRT());
+      final Range<Float> mobilityRange =
+          query.getAverageMobility() == null ? Range.all() : Range.closed(0.1f, 0.5f);
+
+      final Set<FeatureListRow> expected = new HashSet<>(
+          FeatureListUtils.getCandidatesWithinRanges(mzRange, rtRange, mobilityRange, rows, true));
+      final Set<FeatureListRow> actual = new HashSet<>();
+      index.forEachCandidate(mzRange, rtRange, mobilityRange,
+          candidate -> actual.add(index.getRow(candidate)));
+      assertEquals(expected, actual);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.modules.io.import_rawdata_all.AdvancedSpectraImportParameters;
+import io.github.mzmine.modules.tools.batchwizard.subparameters.MassDetectorWizardOptions;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import testutils.MZmineTestUtil;
+
+/**
+ * Checks that the {@link PrimitiveADAPChromatogramBuilder} creates the same chromatograms as the
+ * original {@link RangeMapADAPChromatogramBuilder}.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+class PrimitiveADAPChromatogramBuilderTest {
+
+  private static final List<String> files = List.of("rawdatafiles/DOM_a.mzML",
+      "rawdatafiles/DOM_b.mzXML");
+
+  @BeforeAll
+  void init() throws InterruptedException {
+    MZmineTestUtil.startMzmineCore();
+    var advancedImport = AdvancedSpectraImportParameters.create(
+        MassDetectorWizardOptions.ABSOLUTE_NOISE_LEVEL, 0d, 0d, null, ScanSelection.ALL_SCANS,
+        false);
+    MZmineTestUtil.importFiles(files, 60, advancedImport);
+  }
+
+  @AfterAll
+  void tearDown() {
+    MZmineTestUtil.cleanProject();
+  }
+
+  @Test
+  void sameChromatogramsAsRangeMapBuilder() {
+    MZmineTestUtil.streamDataFiles(files).forEach(raw -> {
+      assertNotNull(raw);
+      // default settings of the integration test
+      compareBuilders(raw, new MZTolerance(0.002, 10), 3E5, 1E5, 4, 4, true);
+      // wide tolerance creates many truncated ranges
+      compareBuilders(raw, new MZTolerance(0.05, 50), 1E4, 5E3, 3, 3, true);
+      // imaging-like settings without zeros
+      compareBuilders(raw, new MZTolerance(0.005, 15), 0, 0, 1, 2, false);
+    });
+  }
+
+  private void compareBuilders(RawDataFile raw, MZTolerance mzTol, double minHeight,
+      double minGroupIntensity, int minConsecutive, int minTotal, boolean addZeros) {
+    final ScanSelection selection = new ScanSelection(1);
+    final Scan[] scans = selection.getMatchingScans(raw);
+    final int totalDps = Arrays.stream(scans).map(Scan::getMassList)
+        .mapToInt(MassSpectrum::getNumberOfDataPoints).sum();
+
+    final List<SimpleIonTimeSeries> expected = new RangeMapADAPChromatogramBuilder(null, raw,
+        scans, selection, totalDps, mzTol, minHeight, minGroupIntensity, minConsecutive, minTotal,
+        addZeros, null).get();
+    final List<SimpleIonTimeSeries> actual = new PrimitiveADAPChromatogramBuilder(null, raw, scans,
+        selection, totalDps, mzTol, minHeight, minGroupIntensity, minConsecutive, minTotal,
+        addZeros, null).get();
+
+    assertEquals(expected.size(), actual.size(), "Number of chromatograms in " + raw.getName());
+    for (int i = 0; i < expected.size(); i++) {
+      final SimpleIonTimeSeries e = expected.get(i);
+      final SimpleIonTimeSeries a = actual.get(i);
+      assertEquals(e.getSpectra(), a.getSpectra());
+      assertArrayEquals(e.getMzValues(new double[e.getNumberOfValues()]),
+          a.getMzValues(new double[a.getNumberOfValues()]));
+      assertArrayEquals(e.getIntensityValues(new double[e.getNumberOfValues()]),
+          a.getIntensityValues(new double[a.getNumberOfValues()]));
+    }
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  @Test
+  void rangeIndexMatchesTreeRangeMap() {
+    final Random random = new Random(42);
+    final RangeMap<Double, Integer> expected = TreeRangeMap.create();
+    final DisjointMzRangeIndex actual = new DisjointMzRangeIndex();
+
+    for (int id = 0; id < 20_000; id++) {
+      final double mz = random.nextDouble() * 1000;
+      if (expected.get(mz) != null) {
+        assertEquals(expected.get(mz), actual.get(mz));
+        continue;
+      }
+      assertEquals(-1, actual.get(mz));
+      final double width = random.nextDouble() * 0.5;
+      final Entry<Range<Double>, Integer> minus = expected.getEntry(mz - width);
+      final Entry<Range<Double>, Integer> plus = expected.getEntry(mz + width);
+      final double lower = minus == null ? mz - width : minus.getKey().upperEndpoint();
+      final double upper = plus == null ? mz + width : plus.getKey().lowerEndpoint();
+      if (lower < upper) {
+        expected.put(Range.closedOpen(lower, upper), id);
+        actual.put(lower, upper, id);
+      }
+    }
+
+    final int[] expectedIds = expected.asMapOfRanges().values().stream().mapToInt(i -> i)
+        .toArray();
+    assertEquals(expectedIds.length, actual.size());
+    assertArrayEquals(expectedIds, actual.valuesInOrder());
+  }
+}
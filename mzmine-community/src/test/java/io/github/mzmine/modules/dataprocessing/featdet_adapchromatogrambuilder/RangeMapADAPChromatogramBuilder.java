@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
+import io.github.mzmine.datamodel.data_access.ScanDataAccess;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.FeatureConvertors;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.SortingDirection;
+import io.github.mzmine.util.SortingProperty;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The original object based chromatogram builder. Creates one {@link ExpandedDataPoint} per mass
+ * list signal and maps non-overlapping m/z ranges to {@link ADAPChromatogram}s. Kept as the
+ * reference implementation for {@link PrimitiveADAPChromatogramBuilder}.
+ */
+final class RangeMapADAPChromatogramBuilder extends ADAPChromatogramBuilderEngine {
+
+  RangeMapADAPChromatogramBuilder(@Nullable Task parentTask, RawDataFile dataFile, Scan[] scans,
+      ScanSelection scanSelection, int totalDataPoints, MZTolerance mzTolerance,
+      double minHighestPoint, double minGroupIntensity, int minimumConsecutiveScans,
+      int minimumTotalScans, boolean addZeros, @Nullable MemoryMapStorage storage) {
+    super(parentTask, dataFile, scans, scanSelection, totalDataPoints, mzTolerance,
+        minHighestPoint, minGroupIntensity, minimumConsecutiveScans, minimumTotalScans, addZeros,
+        storage);
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  @Override
+  public List<SimpleIonTimeSeries> get() {
+    // map the mz tolerance to chromatograms
+    RangeMap<Double, ADAPChromatogram> rangeToChromMap = TreeRangeMap.create();
+
+    int dpCounter = 0;
+    ExpandedDataPoint[] allMzValues = new ExpandedDataPoint[totalDataPoints];
+
+    ScanDataAccess scanData = EfficientDataAccess.of(dataFile, ScanDataType.MASS_LIST,
+        scanSelection);
+
+    progress = 0;
+    double progressStep = 0.1 / scanData.getNumberOfScans();
+    while (scanData.hasNextScan()) {
+      if (isCanceled()) {
+        return null;
+      }
+
+      Scan scan = scanData.nextScan();
+
+      int dps = scanData.getNumberOfDataPoints();
+      for (int i = 0; i < dps; i++) {
+        ExpandedDataPoint curDatP = new ExpandedDataPoint(scanData.getMzValue(i),
+            scanData.getIntensityValue(i), scan);
+        allMzValues[dpCounter] = curDatP;
+        dpCounter++;
+      }
+      progress += progressStep;
+    }
+
+    // sort data points by intensity
+    Arrays.parallelSort(allMzValues,
+        new DataPointSorter(SortingProperty.Intensity, SortingDirection.Descending));
+
+    progress = 0.1;
+    progressStep = (allMzValues.length > 0) ? 0.45 / allMzValues.length : 0.0;
+
+    for (ExpandedDataPoint mzFeature : allMzValues) {
+
+      progress += progressStep;
+
+      if (isCanceled()) {
+        return null;
+      }
+
+      if (mzFeature == null || Double.isNaN(mzFeature.getMZ()) || Double.isNaN(
+          mzFeature.getIntensity())) {
+        continue;
+      }
+
+      final Entry<Range<Double>, ADAPChromatogram> existing = rangeToChromMap.getEntry(
+          mzFeature.getMZ());
+      if (existing != null) {
+        // add data point to chromatogram
+        existing.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
+      } else {
+        // skip it entierly if the intensity is not high enough
+        if (mzFeature.getIntensity() < minHighestPoint) {
+          continue;
+        }
+        // add a new chromatogram to the range map - limit ranges to avoid overlap
+        startNewChromatogramLimitMzRanges(rangeToChromMap, mzFeature);
+      }
+    }
+
+    // finish chromatograms sorted by m/z
+    final Map<Range<Double>, ADAPChromatogram> finalRangeMap = rangeToChromMap.asMapOfRanges();
+
+    int numChromatograms = finalRangeMap.size();
+    progressStep = numChromatograms > 0 ? 0.45 / numChromatograms : 0.0;
+
+    final List<SimpleIonTimeSeries> result = new ArrayList<>();
+    // add chromatograms that match criteria
+    for (ADAPChromatogram chromatogram : finalRangeMap.values()) {
+      if (isCanceled()) {
+        return null;
+      }
+
+      progress += progressStep;
+
+      // And remove chromatograms who dont have a certain number of continous points above the
+      // IntensityThresh2 level.
+      var dps = chromatogram.getNumberOfDataPoints();
+      if (dps >= minimumTotalScans && chromatogram.matchesMinContinuousDataPoints(scans,
+          minGroupIntensity, minimumConsecutiveScans, minHighestPoint)) {
+        // add zeros to edges
+        if (addZeros) {
+          chromatogram.addNZeros(scans, 1, 1);
+        }
+
+        result.add(FeatureConvertors.createSimpleTimeSeries(storage,
+            new ArrayList<>(chromatogram.getDataPoints()),
+            new ArrayList<>(chromatogram.getScanNumbers())));
+      }
+    }
+    progress = 1d;
+    return result;
+  }
+
+  /**
+   * Starts a new chromatogram and limits its range so that it does not overlap with existing m/z
+   * ranges
+   *
+   * @param rangeToChromMap started chromatograms with their non overlapping m/z range
+   * @param mzFeature       current tested data point
+   */
+  @SuppressWarnings("UnstableApiUsage")
+  private void startNewChromatogramLimitMzRanges(RangeMap<Double, ADAPChromatogram> rangeToChromMap,
+      ExpandedDataPoint mzFeature) {
+    // start new chromatogram and create new range (subract overlapping existing ranges)
+    Range<Double> toleranceRange = mzTolerance.getToleranceRange(mzFeature.getMZ());
+
+    // look +- mz tolerance to see if ther is a range near by.
+    // If there is use the proper boundry of that range for the
+    // new range to insure than NON OF THE RANGES OVERLAP.
+    final Entry<Range<Double>, ADAPChromatogram> minusRange = rangeToChromMap.getEntry(
+        toleranceRange.lowerEndpoint());
+    final Entry<Range<Double>, ADAPChromatogram> plusRange = rangeToChromMap.getEntry(
+        toleranceRange.upperEndpoint());
+
+    // If both of the above ranges are null then we make the new range spaning the full
+    // mz tolerance range.
+    // If one or both are not null we need to properly modify the range of the new
+    // chromatogram so that none of the points are overlapping.
+    Double toBeLowerBound =
+        minusRange == null ? toleranceRange.lowerEndpoint() : minusRange.getKey().upperEndpoint();
+    Double toBeUpperBound =
+        plusRange == null ? toleranceRange.upperEndpoint() : plusRange.getKey().lowerEndpoint();
+
+    if (toBeLowerBound < toBeUpperBound) {
+      // use closed open so that every value may be captured by rangeMap
+      Range<Double> newRange = Range.closedOpen(toBeLowerBound, toBeUpperBound);
+      ADAPChromatogram newChrom = new ADAPChromatogram();
+      newChrom.addMzFeature(mzFeature.getScan(), mzFeature);
+
+      rangeToChromMap.put(newRange, newChrom);
+    } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
+      plusRange.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
+    } else {
+      throw new IllegalStateException(
+          String.format("Incorrect range [%f, %f] for m/z %f", toBeLowerBound, toBeUpperBound,
+              mzFeature.getMZ()));
+    }
+  }
+}
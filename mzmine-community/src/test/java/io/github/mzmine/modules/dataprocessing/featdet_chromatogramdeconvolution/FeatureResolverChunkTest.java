@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ADAPChromatogramBuilderParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ModularADAPChromatogramBuilderModule;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.minimumsearch.MinimumSearchFeatureResolverParameters;
+import io.github.mzmine.modules.io.import_rawdata_all.AdvancedSpectraImportParameters;
+import io.github.mzmine.modules.tools.batchwizard.subparameters.MassDetectorWizardOptions;
+import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.ProjectService;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import testutils.MZmineTestUtil;
+import testutils.TaskResult;
+
+/**
+ * Checks that resolving feature lists in parallel chunks of rows creates the same features as
+ * resolving all rows sequentially.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+class FeatureResolverChunkTest {
+
+  private static final List<String> files = List.of("rawdatafiles/DOM_a.mzML",
+      "rawdatafiles/DOM_b.mzXML");
+  private static final String CHROM_SUFFIX = "chrom";
+
+  @BeforeAll
+  void init() throws InterruptedException {
+    MZmineTestUtil.startMzmineCore();
+    var advancedImport = AdvancedSpectraImportParameters.create(
+        MassDetectorWizardOptions.ABSOLUTE_NOISE_LEVEL, 0d, 0d, null, ScanSelection.ALL_SCANS,
+        false);
+    MZmineTestUtil.importFiles(files, 60, advancedImport);
+
+    // default settings of the feature finding test
+    final ADAPChromatogramBuilderParameters paramChrom = new ADAPChromatogramBuilderParameters();
+    paramChrom.getParameter(ADAPChromatogramBuilderParameters.dataFiles)
+        .setValue(RawDataFilesSelectionType.ALL_FILES);
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.scanSelection, new ScanSelection(1));
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.minimumConsecutiveScans, 4);
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.mzTolerance,
+        new MZTolerance(0.002, 10));
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.minHighestPoint, 3E5);
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.minGroupIntensity, 1E5);
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.suffix, CHROM_SUFFIX);
+    final TaskResult finished = MZmineTestUtil.callModuleWithTimeout(60,
+        ModularADAPChromatogramBuilderModule.class, paramChrom);
+    assertInstanceOf(TaskResult.FINISHED.class, finished, finished.description());
+  }
+
+  @AfterAll
+  void tearDown() {
+    MZmineTestUtil.cleanProject();
+  }
+
+  @Test
+  void chunkedEqualsSequential() throws InterruptedException {
+    final List<ModularFeatureList> chromatograms = ProjectService.getProject()
+        .getCurrentFeatureLists().stream().filter(f -> f.getName().endsWith(CHROM_SUFFIX))
+        .map(ModularFeatureList.class::cast).toList();
+    assertEquals(files.size(), chromatograms.size());
+
+    final List<FeatureList> sequential = resolve(chromatograms, false, "sequential");
+    final List<FeatureList> chunked = resolve(chromatograms, true, "chunked");
+
+    for (int i = 0; i < chromatograms.size(); i++) {
+      // more than one chunk of rows
+      assertTrue(chromatograms.get(i).getNumberOfRows() > 512);
+      final FeatureList expected = sequential.get(i);
+      final FeatureList actual = chunked.get(i);
+      assertTrue(expected.getNumberOfRows() > 0);
+      assertEquals(expected.getNumberOfRows(), actual.getNumberOfRows(),
+          "Number of features in " + expected.getName());
+      for (int r = 0; r < expected.getNumberOfRows(); r++) {
+        final FeatureListRow e = expected.getRow(r);
+        final FeatureListRow a = actual.getRow(r);
+        assertEquals(e.getID(), a.getID());
+        final IonTimeSeries<?> es = e.getBestFeature().getFeatureData();
+        final IonTimeSeries<?> as = a.getBestFeature().getFeatureData();
+        assertEquals(es.getSpectra(), as.getSpectra(), "Spectra of row " + e.getID());
+        assertArrayEquals(es.getMzValues(new double[es.getNumberOfValues()]),
+            as.getMzValues(new double[as.getNumberOfValues()]));
+        assertArrayEquals(es.getIntensityValues(new double[es.getNumberOfValues()]),
+            as.getIntensityValues(new double[as.getNumberOfValues()]));
+        assertEquals(e.getAverageMZ(), a.getAverageMZ());
+        assertEquals(e.getAverageRT(), a.getAverageRT());
+      }
+    }
+  }
+
+  /**
+   * @return the resolved feature lists in the order of the chromatograms
+   */
+  private List<FeatureList> resolve(List<ModularFeatureList> chromatograms, boolean parallel,
+      String suffix) throws InterruptedException {
+    final MinimumSearchFeatureResolverParameters param = new MinimumSearchFeatureResolverParameters();
+    param.getParameter(MinimumSearchFeatureResolverParameters.PEAK_LISTS)
+        .setValue(new FeatureListsSelection(chromatograms.toArray(ModularFeatureList[]::new)));
+    param.setParameter(MinimumSearchFeatureResolverParameters.handleOriginal,
+        OriginalFeatureListOption.KEEP);
+    param.setParameter(MinimumSearchFeatureResolverParameters.CHROMATOGRAPHIC_THRESHOLD_LEVEL,
+        0.8);
+    param.setParameter(MinimumSearchFeatureResolverParameters.dimension,
+        ResolvingDimension.RETENTION_TIME);
+    param.setParameter(MinimumSearchFeatureResolverParameters.MIN_ABSOLUTE_HEIGHT, 3E5);
+    param.setParameter(MinimumSearchFeatureResolverParameters.MIN_NUMBER_OF_DATAPOINTS, 4);
+    param.setParameter(MinimumSearchFeatureResolverParameters.MIN_RATIO, 1.8);
+    param.setParameter(MinimumSearchFeatureResolverParameters.MIN_RELATIVE_HEIGHT, 0d);
+    param.setParameter(MinimumSearchFeatureResolverParameters.PEAK_DURATION,
+        Range.closed(0.02, 1d));
+    param.setParameter(MinimumSearchFeatureResolverParameters.SEARCH_RT_RANGE, 0.15);
+    param.setParameter(MinimumSearchFeatureResolverParameters.groupMS2Parameters, false);
+    param.setParameter(MinimumSearchFeatureResolverParameters.SUFFIX, suffix);
+
+    for (ModularFeatureList chromatogram : chromatograms) {
+      final FeatureResolverTask task = new FeatureResolverTask(ProjectService.getProject(),
+          MemoryMapStorage.forFeatureList(), chromatogram, param,
+          FeatureDataUtils.DEFAULT_CENTER_FUNCTION, Instant.now(), parallel);
+      task.run();
+      assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+    }
+    final List<FeatureList> resolved = chromatograms.stream().map(
+        chrom -> ProjectService.getProject().getFeatureList(chrom.getName() + " " + suffix))
+        .toList();
+    resolved.forEach(Assertions::assertNotNull);
+    return resolved;
+  }
+}
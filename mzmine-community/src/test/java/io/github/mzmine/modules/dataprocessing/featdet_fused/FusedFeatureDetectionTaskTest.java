@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_fused;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ADAPChromatogramBuilderParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ModularADAPChromatogramBuilderModule;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.ResolvingDimension;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.minimumsearch.MinimumSearchFeatureResolverModule;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.minimumsearch.MinimumSearchFeatureResolverParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.FeatureSmoothingOptions;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.SmoothingModule;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.SmoothingParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.savitzkygolay.SavitzkyGolayParameters;
+import io.github.mzmine.modules.io.import_rawdata_all.AdvancedSpectraImportParameters;
+import io.github.mzmine.modules.tools.batchwizard.subparameters.MassDetectorWizardOptions;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.ProjectService;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import testutils.MZmineTestUtil;
+import testutils.TaskResult;
+
+/**
+ * Checks that the {@link FusedFeatureDetectionModule} finds the same features as the chromatogram
+ * builder, smoothing and local minimum resolver run as separate steps.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+class FusedFeatureDetectionTaskTest {
+
+  private static final List<String> files = List.of("rawdatafiles/DOM_a.mzML",
+      "rawdatafiles/DOM_b.mzXML");
+
+  /**
+   * Fixed order of rows, rows with the same RT may be resolved in a different order
+   */
+  private static final Comparator<FeatureListRow> ROW_ORDER = Comparator.comparing(
+          FeatureListRow::getAverageRT).thenComparing(FeatureListRow::getAverageMZ)
+      .thenComparing(FeatureListRow::getMaxHeight);
+
+  @BeforeAll
+  void init() throws InterruptedException {
+    MZmineTestUtil.startMzmineCore();
+    var advancedImport = AdvancedSpectraImportParameters.create(
+        MassDetectorWizardOptions.ABSOLUTE_NOISE_LEVEL, 0d, 0d, null, ScanSelection.ALL_SCANS,
+        false);
+    MZmineTestUtil.importFiles(files, 60, advancedImport);
+  }
+
+  @AfterAll
+  void tearDown() {
+    MZmineTestUtil.cleanProject();
+  }
+
+  @Test
+  void sameFeaturesAsSeparateSteps() throws InterruptedException {
+    final List<FeatureList> separate = runSeparateSteps();
+    final List<FeatureList> fused = runFused();
+
+    for (RawDataFile raw : ProjectService.getProject().getCurrentRawDataFiles()) {
+      final FeatureList expected = findList(separate, raw);
+      final FeatureList actual = findList(fused, raw);
+      assertTrue(expected.getNumberOfRows() > 0);
+      assertEquals(expected.getNumberOfRows(), actual.getNumberOfRows(),
+          "Number of features in " + raw.getName());
+
+      final List<FeatureListRow> expectedRows = expected.getRows().stream().sorted(ROW_ORDER)
+          .toList();
+      final List<FeatureListRow> actualRows = actual.getRows().stream().sorted(ROW_ORDER)
+          .toList();
+      for (int i = 0; i < expectedRows.size(); i++) {
+        final FeatureListRow e = expectedRows.get(i);
+        final FeatureListRow a = actualRows.get(i);
+        assertEquals(e.getAverageMZ(), a.getAverageMZ());
+        assertEquals(e.getAverageRT(), a.getAverageRT());
+        assertEquals(e.getMaxHeight(), a.getMaxHeight());
+        final IonTimeSeries<?> es = e.getBestFeature().getFeatureData();
+        final IonTimeSeries<?> as = a.getBestFeature().getFeatureData();
+        assertEquals(es.getSpectra(), as.getSpectra());
+        assertArrayEquals(es.getIntensityValues(new double[es.getNumberOfValues()]),
+            as.getIntensityValues(new double[as.getNumberOfValues()]));
+      }
+    }
+  }
+
+  private List<FeatureList> runSeparateSteps() throws InterruptedException {
+    final ADAPChromatogramBuilderParameters paramChrom = new ADAPChromatogramBuilderParameters();
+    paramChrom.getParameter(ADAPChromatogramBuilderParameters.dataFiles)
+        .setValue(RawDataFilesSelectionType.ALL_FILES);
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.scanSelection, new ScanSelection(1));
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.minimumConsecutiveScans, 4);
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.mzTolerance,
+        new MZTolerance(0.002, 10));
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.minHighestPoint, 3E5);
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.minGroupIntensity, 1E5);
+    paramChrom.setParameter(ADAPChromatogramBuilderParameters.suffix, "chrom");
+    assertFinished(MZmineTestUtil.callModuleWithTimeout(60,
+        ModularADAPChromatogramBuilderModule.class, paramChrom));
+
+    final ParameterSet paramSmooth = new SmoothingParameters().cloneParameterSet();
+    paramSmooth.getParameter(SmoothingParameters.featureLists)
+        .setValue(new FeatureListsSelection(FeatureListsSelectionType.NAME_PATTERN));
+    paramSmooth.getParameter(SmoothingParameters.featureLists).getValue()
+        .setNamePattern("*chrom");
+    paramSmooth.setParameter(SmoothingParameters.handleOriginal, OriginalFeatureListOption.REMOVE);
+    paramSmooth.setParameter(SmoothingParameters.suffix, "smooth");
+    setSmoothing(paramSmooth);
+    assertFinished(
+        MZmineTestUtil.callModuleWithTimeout(60, SmoothingModule.class, paramSmooth));
+
+    final MinimumSearchFeatureResolverParameters paramResolver = new MinimumSearchFeatureResolverParameters();
+    paramResolver.getParameter(MinimumSearchFeatureResolverParameters.PEAK_LISTS)
+        .setValue(new FeatureListsSelection(FeatureListsSelectionType.NAME_PATTERN));
+    paramResolver.getParameter(MinimumSearchFeatureResolverParameters.PEAK_LISTS).getValue()
+        .setNamePattern("*smooth");
+    paramResolver.setParameter(MinimumSearchFeatureResolverParameters.handleOriginal,
+        OriginalFeatureListOption.REMOVE);
+    paramResolver.setParameter(MinimumSearchFeatureResolverParameters.dimension,
+        ResolvingDimension.RETENTION_TIME);
+    paramResolver.setParameter(MinimumSearchFeatureResolverParameters.groupMS2Parameters, false);
+    paramResolver.setParameter(MinimumSearchFeatureResolverParameters.SUFFIX, "separate");
+    setResolver(paramResolver);
+    assertFinished(MZmineTestUtil.callModuleWithTimeout(60,
+        MinimumSearchFeatureResolverModule.class, paramResolver));
+
+    return listsWithSuffix("separate");
+  }
+
+  private List<FeatureList> runFused() throws InterruptedException {
+    final ParameterSet param = new FusedFeatureDetectionParameters().cloneParameterSet();
+    param.getParameter(FusedFeatureDetectionParameters.dataFiles)
+        .setValue(RawDataFilesSelectionType.ALL_FILES);
+    param.setParameter(FusedFeatureDetectionParameters.scanSelection, new ScanSelection(1));
+    param.setParameter(FusedFeatureDetectionParameters.minimumConsecutiveScans, 4);
+    param.setParameter(FusedFeatureDetectionParameters.mzTolerance, new MZTolerance(0.002, 10));
+    param.setParameter(FusedFeatureDetectionParameters.minHighestPoint, 3E5);
+    param.setParameter(FusedFeatureDetectionParameters.minGroupIntensity, 1E5);
+    param.setParameter(FusedFeatureDetectionParameters.smoothing, true);
+    setSmoothing(param.getParameter(FusedFeatureDetectionParameters.smoothing)
+        .getEmbeddedParameters());
+    setResolver(param.getValue(FusedFeatureDetectionParameters.resolver));
+    param.setParameter(FusedFeatureDetectionParameters.groupMS2Parameters, false);
+    param.setParameter(FusedFeatureDetectionParameters.suffix, "fused");
+    assertFinished(
+        MZmineTestUtil.callModuleWithTimeout(60, FusedFeatureDetectionModule.class, param));
+
+    return listsWithSuffix("fused");
+  }
+
+  /**
+   * Savitzky Golay smoothing in RT as in the feature finding test
+   */
+  private static void setSmoothing(ParameterSet smoothing) {
+    smoothing.setParameter(SmoothingParameters.smoothingAlgorithm,
+        FeatureSmoothingOptions.SAVITZKY_GOLAY);
+    final var sgParam = smoothing.getEmbeddedParameterValue(
+        SmoothingParameters.smoothingAlgorithm);
+    sgParam.setParameter(SavitzkyGolayParameters.mobilitySmoothing, false);
+    sgParam.setParameter(SavitzkyGolayParameters.rtSmoothing, true, 5);
+  }
+
+  /**
+   * Local minimum resolver settings as in the feature finding test
+   */
+  private static void setResolver(ParameterSet resolver) {
+    resolver.setParameter(MinimumSearchFeatureResolverParameters.CHROMATOGRAPHIC_THRESHOLD_LEVEL,
+        0.8);
+    resolver.setParameter(MinimumSearchFeatureResolverParameters.MIN_ABSOLUTE_HEIGHT, 3E5);
+    resolver.setParameter(MinimumSearchFeatureResolverParameters.MIN_NUMBER_OF_DATAPOINTS, 4);
+    resolver.setParameter(MinimumSearchFeatureResolverParameters.MIN_RATIO, 1.8);
+    resolver.setParameter(MinimumSearchFeatureResolverParameters.MIN_RELATIVE_HEIGHT, 0d);
+    resolver.setParameter(MinimumSearchFeatureResolverParameters.PEAK_DURATION,
+        Range.closed(0.02, 1d));
+    resolver.setParameter(MinimumSearchFeatureResolverParameters.SEARCH_RT_RANGE, 0.15);
+  }
+
+  private static void assertFinished(TaskResult finished) {
+    assertInstanceOf(TaskResult.FINISHED.class, finished, finished.description());
+  }
+
+  private static List<FeatureList> listsWithSuffix(String suffix) {
+    final List<FeatureList> lists = ProjectService.getProject().getCurrentFeatureLists().stream()
+        .filter(flist -> flist.getName().endsWith(" " + suffix)).toList();
+    assertEquals(files.size(), lists.size());
+    return lists;
+  }
+
+  private static FeatureList findList(List<FeatureList> lists, RawDataFile raw) {
+    final FeatureList flist = lists.stream().filter(f -> f.getRawDataFile(0) == raw).findFirst()
+        .orElse(null);
+    assertNotNull(flist, "No feature list of " + raw.getName());
+    return flist;
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetectorParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+class MassDetectionTaskTest {
+
+  private static final double NOISE_LEVEL = 50;
+
+  /**
+   * Scans are detected in parallel shards, results need to match the single scan detection
+   */
+  @Test
+  void testShardedDetectionMatchesSingleScans() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("profile", null, null, Color.BLACK);
+    final Random random = new Random(42);
+    // not a multiple of the shard size
+    final int numScans = 1001;
+    for (int s = 0; s < numScans; s++) {
+      file.addScan(createProfileScan(file, s, random));
+    }
+
+    final ParameterSet parameters = new MassDetectionParameters().cloneParameterSet();
+    final ParameterSet detectorParameters = MassDetectors.EXACT.getModuleParameters()
+        .cloneParameterSet();
+    detectorParameters.setParameter(ExactMassDetectorParameters.noiseLevel, NOISE_LEVEL);
+    parameters.getParameter(MassDetectionParameters.massDetector)
+        .setValue(MassDetectors.EXACT, detectorParameters);
+    // only MS1
+    parameters.setParameter(MassDetectionParameters.scanSelection, new ScanSelection(1));
+    parameters.setParameter(MassDetectionParameters.scanTypes, SelectedScanTypes.SCANS);
+    parameters.setParameter(MassDetectionParameters.denormalizeMSnScans, false);
+
+    final MassDetectionTask task = new MassDetectionTask(file, parameters, null, Instant.now());
+    task.run();
+    assertEquals(TaskStatus.FINISHED, task.getStatus());
+    assertEquals(1d, task.getFinishedPercentage());
+
+    for (Scan scan : file.getScans()) {
+      final MassList masses = scan.getMassList();
+      if (scan.getMSLevel() != 1) {
+        assertNull(masses);
+        continue;
+      }
+      assertNotNull(masses);
+      final double[][] expected = ExactMassDetector.getMassValues(scan, NOISE_LEVEL);
+      assertArrayEquals(expected[0], masses.getMzValues(new double[0]));
+      assertArrayEquals(expected[1], masses.getIntensityValues(new double[0]));
+    }
+  }
+
+  private static Scan createProfileScan(RawDataFile file, int scanNumber, Random random) {
+    final int n = 400;
+    final double[] mzs = new double[n];
+    final double[] intensities = new double[n];
+    for (int i = 0; i < n; i++) {
+      mzs[i] = 200 + i * 0.01;
+      // gaussian shaped peaks every 20 data points
+      final double distance = (i % 20) - 10;
+      intensities[i] = Math.exp(-distance * distance / 4) * random.nextInt(1000);
+    }
+    final int msLevel = scanNumber % 5 == 0 ? 2 : 1;
+    return new SimpleScan(file, scanNumber, msLevel, scanNumber * 0.01f, null, mzs, intensities,
+        MassSpectrumType.PROFILE, PolarityType.POSITIVE, "", null);
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+/**
+ * Compares the {@link GapRtSchedule} against offering every scan to every gap on a synthetic file
+ * with 10k gaps. Logs the time of both paths and checks that the same peaks are found.
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+class GapRtScheduleBenchmarkTest {
+
+  private static final Logger logger = Logger.getLogger(
+      GapRtScheduleBenchmarkTest.class.getName());
+
+  private static final int NUM_SCANS = 3000;
+  private static final int SIGNALS_PER_SCAN = 500;
+  private static final int NUM_GAPS = 10_000;
+  private static final float MAX_RT = 30f;
+
+  private RawDataFile file;
+  private List<Scan> scans;
+
+  @BeforeAll
+  void createSyntheticFile() {
+    final Random random = new Random(42);
+    file = new RawDataFileImpl("synthetic gaps", null, null, Color.BLACK);
+    scans = new ArrayList<>(NUM_SCANS);
+    for (int i = 0; i < NUM_SCANS; i++) {
+      final double[] mzs = new double[SIGNALS_PER_SCAN];
+      final double[] intensities = new double[SIGNALS_PER_SCAN];
+      for (int j = 0; j < SIGNALS_PER_SCAN; j++) {
+        mzs[j] = 100d + random.nextDouble() * 900d;
+        intensities[j] = random.nextDouble() * 1E5;
+      }
+      Arrays.sort(mzs);
+      final float rt = MAX_RT * i / NUM_SCANS;
+      scans.add(new SimpleScan(file, i, 1, rt, null, mzs, intensities, MassSpectrumType.CENTROIDED,
+          PolarityType.POSITIVE, "", Range.closed(100d, 1000d)));
+    }
+  }
+
+  private List<TestGap> createGaps() {
+    final Random random = new Random(7);
+    final List<TestGap> gaps = new ArrayList<>(NUM_GAPS);
+    for (int i = 0; i < NUM_GAPS; i++) {
+      final double mz = 100d + random.nextDouble() * 900d;
+      final float rt = random.nextFloat() * MAX_RT;
+      gaps.add(new TestGap(file, Range.closed(mz - 0.5, mz + 0.5),
+          Range.closed(rt - 0.1f, rt + 0.1f)));
+    }
+    return gaps;
+  }
+
+  @Test
+  void scheduleFindsSamePeaksAsAllGaps() {
+    final List<TestGap> allGaps = createGaps();
+    final long startAll = System.nanoTime();
+    for (Scan scan : scans) {
+      for (Gap gap : allGaps) {
+        gap.offerNextScan(scan);
+      }
+    }
+    final long allNanos = System.nanoTime() - startAll;
+
+    final List<TestGap> scheduledGaps = createGaps();
+    final long startScheduled = System.nanoTime();
+    final GapRtSchedule<TestGap> schedule = new GapRtSchedule<>(scheduledGaps);
+    for (Scan scan : scans) {
+      for (Gap gap : schedule.advanceTo(scan.getRetentionTime())) {
+        gap.offerNextScan(scan);
+      }
+    }
+    final long scheduledNanos = System.nanoTime() - startScheduled;
+
+    logger.info(
+        "Gap filling of %d gaps in %d scans: all gaps %.1f ms, RT schedule %.1f ms".formatted(
+            NUM_GAPS, NUM_SCANS, allNanos / 1E6, scheduledNanos / 1E6));
+
+    for (int i = 0; i < NUM_GAPS; i++) {
+      final TestGap expected = allGaps.get(i);
+      final TestGap actual = scheduledGaps.get(i);
+      expected.noMoreOffers();
+      actual.noMoreOffers();
+      assertEquals(expected.describeBestPeak(), actual.describeBestPeak());
+    }
+  }
+
+  @Test
+  void unsortedScansAreOfferedToAllOpenGaps() {
+    final List<TestGap> gaps = createGaps();
+    final GapRtSchedule<TestGap> schedule = new GapRtSchedule<>(gaps);
+    final Scan last = scans.getLast();
+    final long open = gaps.stream().filter(g -> g.getRtRange().contains(last.getRetentionTime()))
+        .count();
+    assertEquals(open, schedule.advanceTo(last.getRetentionTime()).size());
+
+    final Scan first = scans.getFirst();
+    final long openFirst = gaps.stream()
+        .filter(g -> g.getRtRange().contains(first.getRetentionTime())).count();
+    assertEquals(openFirst, schedule.advanceTo(first.getRetentionTime()).size());
+  }
+
+  /**
+   * Does not add features to rows
+   */
+  private static class TestGap extends Gap {
+
+    TestGap(RawDataFile file, Range<Double> mzRange, Range<Float> rtRange) {
+      super(null, file, mzRange, rtRange, 0.2);
+    }
+
+    @Override
+    protected boolean addFeatureToRow() {
+      return true;
+    }
+
+    String describeBestPeak() {
+      if (bestPeakDataPoints == null) {
+        return "";
+      }
+      final StringBuilder b = new StringBuilder();
+      for (GapDataPoint dp : bestPeakDataPoints) {
+        b.append(dp.getScan().getScanNumber()).append(':').append(dp.getIntensity()).append(';');
+      }
+      return b.toString();
+    }
+  }
+}
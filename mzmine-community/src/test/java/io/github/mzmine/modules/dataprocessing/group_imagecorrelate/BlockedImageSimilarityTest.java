@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_imagecorrelate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.util.maths.similarity.SimilarityMeasure;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class BlockedImageSimilarityTest {
+
+  private static final double LOWER = 2;
+  private static final double UPPER = 40;
+
+  private static double[][] createImages(int n, int pixels) {
+    Random random = new Random(42);
+    double[][] images = new double[n][pixels];
+    for (int i = 0; i < n; i++) {
+      // some images correlate with the first to get pairs above the threshold
+      for (int p = 0; p < pixels; p++) {
+        double value = random.nextDouble() < 0.3 ? random.nextDouble() * 50 : 0;
+        images[i][p] = i % 3 == 0 && i > 0 ? images[0][p] * 0.8 + random.nextDouble() : value;
+      }
+    }
+    return images;
+  }
+
+  /**
+   * pearson on all pixels that are kept in at least one image
+   */
+  private static double naivePearson(double[] a, double[] b, int minPixels) {
+    int n = 0;
+    double sumX = 0, sumY = 0, sumXY = 0, sumX2 = 0, sumY2 = 0;
+    for (int i = 0; i < a.length; i++) {
+      if (isKept(a[i]) || isKept(b[i])) {
+        n++;
+        double x = (float) a[i];
+        double y = (float) b[i];
+        sumX += x;
+        sumY += y;
+        sumXY += x * y;
+        sumX2 += x * x;
+        sumY2 += y * y;
+      }
+    }
+    if (n < minPixels) {
+      return 0;
+    }
+    double denominator = Math.sqrt((n * sumX2 - sumX * sumX) * (n * sumY2 - sumY * sumY));
+    return denominator == 0 ? 0 : (n * sumXY - sumX * sumY) / denominator;
+  }
+
+  private static boolean isKept(double value) {
+    return value >= LOWER && value <= UPPER;
+  }
+
+  @Test
+  void tilesMatchSinglePairs() {
+    // more images than one tile and pixels not a multiple of 64
+    int n = 150;
+    int pixels = 2_500;
+    double[][] data = createImages(n, pixels);
+    PackedImages images = new PackedImages(pixels);
+    for (int i = 0; i < n; i++) {
+      images.add(i, data[i], LOWER, UPPER);
+    }
+
+    BlockedImageSimilarity similarity = new BlockedImageSimilarity(SimilarityMeasure.PEARSON, 5);
+    AtomicLong processed = new AtomicLong();
+    Long2DoubleMap scores = similarity.calculateAboveThreshold(images, 0.7, () -> false,
+        processed);
+    assertNotNull(scores);
+    assertEquals((long) n * (n - 1) / 2, processed.get());
+
+    int above = 0;
+    for (int a = 0; a < n; a++) {
+      for (int b = a + 1; b < n; b++) {
+        double single = similarity.similarity(images, a, b);
+        assertEquals(naivePearson(data[a], data[b], 5), single, 1e-9);
+
+        long key = BlockedImageSimilarity.pairKey(a, b);
+        if ((float) single >= 0.7) {
+          above++;
+          assertTrue(scores.containsKey(key));
+          assertEquals(single, scores.get(key));
+        } else {
+          assertTrue(!scores.containsKey(key));
+        }
+      }
+    }
+    assertTrue(above > 0);
+    assertEquals(above, scores.size());
+  }
+}
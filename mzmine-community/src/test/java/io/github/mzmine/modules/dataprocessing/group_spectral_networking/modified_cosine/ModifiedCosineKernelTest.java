@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_spectral_networking.modified_cosine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.features.correlation.SpectralSimilarity;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.scans.ScanAlignment;
+import io.github.mzmine.util.scans.similarity.Weights;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ModifiedCosineKernelTest {
+
+  private final MZTolerance mzTol = new MZTolerance(0.005, 10);
+
+  /**
+   * Random spectrum with signals close to the given base signals (or shifted) to create matches
+   * and competing candidates within tolerance. Sorted by descending intensity.
+   */
+  private static DataPoint[] randomSpectrum(Random random, double[] baseMzs, double shift) {
+    final int n = 5 + random.nextInt(40);
+    final DataPoint[] dps = new DataPoint[n];
+    for (int i = 0; i < n; i++) {
+      double mz;
+      if (random.nextInt(3) > 0) {
+        mz = baseMzs[random.nextInt(baseMzs.length)] + (random.nextDouble() - 0.5) * 0.012;
+        if (random.nextBoolean()) {
+          mz += shift;
+        }
+      } else {
+        mz = 50 + random.nextDouble() * 500;
+      }
+      dps[i] = new SimpleDataPoint(mz, 1 + random.nextDouble() * 1e5);
+    }
+    Arrays.sort(dps, ScanAlignment.sorter);
+    return dps;
+  }
+
+  @Test
+  void sameScoresAsAlignedDataPoints() {
+    final Random random = new Random(42);
+    final int minMatch = 3;
+    final ModifiedCosineKernel kernel = new ModifiedCosineKernel(mzTol, minMatch);
+
+    int compared = 0;
+    for (int i = 0; i < 2000; i++) {
+      final double[] baseMzs = random.doubles(15, 50, 400).toArray();
+      final double precursorA = 400 + random.nextDouble() * 100;
+      final double precursorB = random.nextInt(4) == 0 ? -1 : precursorA + 14.01565;
+      final DataPoint[] a = randomSpectrum(random, baseMzs, 0);
+      final DataPoint[] b = randomSpectrum(random, baseMzs, precursorB - precursorA);
+
+      final SpectralSimilarity expected = ModifiedCosineSpectralNetworkingTask.createMS2SimModificationAware(
+          mzTol, a, b, minMatch, ModifiedCosineSpectralNetworkingTask.SIZE_OVERLAP, precursorA,
+          precursorB);
+      final SpectralSimilarity actual = kernel.calculate(PackedSpectrum.of(a, Weights.SQRT),
+          PackedSpectrum.of(b, Weights.SQRT), precursorA, precursorB);
+      assertEquals(expected, actual);
+      if (expected != null) {
+        compared++;
+      }
+    }
+    // make sure that the test covers matching spectra
+    assertTrue(compared > 100, "Only %d matching spectra were compared".formatted(compared));
+  }
+
+  @Test
+  void minMatch() {
+    final DataPoint[] a = {new SimpleDataPoint(100, 50), new SimpleDataPoint(200, 10)};
+    final DataPoint[] b = {new SimpleDataPoint(200.001, 40), new SimpleDataPoint(300, 20)};
+    final PackedSpectrum packedA = PackedSpectrum.of(a, Weights.SQRT);
+    final PackedSpectrum packedB = PackedSpectrum.of(b, Weights.SQRT);
+
+    assertNull(new ModifiedCosineKernel(mzTol, 2).calculate(packedA, packedB, -1, -1));
+    final SpectralSimilarity sim = new ModifiedCosineKernel(mzTol, 1).calculate(packedA, packedB,
+        -1, -1);
+    assertNotNull(sim);
+    assertEquals(1, sim.overlap());
+    assertEquals(ModifiedCosineSpectralNetworkingTask.createMS2Sim(mzTol, a, b, 1), sim);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_formulapredictionfeaturelist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openscience.cdk.config.Isotopes;
+import org.openscience.cdk.formula.MolecularFormulaGenerator;
+import org.openscience.cdk.formula.MolecularFormulaRange;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+class FormulaCandidateTableTest {
+
+  private static MolecularFormulaRange elements;
+
+  @BeforeAll
+  static void createRange() throws IOException {
+    final Isotopes isotopes = Isotopes.getInstance();
+    elements = new MolecularFormulaRange();
+    elements.addIsotope(isotopes.getMajorIsotope("C"), 0, 30);
+    elements.addIsotope(isotopes.getMajorIsotope("H"), 0, 60);
+    elements.addIsotope(isotopes.getMajorIsotope("N"), 0, 5);
+    elements.addIsotope(isotopes.getMajorIsotope("O"), 0, 10);
+    elements.addIsotope(isotopes.getMajorIsotope("S"), 0, 2);
+  }
+
+  @Test
+  void testSameCandidatesAsGenerator() {
+    final FormulaCandidateTable table = new FormulaCandidateTable(elements, 0.005);
+    for (double mass : new double[]{180.0634, 255.0773, 304.2402, 304.2410, 432.0950}) {
+      final double min = mass - 0.004;
+      final double max = mass + 0.004;
+      final List<IMolecularFormula> formulas = table.getFormulas(min, max);
+      assertEquals(generate(min, max), toStrings(formulas));
+
+      // sorted by mass
+      for (int i = 1; i < formulas.size(); i++) {
+        assertTrue(MolecularFormulaManipulator.getMass(formulas.get(i - 1),
+            MolecularFormulaManipulator.MonoIsotopic) <= MolecularFormulaManipulator.getMass(
+            formulas.get(i), MolecularFormulaManipulator.MonoIsotopic));
+      }
+    }
+  }
+
+  @Test
+  void testParallelQueriesAndRelease() {
+    final FormulaCandidateTable table = new FormulaCandidateTable(elements, 0.01);
+    final List<Set<String>> results = IntStream.range(0, 64).parallel()
+        .mapToObj(i -> toStrings(table.getFormulas(300 + i * 0.002, 300.01 + i * 0.002)))
+        .toList();
+    for (int i = 0; i < results.size(); i++) {
+      assertEquals(generate(300 + i * 0.002, 300.01 + i * 0.002), results.get(i));
+    }
+
+    final int buckets = table.getNumberOfBuckets();
+    table.releaseBelow(300.1);
+    assertTrue(table.getNumberOfBuckets() < buckets);
+    // released buckets are generated again
+    assertEquals(generate(300, 300.01), toStrings(table.getFormulas(300, 300.01)));
+  }
+
+  private static Set<String> generate(double min, double max) {
+    final MolecularFormulaGenerator generator = new MolecularFormulaGenerator(
+        SilentChemObjectBuilder.getInstance(), min, max, elements);
+    final Set<String> formulas = new TreeSet<>();
+    IMolecularFormula formula;
+    while ((formula = generator.getNextFormula()) != null) {
+      formulas.add(MolecularFormulaManipulator.getString(formula));
+    }
+    return formulas;
+  }
+
+  private static Set<String> toStrings(List<IMolecularFormula> formulas) {
+    return formulas.stream().map(MolecularFormulaManipulator::getString)
+        .collect(Collectors.toCollection(TreeSet::new));
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_localcsvsearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.compoundannotations.CompoundDBAnnotation;
+import io.github.mzmine.datamodel.features.compoundannotations.SimpleCompoundDBAnnotation;
+import io.github.mzmine.datamodel.features.types.numbers.PrecursorMZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+class CompiledCompoundDatabaseTest {
+
+  private static final int LINES = 2001; // including header
+  private static final List<List<CompoundDBAnnotation>> annotations = new ArrayList<>();
+
+  @BeforeAll
+  static void createAnnotations() {
+    final Random random = new Random(42);
+    annotations.add(List.of()); // header
+    for (int line = 1; line < LINES; line++) {
+      final double neutralMass = 100 + random.nextDouble() * 900;
+      // RT <= 0 is a wildcard
+      final float rt = random.nextInt(4) == 0 ? 0f : random.nextFloat() * 20f;
+      final List<CompoundDBAnnotation> lineAnnotations = new ArrayList<>();
+      for (double adduct : new double[]{1.007276, 22.989218, 18.033823}) {
+        final SimpleCompoundDBAnnotation annotation = new SimpleCompoundDBAnnotation();
+        annotation.put(PrecursorMZType.class, neutralMass + adduct);
+        annotation.put(RTType.class, rt);
+        lineAnnotations.add(annotation);
+      }
+      // no m/z, not indexed
+      lineAnnotations.add(new SimpleCompoundDBAnnotation());
+      annotations.add(lineAnnotations);
+    }
+  }
+
+  private static CompiledCompoundDatabase compile() {
+    final CompiledCompoundDatabase database = CompiledCompoundDatabase.compile(1, LINES,
+        annotations::get, () -> {
+        }, () -> false);
+    assertNotNull(database);
+    return database;
+  }
+
+  @Test
+  void testCompile() {
+    final CompiledCompoundDatabase database = compile();
+    assertEquals((LINES - 1) * 3, database.size());
+    for (int i = 1; i < database.size(); i++) {
+      assertTrue(database.getMz(i - 1) <= database.getMz(i));
+    }
+    for (int i = 0; i < database.size(); i++) {
+      final CompoundDBAnnotation annotation = annotations.get(database.getLine(i))
+          .get(database.getAnnotationIndex(i));
+      assertEquals(annotation.getPrecursorMZ(), database.getMz(i), 0d);
+    }
+    assertNull(CompiledCompoundDatabase.compile(1, LINES, annotations::get, () -> {
+    }, () -> true));
+  }
+
+  @Test
+  void testWriteAndOpen(@TempDir Path dir) {
+    final CompiledCompoundDatabase database = compile();
+    final File file = dir.resolve("db" + CompiledCompoundDatabase.FILE_SUFFIX).toFile();
+    assertTrue(database.write(file));
+
+    final CompiledCompoundDatabase opened = CompiledCompoundDatabase.open(file);
+    assertNotNull(opened);
+    assertEquals(database.size(), opened.size());
+    for (int i = 0; i < database.size(); i++) {
+      assertEquals(database.getMz(i), opened.getMz(i), 0d);
+      assertEquals(database.getLine(i), opened.getLine(i));
+      assertEquals(database.getAnnotationIndex(i), opened.getAnnotationIndex(i));
+    }
+    assertNull(CompiledCompoundDatabase.open(dir.resolve("missing").toFile()));
+  }
+
+  @Test
+  void testContentHash() {
+    final List<String[]> values = List.of(new String[]{"name", "mz"},
+        new String[]{"a", "100.5"});
+    final String hash = CompiledCompoundDatabase.contentHash(values, "settings");
+    assertEquals(hash, CompiledCompoundDatabase.contentHash(
+        List.of(new String[]{"name", "mz"}, new String[]{"a", "100.5"}), "settings"));
+    assertTrue(!hash.equals(CompiledCompoundDatabase.contentHash(values, "other")));
+    assertTrue(!hash.equals(CompiledCompoundDatabase.contentHash(
+        List.of(new String[]{"name", "mz"}, new String[]{"a", "100.6"}), "settings")));
+  }
+
+  @Test
+  void testSweepFindsAllCandidates() {
+    final CompiledCompoundDatabase database = compile();
+    final MZTolerance mzTolerance = new MZTolerance(0.002, 5);
+    final RTTolerance rtTolerance = new RTTolerance(0.5f, Unit.MINUTES);
+
+    final Random random = new Random(7);
+    final List<FeatureListRow> rows = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      final FeatureListRow row = Mockito.mock(FeatureListRow.class);
+      // half of the rows close to a database entry
+      final double mz = i % 2 == 0 ? database.getMz(random.nextInt(database.size()))
+                                     + (random.nextDouble() - 0.5) * 0.01
+          : 100 + random.nextDouble() * 1000;
+      Mockito.when(row.getAverageMZ()).thenReturn(mz);
+      Mockito.when(row.getAverageRT()).thenReturn(random.nextFloat() * 20f);
+      rows.add(row);
+    }
+    rows.sort((a, b) -> Double.compare(a.getAverageMZ(), b.getAverageMZ()));
+
+    final Set<String> swept = new HashSet<>();
+    database.forEachCandidate(rows, mzTolerance, rtTolerance, null, null,
+        (row, entry) -> swept.add(rows.indexOf(row) + "_" + entry));
+
+    final Set<String> expected = new HashSet<>();
+    for (int r = 0; r < rows.size(); r++) {
+      final FeatureListRow row = rows.get(r);
+      for (int i = 0; i < database.size(); i++) {
+        final CompoundDBAnnotation annotation = annotations.get(database.getLine(i))
+            .get(database.getAnnotationIndex(i));
+        final Float rt = annotation.getRT();
+        if (mzTolerance.checkWithinTolerance(annotation.getPrecursorMZ(), row.getAverageMZ())
+            && (rt == null || rt <= 0 || rtTolerance.checkWithinTolerance(rt,
+            row.getAverageRT()))) {
+          expected.add(r + "_" + i);
+        }
+      }
+    }
+    assertTrue(!expected.isEmpty());
+    assertTrue(swept.containsAll(expected));
+  }
+
+  @Test
+  void testPruneCache(@TempDir Path dir) throws IOException {
+    final long now = System.currentTimeMillis();
+    final File old = cacheFile(dir, "old", 10, now - TimeUnit.DAYS.toMillis(100));
+    final File lru = cacheFile(dir, "lru", 600, now - TimeUnit.DAYS.toMillis(2));
+    final File recent = cacheFile(dir, "recent", 600, now - TimeUnit.DAYS.toMillis(1));
+    final File current = cacheFile(dir, "current", 600, now - TimeUnit.DAYS.toMillis(3));
+    final File staleTemp = cacheFile(dir, "stale.tmp", 10, now - TimeUnit.DAYS.toMillis(2));
+    final File temp = cacheFile(dir, "writing.tmp", 10, now);
+
+    CompiledCompoundDatabase.prune(dir.toFile(), current, 1000,
+        CompiledCompoundDatabase.MAX_AGE_MILLIS);
+
+    // the file in use is kept even though it is the least recently used
+    assertTrue(current.exists());
+    assertTrue(recent.exists());
+    assertFalse(lru.exists());
+    assertFalse(old.exists());
+    assertFalse(staleTemp.exists());
+    assertTrue(temp.exists());
+  }
+
+  private static File cacheFile(Path dir, String name, int bytes, long lastModified)
+      throws IOException {
+    final String fileName = name.endsWith(".tmp") ? name : name + ".mzcdb";
+    final File file = Files.write(dir.resolve(fileName), new byte[bytes]).toFile();
+    assertTrue(file.setLastModified(lastModified));
+    return file;
+  }
+}
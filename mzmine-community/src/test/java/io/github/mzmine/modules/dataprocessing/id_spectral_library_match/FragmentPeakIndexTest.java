@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_spectral_library_match;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntry;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class FragmentPeakIndexTest {
+
+  private static SpectralLibraryEntry entry(double precursorMz, double... mzs) {
+    final double[] intensities = new double[mzs.length];
+    for (int i = 0; i < mzs.length; i++) {
+      intensities[i] = 100 + i;
+    }
+    return new SpectralDBEntry(null, mzs, intensities,
+        Map.of(DBEntryField.PRECURSOR_MZ, precursorMz));
+  }
+
+  private static DataPoint[] spectrum(double... mzs) {
+    final DataPoint[] dps = new DataPoint[mzs.length];
+    for (int i = 0; i < mzs.length; i++) {
+      dps[i] = new SimpleDataPoint(mzs[i], 1000);
+    }
+    return dps;
+  }
+
+  @Test
+  void testFindCandidates() {
+    final List<SpectralLibraryEntry> entries = List.of( //
+        entry(300, 50.01, 80.02, 120.03), // 0 shares 3
+        entry(300, 50.01, 99.00), // 1 shares 1
+        entry(300, 150.0, 200.0), // 2 shares none
+        entry(300, 50.012, 80.021, 299.9), // 3 shares 2, precursor signal is not indexed
+        entry(300, 50.01, 80.02, 120.03, 170.0)); // 4 shares 3
+    final MZTolerance tolerance = new MZTolerance(0.005, 0);
+    final FragmentPeakIndex index = FragmentPeakIndex.build(entries, tolerance,
+        FragmentPeakIndex.DEFAULT_INDEXED_SIGNALS, new MZTolerance(4, 0));
+
+    final List<DataPoint[]> query = List.of(spectrum(50.01, 80.02, 120.03, 299.9));
+    // all sharing entries sorted by index
+    assertArrayEquals(new int[]{0, 1, 3, 4}, index.findCandidates(query, 0, entries.size(), 10));
+    // best 3, ties resolved by index
+    assertArrayEquals(new int[]{0, 3, 4}, index.findCandidates(query, 0, entries.size(), 3));
+    assertArrayEquals(new int[]{0, 4}, index.findCandidates(query, 0, entries.size(), 2));
+    // restricted range
+    assertArrayEquals(new int[]{1, 3}, index.findCandidates(query, 1, 4, 10));
+    // signals of all query spectra are counted
+    assertArrayEquals(new int[]{0, 4},
+        index.findCandidates(List.of(query.getFirst(), query.getFirst()), 0, entries.size(), 2));
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.export_features_csv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.modules.io.export_features_csv.NumpyColumnWriter.NumpyType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+class NumpyColumnWriterTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testHeader() {
+    final byte[] header = NumpyColumnWriter.header(NumpyType.FLOAT64, 1234);
+    assertEquals(0, header.length % 64);
+    assertEquals((byte) 0x93, header[0]);
+    assertEquals("NUMPY", new String(header, 1, 5, StandardCharsets.US_ASCII));
+    assertEquals(1, header[6]);
+    assertEquals(0, header[7]);
+
+    final int headerLength = ByteBuffer.wrap(header, 8, 2).order(ByteOrder.LITTLE_ENDIAN)
+        .getShort();
+    assertEquals(header.length - 10, headerLength);
+    final String dict = new String(header, 10, headerLength, StandardCharsets.US_ASCII);
+    assertTrue(dict.startsWith("{'descr': '<f8', 'fortran_order': False, 'shape': (1234,), }"));
+    assertTrue(dict.endsWith("\n"));
+  }
+
+  @Test
+  void testWriteArray() throws IOException {
+    final File file = tempDir.resolve("values.npy").toFile();
+    final double[] values = {1.5, Double.NaN, -3, 1e10};
+    NumpyColumnWriter.writeArray(file, NumpyType.FLOAT32, values.length, i -> values[i]);
+
+    final byte[] bytes = Files.readAllBytes(file.toPath());
+    final int dataStart = NumpyColumnWriter.header(NumpyType.FLOAT32, values.length).length;
+    assertEquals(dataStart + values.length * 4, bytes.length);
+
+    final ByteBuffer data = ByteBuffer.wrap(bytes, dataStart, values.length * 4)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    for (double value : values) {
+      assertEquals((float) value, data.getFloat());
+    }
+  }
+
+  @Test
+  void testWriteManyValues() throws IOException {
+    // more values than the write buffer
+    final File file = tempDir.resolve("ids.npy").toFile();
+    final int n = 20_000;
+    NumpyColumnWriter.writeArray(file, NumpyType.INT32, n, i -> i);
+
+    final byte[] bytes = Files.readAllBytes(file.toPath());
+    final int dataStart = NumpyColumnWriter.header(NumpyType.INT32, n).length;
+    final ByteBuffer data = ByteBuffer.wrap(bytes, dataStart, n * 4)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < n; i++) {
+      assertEquals(i, data.getInt());
+    }
+  }
+
+  @Test
+  void testFindType() {
+    assertEquals(NumpyType.FLOAT32, findType(1f, null, 2f));
+    assertEquals(NumpyType.FLOAT64, findType(1d, null, 2f));
+    assertEquals(NumpyType.INT32, findType(1, 2, (short) 3));
+    assertEquals(NumpyType.INT64, findType(1, Long.MAX_VALUE));
+    // missing values are NaN
+    assertEquals(NumpyType.FLOAT64, findType(1, null, 3));
+    assertEquals(NumpyType.FLOAT64, findType(1L, null));
+    assertNull(findType(1, "text"));
+    assertNull(findType(null, null));
+  }
+
+  private static NumpyType findType(Object... values) {
+    final List<FeatureListRow> rows = IntStream.range(0, values.length)
+        .mapToObj(_ -> Mockito.mock(FeatureListRow.class)).toList();
+    final List<Object> valueList = Arrays.asList(values);
+    final ExportColumn column = new ExportColumn("col", null,
+        model -> valueList.get(rows.indexOf(model)), _ -> "");
+    return NumpyColumnWriter.findType(column, rows);
+  }
+
+  @Test
+  void testWriteLongArray() throws IOException {
+    final File file = tempDir.resolve("long.npy").toFile();
+    final long[] values = {Long.MIN_VALUE, -1, 0, (1L << 53) + 1, Long.MAX_VALUE};
+    NumpyColumnWriter.writeArray(file, NumpyType.INT64, values.length, i -> values[i]);
+
+    final byte[] bytes = Files.readAllBytes(file.toPath());
+    final byte[] header = NumpyColumnWriter.header(NumpyType.INT64, values.length);
+    assertTrue(new String(header, StandardCharsets.US_ASCII).contains("'descr': '<i8'"));
+    assertEquals(header.length + values.length * 8, bytes.length);
+
+    final ByteBuffer data = ByteBuffer.wrap(bytes, header.length, values.length * 8)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    for (long value : values) {
+      assertEquals(value, data.getLong());
+    }
+  }
+}
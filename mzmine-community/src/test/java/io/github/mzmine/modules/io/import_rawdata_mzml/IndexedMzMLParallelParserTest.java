@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.io.import_rawdata_mzml;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.msdk.MSDKException;
+import io.github.mzmine.modules.io.import_rawdata_all.spectral_processor.ScanImportProcessorConfig;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.BuildingMzMLMsScan;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLRawDataFile;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class IndexedMzMLParallelParserTest {
+
+  private static final String FILE =
+      "rawdatafiles/integration_tests/workshop_dataset/171103_PMA_TK_QC_04-4to5min.mzML";
+
+  private static File getFile() throws URISyntaxException {
+    return new File(IndexedMzMLParallelParserTest.class.getClassLoader().getResource(FILE).toURI());
+  }
+
+  private static MzMLRawDataFile parse(File file, boolean parallel) throws MSDKException {
+    final var task = new MSDKmzMLImportTask(new MZmineProjectImpl(), file,
+        ScanImportProcessorConfig.createDefault(), MSDKmzMLImportModule.class,
+        new MSDKmzMLImportParameters(), Instant.now(), null, parallel);
+    return task.parseMzMl();
+  }
+
+  @Test
+  void testReadSpectrumIndex() throws URISyntaxException, IOException {
+    try (var channel = FileChannel.open(getFile().toPath(), StandardOpenOption.READ)) {
+      final var index = IndexedMzMLParallelParser.readSpectrumIndex(channel);
+      assertNotNull(index);
+      assertEquals(507, index.spectrumOffsets().length);
+    }
+  }
+
+  @Test
+  void testContainsMobility() throws URISyntaxException, IOException {
+    final String mobilityScan = """
+        <spectrum index="0" id="frame=1 scan=1" defaultArrayLength="2">
+          <scanList count="1">
+            <scan>
+              <cvParam cvRef="MS" accession="MS:1000016" name="scan start time" value="0.5"/>
+              <cvParam cvRef="MS" accession="MS:1002815" name="inverse reduced ion mobility" \
+        value="1.2" unitCvRef="MS" unitAccession="MS:1002814"/>
+            </scan>
+          </scanList>
+        </spectrum>""";
+    assertTrue(IndexedMzMLParallelParser.containsMobility(
+        mobilityScan.getBytes(StandardCharsets.UTF_8)));
+
+    final String mergedMobilitySpectrum = """
+        <binaryDataArray encodedLength="0">
+          <cvParam cvRef="MS" accession="MS:1003007" name="raw ion mobility array"/>
+        </binaryDataArray>""";
+    assertTrue(IndexedMzMLParallelParser.containsMobility(
+        mergedMobilitySpectrum.getBytes(StandardCharsets.UTF_8)));
+
+    // no mobility in the whole file
+    assertFalse(IndexedMzMLParallelParser.containsMobility(Files.readAllBytes(getFile().toPath())));
+  }
+
+  @Test
+  void testParallelEqualsSequential() throws URISyntaxException, MSDKException {
+    final File file = getFile();
+    final MzMLRawDataFile sequential = parse(file, false);
+    final MzMLRawDataFile parallel = parse(file, true);
+
+    final List<BuildingMzMLMsScan> expectedScans = sequential.getMsScans();
+    final List<BuildingMzMLMsScan> actualScans = parallel.getMsScans();
+    assertEquals(507, expectedScans.size());
+    assertEquals(expectedScans.size(), actualScans.size());
+    assertEquals(sequential.getChromatograms().size(), parallel.getChromatograms().size());
+    assertEquals(sequential.getStartTimeStamp(), parallel.getStartTimeStamp());
+
+    for (int i = 0; i < expectedScans.size(); i++) {
+      final BuildingMzMLMsScan expected = expectedScans.get(i);
+      final BuildingMzMLMsScan actual = actualScans.get(i);
+      assertEquals(expected.getId(), actual.getId());
+      assertEquals(expected.getScanNumber(), actual.getScanNumber());
+      assertEquals(expected.getMSLevel(), actual.getMSLevel());
+      assertEquals(expected.getRetentionTime(), actual.getRetentionTime());
+      assertEquals(expected.getNumberOfDataPoints(), actual.getNumberOfDataPoints());
+      final int numDp = expected.getNumberOfDataPoints();
+      assertArrayEquals(expected.getMzValues(new double[numDp]),
+          actual.getMzValues(new double[numDp]));
+      assertArrayEquals(expected.getIntensityValues(new double[numDp]),
+          actual.getIntensityValues(new double[numDp]));
+    }
+  }
+}
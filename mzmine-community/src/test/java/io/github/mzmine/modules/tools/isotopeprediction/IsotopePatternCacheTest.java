@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.tools.isotopeprediction;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import io.github.mzmine.datamodel.IsotopePattern;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.impl.SimpleIsotopePattern;
+import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCache.CachedPattern;
+import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCache.Key;
+import io.github.mzmine.modules.tools.isotopeprediction.IsotopePatternCache.Statistics;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+class IsotopePatternCacheTest {
+
+  private static Key key(String formula) {
+    return new Key(formula, null, 0.01, 0.00005, 1, PolarityType.POSITIVE, false);
+  }
+
+  private static CachedPattern pattern() {
+    return new CachedPattern(new double[]{100d, 101d}, new double[]{1d, 0.1d}, 1, "test", null);
+  }
+
+  @Test
+  void testHitsAndMisses() {
+    final IsotopePatternCache cache = new IsotopePatternCache(1000);
+    final AtomicInteger predictions = new AtomicInteger();
+    final CachedPattern first = cache.get(key("C6H12O6"), () -> {
+      predictions.incrementAndGet();
+      return pattern();
+    });
+    final CachedPattern second = cache.get(key("C6H12O6"), () -> {
+      predictions.incrementAndGet();
+      return pattern();
+    });
+    cache.get(key("C6H13O6"), () -> {
+      predictions.incrementAndGet();
+      return pattern();
+    });
+
+    assertSame(first, second);
+    assertEquals(2, predictions.get());
+    final Statistics statistics = cache.getStatistics();
+    assertEquals(1, statistics.hits());
+    assertEquals(2, statistics.misses());
+    assertEquals(2, statistics.size());
+    assertEquals(1 / 3d, statistics.hitRate(), 1e-10);
+
+    cache.clear();
+    assertEquals(new Statistics(0, 0, 0, 0), cache.getStatistics());
+  }
+
+  @Test
+  void testSizeBound() {
+    final IsotopePatternCache cache = new IsotopePatternCache(160);
+    for (int i = 0; i < 10_000; i++) {
+      cache.get(key("C" + i), IsotopePatternCacheTest::pattern);
+    }
+    final Statistics statistics = cache.getStatistics();
+    assertEquals(10_000, statistics.misses());
+    assertEquals(statistics.misses() - statistics.size(), statistics.evictions());
+    assertEquals(true, statistics.size() <= 160);
+  }
+
+  @Test
+  void testCachedPatternsAreCopies() {
+    final IMolecularFormula formula = MolecularFormulaManipulator.getMajorIsotopeMolecularFormula(
+        "C30H50NO8", SilentChemObjectBuilder.getInstance());
+    formula.setCharge(1);
+
+    final IsotopePattern first = IsotopePatternCalculator.calculateIsotopePattern(formula, 0.001,
+        0.00005, 1, PolarityType.POSITIVE, true);
+    final IsotopePattern second = IsotopePatternCalculator.calculateIsotopePattern(formula, 0.001,
+        0.00005, 1, PolarityType.POSITIVE, true);
+    final IsotopePattern predicted = IsotopePatternCalculator.predictIsotopePattern(formula,
+        IsotopePatternCache.roundAbundance(0.001), 0.00005, 1, PolarityType.POSITIVE, true)
+        .toIsotopePattern(0.001);
+
+    assertNotSame(first, second);
+    final double[] mzs = first.getMzValues(new double[0]);
+    assertNotSame(mzs, second.getMzValues(new double[0]));
+    assertArrayEquals(predicted.getMzValues(new double[0]), mzs, 0d);
+    assertArrayEquals(predicted.getIntensityValues(new double[0]), second.getIntensityValues(new double[0]), 0d);
+    assertEquals(predicted.getCharge(), second.getCharge());
+    assertEquals(predicted.getDescription(), second.getDescription());
+    assertArrayEquals(((SimpleIsotopePattern) predicted).getIsotopeCompositions(),
+        ((SimpleIsotopePattern) second).getIsotopeCompositions());
+
+    // different abundance and polarity are separate entries
+    final IsotopePattern lowAbundance = IsotopePatternCalculator.calculateIsotopePattern(formula,
+        0.00001, 0.00005, 1, PolarityType.POSITIVE, true);
+    final IsotopePattern negative = IsotopePatternCalculator.calculateIsotopePattern(formula, 0.001,
+        0.00005, 1, PolarityType.NEGATIVE, true);
+    assertEquals(true, lowAbundance.getNumberOfDataPoints() > first.getNumberOfDataPoints());
+    assertEquals(true, negative.getMzValue(0) > first.getMzValue(0));
+  }
+
+  @Test
+  void testRoundedAbundanceSharesEntries() {
+    assertEquals(0.5, IsotopePatternCache.roundAbundance(0.7));
+    assertEquals(0.5, IsotopePatternCache.roundAbundance(0.5));
+    assertEquals(1d / 1024, IsotopePatternCache.roundAbundance(0.0015));
+    assertEquals(2d, IsotopePatternCache.roundAbundance(2d));
+    assertEquals(0d, IsotopePatternCache.roundAbundance(0d));
+
+    final IMolecularFormula formula = MolecularFormulaManipulator.getMajorIsotopeMolecularFormula(
+        "C40H70NO10", SilentChemObjectBuilder.getInstance());
+    formula.setCharge(1);
+    final IsotopePatternCache cache = new IsotopePatternCache(1000);
+    final IsotopePattern low = cache.get(formula, 0.0011, 0.00005, 1, PolarityType.POSITIVE,
+        false);
+    final IsotopePattern high = cache.get(formula, 0.0019, 0.00005, 1, PolarityType.POSITIVE,
+        false);
+    assertEquals(1, cache.getStatistics().misses());
+    assertEquals(1, cache.getStatistics().hits());
+
+    // trimmed to the requested abundance
+    assertEquals(true, low.getNumberOfDataPoints() >= high.getNumberOfDataPoints());
+    for (int i = 0; i < high.getNumberOfDataPoints(); i++) {
+      assertEquals(true, high.getIntensityValue(i) >= 0.0019);
+    }
+    for (int i = 0; i < low.getNumberOfDataPoints(); i++) {
+      assertEquals(true, low.getIntensityValue(i) >= 0.0011);
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.visualization.twod;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class RawDataTilePyramidTest {
+
+  private static final int NUM_SCANS = 3000;
+  private static final double MZ_MIN = 100;
+  private static final double MZ_MAX = 1100;
+
+  private static Scan[] scans;
+  private static double totalIntensity;
+  private static double maxIntensity;
+
+  @BeforeAll
+  static void createScans() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("tiles", null, null, Color.BLACK);
+    final Random random = new Random(7);
+    scans = new Scan[NUM_SCANS];
+    for (int s = 0; s < NUM_SCANS; s++) {
+      final int n = 50;
+      final double[] mzs = new double[n];
+      final double[] intensities = new double[n];
+      for (int i = 0; i < n; i++) {
+        mzs[i] = MZ_MIN + random.nextDouble() * (MZ_MAX - MZ_MIN);
+        intensities[i] = Math.round(random.nextDouble() * 1000);
+      }
+      // fixed borders of the m/z range
+      mzs[0] = MZ_MIN;
+      mzs[1] = MZ_MAX;
+      Arrays.sort(mzs);
+      if (s == 1500) {
+        intensities[10] = 1e6;
+      }
+      for (double intensity : intensities) {
+        totalIntensity += intensity;
+        maxIntensity = Math.max(maxIntensity, intensity);
+      }
+      scans[s] = new SimpleScan(file, s, 1, s * 0.01f, null, mzs, intensities,
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", null);
+    }
+  }
+
+  @Test
+  void testLevels() {
+    final RawDataTilePyramid pyramid = RawDataTilePyramid.build(scans, () -> false);
+    assertNotNull(pyramid);
+    // 2048 -> 32 bins
+    assertEquals(7, pyramid.numLevels());
+  }
+
+  @Test
+  void testSumAndMaxOfFullRange() {
+    final RawDataTilePyramid pyramid = RawDataTilePyramid.build(scans, () -> false);
+    assertNotNull(pyramid);
+    final float rtMax = scans[NUM_SCANS - 1].getRetentionTime();
+
+    final double[][] sum = pyramid.render(0, rtMax, MZ_MIN, MZ_MAX, 1, 1, true,
+        PlotMode.CENTROID);
+    assertNotNull(sum);
+    assertEquals(totalIntensity, sum[0][0], totalIntensity * 1e-5);
+
+    final double[][] max = pyramid.render(0, rtMax, MZ_MIN, MZ_MAX, 20, 20, false,
+        PlotMode.CENTROID);
+    assertNotNull(max);
+    final double renderedMax = Arrays.stream(max).flatMapToDouble(Arrays::stream).max()
+        .orElse(0);
+    assertEquals(maxIntensity, renderedMax);
+
+    // the peak of scan 1500 is in the middle column
+    final double[] column = max[10];
+    assertEquals(maxIntensity, Arrays.stream(column).max().orElse(0));
+  }
+
+  @Test
+  void testFallbackOnHighZoom() {
+    final RawDataTilePyramid pyramid = RawDataTilePyramid.build(scans, () -> false);
+    assertNotNull(pyramid);
+    // less than one m/z bin per pixel
+    assertNull(pyramid.render(0, 1, 500, 500.1, 100, 100, false, PlotMode.CENTROID));
+    // less than one column per pixel
+    assertNull(pyramid.render(10, 10.5, MZ_MIN, MZ_MAX, 200, 10, false, PlotMode.CENTROID));
+  }
+
+  @Test
+  void testEmptyPixelsInProfileMode() {
+    // one scan with two distant data points, all pixels in between are empty
+    final RawDataFile file = new RawDataFileImpl("profile", null, null, Color.BLACK);
+    final Scan[] profile = new Scan[]{
+        new SimpleScan(file, 0, 1, 0f, null, new double[]{100, 200}, new double[]{10, 20},
+            MassSpectrumType.PROFILE, PolarityType.POSITIVE, "", null)};
+    final RawDataTilePyramid pyramid = RawDataTilePyramid.build(profile, () -> false);
+    assertNotNull(pyramid);
+
+    final double[][] centroid = pyramid.render(0, 1, 100, 200, 1, 10, false, PlotMode.CENTROID);
+    assertNotNull(centroid);
+    assertEquals(0, centroid[0][2]);
+    assertEquals(0, centroid[0][7]);
+
+    final double[][] continuous = pyramid.render(0, 1, 100, 200, 1, 10, false,
+        PlotMode.CONTINUOUS);
+    assertNotNull(continuous);
+    // closest data point like in the scan based rendering
+    assertEquals(10, continuous[0][2]);
+    assertEquals(20, continuous[0][7]);
+    assertEquals(10, continuous[0][0]);
+    assertEquals(20, continuous[0][9]);
+  }
+
+  @Test
+  void testCacheIsBoundedAndEvicted() {
+    final List<RawDataFile> files = new ArrayList<>();
+    files.add(new RawDataFileImpl("cached_0", null, null, Color.BLACK));
+    final RawDataTilePyramid first = RawDataTilePyramid.getOrBuild(files.getFirst(), scans,
+        () -> false);
+    assertNotNull(first);
+    final int fitting = (int) (RawDataTilePyramid.MAX_CACHED_BYTES / first.byteSize());
+
+    for (int f = 1; f <= fitting + 1; f++) {
+      final RawDataFile file = new RawDataFileImpl("cached_" + f, null, null, Color.BLACK);
+      files.add(file);
+      final RawDataTilePyramid pyramid = RawDataTilePyramid.getOrBuild(file, scans, () -> false);
+      // same scan numbers reuse the pyramid
+      assertSame(pyramid, RawDataTilePyramid.getOrBuild(file, scans, () -> false));
+    }
+    assertEquals(fitting, RawDataTilePyramid.numCached());
+    assertTrue(RawDataTilePyramid.cachedBytes() <= RawDataTilePyramid.MAX_CACHED_BYTES);
+
+    RawDataTilePyramid.evict(files);
+    assertEquals(0, RawDataTilePyramid.numCached());
+    assertEquals(0, RawDataTilePyramid.cachedBytes());
+  }
+
+  @Test
+  void testEvictionFreesMemory() throws InterruptedException {
+    final RawDataFile file = new RawDataFileImpl("freed", null, null, Color.BLACK);
+    final long cachedBefore = RawDataTilePyramid.cachedBytes();
+    final WeakReference<RawDataTilePyramid> pyramid = new WeakReference<>(
+        RawDataTilePyramid.getOrBuild(file, scans, () -> false));
+    assertNotNull(pyramid.get());
+    assertEquals(cachedBefore + pyramid.get().byteSize(), RawDataTilePyramid.cachedBytes());
+
+    RawDataTilePyramid.evict(List.of(file));
+    assertEquals(cachedBefore, RawDataTilePyramid.cachedBytes());
+    // nothing else references the levels
+    for (int i = 0; i < 50 && pyramid.get() != null; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertNull(pyramid.get());
+  }
+
+  @Test
+  void testCanceled() {
+    assertNull(RawDataTilePyramid.build(scans, () -> true));
+  }
+}
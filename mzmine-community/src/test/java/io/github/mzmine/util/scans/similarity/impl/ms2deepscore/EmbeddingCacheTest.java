@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity.impl.ms2deepscore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.util.scans.similarity.impl.ms2deepscore.EmbeddingCache.EmbeddingKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EmbeddingCacheTest {
+
+  private static final int DIMENSIONS = 4;
+  private static final int RECORD_BYTES =
+      EmbeddingCache.KEY_BYTES + EmbeddingCache.LAST_USED_BYTES + 4 * DIMENSIONS;
+
+  @TempDir
+  Path dir;
+
+  private static EmbeddingKey key(int i) {
+    return new EmbeddingKey(i, 31L * i + 7);
+  }
+
+  private static float[] embedding(int i) {
+    return new float[]{i, i + 0.5f, -i, 1f / (i + 1)};
+  }
+
+  @Test
+  void testFileFormat() throws IOException {
+    final Path file = dir.resolve("model.bin");
+    final EmbeddingCache cache = new EmbeddingCache(file, 1 << 20);
+    for (int i = 0; i < 3; i++) {
+      cache.put(key(i), embedding(i));
+    }
+
+    // the main file only points to the data file of the current generation
+    final ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file))
+        .order(ByteOrder.nativeOrder());
+    assertEquals(EmbeddingCache.HEADER_BYTES, header.limit());
+    final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(cache.dataFile()))
+        .order(ByteOrder.nativeOrder());
+    assertEquals(EmbeddingCache.HEADER_BYTES + 3 * RECORD_BYTES, data.limit());
+    assertEquals(header, data.slice(0, EmbeddingCache.HEADER_BYTES));
+    assertEquals(EmbeddingCache.MAGIC, data.getInt());
+    assertEquals(EmbeddingCache.VERSION, data.getInt());
+    assertEquals(DIMENSIONS, data.getInt());
+    data.getInt(); // generation
+
+    long previousUse = 0;
+    for (int i = 0; i < 3; i++) {
+      assertEquals(key(i).high(), data.getLong());
+      assertEquals(key(i).low(), data.getLong());
+      final long lastUsed = data.getLong();
+      assertTrue(lastUsed > previousUse);
+      previousUse = lastUsed;
+      final float[] values = new float[DIMENSIONS];
+      data.asFloatBuffer().get(values);
+      data.position(data.position() + 4 * DIMENSIONS);
+      assertArrayEquals(embedding(i), values);
+    }
+  }
+
+  @Test
+  void testReopen() throws IOException {
+    final Path file = dir.resolve("model.bin");
+    final EmbeddingCache cache = new EmbeddingCache(file, 1 << 20);
+    for (int i = 0; i < 5; i++) {
+      cache.put(key(i), embedding(i));
+    }
+    assertArrayEquals(embedding(3), cache.get(key(3)));
+    assertNull(cache.get(key(5)));
+
+    final EmbeddingCache reopened = new EmbeddingCache(file, 1 << 20);
+    assertEquals(5, reopened.size());
+    for (int i = 0; i < 5; i++) {
+      assertArrayEquals(embedding(i), reopened.get(key(i)));
+    }
+  }
+
+  @Test
+  void testSharedFile() throws IOException {
+    // two processes on the same file
+    final Path file = dir.resolve("model.bin");
+    final EmbeddingCache first = new EmbeddingCache(file, 1 << 20);
+    final EmbeddingCache second = new EmbeddingCache(file, 1 << 20);
+    first.put(key(0), embedding(0));
+    second.put(key(1), embedding(1));
+    first.put(key(2), embedding(2));
+
+    // appended records of the other process are found
+    assertArrayEquals(embedding(1), first.get(key(1)));
+    assertArrayEquals(embedding(2), second.get(key(2)));
+    assertEquals(3, new EmbeddingCache(file, 1 << 20).size());
+
+    // a replaced file is reloaded
+    second.put(key(3), new float[]{1f, 2f});
+    assertArrayEquals(new float[]{1f, 2f}, first.get(key(3)));
+    assertEquals(1, first.size());
+    assertNull(first.get(key(0)));
+  }
+
+  @Test
+  void testEvictLeastRecentlyUsedAcrossSessions() throws IOException {
+    final Path file = dir.resolve("model.bin");
+    final long maxBytes = EmbeddingCache.HEADER_BYTES + 10L * RECORD_BYTES;
+    final EmbeddingCache cache = new EmbeddingCache(file, maxBytes);
+    for (int i = 0; i < 10; i++) {
+      cache.put(key(i), embedding(i));
+    }
+    // the oldest records are used again, the last use is written with the next put
+    for (int i = 0; i < 3; i++) {
+      assertNotNull(cache.get(key(i)));
+    }
+    cache.putAll(new EmbeddingKey[0], new float[0][]);
+
+    // the last use is read from the file in the next session
+    final EmbeddingCache next = new EmbeddingCache(file, maxBytes);
+    next.put(key(10), embedding(10));
+    // half of the maximum size keeps the 4 most recently used records
+    assertEquals(5, next.size());
+    for (int i : new int[]{0, 1, 2, 9, 10}) {
+      assertArrayEquals(embedding(i), next.get(key(i)), "record " + i);
+    }
+    for (int i = 3; i < 9; i++) {
+      assertNull(next.get(key(i)), "record " + i);
+    }
+    assertEquals(EmbeddingCache.HEADER_BYTES + 5L * RECORD_BYTES, Files.size(next.dataFile()));
+  }
+
+  @Test
+  void testBatchedAccess() throws IOException {
+    final Path file = dir.resolve("model.bin");
+    final EmbeddingCache cache = new EmbeddingCache(file, 1 << 20);
+    final EmbeddingKey[] keys = new EmbeddingKey[5];
+    final float[][] embeddings = new float[5][];
+    for (int i = 0; i < 5; i++) {
+      keys[i] = key(i);
+      embeddings[i] = embedding(i);
+    }
+    cache.putAll(keys, embeddings);
+    // already cached embeddings are skipped
+    cache.putAll(keys, embeddings);
+    assertEquals(5, cache.size());
+
+    final float[][] found = cache.getAll(
+        new EmbeddingKey[]{key(4), key(7), key(0), key(2), key(5)});
+    assertArrayEquals(embedding(4), found[0]);
+    assertNull(found[1]);
+    assertArrayEquals(embedding(0), found[2]);
+    assertArrayEquals(embedding(2), found[3]);
+    assertNull(found[4]);
+    assertEquals(3, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    final float[][] reopened = new EmbeddingCache(file, 1 << 20).getAll(keys);
+    for (int i = 0; i < 5; i++) {
+      assertArrayEquals(embedding(i), reopened[i]);
+    }
+  }
+
+  @Test
+  void testReadDoesNotWrite() throws IOException {
+    final Path file = dir.resolve("model.bin");
+    final EmbeddingCache cache = new EmbeddingCache(file, 1 << 20);
+    for (int i = 0; i < 3; i++) {
+      cache.put(key(i), embedding(i));
+    }
+    final byte[] before = Files.readAllBytes(cache.dataFile());
+    cache.getAll(new EmbeddingKey[]{key(0), key(1)});
+    assertArrayEquals(before, Files.readAllBytes(cache.dataFile()));
+
+    // the last use is written with the next put
+    cache.put(key(3), embedding(3));
+    final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(cache.dataFile()))
+        .order(ByteOrder.nativeOrder());
+    final long lastUse0 = data.getLong(EmbeddingCache.HEADER_BYTES + EmbeddingCache.KEY_BYTES);
+    final long lastUse2 = data.getLong(
+        EmbeddingCache.HEADER_BYTES + 2 * RECORD_BYTES + EmbeddingCache.KEY_BYTES);
+    assertTrue(lastUse0 > lastUse2);
+  }
+
+  @Test
+  void testOldGenerationsAreDeleted() throws IOException {
+    final Path file = dir.resolve("model.bin");
+    final EmbeddingCache cache = new EmbeddingCache(file, 1 << 20);
+    cache.put(key(0), embedding(0));
+    final Path first = cache.dataFile();
+    // other dimensions write a new generation
+    cache.put(key(1), new float[]{1f, 2f});
+    final Path second = cache.dataFile();
+
+    assertNotEquals(first, second);
+    assertFalse(Files.exists(first));
+    try (var files = Files.list(dir)) {
+      assertEquals(List.of(second), files.filter(path -> path.getFileName().toString()
+          .endsWith(EmbeddingCache.DATA_FILE_SUFFIX)).toList());
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity.impl.ms2deepscore;
+
+import static io.github.mzmine.modules.dataprocessing.group_spectral_networking.dreams.DreaMSNetworkingTask.toKNNMatrix;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Test;
+
+class EmbeddingMatrixTest {
+
+  /**
+   * more rows than one block and dimensions that are not a multiple of 4
+   */
+  private static EmbeddingMatrix createRandom(int size, int dimensions) {
+    Random random = new Random(7);
+    EmbeddingMatrix matrix = new EmbeddingMatrix(size, dimensions);
+    float[] rows = new float[size * dimensions];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = (float) random.nextGaussian();
+    }
+    // set in two batches
+    int half = size / 2;
+    float[] first = new float[half * dimensions];
+    float[] second = new float[(size - half) * dimensions];
+    System.arraycopy(rows, 0, first, 0, first.length);
+    System.arraycopy(rows, first.length, second, 0, second.length);
+    matrix.setRows(0, first);
+    matrix.setRows(half, second);
+    return matrix;
+  }
+
+  private static long key(int a, int b) {
+    return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+  }
+
+  @Test
+  void similarityIsCosine() {
+    EmbeddingMatrix matrix = new EmbeddingMatrix(2, 3);
+    matrix.setRows(0, new float[]{1, 0, 0, 1, 1, 0});
+    assertEquals(1f, matrix.similarity(0, 0), 1e-6);
+    assertEquals((float) (1 / Math.sqrt(2)), matrix.similarity(0, 1), 1e-6);
+  }
+
+  @Test
+  void pairsAboveThreshold() {
+    EmbeddingMatrix matrix = createRandom(150, 19);
+    Map<Long, Float> pairs = new ConcurrentHashMap<>();
+    assertTrue(matrix.forEachPairAbove(0.3, () -> false, (a, b, score) -> {
+      assertTrue(a < b);
+      pairs.put(key(a, b), score);
+    }));
+
+    int expected = 0;
+    for (int a = 0; a < matrix.size(); a++) {
+      for (int b = a + 1; b < matrix.size(); b++) {
+        if (matrix.similarity(a, b) > 0.3) {
+          expected++;
+          assertEquals(matrix.similarity(a, b), (float) pairs.get(key(a, b)));
+        }
+      }
+    }
+    assertTrue(expected > 0);
+    assertEquals(expected, pairs.size());
+  }
+
+  @Test
+  void nearestNeighborsMatchKnnMatrix() {
+    EmbeddingMatrix matrix = createRandom(150, 19);
+    int n = matrix.size();
+    float[][] full = new float[n][n];
+    for (int a = 0; a < n; a++) {
+      for (int b = 0; b < n; b++) {
+        full[a][b] = matrix.similarity(a, b);
+      }
+    }
+    float[][] knn = toKNNMatrix(full, 3, 0.4);
+
+    Map<Long, Float> pairs = new ConcurrentHashMap<>();
+    assertTrue(matrix.forEachNearestNeighbor(3, 0.4, () -> false,
+        (a, b, score) -> pairs.put(key(a, b), score)));
+
+    int expected = 0;
+    for (int a = 0; a < n; a++) {
+      for (int b = a + 1; b < n; b++) {
+        if (knn[a][b] != 0) {
+          expected++;
+          assertEquals(knn[a][b], (float) pairs.get(key(a, b)));
+        }
+      }
+    }
+    assertEquals(expected, pairs.size());
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2004-2024 The mzmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.compiled;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.FilteredLibraryEntries;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryEntryList;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompiledSpectralLibraryTest {
+
+  @TempDir
+  Path dir;
+  private File source;
+  private File compiled;
+  private SpectralLibrary library;
+
+  @BeforeEach
+  void createLibrary() throws IOException {
+    source = dir.resolve("library.mgf").toFile();
+    Files.writeString(source.toPath(), "BEGIN IONS\nEND IONS\n");
+    compiled = dir.resolve("library" + CompiledSpectralLibrary.FILE_SUFFIX).toFile();
+
+    library = new SpectralLibrary(null, source);
+    for (int i = 0; i < 3; i++) {
+      final Map<DBEntryField, Object> fields = new EnumMap<>(DBEntryField.class);
+      fields.put(DBEntryField.NAME, "compound ä " + i);
+      fields.put(DBEntryField.CHARGE, i + 1);
+      if (i != 1) {
+        fields.put(DBEntryField.PRECURSOR_MZ, 100.5 + i);
+        fields.put(DBEntryField.COLLISION_ENERGY, new FloatArrayList(new float[]{20f, 40f}));
+        fields.put(DBEntryField.SOURCE_SCAN_USI, List.of("usi:a", "usi:b"));
+        // types that differ from the field class are kept
+        fields.put(DBEntryField.SCAN_NUMBER, List.of(5, 7 + i));
+        fields.put(DBEntryField.COMMENT, 1.25d);
+        fields.put(DBEntryField.RT, 3.5f + i);
+      }
+      final double[] mzs = new double[i * 2];
+      final double[] intensities = new double[i * 2];
+      for (int j = 0; j < mzs.length; j++) {
+        mzs[j] = 50 + j * 10.1;
+        intensities[j] = 1000 * (j + 1);
+      }
+      library.addEntry(new SpectralDBEntry(null, mzs, intensities, fields));
+    }
+  }
+
+  @Test
+  void testRoundTrip() throws IOException {
+    CompiledSpectralLibraryWriter.write(library, source, compiled);
+    final CompiledSpectralLibrary lib = CompiledSpectralLibrary.open(source, compiled);
+    assertNotNull(lib);
+    assertEquals(3, lib.size());
+    assertEquals(6, lib.getTotalDataPoints());
+
+    final SpectralLibrary opened = new SpectralLibrary(lib, source);
+    assertEquals(library.size(), opened.size());
+    for (int i = 0; i < library.size(); i++) {
+      final SpectralLibraryEntry expected = library.getEntries().get(i);
+      final SpectralLibraryEntry actual = opened.getEntries().get(i);
+      assertEquals(expected.getFields(), actual.getFields());
+      assertSame(opened, ((SpectralDBEntry) actual).getLibrary());
+      assertEquals(expected.getNumberOfDataPoints(), lib.getNumberOfDataPoints(i));
+      assertArrayEquals(expected.getMzValues(new double[expected.getNumberOfDataPoints()]),
+          actual.getMzValues(new double[actual.getNumberOfDataPoints()]));
+      assertArrayEquals(
+          expected.getIntensityValues(new double[expected.getNumberOfDataPoints()]),
+          actual.getIntensityValues(new double[actual.getNumberOfDataPoints()]));
+      assertEquals(expected.getBasePeakIntensity(), actual.getBasePeakIntensity());
+    }
+    assertEquals(100.5, lib.getPrecursorMz(0));
+    assertEquals(Double.NaN, lib.getPrecursorMz(1));
+  }
+
+  @Test
+  void testEntriesKeepIdentity() throws IOException {
+    CompiledSpectralLibraryWriter.write(library, source, compiled);
+    final SpectralLibrary opened = new SpectralLibrary(
+        CompiledSpectralLibrary.open(source, compiled), source);
+    final SpectralLibraryEntry entry = opened.getEntries().get(2);
+    assertSame(entry, opened.getEntries().get(2));
+
+    entry.putIfNotNull(DBEntryField.NAME, "changed");
+    assertEquals("changed", opened.getEntries().get(2).getField(DBEntryField.NAME).orElse(null));
+  }
+
+  @Test
+  void testModifiedSourceInvalidatesCompiled() throws IOException {
+    CompiledSpectralLibraryWriter.write(library, source, compiled);
+    assertNotNull(CompiledSpectralLibrary.open(source, compiled));
+
+    Files.writeString(source.toPath(), "BEGIN IONS\nNAME=changed\nEND IONS\n");
+    assertNull(CompiledSpectralLibrary.open(source, compiled));
+  }
+
+  @Test
+  void testModifyCompiledLibrary() throws IOException {
+    CompiledSpectralLibraryWriter.write(library, source, compiled);
+    final SpectralLibrary opened = new SpectralLibrary(
+        CompiledSpectralLibrary.open(source, compiled), source);
+    opened.removeif(e -> e.getNumberOfDataPoints() == 0);
+    assertEquals(2, opened.size());
+  }
+
+  @Test
+  void testEntriesAreNotPinned() throws IOException {
+    CompiledSpectralLibraryWriter.write(library, source, compiled);
+    final SpectralLibrary opened = new SpectralLibrary(
+        CompiledSpectralLibrary.open(source, compiled), source);
+    final WeakReference<SpectralLibraryEntry> entry = new WeakReference<>(
+        opened.getEntries().get(2));
+    for (int i = 0; i < 20 && entry.get() != null; i++) {
+      System.gc();
+    }
+    assertNull(entry.get());
+    assertEquals("compound ä 2",
+        opened.getEntries().get(2).getField(DBEntryField.NAME).orElse(null));
+  }
+
+  @Test
+  void testFilterAndSortOnIndices() throws IOException {
+    CompiledSpectralLibraryWriter.write(library, source, compiled);
+    final CompiledSpectralLibrary lib = CompiledSpectralLibrary.open(source, compiled);
+    // creating an entry fails, filtering and sorting may only use the index accessors
+    final SpectralLibraryEntryList reversed = new ReversedEntries(lib);
+
+    final FilteredLibraryEntries sorted = FilteredLibraryEntries.filter(reversed, 0, true);
+    assertEquals(2, sorted.size());
+    assertEquals(100.5, sorted.getPrecursorMz(0));
+    assertEquals(102.5, sorted.getPrecursorMz(1));
+    assertEquals(4, sorted.getNumberOfDataPoints(1));
+
+    final FilteredLibraryEntries minDataPoints = FilteredLibraryEntries.filter(reversed, 1,
+        false);
+    assertEquals(2, minDataPoints.size());
+    assertEquals(102.5, minDataPoints.getPrecursorMz(0));
+    assertTrue(Double.isNaN(minDataPoints.getPrecursorMz(1)));
+
+    // entries are created on access
+    final SpectralLibrary opened = new SpectralLibrary(lib, source);
+    final List<SpectralLibraryEntry> entries = FilteredLibraryEntries.filter(opened.getEntries(),
+        1, true);
+    assertEquals(1, entries.size());
+    assertEquals("compound ä 2", entries.getFirst().getField(DBEntryField.NAME).orElse(null));
+  }
+
+  @Test
+  void testPruneLeastRecentlyUsed() throws IOException {
+    final Path cacheDir = Files.createDirectories(dir.resolve("cache"));
+    final long now = System.currentTimeMillis();
+    final File oldest = cacheFile(cacheDir, "oldest" + CompiledSpectralLibrary.FILE_SUFFIX,
+        now - 30_000);
+    final File older = cacheFile(cacheDir, "older" + CompiledSpectralLibrary.FILE_SUFFIX,
+        now - 20_000);
+    final File recent = cacheFile(cacheDir, "recent" + CompiledSpectralLibrary.FILE_SUFFIX,
+        now - 10_000);
+    final File written = cacheFile(cacheDir, "written" + CompiledSpectralLibrary.FILE_SUFFIX,
+        now - 40_000);
+    final File staleTemp = cacheFile(cacheDir, "crashed.tmp", now - 2 * 24 * 3600_000L);
+
+    CompiledSpectralLibrary.prune(cacheDir.toFile(), written, 250);
+
+    assertTrue(written.exists());
+    assertTrue(recent.exists());
+    assertTrue(older.exists());
+    assertFalse(oldest.exists());
+    assertFalse(staleTemp.exists());
+  }
+
+  private static File cacheFile(Path dir, String name, long lastModified) throws IOException {
+    final File file = Files.write(dir.resolve(name), new byte[100]).toFile();
+    assertTrue(file.setLastModified(lastModified));
+    return file;
+  }
+
+  /**
+   * Reversed index accessors of a compiled library that cannot create entries
+   */
+  private static final class ReversedEntries extends AbstractList<SpectralLibraryEntry> implements
+      SpectralLibraryEntryList {
+
+    private final CompiledSpectralLibrary lib;
+
+    private ReversedEntries(CompiledSpectralLibrary lib) {
+      this.lib = lib;
+    }
+
+    @Override
+    public SpectralLibraryEntry get(int index) {
+      throw new UnsupportedOperationException("Entry was created");
+    }
+
+    @Override
+    public int size() {
+      return lib.size();
+    }
+
+    @Override
+    public double getPrecursorMz(int index) {
+      return lib.getPrecursorMz(size() - 1 - index);
+    }
+
+    @Override
+    public int getNumberOfDataPoints(int index) {
+      return lib.getNumberOfDataPoints(size() - 1 - index);
+    }
+  }
+}
@@ -26,6 +26,7 @@
 package io.github.mzmine.taskcontrol.listeners;
 
 import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.DelegatingTask;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.taskcontrol.TaskStatusListener;
@@ -51,7 +52,8 @@ public class MasterTaskCancelListener implements TaskStatusListener {
           continue;
         }
 
-        if (wrappedTask.getActualTask() instanceof AbstractTask at) {
+        // status changes reach wrapped tasks, e.g., of the batch profiler
+        if (DelegatingTask.unwrap(wrappedTask.getActualTask()) instanceof AbstractTask at) {
           at.setStatus(newStatus);
         } else {
           wrappedTask.cancel();